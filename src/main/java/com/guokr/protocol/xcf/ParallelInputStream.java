@@ -0,0 +1,133 @@
+package com.guokr.protocol.xcf;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Drains a list of part streams on a pool of worker threads and hands the
+ * bytes back in the original order. At most <code>threads</code> parts are
+ * buffered ahead of the reader, so memory stays bounded by the part size.
+ */
+public class ParallelInputStream extends InputStream {
+
+    private final List<InputStream>  parts;
+    private final List<Future<byte[]>> futures;
+    private final ExecutorService    pool;
+    private final int                window;
+
+    private int    submitted;
+    private int    current;
+    private byte[] chunk;
+    private int    offset;
+
+    public ParallelInputStream(List<InputStream> parts, int threads) {
+        this.parts = parts;
+        this.window = Math.max(1, Math.min(threads, parts.size()));
+        this.futures = new ArrayList<Future<byte[]>>(parts.size());
+        this.pool = Executors.newFixedThreadPool(window, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "xcf-inflater");
+                t.setDaemon(true);
+                return t;
+            }
+        });
+        for (int i = 0; i < window; i++) {
+            submit();
+        }
+    }
+
+    private void submit() {
+        if (submitted >= parts.size()) {
+            return;
+        }
+        final InputStream in = parts.get(submitted++);
+        futures.add(pool.submit(new Callable<byte[]>() {
+            @Override
+            public byte[] call() throws IOException {
+                try {
+                    ByteArrayOutputStream out = new ByteArrayOutputStream(1 << 20);
+                    byte[] buf = new byte[1 << 16];
+                    int n;
+                    while ((n = in.read(buf)) != -1) {
+                        out.write(buf, 0, n);
+                    }
+                    return out.toByteArray();
+                } finally {
+                    in.close();
+                }
+            }
+        }));
+    }
+
+    private boolean advance() throws IOException {
+        while (chunk == null || offset >= chunk.length) {
+            if (chunk != null) {
+                futures.set(current++, null);
+                chunk = null;
+            }
+            if (current >= parts.size()) {
+                pool.shutdown();
+                return false;
+            }
+            try {
+                chunk = futures.get(current).get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("interrupted while inflating part " + current, e);
+            } catch (ExecutionException e) {
+                throw new IOException("failed to inflate part " + current, e.getCause());
+            }
+            offset = 0;
+            submit();
+        }
+        return true;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!advance()) {
+            return -1;
+        }
+        return chunk[offset++] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (!advance()) {
+            return -1;
+        }
+        int n = Math.min(len, chunk.length - offset);
+        System.arraycopy(chunk, offset, b, off, n);
+        offset += n;
+        return n;
+    }
+
+    @Override
+    public int available() throws IOException {
+        return chunk == null ? 0 : chunk.length - offset;
+    }
+
+    @Override
+    public void close() throws IOException {
+        pool.shutdownNow();
+        for (int i = submitted; i < parts.size(); i++) {
+            parts.get(i).close();
+        }
+        chunk = null;
+        super.close();
+    }
+
+}
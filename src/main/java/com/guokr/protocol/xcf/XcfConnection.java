@@ -10,6 +10,16 @@ import java.util.List;
 
 public abstract class XcfConnection extends URLConnection {
 
+    /**
+     * When set (<code>-Dxcf.parallel=true</code>), the parts of a multi-part
+     * archive are inflated concurrently and local parts are memory-mapped.
+     * <code>xcf.threads</code> bounds the number of workers, and defaults to
+     * the number of available processors.
+     */
+    public static final boolean PARALLEL = Boolean.getBoolean("xcf.parallel");
+    public static final int     THREADS  = Integer.getInteger("xcf.threads",
+                                                 Runtime.getRuntime().availableProcessors());
+
     private final URL         base;
     private final URL         url;
     private List<InputStream> bottoms;
@@ -32,6 +42,9 @@ public abstract class XcfConnection extends URLConnection {
         if (bottoms == null) {
             connect();
         }
+        if (PARALLEL && bottoms.size() > 1) {
+            return new ParallelInputStream(bottoms, THREADS);
+        }
         return new SequenceInputStream(Collections.enumeration(bottoms));
     }
 
@@ -59,7 +59,7 @@ public class XcfFileConnection extends XcfConnection {
                 inputs.add(new FileInputStream(files[0]));
             } else {
                 for (int i = 0; i < files.length; i++) {
-                    inputs.add(new GZIPInputStream(new FileInputStream(files[i])));
+                    inputs.add(new GZIPInputStream(open(files[i])));
                 }
             }
         }
@@ -67,4 +67,11 @@ public class XcfFileConnection extends XcfConnection {
         return inputs;
     }
 
+    private static InputStream open(File file) throws IOException {
+        if (PARALLEL) {
+            return new MappedInputStream(file);
+        }
+        return new FileInputStream(file);
+    }
+
 }
@@ -315,6 +315,22 @@ public abstract class AbstractSequenceClassifier<IN extends CoreMap> implements
 	 *         field.
 	 */
 	public List<IN> classifySentence(List<? extends HasWord> sentence) {
+		List<IN> document = copySentence(sentence);
+		classify(document);
+		return document;
+	}
+
+	/**
+	 * Copies a sentence into new tokens with their positions and background
+	 * answers set, and runs them through ObjectBankWrapper, as
+	 * {@link #classifySentence} and
+	 * {@link #classifySentenceWithGlobalInformation} do before classifying.
+	 *
+	 * @param sentence
+	 *            The words of the sentence
+	 * @return New tokens, ready to be classified in place
+	 */
+	public List<IN> copySentence(List<? extends HasWord> sentence) {
 		List<IN> document = new ArrayList<IN>();
 		int i = 0;
 		for (HasWord word : sentence) {
@@ -341,8 +357,6 @@ public abstract class AbstractSequenceClassifier<IN extends CoreMap> implements
 				knownLCWords);
 		wrapper.processDocument(document);
 
-		classify(document);
-
 		return document;
 	}
 
@@ -359,32 +373,7 @@ public abstract class AbstractSequenceClassifier<IN extends CoreMap> implements
 	public List<IN> classifySentenceWithGlobalInformation(
 			List<? extends HasWord> tokenSequence, final CoreMap doc,
 			final CoreMap sentence) {
-		List<IN> document = new ArrayList<IN>();
-		int i = 0;
-		for (HasWord word : tokenSequence) {
-			IN wi; // initialized straight below
-			if (word instanceof CoreMap) {
-				// copy all annotations! some are required later in
-				// AbstractSequenceClassifier.classifyWithInlineXML
-				// wi = (IN) new ArrayCoreMap((ArrayCoreMap) word);
-				wi = tokenFactory.makeToken((IN) word);
-			} else {
-				wi = tokenFactory.makeToken();
-				wi.set(CoreAnnotations.TextAnnotation.class, word.word());
-				// wi.setWord(word.word());
-			}
-			wi.set(CoreAnnotations.PositionAnnotation.class,
-					Integer.toString(i));
-			wi.set(CoreAnnotations.AnswerAnnotation.class, backgroundSymbol());
-			document.add(wi);
-			i++;
-		}
-
-		// TODO get rid of objectbankwrapper
-		ObjectBankWrapper<IN> wrapper = new ObjectBankWrapper<IN>(flags, null,
-				knownLCWords);
-		wrapper.processDocument(document);
-
+		List<IN> document = copySentence(tokenSequence);
 		classifyWithGlobalInformation(document, doc, sentence);
 
 		return document;
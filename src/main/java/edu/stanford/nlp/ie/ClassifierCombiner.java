@@ -186,7 +186,7 @@ public class ClassifierCombiner<IN extends CoreMap & HasWord> extends AbstractSe
       throws FileNotFoundException {
     //try loading as a CRFClassifier
     try {
-       return ErasureUtils.uncheckedCast(CRFClassifier.getClassifier(path));
+       return CRFClassifier.getSharedClassifier(path, null);
     } catch (Exception e) {
       e.printStackTrace();
     }
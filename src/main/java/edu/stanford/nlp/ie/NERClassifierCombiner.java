@@ -105,7 +105,26 @@ public class NERClassifierCombiner extends ClassifierCombiner<CoreLabel> {
 
   @Override
   public List<CoreLabel> classifyWithGlobalInformation(List<CoreLabel> tokens, final CoreMap document, final CoreMap sentence) {
-    List<CoreLabel> output = super.classify(tokens);
+    return classifyWithNumericClassifiers(super.classify(tokens), document, sentence);
+  }
+
+  /**
+   * Runs only the base classifiers, not the numeric classifiers, over a
+   * sentence copied with {@link #copySentence}. Unlike the numeric
+   * classifiers, this may run on several sentences of a document at once.
+   */
+  public List<CoreLabel> classifyWithBaseClassifiers(List<CoreLabel> tokens) {
+    return super.classify(tokens);
+  }
+
+  /**
+   * Completes the classification of a sentence from the output of
+   * {@link #classifyWithBaseClassifiers}: runs the numeric classifiers, if
+   * they are applied, and copies the answers to the NER field. SUTime keeps
+   * state in the document from one sentence to the next, so this must be
+   * called on a document's sentences one at a time, in order.
+   */
+  public List<CoreLabel> classifyWithNumericClassifiers(List<CoreLabel> output, final CoreMap document, final CoreMap sentence) {
     if (applyNumericClassifiers) {
       try {
         // recognizes additional MONEY, TIME, DATE, and NUMBER using a set of deterministic rules
@@ -116,7 +135,7 @@ public class NERClassifierCombiner extends ClassifierCombiner<CoreLabel> {
         recognizeNumberSequences(output, document, sentence);
       } catch (Exception e) {
         System.err.println("Ignored an exception in NumberSequenceClassifier: (result is that some numbers were not classified)");
-        System.err.println("Tokens: " + StringUtils.joinWords(tokens, " "));
+        System.err.println("Tokens: " + StringUtils.joinWords(output, " "));
         e.printStackTrace(System.err);
       }
 
@@ -129,11 +148,11 @@ public class NERClassifierCombiner extends ClassifierCombiner<CoreLabel> {
         QuantifiableEntityNormalizer.addNormalizedQuantitiesToEntities(output, false, useSUTime);
       } catch (Exception e) {
         System.err.println("Ignored an exception in QuantifiableEntityNormalizer: (result is that entities were not normalized)");
-        System.err.println("Tokens: " + StringUtils.joinWords(tokens, " "));
+        System.err.println("Tokens: " + StringUtils.joinWords(output, " "));
         e.printStackTrace(System.err);
       } catch(AssertionError e) {
         System.err.println("Ignored an assertion in QuantifiableEntityNormalizer: (result is that entities were not normalized)");
-        System.err.println("Tokens: " + StringUtils.joinWords(tokens, " "));
+        System.err.println("Tokens: " + StringUtils.joinWords(output, " "));
         e.printStackTrace(System.err);
       }
     } else {
@@ -164,6 +164,14 @@ public class CRFClassifier<IN extends CoreMap> extends AbstractSequenceClassifie
   // Label dictionary for fast decoding
   LabelDictionary labelDictionary;
 
+  /** Per thread storage reused across test time calls; see {@link #classifyBatch}. */
+  private final ThreadLocal<TestScratch> testScratch = new ThreadLocal<TestScratch>();
+  /**
+   * The cliques collected at each window position by {@link #documentToDataAndLabelsDirect}.
+   * Built on first use, once windowSize is known; volatile as threads may build it concurrently.
+   */
+  private volatile List<List<Clique>> directCliques; // = null;
+
   // List selftraindatums = new ArrayList();
 
   protected CRFClassifier() {
@@ -423,6 +431,9 @@ public class CRFClassifier<IN extends CoreMap> extends AbstractSequenceClassifie
    *         the third element is a double[][][] representing the feature values (optionally null)
    */
   public Triple<int[][][], int[], double[][][]> documentToDataAndLabels(List<IN> document) {
+    if (flags.directFeatureIds && ! flags.useEmbedding && flags.printFeatures == null && canCollectFeatureIds()) {
+      return documentToDataAndLabelsDirect(document);
+    }
     int docSize = document.size();
     // first index is position in the document also the index of the
     // clique/factor table
@@ -488,6 +499,76 @@ public class CRFClassifier<IN extends CoreMap> extends AbstractSequenceClassifie
     return new Triple<int[][][], int[], double[][][]>(data, labels, featureVals);
   }
 
+  /**
+   * Whether {@link #documentToDataAndLabels} may go through
+   * {@link FeatureFactory#collectCliqueFeatures} instead of
+   * {@link #makeDatum}. Subclasses which change makeDatum should return false.
+   */
+  protected boolean canCollectFeatureIds() {
+    return true;
+  }
+
+  /**
+   * Same as {@link #documentToDataAndLabels}, but the feature factories hand
+   * their features to a {@link FeatureIndexCollector}, which resolves them
+   * to feature indices as they are generated. Factories that override
+   * {@link FeatureFactory#collectCliqueFeatures} then build no feature
+   * Strings at all when the feature index is a {@link PerfectHashIndex}.
+   */
+  private Triple<int[][][], int[], double[][][]> documentToDataAndLabelsDirect(List<IN> document) {
+    int docSize = document.size();
+    int[][][] data = new int[docSize][windowSize][];
+    double[][][] featureVals = new double[docSize][windowSize][];
+    int[] labels = new int[docSize];
+
+    if (flags.useReverse) {
+      Collections.reverse(document);
+    }
+
+    List<List<Clique>> cliques = directCliques;
+    if (cliques == null || cliques.size() != windowSize) {
+      cliques = new ArrayList<List<Clique>>(windowSize);
+      Collection<Clique> done = Generics.newHashSet();
+      for (int i = 0; i < windowSize; i++) {
+        List<Clique> windowCliques = FeatureFactory.getCliques(i, 0);
+        windowCliques.removeAll(done);
+        done.addAll(windowCliques);
+        cliques.add(windowCliques);
+      }
+      directCliques = cliques;
+    }
+
+    PaddedList<IN> pInfo = new PaddedList<IN>(document, pad);
+    TestScratch scratch = testScratch();
+    if (scratch.collector == null || scratch.collectorIndex != featureIndex) {
+      scratch.collector = new FeatureIndexCollector(featureIndex);
+      scratch.collectorIndex = featureIndex;
+    }
+    FeatureIndexCollector collector = scratch.collector;
+    for (int j = 0; j < docSize; j++) {
+      for (int k = 0; k < windowSize; k++) {
+        collector.clear();
+        for (Clique c : cliques.get(k)) {
+          for (FeatureFactory<IN> featureFactory : featureFactories) {
+            collector.startGroup();
+            featureFactory.collectCliqueFeatures(pInfo, j, c, collector);
+            collector.endGroup();
+          }
+        }
+        data[j][k] = collector.toArray();
+      }
+
+      IN wi = document.get(j);
+      labels[j] = classIndex.indexOf(wi.get(CoreAnnotations.AnswerAnnotation.class));
+    }
+
+    if (flags.useReverse) {
+      Collections.reverse(document);
+    }
+
+    return new Triple<int[][][], int[], double[][][]>(data, labels, featureVals);
+  }
+
   private int[][][] transformDocData(int[][][] docData) {
     int[][][] transData = new int[docData.length][][];
     for (int i = 0; i < docData.length; i++) {
@@ -1134,6 +1215,88 @@ public class CRFClassifier<IN extends CoreMap> extends AbstractSequenceClassifie
     }
   }
 
+  /**
+   * Classifies a batch of documents in place, as {@link #classify(List)}
+   * does for each of them. For Viterbi or beam inference the documents are
+   * processed from shortest to longest, decoding them in per thread
+   * scratch tables (clique trees, or {@link FirstOrderViterbi}'s buffers)
+   * that grow to the longest document and are then reused, so that
+   * workloads of many short documents (queries, titles) do not pay for
+   * allocating these tables on every call. Each document still goes through
+   * {@link #classify(List)}, so subclasses overriding it apply as usual.
+   * Several threads may classify batches with the same classifier.
+   *
+   * @param documents The documents to classify. They are modified.
+   * @return The same list of documents, in the original order
+   */
+  public List<List<IN>> classifyBatch(List<List<IN>> documents) {
+    if (flags.doGibbs || ! flags.crfType.equalsIgnoreCase("maxent")) {
+      for (List<IN> document : documents) {
+        classify(document);
+      }
+      return documents;
+    }
+
+    final int[] lengths = new int[documents.size()];
+    Integer[] order = new Integer[documents.size()];
+    for (int i = 0; i < order.length; i++) {
+      lengths[i] = documents.get(i).size();
+      order[i] = i;
+    }
+    Arrays.sort(order, new Comparator<Integer>() {
+      @Override
+      public int compare(Integer a, Integer b) {
+        return lengths[a] < lengths[b] ? -1 : (lengths[a] == lengths[b] ? 0 : 1);
+      }
+    });
+
+    if (order.length > 0) {
+      cliqueTreeScratch().ensureCapacity(lengths[order[order.length - 1]]);
+    }
+    // through classify(), so that subclasses which change it (as
+    // CRFBiasedClassifier does) classify the same way as one at a time
+    for (int i : order) {
+      classify(documents.get(i));
+    }
+    return documents;
+  }
+
+  /**
+   * Like {@link #getSequenceModel(List)}, but builds the clique tree in this
+   * thread's scratch tables. The model is only valid until the next call.
+   */
+  private SequenceModel getScratchSequenceModel(List<IN> document) {
+    Triple<int[][][], int[], double[][][]> p = documentToDataAndLabels(document);
+    CRFCliqueTree<String> cliqueTree = CRFCliqueTree.getCalibratedCliqueTree(p.first(), cliqueTreeScratch(),
+        classIndex, flags.backgroundSymbol, getCliquePotentialFunctionForTest(), p.third());
+    return labelDictionary == null ? new TestSequenceModel(cliqueTree) :
+      new TestSequenceModel(cliqueTree, labelDictionary, document);
+  }
+
+  private static class TestScratch {
+    CliqueTreeScratch cliqueTrees;
+    FirstOrderViterbi viterbi;
+    FeatureIndexCollector collector;
+    Index<String> collectorIndex;
+  }
+
+  private TestScratch testScratch() {
+    TestScratch scratch = testScratch.get();
+    if (scratch == null) {
+      scratch = new TestScratch();
+      testScratch.set(scratch);
+    }
+    return scratch;
+  }
+
+  private CliqueTreeScratch cliqueTreeScratch() {
+    TestScratch scratch = testScratch();
+    if (scratch.cliqueTrees == null || ! scratch.cliqueTrees.fits(labelIndices, classIndex.size())) {
+      scratch.cliqueTrees = new CliqueTreeScratch(labelIndices, classIndex.size());
+    }
+    return scratch.cliqueTrees;
+  }
+
   /**
    * This method is supposed to be used by CRFClassifierEvaluator only, should not have global visibility.
    * The generic {@code classifyAndWriteAnswers} omits the second argument {@code documentDataAndLabels}.
@@ -1182,11 +1345,49 @@ public class CRFClassifier<IN extends CoreMap> extends AbstractSequenceClassifie
 
   protected CliquePotentialFunction getCliquePotentialFunctionForTest() {
     if (cliquePotentialFunction == null) {
-      cliquePotentialFunction = new LinearCliquePotentialFunction(weights);
+      cliquePotentialFunction = makeCliquePotentialFunctionForTest(flags.inferenceWeights);
     }
     return cliquePotentialFunction;
   }
 
+  /**
+   * Builds a linear clique potential function over the current weights,
+   * stored at the given precision: "double" (the weights matrix itself),
+   * "float", "int16" or "int8". The latter three copy the weights into a
+   * flat array; the integer ones quantize each (feature type, label) column
+   * with its own scale.
+   */
+  public CliquePotentialFunction makeCliquePotentialFunctionForTest(String precision) {
+    if (precision == null || precision.equalsIgnoreCase("double")) {
+      return new LinearCliquePotentialFunction(weights);
+    } else if (precision.equalsIgnoreCase("float")) {
+      return new FloatLinearCliquePotentialFunction(weights);
+    } else if (precision.equalsIgnoreCase("int16") || precision.equalsIgnoreCase("int8")) {
+      int[] featureTypes = new int[weights.length];
+      for (int i = 0; i < weights.length; i++) {
+        featureTypes[i] = getFeatureTypeIndex(i);
+      }
+      int bits = precision.equalsIgnoreCase("int16") ? 16 : 8;
+      return new QuantizedLinearCliquePotentialFunction(weights, featureTypes, labelIndices.size(), bits);
+    } else {
+      throw new IllegalArgumentException("Unknown inferenceWeights precision: " + precision);
+    }
+  }
+
+  /**
+   * Replaces the double weights matrix with the compact form selected by
+   * {@code flags.inferenceWeights}, so that only the compact copy stays on
+   * the heap. After this the classifier can still classify, but it can no
+   * longer be trained, combined or serialized.
+   */
+  public void compactWeightsForTest() {
+    if (weights == null || flags.inferenceWeights == null || flags.inferenceWeights.equalsIgnoreCase("double")) {
+      return;
+    }
+    cliquePotentialFunction = makeCliquePotentialFunctionForTest(flags.inferenceWeights);
+    weights = null;
+  }
+
   public void updateWeightsForTest(double[] x) {
     cliquePotentialFunction = cliquePotentialFunctionHelper.getCliquePotentialFunction(x);
   }
@@ -1203,8 +1404,11 @@ public class CRFClassifier<IN extends CoreMap> extends AbstractSequenceClassifie
     if (document.isEmpty()) {
       return document;
     }
+    if (canUseFirstOrderViterbi()) {
+      return classifyFirstOrderViterbi(document, documentToDataAndLabels(document));
+    }
 
-    SequenceModel model = getSequenceModel(document);
+    SequenceModel model = getScratchSequenceModel(document);
     return classifyMaxEnt(document, model);
   }
 
@@ -1212,6 +1416,9 @@ public class CRFClassifier<IN extends CoreMap> extends AbstractSequenceClassifie
     if (document.isEmpty()) {
       return document;
     }
+    if (canUseFirstOrderViterbi()) {
+      return classifyFirstOrderViterbi(document, documentDataAndLabels);
+    }
     SequenceModel model = getSequenceModel(documentDataAndLabels, document);
     return classifyMaxEnt(document, model);
   }
@@ -1235,13 +1442,48 @@ public class CRFClassifier<IN extends CoreMap> extends AbstractSequenceClassifie
     }
 
     int[] bestSequence = tagInference.bestSequence(model);
+    return setAnswers(document, bestSequence, windowSize - 1);
+  }
+
+  /**
+   * Whether Viterbi inference can go through {@link FirstOrderViterbi},
+   * which gives the same answers as {@link ExactBestSequenceFinder} for
+   * models whose cliques span at most two labels.
+   */
+  private boolean canUseFirstOrderViterbi() {
+    return (flags.inferenceType == null || flags.inferenceType.equalsIgnoreCase("Viterbi")) &&
+      windowSize == 2 && labelIndices.size() == 2;
+  }
+
+  private List<IN> classifyFirstOrderViterbi(List<IN> document, Triple<int[][][], int[], double[][][]> documentDataAndLabels) {
+    int[][] allowedClasses = null;
+    if (labelDictionary != null) {
+      // as in TestSequenceModel
+      allowedClasses = new int[document.size()][];
+      for (int i = 0; i < allowedClasses.length; i++) {
+        String observation = document.get(i).get(CoreAnnotations.TextAnnotation.class);
+        if (labelDictionary.isConstrained(observation)) {
+          allowedClasses[i] = labelDictionary.getConstrainedSet(observation);
+        }
+      }
+    }
+    TestScratch scratch = testScratch();
+    if (scratch.viterbi == null || ! scratch.viterbi.fits(labelIndices, classIndex.size())) {
+      scratch.viterbi = new FirstOrderViterbi(labelIndices, classIndex.size());
+    }
+    int[] bestSequence = scratch.viterbi.bestSequence(documentDataAndLabels.first(), documentDataAndLabels.third(),
+        getCliquePotentialFunctionForTest(), classIndex.indexOf(flags.backgroundSymbol), allowedClasses);
+    return setAnswers(document, bestSequence, 0);
+  }
 
+  /** Sets the answer of each token from <code>bestSequence</code>, which starts at <code>offset</code>. */
+  private List<IN> setAnswers(List<IN> document, int[] bestSequence, int offset) {
     if (flags.useReverse) {
       Collections.reverse(document);
     }
     for (int j = 0, docSize = document.size(); j < docSize; j++) {
       IN wi = document.get(j);
-      String guess = classIndex.get(bestSequence[j + windowSize - 1]);
+      String guess = classIndex.get(bestSequence[j + offset]);
       wi.set(CoreAnnotations.AnswerAnnotation.class, guess);
     }
     if (flags.useReverse) {
@@ -2639,12 +2881,252 @@ public class CRFClassifier<IN extends CoreMap> extends AbstractSequenceClassifie
       labelDictionary = (LabelDictionary) ois.readObject();
     }
 
+    if (flags.offHeapFeatureIndex && ! (featureIndex instanceof PerfectHashIndex)) {
+      featureIndex = PerfectHashIndex.build(featureIndex.objectsList());
+    }
+    compactWeightsForTest();
+
+    if (VERBOSE) {
+      System.err.println("windowSize=" + windowSize);
+      System.err.println("flags=\n" + flags);
+    }
+  }
+
+  /** Leading bytes of a classifier written by {@link #serializeBinaryClassifier(DataOutputStream)}: "CRFB". */
+  public static final int BINARY_MAGIC = 0x43524642;
+  public static final int BINARY_VERSION = 2;
+
+  /**
+   * Serialize the classifier in the compact binary format to the given path.
+   * If the path ends in .gz, the output is gzipped.
+   */
+  public void serializeBinaryClassifier(String serializePath) {
+    System.err.print("Serializing binary classifier to " + serializePath + "...");
+
+    DataOutputStream dos = null;
+    try {
+      dos = new DataOutputStream(new BufferedOutputStream(IOUtils.getFileOutputStream(serializePath)));
+      serializeBinaryClassifier(dos);
+      System.err.println("done.");
+
+    } catch (Exception e) {
+      System.err.println("Failed");
+      e.printStackTrace();
+    } finally {
+      IOUtils.closeIgnoringExceptions(dos);
+    }
+  }
+
+  /**
+   * Serialize the classifier in a compact, versioned binary format.
+   * <br>
+   * The large parts of the model (class and label indices, feature index,
+   * weights and known lowercase words) are written as primitive tables:
+   * strings are length-prefixed UTF-8, the feature index is a
+   * {@link PerfectHashIndex} and the weights are one flat block of
+   * doubles preceded by the row lengths. The small remaining objects (flags,
+   * feature factories, embeddings, label dictionary) are appended with Java
+   * serialization. {@link #loadClassifier(InputStream, Properties)} recognizes
+   * this format by its leading {@link #BINARY_MAGIC}.
+   */
+  public void serializeBinaryClassifier(DataOutputStream dos) {
+    try {
+      dos.writeInt(BINARY_MAGIC);
+      dos.writeInt(BINARY_VERSION);
+      dos.writeInt(windowSize);
+
+      writeStrings(dos, classIndex.objectsList());
+
+      dos.writeInt(labelIndices.size());
+      for (Index<CRFLabel> labelIndex : labelIndices) {
+        dos.writeInt(labelIndex.size());
+        for (CRFLabel label : labelIndex) {
+          int[] l = label.getLabel();
+          dos.writeInt(l.length);
+          for (int c : l) {
+            dos.writeInt(c);
+          }
+        }
+      }
+
+      PerfectHashIndex features = (featureIndex instanceof PerfectHashIndex) ?
+          (PerfectHashIndex) featureIndex : PerfectHashIndex.build(featureIndex.objectsList());
+      features.save(dos);
+
+      dos.writeInt(weights.length);
+      for (double[] row : weights) {
+        dos.writeInt(row.length);
+      }
+      byte[] bytes = new byte[0];
+      for (double[] row : weights) {
+        if (bytes.length != row.length * 8) {
+          bytes = new byte[row.length * 8];
+        }
+        java.nio.ByteBuffer.wrap(bytes).asDoubleBuffer().put(row);
+        dos.write(bytes);
+      }
+
+      writeStrings(dos, knownLCWords == null ? Collections.<String>emptySet() : knownLCWords);
+
+      ObjectOutputStream oos = new ObjectOutputStream(dos);
+      oos.writeObject(flags);
+      if (flags.useEmbedding)
+        oos.writeObject(embeddings);
+      oos.writeObject(featureFactories);
+      oos.writeObject(labelDictionary);
+      oos.flush();
+    } catch (IOException e) {
+      throw new RuntimeIOException(e);
+    }
+  }
+
+  /**
+   * Loads a classifier from the given InputStream, which may hold either the
+   * Java serialized form or the binary form written by
+   * {@link #serializeBinaryClassifier(DataOutputStream)}.
+   */
+  @Override
+  public void loadClassifier(InputStream in, Properties props) throws ClassCastException, IOException,
+      ClassNotFoundException {
+    if ( ! in.markSupported()) {
+      in = new BufferedInputStream(in);
+    }
+    in.mark(4);
+    int magic = 0;
+    for (int i = 0; i < 4; i++) {
+      int b = in.read();
+      if (b < 0) {
+        break;
+      }
+      magic = (magic << 8) | b;
+    }
+    in.reset();
+    if (magic == BINARY_MAGIC) {
+      loadBinaryClassifier(new DataInputStream(in), props);
+    } else {
+      super.loadClassifier(in, props);
+    }
+  }
+
+  /**
+   * Loads a classifier written by {@link #serializeBinaryClassifier(DataOutputStream)}.
+   * If props is non-null then any properties it specifies override those in
+   * the serialized file, as in {@link #loadClassifier(ObjectInputStream, Properties)}.
+   * <p>
+   * <i>Note:</i> This method does not close the DataInputStream.
+   */
+  @SuppressWarnings( { "unchecked" })
+  public void loadBinaryClassifier(DataInputStream dis, Properties props) throws ClassCastException, IOException,
+      ClassNotFoundException {
+    if (dis.readInt() != BINARY_MAGIC) {
+      throw new IOException("Not a binary CRFClassifier model");
+    }
+    int version = dis.readInt();
+    if (version < 1 || version > BINARY_VERSION) {
+      throw new IOException("Unsupported binary CRFClassifier version " + version);
+    }
+    int window = dis.readInt();
+
+    byte[] buffer = new byte[256];
+    List<String> classes = readStrings(dis, buffer);
+    classIndex = new HashIndex<String>(classes);
+
+    int numLabelIndices = dis.readInt();
+    labelIndices = new ArrayList<Index<CRFLabel>>(numLabelIndices);
+    for (int i = 0; i < numLabelIndices; i++) {
+      int size = dis.readInt();
+      Index<CRFLabel> labelIndex = new HashIndex<CRFLabel>(size);
+      for (int j = 0; j < size; j++) {
+        int[] l = new int[dis.readInt()];
+        for (int k = 0; k < l.length; k++) {
+          l[k] = dis.readInt();
+        }
+        labelIndex.add(new CRFLabel(l));
+      }
+      labelIndices.add(labelIndex);
+    }
+
+    PerfectHashIndex features;
+    if (version == 1) {
+      features = PerfectHashIndex.build(readStrings(dis, buffer));
+    } else {
+      features = PerfectHashIndex.load(dis);
+    }
+
+    double[][] w = new double[dis.readInt()][];
+    for (int i = 0; i < w.length; i++) {
+      w[i] = new double[dis.readInt()];
+    }
+    byte[] bytes = new byte[0];
+    for (double[] row : w) {
+      if (bytes.length != row.length * 8) {
+        bytes = new byte[row.length * 8];
+      }
+      dis.readFully(bytes);
+      java.nio.ByteBuffer.wrap(bytes).asDoubleBuffer().get(row);
+    }
+
+    List<String> lcWords = readStrings(dis, buffer);
+
+    ObjectInputStream ois = new ObjectInputStream(dis);
+    flags = (SeqClassifierFlags) ois.readObject();
+    if (flags.useEmbedding) {
+      embeddings = (Map<String, double[]>) ois.readObject();
+    }
+    featureFactories = (List<FeatureFactory<IN>>) ois.readObject();
+
+    if (props != null) {
+      flags.setProperties(props, false);
+    }
+    reinit();
+
+    if (flags.offHeapFeatureIndex) {
+      featureIndex = features;
+    } else {
+      featureIndex = new HashIndex<String>(features.size());
+      featureIndex.addAll(features.objectsList());
+    }
+    features = null;
+
+    windowSize = window;
+    weights = w;
+
+    knownLCWords = Collections.newSetFromMap(new java.util.concurrent.ConcurrentHashMap<String, Boolean>());
+    knownLCWords.addAll(lcWords);
+
+    labelDictionary = (LabelDictionary) ois.readObject();
+
+    compactWeightsForTest();
+
     if (VERBOSE) {
       System.err.println("windowSize=" + windowSize);
       System.err.println("flags=\n" + flags);
     }
   }
 
+  private static void writeStrings(DataOutputStream dos, Collection<String> strings) throws IOException {
+    dos.writeInt(strings.size());
+    for (String s : strings) {
+      byte[] b = s.getBytes("UTF-8");
+      dos.writeInt(b.length);
+      dos.write(b);
+    }
+  }
+
+  private static List<String> readStrings(DataInputStream dis, byte[] buffer) throws IOException {
+    int size = dis.readInt();
+    List<String> strings = new ArrayList<String>(size);
+    for (int i = 0; i < size; i++) {
+      int len = dis.readInt();
+      if (len > buffer.length) {
+        buffer = new byte[Math.max(len, buffer.length * 2)];
+      }
+      dis.readFully(buffer, 0, len);
+      strings.add(new String(buffer, 0, len, "UTF-8"));
+    }
+    return strings;
+  }
+
   /**
    * This is used to load the default supplied classifier stored within the jar
    * file. THIS FUNCTION WILL ONLY WORK IF THE CODE WAS LOADED FROM A JAR FILE
@@ -2859,6 +3341,22 @@ public class CRFClassifier<IN extends CoreMap> extends AbstractSequenceClassifie
     return crf;
   }
 
+  /**
+   * Returns the classifier loaded from <code>loadPath</code> with
+   * <code>props</code> (which may be null), shared through the
+   * {@link ModelRegistry} with every other caller asking for the same path
+   * and properties. The classifier is loaded on first use, stays cached
+   * until {@link ModelRegistry#clear}, and must not be modified.
+   */
+  public static <INN extends CoreMap> CRFClassifier<INN> getSharedClassifier(final String loadPath, final Properties props) {
+    return ModelRegistry.get(CRFClassifier.class, loadPath, props, new ModelRegistry.Loader<CRFClassifier<INN>>() {
+      @Override
+      public CRFClassifier<INN> load() throws Exception {
+        return ErasureUtils.uncheckedCast(getClassifier(loadPath, props));
+      }
+    });
+  }
+
   private static CRFClassifier<CoreLabel> chooseCRFClassifier(SeqClassifierFlags flags) {
     CRFClassifier<CoreLabel> crf; // initialized in if/else
     if (flags.useFloat) {
@@ -2958,6 +3456,10 @@ public class CRFClassifier<IN extends CoreMap> extends AbstractSequenceClassifie
       crf.serializeTextClassifier(serializeToText);
     }
 
+    if (crf.flags.serializeToBinary != null) {
+      crf.serializeBinaryClassifier(crf.flags.serializeToBinary);
+    }
+
     if (testFile != null) {
       DocumentReaderAndWriter<CoreLabel> readerAndWriter = crf.defaultReaderAndWriter();
       if (crf.flags.searchGraphPrefix != null) {
@@ -581,6 +581,39 @@ public class CRFCliqueTree<E> implements SequenceModel, SequenceListener {
     return new CRFCliqueTree<E>(factorTables, classIndex, backgroundSymbol);
   }
 
+  /**
+   * Same as {@link #getCalibratedCliqueTree(int[][][], List, int, Index, Object, CliquePotentialFunction, double[][][])},
+   * but fills the factor tables held by <code>scratch</code> instead of allocating new ones.
+   * The returned tree shares those tables, so it is only valid until <code>scratch</code> is used again.
+   */
+  static <E> CRFCliqueTree<E> getCalibratedCliqueTree(int[][][] data, CliqueTreeScratch scratch, Index<E> classIndex,
+      E backgroundSymbol, CliquePotentialFunction cliquePotentialFunc, double[][][] featureVals) {
+    scratch.ensureCapacity(data.length);
+    FactorTable[] factorTables = Arrays.copyOf(scratch.factorTables, data.length);
+    FactorTable[] messages = scratch.messages;
+
+    for (int i = 0; i < data.length; i++) {
+      double[][] featureValByCliqueSize = null;
+      if (featureVals != null)
+        featureValByCliqueSize = featureVals[i];
+      fillFactorTable(factorTables[i], scratch, data[i], cliquePotentialFunc, featureValByCliqueSize, i);
+
+      if (i > 0) {
+        factorTables[i - 1].sumOutFront(messages[i - 1]);
+        factorTables[i].multiplyInFront(messages[i - 1]);
+      }
+    }
+
+    FactorTable summedOut = scratch.summedOut;
+    for (int i = factorTables.length - 2; i >= 0; i--) {
+      factorTables[i + 1].sumOutEnd(summedOut);
+      summedOut.divideBy(messages[i]);
+      factorTables[i].multiplyInEnd(summedOut);
+    }
+
+    return new CRFCliqueTree<E>(factorTables, classIndex, backgroundSymbol);
+  }
+
   /**
    * This function assumes a LinearCliquePotentialFunction is used for wrapping the weights
    * @return a new CRFCliqueTree for the weights on the data
@@ -693,6 +726,29 @@ public class CRFCliqueTree<E> implements SequenceModel, SequenceListener {
     return factorTable;
   }
 
+  /** Same as {@link #getFactorTable(int[][], List, int, CliquePotentialFunction, double[][], int)}, but fills <code>target</code>. */
+  private static void fillFactorTable(FactorTable target, CliqueTreeScratch scratch, int[][] data,
+      CliquePotentialFunction cliquePotentialFunc, double[][] featureValByCliqueSize, int posInSent) {
+    FactorTable factorTable = null;
+
+    for (int j = 0, sz = scratch.labelTableIndices.length; j < sz; j++) {
+      FactorTable ft = (j == sz - 1) ? target : scratch.cliqueTables[j];
+      ft.clear();
+      double[] featureVal = null;
+      if (featureValByCliqueSize != null)
+        featureVal = featureValByCliqueSize[j];
+
+      int[] labelTableIndex = scratch.labelTableIndices[j];
+      for (int k = 0; k < labelTableIndex.length; k++) {
+        ft.setValue(labelTableIndex[k], cliquePotentialFunc.computeCliquePotential(j+1, k, data[j], featureVal, posInSent));
+      }
+      if (j > 0) {
+        ft.multiplyInEnd(factorTable);
+      }
+      factorTable = ft;
+    }
+  }
+
 
   // SEQUENCE MODEL METHODS
 
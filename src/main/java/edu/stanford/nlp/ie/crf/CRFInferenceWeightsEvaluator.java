@@ -0,0 +1,106 @@
+package edu.stanford.nlp.ie.crf;
+
+import edu.stanford.nlp.ling.CoreAnnotations;
+import edu.stanford.nlp.ling.CoreLabel;
+import edu.stanford.nlp.util.StringUtils;
+import edu.stanford.nlp.util.Timing;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * Compares a CRF classifier run with its full double weights against the
+ * same classifier run with compact (float or quantized) inference weights.
+ * Reports the agreement between the two labelings, the accuracy of each
+ * against the gold answers, the time taken and the size of the weights.
+ * <br>
+ * Usage: CRFInferenceWeightsEvaluator -loadClassifier model -testFile file -inferenceWeights float|int16|int8
+ */
+public class CRFInferenceWeightsEvaluator {
+
+  private CRFInferenceWeightsEvaluator() {} // static main method only
+
+  private static List<List<String>> classify(CRFClassifier<CoreLabel> crf, List<List<CoreLabel>> docs) {
+    List<List<String>> answers = new ArrayList<List<String>>(docs.size());
+    for (List<CoreLabel> doc : docs) {
+      crf.classify(doc);
+      List<String> docAnswers = new ArrayList<String>(doc.size());
+      for (CoreLabel token : doc) {
+        docAnswers.add(token.get(CoreAnnotations.AnswerAnnotation.class));
+      }
+      answers.add(docAnswers);
+    }
+    return answers;
+  }
+
+  private static int agreement(List<List<String>> a, List<List<String>> b) {
+    int same = 0;
+    for (int i = 0; i < a.size(); i++) {
+      List<String> x = a.get(i);
+      List<String> y = b.get(i);
+      for (int j = 0; j < x.size(); j++) {
+        if (x.get(j) != null && x.get(j).equals(y.get(j))) {
+          same++;
+        }
+      }
+    }
+    return same;
+  }
+
+  private static int bytesPerWeight(String precision) {
+    if (precision.equalsIgnoreCase("float")) return 4;
+    if (precision.equalsIgnoreCase("int16")) return 2;
+    if (precision.equalsIgnoreCase("int8")) return 1;
+    return 8;
+  }
+
+  public static void main(String[] args) throws Exception {
+    StringUtils.printErrInvocationString("CRFInferenceWeightsEvaluator", args);
+    Properties props = StringUtils.argsToProperties(args);
+    String precision = props.getProperty("inferenceWeights");
+    if (precision == null || props.getProperty("testFile") == null || props.getProperty("loadClassifier") == null) {
+      System.err.println("Usage: CRFInferenceWeightsEvaluator -loadClassifier model -testFile file -inferenceWeights float|int16|int8");
+      System.exit(-1);
+    }
+    // keep the double weights around so that both variants can be run
+    props.remove("inferenceWeights");
+
+    CRFClassifier<CoreLabel> crf = new CRFClassifier<CoreLabel>(props);
+    crf.loadClassifierNoExceptions(props.getProperty("loadClassifier"), props);
+
+    List<List<CoreLabel>> docs = new ArrayList<List<CoreLabel>>();
+    for (List<CoreLabel> doc : crf.makeObjectBankFromFile(crf.flags.testFile, crf.makeReaderAndWriter())) {
+      docs.add(doc);
+    }
+    List<List<String>> gold = new ArrayList<List<String>>();
+    int numTokens = 0;
+    for (List<CoreLabel> doc : docs) {
+      List<String> docGold = new ArrayList<String>(doc.size());
+      for (CoreLabel token : doc) {
+        docGold.add(token.get(CoreAnnotations.AnswerAnnotation.class));
+      }
+      gold.add(docGold);
+      numTokens += doc.size();
+    }
+
+    Timing timing = new Timing();
+    crf.cliquePotentialFunction = crf.makeCliquePotentialFunctionForTest("double");
+    List<List<String>> full = classify(crf, docs);
+    long fullTime = timing.report();
+
+    timing.start();
+    crf.cliquePotentialFunction = crf.makeCliquePotentialFunctionForTest(precision);
+    List<List<String>> compact = classify(crf, docs);
+    long compactTime = timing.report();
+
+    int numWeights = crf.getNumWeights();
+    System.err.printf("Tokens: %d%n", numTokens);
+    System.err.printf("double: accuracy %.4f, %d ms, weights %d bytes%n",
+        agreement(full, gold) / (double) numTokens, fullTime, (long) numWeights * 8);
+    System.err.printf("%s: accuracy %.4f, %d ms, weights %d bytes%n", precision,
+        agreement(compact, gold) / (double) numTokens, compactTime, (long) numWeights * bytesPerWeight(precision));
+    System.err.printf("Agreement with double weights: %.4f%n", agreement(full, compact) / (double) numTokens);
+  }
+
+}
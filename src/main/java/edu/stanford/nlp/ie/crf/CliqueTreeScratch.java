@@ -0,0 +1,89 @@
+package edu.stanford.nlp.ie.crf;
+
+import java.util.List;
+
+import edu.stanford.nlp.util.Index;
+
+/**
+ * Reusable storage for building calibrated {@link CRFCliqueTree}s at test
+ * time: the per position factor tables, the forward messages, and the
+ * smaller clique tables that are combined into each factor table. The
+ * tables only grow, so a scratch that has seen the longest document of a
+ * batch builds every other tree without allocating factor tables.
+ * <p>
+ * A tree built from a scratch shares its tables, so it is only valid until
+ * the next tree is built from the same scratch. Not thread-safe.
+ *
+ * @see CRFCliqueTree#getCalibratedCliqueTree(int[][][], CliqueTreeScratch, Index, Object, CliquePotentialFunction, double[][][])
+ */
+class CliqueTreeScratch {
+
+  final List<Index<CRFLabel>> labelIndices;
+  final int numClasses;
+  /** For each clique size - 1 and label index k, the position of that labeling in the clique's table. */
+  final int[][] labelTableIndices;
+  /** Tables for the cliques smaller than the full window, reused at every position. */
+  final FactorTable[] cliqueTables;
+  final FactorTable summedOut;
+
+  FactorTable[] factorTables = new FactorTable[0];
+  FactorTable[] messages = new FactorTable[0];
+
+  CliqueTreeScratch(List<Index<CRFLabel>> labelIndices, int numClasses) {
+    this.labelIndices = labelIndices;
+    this.numClasses = numClasses;
+    int window = labelIndices.size();
+    labelTableIndices = labelTableIndices(labelIndices, numClasses);
+    cliqueTables = new FactorTable[window - 1];
+    for (int j = 0; j < window - 1; j++) {
+      cliqueTables[j] = new FactorTable(numClasses, j + 1);
+    }
+    summedOut = new FactorTable(numClasses, window - 1);
+  }
+
+  /**
+   * For each clique size - 1 and label index k, the position of that
+   * labeling in a {@link FactorTable} of the clique's size.
+   */
+  static int[][] labelTableIndices(List<Index<CRFLabel>> labelIndices, int numClasses) {
+    int[][] labelTableIndices = new int[labelIndices.size()][];
+    for (int j = 0; j < labelTableIndices.length; j++) {
+      Index<CRFLabel> labelIndex = labelIndices.get(j);
+      labelTableIndices[j] = new int[labelIndex.size()];
+      for (int k = 0; k < labelTableIndices[j].length; k++) {
+        int index = 0;
+        for (int l : labelIndex.get(k).getLabel()) {
+          index = index * numClasses + l;
+        }
+        labelTableIndices[j][k] = index;
+      }
+    }
+    return labelTableIndices;
+  }
+
+  /** Whether this scratch was made for the given model. */
+  boolean fits(List<Index<CRFLabel>> labelIndices, int numClasses) {
+    return this.labelIndices == labelIndices && this.numClasses == numClasses;
+  }
+
+  /** Makes room for documents of up to <code>length</code> positions. */
+  void ensureCapacity(int length) {
+    if (factorTables.length >= length) {
+      return;
+    }
+    int window = labelIndices.size();
+    FactorTable[] newTables = new FactorTable[length];
+    System.arraycopy(factorTables, 0, newTables, 0, factorTables.length);
+    for (int i = factorTables.length; i < length; i++) {
+      newTables[i] = new FactorTable(numClasses, window);
+    }
+    FactorTable[] newMessages = new FactorTable[length];
+    System.arraycopy(messages, 0, newMessages, 0, messages.length);
+    for (int i = messages.length; i < length; i++) {
+      newMessages[i] = new FactorTable(numClasses, window - 1);
+    }
+    factorTables = newTables;
+    messages = newMessages;
+  }
+
+}
@@ -459,8 +459,19 @@ public class FactorTable {
     }
   }
 
+  /** Resets every entry to log zero, so that the table can be filled again. */
+  void clear() {
+    Arrays.fill(table, Double.NEGATIVE_INFINITY);
+  }
+
   public FactorTable sumOutEnd() {
     FactorTable ft = new FactorTable(numClasses, windowSize - 1);
+    sumOutEnd(ft);
+    return ft;
+  }
+
+  /** Same as {@link #sumOutEnd()}, but overwrites the given table of window size one smaller. */
+  void sumOutEnd(FactorTable ft) {
     for (int i = 0, sz = ft.size(); i < sz; i++) {
       ft.table[i] = ArrayMath.logSum(table, i * numClasses, (i+1) * numClasses);
     }
@@ -469,16 +480,20 @@ public class FactorTable {
       ft.logIncrementValue(i / numClasses, table[i]);
     }
     */
-    return ft;
   }
 
   public FactorTable sumOutFront() {
     FactorTable ft = new FactorTable(numClasses, windowSize - 1);
+    sumOutFront(ft);
+    return ft;
+  }
+
+  /** Same as {@link #sumOutFront()}, but overwrites the given table of window size one smaller. */
+  void sumOutFront(FactorTable ft) {
     int stride = ft.size();
     for (int i = 0; i < stride; i++) {
       ft.setValue(i, ArrayMath.logSum(table, i, table.length, stride));
     }
-    return ft;
   }
 
   public void divideBy(FactorTable other) {
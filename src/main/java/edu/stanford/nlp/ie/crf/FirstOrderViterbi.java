@@ -0,0 +1,156 @@
+package edu.stanford.nlp.ie.crf;
+
+import java.util.Arrays;
+import java.util.List;
+
+import edu.stanford.nlp.util.Index;
+
+/**
+ * Exact Viterbi decoding for CRFs with cliques of at most two labels
+ * (windowSize 2), as used by the segmenter and most NER models.
+ * <p>
+ * The node and edge potentials of a document are computed once into a flat
+ * array indexed by position, previous class and class, and the best path is
+ * found with a primitive loop over it. The CRF's conditional probability of
+ * a sequence is its summed potentials minus a constant, so this returns the
+ * same sequence as running {@link edu.stanford.nlp.sequences.ExactBestSequenceFinder}
+ * over a {@link TestSequenceModel}, without calibrating a clique tree.
+ * As there, the label before the first position is the background class.
+ * <p>
+ * Buffers grow to the longest document decoded and are then reused.
+ * Not thread-safe.
+ */
+class FirstOrderViterbi {
+
+  private final List<Index<CRFLabel>> labelIndices;
+  private final int numClasses;
+  /** Class of each labeling of the one label clique. */
+  private final int[] nodeLabels;
+  /** previous class * numClasses + class of each labeling of the two label clique. */
+  private final int[] edgeLabels;
+
+  private final double[] node;
+  /** potentials[(i * numClasses + previous) * numClasses + class] */
+  private double[] potentials = new double[0];
+  private int[] backPointers = new int[0];
+  private double[] score;
+  private double[] nextScore;
+  private final boolean[] allowed;
+
+  FirstOrderViterbi(List<Index<CRFLabel>> labelIndices, int numClasses) {
+    if (labelIndices.size() != 2) {
+      throw new IllegalArgumentException("FirstOrderViterbi needs cliques of two labels, not " + labelIndices.size());
+    }
+    this.labelIndices = labelIndices;
+    this.numClasses = numClasses;
+    int[][] labelTableIndices = CliqueTreeScratch.labelTableIndices(labelIndices, numClasses);
+    nodeLabels = labelTableIndices[0];
+    edgeLabels = labelTableIndices[1];
+    node = new double[numClasses];
+    score = new double[numClasses];
+    nextScore = new double[numClasses];
+    allowed = new boolean[numClasses];
+  }
+
+  /** Whether this decoder was made for the given model. */
+  boolean fits(List<Index<CRFLabel>> labelIndices, int numClasses) {
+    return this.labelIndices == labelIndices && this.numClasses == numClasses;
+  }
+
+  /**
+   * Returns the best class at each position of a document.
+   *
+   * @param data The document's features, as from {@link CRFClassifier#documentToDataAndLabels}
+   * @param featureVals The document's feature values, or null
+   * @param cliquePotentialFunc Scores each clique labeling
+   * @param startClass The class assumed before the first position
+   * @param allowedClasses The classes allowed at each position, or null if all are
+   */
+  int[] bestSequence(int[][][] data, double[][][] featureVals, CliquePotentialFunction cliquePotentialFunc,
+                     int startClass, int[][] allowedClasses) {
+    int length = data.length;
+    int squared = numClasses * numClasses;
+    if (potentials.length < length * squared) {
+      potentials = new double[length * squared];
+      backPointers = new int[length * numClasses];
+    }
+
+    for (int i = 0; i < length; i++) {
+      double[][] featureValByCliqueSize = featureVals == null ? null : featureVals[i];
+      Arrays.fill(node, Double.NEGATIVE_INFINITY);
+      for (int k = 0; k < nodeLabels.length; k++) {
+        node[nodeLabels[k]] = cliquePotentialFunc.computeCliquePotential(1, k, data[i][0],
+            featureValByCliqueSize == null ? null : featureValByCliqueSize[0], i);
+      }
+      int offset = i * squared;
+      Arrays.fill(potentials, offset, offset + squared, Double.NEGATIVE_INFINITY);
+      for (int k = 0; k < edgeLabels.length; k++) {
+        potentials[offset + edgeLabels[k]] = cliquePotentialFunc.computeCliquePotential(2, k, data[i][1],
+            featureValByCliqueSize == null ? null : featureValByCliqueSize[1], i);
+      }
+      for (int j = offset, end = offset + squared; j < end; j += numClasses) {
+        for (int c = 0; c < numClasses; c++) {
+          potentials[j + c] += node[c];
+        }
+      }
+    }
+
+    // position 0 follows startClass only
+    int offset = startClass * numClasses;
+    for (int c = 0; c < numClasses; c++) {
+      score[c] = potentials[offset + c];
+    }
+    restrict(score, allowedClasses, 0);
+
+    for (int i = 1; i < length; i++) {
+      offset = i * squared;
+      int back = i * numClasses;
+      for (int c = 0; c < numClasses; c++) {
+        double best = Double.NEGATIVE_INFINITY;
+        int bestPrevious = 0;
+        for (int p = 0, j = offset + c; p < numClasses; p++, j += numClasses) {
+          double s = score[p] + potentials[j];
+          if (s > best) {
+            best = s;
+            bestPrevious = p;
+          }
+        }
+        nextScore[c] = best;
+        backPointers[back + c] = bestPrevious;
+      }
+      restrict(nextScore, allowedClasses, i);
+      double[] tmp = score;
+      score = nextScore;
+      nextScore = tmp;
+    }
+
+    int[] sequence = new int[length];
+    int bestClass = 0;
+    for (int c = 1; c < numClasses; c++) {
+      if (score[c] > score[bestClass]) {
+        bestClass = c;
+      }
+    }
+    sequence[length - 1] = bestClass;
+    for (int i = length - 1; i > 0; i--) {
+      sequence[i - 1] = backPointers[i * numClasses + sequence[i]];
+    }
+    return sequence;
+  }
+
+  private void restrict(double[] scores, int[][] allowedClasses, int position) {
+    if (allowedClasses == null || allowedClasses[position] == null) {
+      return;
+    }
+    Arrays.fill(allowed, false);
+    for (int c : allowedClasses[position]) {
+      allowed[c] = true;
+    }
+    for (int c = 0; c < numClasses; c++) {
+      if ( ! allowed[c]) {
+        scores[c] = Double.NEGATIVE_INFINITY;
+      }
+    }
+  }
+
+}
@@ -0,0 +1,49 @@
+package edu.stanford.nlp.ie.crf;
+
+/**
+ * A {@link LinearCliquePotentialFunction} that keeps the weights as a single
+ * flat float array, for inference only. Row {@code i} of the original
+ * {@code double[feature][label]} matrix starts at {@code offsets[i]}.
+ */
+public class FloatLinearCliquePotentialFunction implements CliquePotentialFunction {
+
+  final int[] offsets;
+  final float[] weights;
+
+  FloatLinearCliquePotentialFunction(double[][] weights) {
+    this.offsets = rowOffsets(weights);
+    this.weights = new float[offsets[weights.length]];
+    for (int i = 0; i < weights.length; i++) {
+      int off = offsets[i];
+      double[] row = weights[i];
+      for (int j = 0; j < row.length; j++) {
+        this.weights[off + j] = (float) row[j];
+      }
+    }
+  }
+
+  static int[] rowOffsets(double[][] weights) {
+    int[] offsets = new int[weights.length + 1];
+    for (int i = 0; i < weights.length; i++) {
+      offsets[i + 1] = offsets[i] + weights[i].length;
+    }
+    return offsets;
+  }
+
+  @Override
+  public double computeCliquePotential(int cliqueSize, int labelIndex,
+      int[] cliqueFeatures, double[] featureVal, int posInSent) {
+    double output = 0.0;
+    if (featureVal == null) {
+      for (int m = 0; m < cliqueFeatures.length; m++) {
+        output += weights[offsets[cliqueFeatures[m]] + labelIndex];
+      }
+    } else {
+      for (int m = 0; m < cliqueFeatures.length; m++) {
+        output += weights[offsets[cliqueFeatures[m]] + labelIndex] * featureVal[m];
+      }
+    }
+    return output;
+  }
+
+}
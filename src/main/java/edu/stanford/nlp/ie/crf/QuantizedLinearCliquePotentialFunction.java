@@ -0,0 +1,91 @@
+package edu.stanford.nlp.ie.crf;
+
+/**
+ * A {@link LinearCliquePotentialFunction} over weights quantized to 8 or 16
+ * bit integers, for inference only. Each (feature type, label) pair has its
+ * own scale, so the scale can be applied once per clique potential rather
+ * than once per feature.
+ */
+public class QuantizedLinearCliquePotentialFunction implements CliquePotentialFunction {
+
+  final int[] offsets;
+  final byte[] bytes;
+  final short[] shorts;
+  /** Indexed by [cliqueSize - 1][labelIndex] */
+  final double[][] scales;
+
+  /**
+   * @param weights The weights, indexed by [feature][label]
+   * @param featureTypes The feature type (clique size - 1) of each weights row
+   * @param numFeatureTypes The number of feature types
+   * @param bits 8 or 16
+   */
+  QuantizedLinearCliquePotentialFunction(double[][] weights, int[] featureTypes, int numFeatureTypes, int bits) {
+    if (bits != 8 && bits != 16) {
+      throw new IllegalArgumentException("Only 8 or 16 bit weights are supported: " + bits);
+    }
+    int max = (bits == 8) ? Byte.MAX_VALUE : Short.MAX_VALUE;
+
+    scales = new double[numFeatureTypes][];
+    for (int i = 0; i < weights.length; i++) {
+      double[] row = weights[i];
+      double[] scale = scales[featureTypes[i]];
+      if (scale == null) {
+        scale = scales[featureTypes[i]] = new double[row.length];
+      }
+      for (int j = 0; j < row.length; j++) {
+        scale[j] = Math.max(scale[j], Math.abs(row[j]));
+      }
+    }
+    for (double[] scale : scales) {
+      if (scale == null) continue;
+      for (int j = 0; j < scale.length; j++) {
+        scale[j] = (scale[j] == 0.0) ? 1.0 : scale[j] / max;
+      }
+    }
+
+    offsets = FloatLinearCliquePotentialFunction.rowOffsets(weights);
+    int size = offsets[weights.length];
+    bytes = (bits == 8) ? new byte[size] : null;
+    shorts = (bits == 16) ? new short[size] : null;
+    for (int i = 0; i < weights.length; i++) {
+      double[] row = weights[i];
+      double[] scale = scales[featureTypes[i]];
+      int off = offsets[i];
+      for (int j = 0; j < row.length; j++) {
+        long q = Math.round(row[j] / scale[j]);
+        if (bytes != null) {
+          bytes[off + j] = (byte) q;
+        } else {
+          shorts[off + j] = (short) q;
+        }
+      }
+    }
+  }
+
+  @Override
+  public double computeCliquePotential(int cliqueSize, int labelIndex,
+      int[] cliqueFeatures, double[] featureVal, int posInSent) {
+    double output = 0.0;
+    if (featureVal == null) {
+      long sum = 0;
+      if (bytes != null) {
+        for (int m = 0; m < cliqueFeatures.length; m++) {
+          sum += bytes[offsets[cliqueFeatures[m]] + labelIndex];
+        }
+      } else {
+        for (int m = 0; m < cliqueFeatures.length; m++) {
+          sum += shorts[offsets[cliqueFeatures[m]] + labelIndex];
+        }
+      }
+      output = sum;
+    } else {
+      for (int m = 0; m < cliqueFeatures.length; m++) {
+        int idx = offsets[cliqueFeatures[m]] + labelIndex;
+        output += ((bytes != null) ? bytes[idx] : shorts[idx]) * featureVal[m];
+      }
+    }
+    return output * scales[cliqueSize - 1][labelIndex];
+  }
+
+}
@@ -9,6 +9,7 @@ import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.Properties;
 
@@ -53,8 +54,10 @@ import edu.stanford.nlp.util.Generics;
  * already been tokenized.  So, for example, with our usual English tokenization, things like genitives
  * and commas at the end of words will be separated in the input and matched as a separate token.
  *
- * This class isn't implemented very efficiently, since every regex is evaluated at every token position.
- * So it can and does get quite slow if you have a lot of patterns in your NER rules.
+ * Entries whose regexes are all plain strings (the usual case for a list of entities) are compiled
+ * into a trie over tokens, so that all of them are looked for in one pass over the document,
+ * however many there are.  Only entries which really use regular expressions are evaluated at
+ * every token position, so it is those that can make this classifier slow.
  * {@code TokensRegex} is a more general framework to provide the functionality of this class.
  * But at present we still use this class.
  *
@@ -65,6 +68,12 @@ public class RegexNERSequenceClassifier extends AbstractSequenceClassifier<CoreL
 
   private final List<Entry> entries;
 
+  /** The entries whose regexes are all plain strings, by their words */
+  private final TrieNode trie = new TrieNode();
+
+  /** Positions in entries of the other entries, which have to be matched regex by regex */
+  private final int[] regexEntries;
+
   private final Set<String> myLabels;
 
   private final boolean ignoreCase;
@@ -113,6 +122,7 @@ public class RegexNERSequenceClassifier extends AbstractSequenceClassifier<CoreL
     } finally {
       IOUtils.closeIgnoringExceptions(rd);
     }
+    regexEntries = compile(entries, trie, ignoreCase);
 
     this.ignoreCase = ignoreCase;
     myLabels = Generics.newHashSet();
@@ -155,6 +165,7 @@ public class RegexNERSequenceClassifier extends AbstractSequenceClassifier<CoreL
     } catch (IOException e) {
       throw new RuntimeIOException("Couldn't read RegexNER from reader", e);
     }
+    regexEntries = compile(entries, trie, ignoreCase);
 
     this.ignoreCase = ignoreCase;
     myLabels = Generics.newHashSet();
@@ -206,6 +217,89 @@ public class RegexNERSequenceClassifier extends AbstractSequenceClassifier<CoreL
     }
   }
 
+  /** A node of the trie of plain string entries, reached by the words of the entries */
+  private static class TrieNode {
+    public Map<String, TrieNode> children; // = null;
+    public int[] entries; // = null; positions of the entries whose words end here
+  }
+
+  /** Characters which make a regex more than a plain string */
+  private static final Pattern REGEX_SYNTAX = Pattern.compile("[\\\\^$.|?*+()\\[\\]{}]");
+
+  private static boolean isPlainString(Pattern pattern) {
+    return (pattern.flags() & ~Pattern.CASE_INSENSITIVE) == 0 &&
+        ! REGEX_SYNTAX.matcher(pattern.pattern()).find();
+  }
+
+  /**
+   * The key of a word in the trie.  Patterns compiled with CASE_INSENSITIVE
+   * only fold the case of ASCII letters, so that is all this does.
+   */
+  private static String trieKey(String word, boolean ignoreCase) {
+    if ( ! ignoreCase || word == null) {
+      return word;
+    }
+    for (int i = 0, len = word.length(); i < len; i++) {
+      char ch = word.charAt(i);
+      if (ch >= 'A' && ch <= 'Z') {
+        char[] chars = word.toCharArray();
+        for (int j = i; j < len; j++) {
+          if (chars[j] >= 'A' && chars[j] <= 'Z') {
+            chars[j] += 'a' - 'A';
+          }
+        }
+        return new String(chars);
+      }
+    }
+    return word;
+  }
+
+  /**
+   * Puts the entries whose regexes are all plain strings into the trie, and
+   * returns the positions of the rest.
+   */
+  private static int[] compile(List<Entry> entries, TrieNode trie, boolean ignoreCase) {
+    List<Integer> regexEntries = new ArrayList<Integer>();
+    for (int rank = 0; rank < entries.size(); rank++) {
+      Entry entry = entries.get(rank);
+      boolean plain = true;
+      for (Pattern p : entry.regex) {
+        if ( ! isPlainString(p)) {
+          plain = false;
+          break;
+        }
+      }
+      if ( ! plain) {
+        regexEntries.add(rank);
+        continue;
+      }
+      TrieNode node = trie;
+      for (Pattern p : entry.regex) {
+        if (node.children == null) {
+          node.children = Generics.newHashMap();
+        }
+        String key = trieKey(p.pattern(), ignoreCase);
+        TrieNode child = node.children.get(key);
+        if (child == null) {
+          child = new TrieNode();
+          node.children.put(key, child);
+        }
+        node = child;
+      }
+      if (node.entries == null) {
+        node.entries = new int[] { rank };
+      } else {
+        node.entries = Arrays.copyOf(node.entries, node.entries.length + 1);
+        node.entries[node.entries.length - 1] = rank;
+      }
+    }
+    int[] result = new int[regexEntries.size()];
+    for (int i = 0; i < result.length; i++) {
+      result[i] = regexEntries.get(i);
+    }
+    return result;
+  }
+
   private boolean containsValidPos(List<CoreLabel> tokens, int start, int end) {
     if (validPosPattern == null) {
       return true;
@@ -224,30 +318,76 @@ public class RegexNERSequenceClassifier extends AbstractSequenceClassifier<CoreL
 
   @Override
   public List<CoreLabel> classify(List<CoreLabel> document) {
-    // This is pretty deathly slow. It loops over each entry, and then loops over each document token for it.
-    // We could gain by compiling into disjunctions patterns for the same class with the same priorities and restrictions?
-    for (Entry entry : entries) {
-      int start = 0; // the index of the token from which we begin our search each iteration
-      while (true) {
-        // only search the part of the document that we haven't yet considered
-        // System.err.println("REGEX FIND MATCH FOR " + entry.regex.toString());
-        start = findStartIndex(entry, document, start, myLabels, this.ignoreCase);
-        if (start < 0) break; // no match found
-
-        // make sure we annotate only valid POS tags
-        if (containsValidPos(document, start, start + entry.regex.size())) {
-          // annotate each matching token
-          for (int i = start; i < start + entry.regex.size(); i++) {
-            CoreLabel token = document.get(i);
-            token.set(CoreAnnotations.AnswerAnnotation.class, entry.type);
-          }
+    // Entries are applied in order, each from the start of the document to its end, and a match
+    // is labeled only if its tokens have no label yet.  Whether the words match doesn't depend on
+    // the labels, though, so we find all the matches of all the entries first, then go through
+    // them in that same order, entry by entry and left to right, to label them.
+    long[] matches = findMatches(document);
+    Arrays.sort(matches);
+    for (long match : matches) {
+      Entry entry = entries.get((int) (match >>> 32));
+      int start = (int) match;
+      int end = start + entry.regex.size();
+      // make sure we annotate only valid POS tags
+      if (canLabel(entry, document, start, end, myLabels) && containsValidPos(document, start, end)) {
+        // annotate each matching token
+        for (int i = start; i < end; i++) {
+          CoreLabel token = document.get(i);
+          token.set(CoreAnnotations.AnswerAnnotation.class, entry.type);
         }
-        start++;
       }
     }
     return document;
   }
 
+  /**
+   * Finds where the words of the document match an entry, looking up the plain string entries
+   * in the trie from each token and trying the others at each token.
+   *
+   * @return The matches, each as the entry's position in entries in the upper 32 bits and
+   *     the index of its first token in the lower ones
+   */
+  private long[] findMatches(List<CoreLabel> document) {
+    int size = document.size();
+    String[] keys = new String[size];
+    for (int i = 0; i < size; i++) {
+      keys[i] = trieKey(document.get(i).word(), ignoreCase);
+    }
+
+    long[] matches = new long[16];
+    int numMatches = 0;
+    for (int start = 0; start < size; start++) {
+      TrieNode node = trie;
+      for (int i = start; i < size && node.children != null; i++) {
+        node = node.children.get(keys[i]);
+        if (node == null) {
+          break;
+        }
+        if (node.entries != null) {
+          for (int rank : node.entries) {
+            if (numMatches == matches.length) {
+              matches = Arrays.copyOf(matches, 2 * numMatches);
+            }
+            matches[numMatches++] = ((long) rank << 32) | start;
+          }
+        }
+      }
+    }
+
+    for (int rank : regexEntries) {
+      Entry entry = entries.get(rank);
+      for (int start = 0, end = size - entry.regex.size(); start <= end; start++) {
+        if (matchesWords(entry, document, start, ignoreCase)) {
+          if (numMatches == matches.length) {
+            matches = Arrays.copyOf(matches, 2 * numMatches);
+          }
+          matches[numMatches++] = ((long) rank << 32) | start;
+        }
+      }
+    }
+    return Arrays.copyOf(matches, numMatches);
+  }
+
   /**
    *  Creates a combined list of Entries using the provided mapping file, and sorts them by
    *  first by priority, then the number of tokens in the regex.
@@ -302,46 +442,39 @@ public class RegexNERSequenceClassifier extends AbstractSequenceClassifier<CoreL
   }
 
   /**
-   * Checks if the entry's regex sequence is contained in the tokenized document, starting the search
-   * from index searchStart. Also requires that each token's current NER-type be overwritable,
-   * and that each token has not yet been Answer-annotated.
+   * Checks if the entry's regex sequence matches the words of the document from index start.
    *
-   * @param entry
-   * @param document
-   * @return on success, the index of the first token in the matching sequence, otherwise -1
+   * @return whether each regex matches the word of its token
    */
-  private static int findStartIndex(Entry entry, List<CoreLabel> document, int searchStart, Set<String> myLabels, boolean ignoreCase) {
+  private static boolean matchesWords(Entry entry, List<CoreLabel> document, int start, boolean ignoreCase) {
     List<Pattern> regex = entry.regex;
     int rSize = regex.size();
-    // System.err.println("REGEX FIND MATCH FOR " + regex.toString() + " length: " + rSize);
-
-    for (int start = searchStart, end = document.size() - regex.size(); start <= end; start++) {
-      boolean failed = false;
-      for (int i = 0; i < rSize; i++) {
-        Pattern pattern = regex.get(i);
-        String exact = entry.exact.get(i);
-        CoreLabel token = document.get(start + i);
-        String NERType = token.get(CoreAnnotations.NamedEntityTagAnnotation.class);
-        String currentType = token.get(CoreAnnotations.AnswerAnnotation.class);
-
-        if (
-            currentType != null ||
-            (exact != null && ! (ignoreCase ? exact.equalsIgnoreCase(token.word()) : exact.equals(token.word()))) ||
-            ! (entry.overwritableTypes.contains(NERType) || myLabels.contains(NERType))  ||
-            ! pattern.matcher(token.word()).matches()  // last, as this is likely the expensive operation
-            ) {
-          failed = true;
-          break;
-        }
+    for (int i = 0; i < rSize; i++) {
+      String exact = entry.exact.get(i);
+      String word = document.get(start + i).word();
+      if ((exact != null && ! (ignoreCase ? exact.equalsIgnoreCase(word) : exact.equals(word))) ||
+          ! regex.get(i).matcher(word).matches()) {
+        return false;
       }
-      if (! failed) {
-        // System.err.print("MATCHED REGEX:");
-        // for(int i = start; i < start + regex.size(); i ++) System.err.print(" " + document.get(i).word());
-        // System.err.println();
-        return start;
+    }
+    return true;
+  }
+
+  /**
+   * Checks that each token of a match has not yet been Answer-annotated, and that its current
+   * NER-type is overwritable.
+   */
+  private static boolean canLabel(Entry entry, List<CoreLabel> document, int start, int end, Set<String> myLabels) {
+    for (int i = start; i < end; i++) {
+      CoreLabel token = document.get(i);
+      String NERType = token.get(CoreAnnotations.NamedEntityTagAnnotation.class);
+      String currentType = token.get(CoreAnnotations.AnswerAnnotation.class);
+      if (currentType != null ||
+          ! (entry.overwritableTypes.contains(NERType) || myLabels.contains(NERType))) {
+        return false;
       }
     }
-    return -1;
+    return true;
   }
 
 
@@ -0,0 +1,660 @@
+package edu.stanford.nlp.ling.tokensregex;
+
+import edu.stanford.nlp.io.IOUtils;
+import edu.stanford.nlp.util.Generics;
+import edu.stanford.nlp.util.IntervalTree;
+import edu.stanford.nlp.util.StringUtils;
+import edu.stanford.nlp.util.Timing;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.util.*;
+import java.util.regex.Pattern;
+
+/**
+ * An immutable table of multi-word phrases, for phrase lists too big for a {@link PhraseTable}.
+ * It finds phrases in text the way a PhraseTable does, but is stored as a trie in a handful of
+ * int arrays: the words of the phrases are numbers in a pool of strings, each node's children
+ * are kept sorted by word so that they can be binary searched, and a node where a phrase ends
+ * holds the numbers of its text and tag.  A phrase table is made with a {@link Builder}, which
+ * sorts all the phrases and lays out the trie in one go.
+ * <p>
+ * A table can be saved to a file with {@link #save}, and {@link #load} maps such a file into
+ * memory rather than reading it, so that a large table is ready at once and shared by all the
+ * processes using it.  As nothing in a table ever changes, any number of threads can look up
+ * phrases in it at the same time without locking.
+ * <p>
+ * Unlike a PhraseTable, the table only keeps the first phrase added for each sequence of
+ * (normalized) words, along with its text and tag; other data and alternate forms of the phrase
+ * are not kept.  Phrases are normalized the way the PhraseTable given to the builder normalizes
+ * them, but text looked up in a table is always split on whitespace, as a tokenizer can't be saved.
+ *
+ * @see PhraseTable
+ */
+public class CompactPhraseTable
+{
+  /** Leading bytes of a saved table: "PHRT" */
+  public static final int MAGIC = 0x50485254;
+  public static final int VERSION = 1;
+
+  private static final int NORMALIZE = 1;
+  private static final int CASE_INSENSITIVE = 1 << 1;
+  private static final int IGNORE_PUNCTUATION = 1 << 2;
+  private static final int IGNORE_PUNCTUATION_TOKENS = 1 << 3;
+
+  private static final int HEADER_INTS = 8;
+
+  private final int flags;
+  private final int nPhrases;
+  private final int nNodes;
+
+  // Node 0 is the root.  For each node, its parent (-1 for the root), the word leading to it,
+  // the text and tag of the phrase ending there (or -1), and where its children start in
+  // childWords and childNodes (with one more entry at the end).
+  private final IntBuffer parent;
+  private final IntBuffer word;
+  private final IntBuffer text;
+  private final IntBuffer tag;
+  private final IntBuffer childStart;
+  private final IntBuffer childWords;
+  private final IntBuffer childNodes;
+
+  // The strings, as offsets into chars (with one more entry at the end), and an open-addressed
+  // table from the hash code of a word to one plus its number, or 0 for an empty entry
+  private final IntBuffer stringStart;
+  private final CharBuffer chars;
+  private final IntBuffer vocab;
+
+  private CompactPhraseTable(int flags, int nPhrases, int nNodes,
+                             IntBuffer parent, IntBuffer word, IntBuffer text, IntBuffer tag,
+                             IntBuffer childStart, IntBuffer childWords, IntBuffer childNodes,
+                             IntBuffer stringStart, CharBuffer chars, IntBuffer vocab)
+  {
+    this.flags = flags;
+    this.nPhrases = nPhrases;
+    this.nNodes = nNodes;
+    this.parent = parent;
+    this.word = word;
+    this.text = text;
+    this.tag = tag;
+    this.childStart = childStart;
+    this.childWords = childWords;
+    this.childNodes = childNodes;
+    this.stringStart = stringStart;
+    this.chars = chars;
+    this.vocab = vocab;
+  }
+
+  /** Number of phrases in the table */
+  public int size()
+  {
+    return nPhrases;
+  }
+
+  public boolean isEmpty()
+  {
+    return nPhrases == 0;
+  }
+
+  private int numStrings()
+  {
+    return stringStart.limit() - 1;
+  }
+
+  private String getString(int s)
+  {
+    int start = stringStart.get(s);
+    int end = stringStart.get(s + 1);
+    char[] c = new char[end - start];
+    for (int i = 0; i < c.length; i++) {
+      c[i] = chars.get(start + i);
+    }
+    return new String(c);
+  }
+
+  private boolean stringEquals(int s, String str)
+  {
+    int start = stringStart.get(s);
+    int len = stringStart.get(s + 1) - start;
+    if (len != str.length()) return false;
+    for (int i = 0; i < len; i++) {
+      if (chars.get(start + i) != str.charAt(i)) return false;
+    }
+    return true;
+  }
+
+  private static int hash(String str)
+  {
+    int h = str.hashCode();
+    return h ^ (h >>> 16);
+  }
+
+  /** The number of a word of some phrase, or -1 if no phrase has it */
+  private int wordNumber(String str)
+  {
+    if (str == null) return -1;
+    int mask = vocab.limit() - 1;
+    for (int slot = hash(str) & mask; ; slot = (slot + 1) & mask) {
+      int entry = vocab.get(slot);
+      if (entry == 0) {
+        return -1;
+      } else if (stringEquals(entry - 1, str)) {
+        return entry - 1;
+      }
+    }
+  }
+
+  /** The child of node reached by word w, or -1 */
+  private int child(int node, int w)
+  {
+    int lo = childStart.get(node);
+    int hi = childStart.get(node + 1) - 1;
+    while (lo <= hi) {
+      int mid = (lo + hi) >>> 1;
+      int midWord = childWords.get(mid);
+      if (midWord < w) {
+        lo = mid + 1;
+      } else if (midWord > w) {
+        hi = mid - 1;
+      } else {
+        return childNodes.get(mid);
+      }
+    }
+    return -1;
+  }
+
+  /** The phrase ending at node, made afresh each time */
+  private PhraseTable.Phrase phrase(int node)
+  {
+    int len = 0;
+    for (int n = node; n > 0; n = parent.get(n)) {
+      len++;
+    }
+    String[] words = new String[len];
+    for (int n = node; n > 0; n = parent.get(n)) {
+      words[--len] = getString(word.get(n));
+    }
+    int t = tag.get(node);
+    return new PhraseTable.Phrase(new PhraseTable.StringList(words), getString(text.get(node)),
+            (t >= 0)? getString(t): null, null);
+  }
+
+  public String getNormalizedForm(String str)
+  {
+    return PhraseTable.createNormalizedForm(str, (flags & NORMALIZE) != 0, (flags & CASE_INSENSITIVE) != 0,
+            (flags & IGNORE_PUNCTUATION) != 0, (flags & IGNORE_PUNCTUATION_TOKENS) != 0);
+  }
+
+  public PhraseTable.WordList toNormalizedWordList(String phraseText)
+  {
+    String[] words = PhraseTable.splitWords(phraseText);
+    List<String> list = new ArrayList<String>(words.length);
+    for (String w:words) {
+      w = getNormalizedForm(w);
+      if (w.length() > 0) {
+        list.add(w);
+      }
+    }
+    return new PhraseTable.StringList(list);
+  }
+
+  /**
+   * Returns the phrase with exactly the given (normalized) words, or null
+   */
+  public PhraseTable.Phrase lookup(PhraseTable.WordList wordList)
+  {
+    if (wordList == null || wordList.size() == 0) return null;
+    int node = 0;
+    for (int i = 0; i < wordList.size() && node >= 0; i++) {
+      int w = wordNumber(wordList.getWord(i));
+      node = (w >= 0)? child(node, w): -1;
+    }
+    return (node > 0 && text.get(node) >= 0)? phrase(node): null;
+  }
+
+  public PhraseTable.Phrase lookupNormalized(String phrase)
+  {
+    return lookup(toNormalizedWordList(phrase));
+  }
+
+  /**
+   * Given a segment of text, returns list of spans (PhraseMatch) that corresponds
+   *  to a phrase in the table
+   * @param text Input text to search over
+   * @return List of all matched spans
+   */
+  public List<PhraseTable.PhraseMatch> findAllMatches(String text)
+  {
+    PhraseTable.WordList tokens = toNormalizedWordList(text);
+    return findAllMatches(tokens, 0, tokens.size(), false);
+  }
+
+  /**
+   * Given a list of tokens, returns list of spans (PhraseMatch) that corresponds
+   *  to a phrase in the table
+   * @param tokens List of tokens to search over
+   * @return List of all matched spans
+   */
+  public List<PhraseTable.PhraseMatch> findAllMatches(PhraseTable.WordList tokens)
+  {
+    return findAllMatches(tokens, 0, tokens.size(), true);
+  }
+
+  public List<PhraseTable.PhraseMatch> findAllMatches(PhraseTable.WordList tokens,
+                                                      int tokenStart, int tokenEnd,
+                                                      boolean needNormalization)
+  {
+    return findMatches(tokens, tokenStart, tokenEnd, needNormalization, true /* find all */);
+  }
+
+  /**
+   * Returns the phrases starting at tokenStart
+   */
+  public List<PhraseTable.PhraseMatch> findMatches(PhraseTable.WordList tokens,
+                                                   int tokenStart, int tokenEnd,
+                                                   boolean needNormalization)
+  {
+    return findMatches(tokens, tokenStart, tokenEnd, needNormalization, false /* don't need to find all */);
+  }
+
+  public List<PhraseTable.PhraseMatch> findNonOverlappingPhrases(List<PhraseTable.PhraseMatch> phraseMatches)
+  {
+    if (phraseMatches.size() > 1) {
+      return IntervalTree.getNonOverlapping(phraseMatches, PhraseTable.PHRASEMATCH_LENGTH_ENDPOINTS_COMPARATOR);
+    } else {
+      return phraseMatches;
+    }
+  }
+
+  private List<PhraseTable.PhraseMatch> findMatches(PhraseTable.WordList tokens, int tokenStart, int tokenEnd,
+                                                    boolean needNormalization, boolean findAll)
+  {
+    if (needNormalization && tokenEnd > tokenStart) {
+      // Same as PhraseTable: match the normalized, non-empty tokens and map the spans back
+      int n = tokenEnd - tokenStart;
+      List<String> normalized = new ArrayList<String>(n);
+      int[] tokenIndexMap = new int[n+1];
+      int j = 0, last = 0;
+      for (int i = tokenStart; i < tokenEnd; i++) {
+        String w = getNormalizedForm(tokens.getWord(i));
+        if (w.length() != 0) {
+          normalized.add(w);
+          tokenIndexMap[j] = i;
+          last = i;
+          j++;
+        }
+      }
+      tokenIndexMap[j] = Math.min(last+1, tokenEnd);
+      List<PhraseTable.PhraseMatch> matched = findMatchesNormalized(new PhraseTable.StringList(normalized),
+              0, normalized.size(), findAll);
+      for (PhraseTable.PhraseMatch pm:matched) {
+        if (pm.tokenEnd > 0 && pm.tokenEnd > pm.tokenBegin) {
+          pm.tokenEnd = tokenIndexMap[pm.tokenEnd-1]+1;
+        } else {
+          pm.tokenEnd = tokenIndexMap[pm.tokenEnd];
+        }
+        pm.tokenBegin = tokenIndexMap[pm.tokenBegin];
+      }
+      return matched;
+    } else {
+      return findMatchesNormalized(tokens, tokenStart, tokenEnd, findAll);
+    }
+  }
+
+  private List<PhraseTable.PhraseMatch> findMatchesNormalized(PhraseTable.WordList tokens,
+                                                              int tokenStart, int tokenEnd, boolean findAll)
+  {
+    List<PhraseTable.PhraseMatch> matched = new ArrayList<PhraseTable.PhraseMatch>();
+    if (tokenEnd <= tokenStart) return matched;
+    // word numbers of the tokens, looked up the first time they are needed
+    int[] words = new int[tokenEnd - tokenStart];
+    Arrays.fill(words, -2);
+    int lastStart = findAll? tokenEnd - 1: tokenStart;
+    for (int start = tokenStart; start <= lastStart; start++) {
+      int node = 0;
+      for (int i = start; i < tokenEnd; i++) {
+        int w = words[i - tokenStart];
+        if (w == -2) {
+          w = words[i - tokenStart] = wordNumber(tokens.getWord(i));
+        }
+        node = (w >= 0)? child(node, w): -1;
+        if (node < 0) break;
+        if (text.get(node) >= 0) {
+          matched.add(new PhraseTable.PhraseMatch(phrase(node), start, i + 1));
+        }
+      }
+    }
+    return matched;
+  }
+
+  /**
+   * Saves the table, to be loaded with {@link #load}
+   */
+  public void save(String filename) throws IOException
+  {
+    DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(filename), 1 << 16));
+    try {
+      out.writeInt(MAGIC);
+      out.writeInt(VERSION);
+      out.writeInt(flags);
+      out.writeInt(nPhrases);
+      out.writeInt(nNodes);
+      out.writeInt(numStrings());
+      out.writeInt(vocab.limit());
+      out.writeInt(chars.limit());
+      for (IntBuffer b : new IntBuffer[] { parent, word, text, tag, childStart, childWords, childNodes, stringStart, vocab }) {
+        for (int i = 0, n = b.limit(); i < n; i++) {
+          out.writeInt(b.get(i));
+        }
+      }
+      for (int i = 0, n = chars.limit(); i < n; i++) {
+        out.writeChar(chars.get(i));
+      }
+    } finally {
+      out.close();
+    }
+  }
+
+  /**
+   * Maps a table saved by {@link #save} into memory.  Its pages are read
+   * as they are needed, and the file must not change while the table is used.
+   */
+  public static CompactPhraseTable load(String filename) throws IOException
+  {
+    RandomAccessFile file = new RandomAccessFile(filename, "r");
+    ByteBuffer buffer;
+    try {
+      FileChannel channel = file.getChannel();
+      if (channel.size() > Integer.MAX_VALUE) {
+        throw new IOException("Phrase table too big to map: " + filename);
+      }
+      // the mapping stays valid after the file is closed
+      buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+    } finally {
+      file.close();
+    }
+    if (buffer.limit() < 4 * HEADER_INTS || buffer.getInt(0) != MAGIC) {
+      throw new StreamCorruptedException("Not a phrase table: " + filename);
+    }
+    int version = buffer.getInt(4);
+    if (version != VERSION) {
+      throw new StreamCorruptedException("Unsupported phrase table version " + version + ": " + filename);
+    }
+    int flags = buffer.getInt(8);
+    int nPhrases = buffer.getInt(12);
+    int nNodes = buffer.getInt(16);
+    int nStrings = buffer.getInt(20);
+    int vocabSize = buffer.getInt(24);
+    int nChars = buffer.getInt(28);
+    long expected = 4L * (HEADER_INTS + 4L * nNodes + (nNodes + 1) + 2L * (nNodes - 1) + (nStrings + 1) + vocabSize) + 2L * nChars;
+    if (expected != buffer.limit()) {
+      throw new StreamCorruptedException("Phrase table is " + buffer.limit() + " bytes, expected " + expected + ": " + filename);
+    }
+    int[] offset = { 4 * HEADER_INTS };
+    IntBuffer parent = ints(buffer, offset, nNodes);
+    IntBuffer word = ints(buffer, offset, nNodes);
+    IntBuffer text = ints(buffer, offset, nNodes);
+    IntBuffer tag = ints(buffer, offset, nNodes);
+    IntBuffer childStart = ints(buffer, offset, nNodes + 1);
+    IntBuffer childWords = ints(buffer, offset, nNodes - 1);
+    IntBuffer childNodes = ints(buffer, offset, nNodes - 1);
+    IntBuffer stringStart = ints(buffer, offset, nStrings + 1);
+    IntBuffer vocab = ints(buffer, offset, vocabSize);
+    ByteBuffer b = buffer.duplicate();
+    b.position(offset[0]);
+    CharBuffer chars = b.slice().asCharBuffer();
+    return new CompactPhraseTable(flags, nPhrases, nNodes, parent, word, text, tag,
+            childStart, childWords, childNodes, stringStart, chars, vocab);
+  }
+
+  /** The next n ints of buffer, from offset[0], which is moved past them */
+  private static IntBuffer ints(ByteBuffer buffer, int[] offset, int n)
+  {
+    ByteBuffer b = buffer.duplicate();
+    b.position(offset[0]);
+    b.limit(offset[0] + 4 * n);
+    offset[0] += 4 * n;
+    return b.slice().asIntBuffer();
+  }
+
+  /**
+   * Collects phrases and builds a CompactPhraseTable of them.  A builder is not thread-safe.
+   */
+  public static class Builder
+  {
+    private final PhraseTable normalizer;
+    private final Map<String,Integer> stringNumbers = Generics.newHashMap();
+    private final List<String> strings = new ArrayList<String>();
+    // each phrase is its word numbers followed by the numbers of its text and tag
+    private final List<int[]> phrases = new ArrayList<int[]>();
+
+    public Builder()
+    {
+      this(new PhraseTable());
+    }
+
+    public Builder(boolean normalize, boolean caseInsensitive, boolean ignorePunctuation)
+    {
+      this(new PhraseTable(normalize, caseInsensitive, ignorePunctuation));
+    }
+
+    /**
+     * Builds a table which splits and normalizes phrases the way the given
+     * phrase table does.  Phrases already in it are not added; use
+     * {@link #addAll} for that.
+     */
+    public Builder(PhraseTable normalizer)
+    {
+      this.normalizer = normalizer;
+    }
+
+    private int stringNumber(String str)
+    {
+      Integer n = stringNumbers.get(str);
+      if (n == null) {
+        n = strings.size();
+        stringNumbers.put(str, n);
+        strings.add(str);
+      }
+      return n;
+    }
+
+    private void add(PhraseTable.WordList wordList, String phraseText, String tag)
+    {
+      int n = wordList.size();
+      if (n == 0) {
+        System.err.println("WARNING: " + phraseText + " not added");
+        return;
+      }
+      int[] phrase = new int[n + 2];
+      for (int i = 0; i < n; i++) {
+        phrase[i] = stringNumber(wordList.getWord(i));
+      }
+      phrase[n] = stringNumber(phraseText);
+      phrase[n + 1] = (tag != null)? stringNumber(tag): -1;
+      phrases.add(phrase);
+    }
+
+    public Builder addPhrase(String phraseText, String tag)
+    {
+      add(normalizer.toNormalizedWordList(phraseText), phraseText, tag);
+      return this;
+    }
+
+    /** Adds a phrase of the given words, which are not normalized */
+    public Builder addPhrase(List<String> tokens, String tag)
+    {
+      add(new PhraseTable.StringList(tokens), StringUtils.join(tokens, " "), tag);
+      return this;
+    }
+
+    /** Adds the phrases of a phrase table */
+    public Builder addAll(PhraseTable table)
+    {
+      if ( ! table.isEmpty()) {
+        for (Iterator<PhraseTable.Phrase> iter = table.iterator(); iter.hasNext(); ) {
+          PhraseTable.Phrase phrase = iter.next();
+          add(phrase.getWordList(), phrase.getText(), phrase.getTag());
+        }
+      }
+      return this;
+    }
+
+    private static final Pattern tabPattern = Pattern.compile("\t");
+
+    /**
+     * Read in phrases from a file, one per line, as {@link PhraseTable#readPhrases(String, boolean)} does
+     * @param filename - Name of file
+     * @param checkTag - Indicates if there is a tag column (assumed to be 2nd column)
+     *                   If false, treats entire line as the phrase
+     * @throws IOException
+     */
+    public Builder readPhrases(String filename, boolean checkTag) throws IOException
+    {
+      Timing timer = new Timing();
+      timer.doing("Reading phrases: " + filename);
+      BufferedReader br = IOUtils.getBufferedFileReader(filename);
+      try {
+        for (String line; (line = br.readLine()) != null; ) {
+          if (checkTag) {
+            String[] columns = tabPattern.split(line, 2);
+            addPhrase(columns[0], (columns.length == 1)? null: columns[1]);
+          } else {
+            addPhrase(line, null);
+          }
+        }
+      } finally {
+        br.close();
+      }
+      timer.done();
+      return this;
+    }
+
+    public CompactPhraseTable build()
+    {
+      // Sorted by their words, phrases sharing a prefix are next to each other, and the children
+      // of each node are made in order of their words.  The sort is stable, so of phrases with
+      // the same words, the first one added comes first and is the one kept.
+      List<int[]> sorted = new ArrayList<int[]>(phrases);
+      Collections.sort(sorted, new Comparator<int[]>() {
+        @Override
+        public int compare(int[] p1, int[] p2) {
+          int n1 = p1.length - 2;
+          int n2 = p2.length - 2;
+          for (int i = 0; i < n1 && i < n2; i++) {
+            if (p1[i] != p2[i]) {
+              return (p1[i] < p2[i])? -1: 1;
+            }
+          }
+          return n1 - n2;
+        }
+      });
+
+      int maxNodes = 1;
+      int maxLength = 0;
+      for (int[] phrase:sorted) {
+        maxNodes += phrase.length - 2;
+        maxLength = Math.max(maxLength, phrase.length - 2);
+      }
+      int[] parent = new int[maxNodes];
+      int[] word = new int[maxNodes];
+      int[] text = new int[maxNodes];
+      int[] tag = new int[maxNodes];
+      parent[0] = -1;
+      word[0] = -1;
+      text[0] = -1;
+      tag[0] = -1;
+      int nNodes = 1;
+      int nPhrases = 0;
+
+      int[] path = new int[maxLength + 1]; // nodes along the previous phrase
+      int[] previous = null;
+      for (int[] phrase:sorted) {
+        int n = phrase.length - 2;
+        int common = 0;
+        if (previous != null) {
+          int m = previous.length - 2;
+          while (common < n && common < m && phrase[common] == previous[common]) {
+            common++;
+          }
+        }
+        int node = path[common];
+        for (int i = common; i < n; i++) {
+          parent[nNodes] = node;
+          word[nNodes] = phrase[i];
+          text[nNodes] = -1;
+          tag[nNodes] = -1;
+          node = nNodes++;
+          path[i + 1] = node;
+        }
+        if (text[node] < 0) {
+          text[node] = phrase[n];
+          tag[node] = phrase[n + 1];
+          nPhrases++;
+        }
+        previous = phrase;
+      }
+
+      int[] childStart = new int[nNodes + 1];
+      for (int node = 1; node < nNodes; node++) {
+        childStart[parent[node] + 1]++;
+      }
+      for (int node = 0; node < nNodes; node++) {
+        childStart[node + 1] += childStart[node];
+      }
+      int[] childWords = new int[nNodes - 1];
+      int[] childNodes = new int[nNodes - 1];
+      int[] fill = Arrays.copyOf(childStart, nNodes);
+      for (int node = 1; node < nNodes; node++) {
+        int pos = fill[parent[node]]++;
+        childWords[pos] = word[node];
+        childNodes[pos] = node;
+      }
+
+      int[] stringStart = new int[strings.size() + 1];
+      for (int s = 0; s < strings.size(); s++) {
+        stringStart[s + 1] = stringStart[s] + strings.get(s).length();
+      }
+      char[] chars = new char[stringStart[strings.size()]];
+      for (int s = 0; s < strings.size(); s++) {
+        strings.get(s).getChars(0, strings.get(s).length(), chars, stringStart[s]);
+      }
+
+      boolean[] isWord = new boolean[strings.size()];
+      int nWords = 0;
+      for (int node = 1; node < nNodes; node++) {
+        if ( ! isWord[word[node]]) {
+          isWord[word[node]] = true;
+          nWords++;
+        }
+      }
+      int vocabSize = 2;
+      while (vocabSize < 2 * nWords) {
+        vocabSize <<= 1;
+      }
+      int[] vocab = new int[vocabSize];
+      for (int s = 0; s < strings.size(); s++) {
+        if (isWord[s]) {
+          int slot = hash(strings.get(s)) & (vocabSize - 1);
+          while (vocab[slot] != 0) {
+            slot = (slot + 1) & (vocabSize - 1);
+          }
+          vocab[slot] = s + 1;
+        }
+      }
+
+      int flags = (normalizer.normalize? NORMALIZE: 0) | (normalizer.caseInsensitive? CASE_INSENSITIVE: 0) |
+          (normalizer.ignorePunctuation? IGNORE_PUNCTUATION: 0) |
+          (normalizer.ignorePunctuationTokens? IGNORE_PUNCTUATION_TOKENS: 0);
+      return new CompactPhraseTable(flags, nPhrases, nNodes,
+          IntBuffer.wrap(Arrays.copyOf(parent, nNodes)), IntBuffer.wrap(Arrays.copyOf(word, nNodes)),
+          IntBuffer.wrap(Arrays.copyOf(text, nNodes)), IntBuffer.wrap(Arrays.copyOf(tag, nNodes)),
+          IntBuffer.wrap(childStart), IntBuffer.wrap(childWords), IntBuffer.wrap(childNodes),
+          IntBuffer.wrap(stringStart), CharBuffer.wrap(chars), IntBuffer.wrap(vocab));
+    }
+  }
+
+}
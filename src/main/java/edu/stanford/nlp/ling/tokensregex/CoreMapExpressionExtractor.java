@@ -67,6 +67,8 @@ public class CoreMapExpressionExtractor<T extends MatchedExpression> {
     SequenceMatchRules.ExtractRule<List<? extends CoreMap>, T> compositeExtractRule;
     /** Filtering rule */
     Filter<T> filterRule;
+    /** Decides which basic rules need to be applied (built when first needed) */
+    private volatile BasicRuleTrigger<T> basicRuleTrigger;
 
     private static <I,O> SequenceMatchRules.ExtractRule<I,O> addRule(SequenceMatchRules.ExtractRule<I, O> origRule,
                                                                      SequenceMatchRules.ExtractRule<I, O> rule)
@@ -93,6 +95,23 @@ public class CoreMapExpressionExtractor<T extends MatchedExpression> {
       basicExtractRule = addRule(basicExtractRule, rule);
     }
 
+    /**
+     * Applies the basic rules to the annotation, skipping the token pattern
+     *   rules that the tokens cannot match
+     */
+    private boolean extractBasic(CoreMap annotation, List<T> out)
+    {
+      if (!(basicExtractRule instanceof SequenceMatchRules.ListExtractRule)) {
+        return basicExtractRule.extract(annotation, out);
+      }
+      SequenceMatchRules.ListExtractRule<CoreMap,T> listRule = (SequenceMatchRules.ListExtractRule<CoreMap,T>) basicExtractRule;
+      BasicRuleTrigger<T> trigger = basicRuleTrigger;
+      if (trigger == null || trigger.listRule != listRule || trigger.rules.size() != listRule.rules.size()) {
+        basicRuleTrigger = trigger = new BasicRuleTrigger<T>(listRule);
+      }
+      return trigger.extract(annotation, out);
+    }
+
     private void addFilterRule(Filter<T> rule)
     {
       Filters.DisjFilter<T> r;
@@ -110,6 +129,74 @@ public class CoreMapExpressionExtractor<T extends MatchedExpression> {
     }
   }
 
+  /**
+   * Applies a list of basic rules, skipping token pattern rules whose required
+   *   literals (see {@link CoreMapSequencePatternTrigger}) are missing from the
+   *   tokens they are matched against.  Other rules are always applied, and
+   *   rules are applied in their original order.
+   * @param <T>
+   */
+  private static class BasicRuleTrigger<T> {
+    final SequenceMatchRules.ListExtractRule<CoreMap,T> listRule;
+    final List<SequenceMatchRules.ExtractRule<CoreMap,T>> rules;
+    /** Field holding the tokens each rule is matched against, null if the rule is always applied */
+    final Class[] fields;
+    /** Position of each rule's pattern in the trigger for its field */
+    final int[] positions;
+    final Map<Class, CoreMapSequencePatternTrigger> triggers = Generics.newHashMap();
+
+    private BasicRuleTrigger(SequenceMatchRules.ListExtractRule<CoreMap,T> listRule) {
+      this.listRule = listRule;
+      this.rules = new ArrayList<SequenceMatchRules.ExtractRule<CoreMap,T>>(listRule.rules);
+      this.fields = new Class[rules.size()];
+      this.positions = new int[rules.size()];
+      Map<Class, List<SequencePattern<CoreMap>>> patterns = Generics.newHashMap();
+      for (int i = 0; i < rules.size(); i++) {
+        SequenceMatchRules.ExtractRule<CoreMap,T> rule = rules.get(i);
+        if (!(rule instanceof SequenceMatchRules.AnnotationExtractRule)) continue;
+        Object extractRule = ((SequenceMatchRules.AnnotationExtractRule) rule).extractRule;
+        if (!(extractRule instanceof SequenceMatchRules.CoreMapExtractRule)) continue;
+        SequenceMatchRules.CoreMapExtractRule coreMapRule = (SequenceMatchRules.CoreMapExtractRule) extractRule;
+        if (!(coreMapRule.extractRule instanceof SequenceMatchRules.SequencePatternExtractRule)) continue;
+        SequencePattern pattern = ((SequenceMatchRules.SequencePatternExtractRule) coreMapRule.extractRule).pattern;
+        if (!(pattern instanceof TokenSequencePattern)) continue;
+        List<SequencePattern<CoreMap>> fieldPatterns = patterns.get(coreMapRule.annotationField);
+        if (fieldPatterns == null) {
+          patterns.put(coreMapRule.annotationField, fieldPatterns = new ArrayList<SequencePattern<CoreMap>>());
+        }
+        fields[i] = coreMapRule.annotationField;
+        positions[i] = fieldPatterns.size();
+        fieldPatterns.add((TokenSequencePattern) pattern);
+      }
+      for (Map.Entry<Class, List<SequencePattern<CoreMap>>> entry:patterns.entrySet()) {
+        triggers.put(entry.getKey(), new CoreMapSequencePatternTrigger(entry.getValue()));
+      }
+    }
+
+    private boolean extract(CoreMap annotation, List<T> out) {
+      Map<Class, boolean[]> triggered = Generics.newHashMap();
+      boolean extracted = false;
+      for (int i = 0; i < rules.size(); i++) {
+        Class field = fields[i];
+        if (field != null) {
+          boolean[] fieldTriggered = triggered.get(field);
+          if (fieldTriggered == null && !triggered.containsKey(field)) {
+            Object tokens = annotation.get(field);
+            if (tokens instanceof List) {
+              fieldTriggered = triggers.get(field).getTriggered((List<? extends CoreMap>) tokens);
+            }
+            triggered.put(field, fieldTriggered);
+          }
+          if (fieldTriggered != null && !fieldTriggered[positions[i]]) continue;
+        }
+        if (rules.get(i).extract(annotation, out)) {
+          extracted = true;
+        }
+      }
+      return extracted;
+    }
+  }
+
   /**
    * Creates an empty instance with no rules
    */
@@ -430,7 +517,7 @@ public class CoreMapExpressionExtractor<T extends MatchedExpression> {
         matchedExpressions.clear();
       }
       if (basicExtractRule != null) {
-        basicExtractRule.extract(annotation, matchedExpressions);
+        stage.extractBasic(annotation, matchedExpressions);
         annotateExpressions(annotation, matchedExpressions);
         matchedExpressions = MatchedExpression.removeNullValues(matchedExpressions);
         matchedExpressions = MatchedExpression.removeNested(matchedExpressions);
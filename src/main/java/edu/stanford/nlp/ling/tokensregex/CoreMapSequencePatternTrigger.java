@@ -0,0 +1,197 @@
+package edu.stanford.nlp.ling.tokensregex;
+
+import edu.stanford.nlp.util.*;
+
+import java.util.*;
+
+/**
+ * Trigger for sequences of CoreMaps.  Finds, for each pattern, the literal
+ *   strings its matches must contain (see {@link SequencePattern#findRequiredNodeConditions}),
+ *   and returns just those patterns whose literals are all present among the
+ *   annotations of the sequence's elements.
+ * <p>
+ * Each pattern is indexed under one of its required literals, so a sequence
+ *   only looks up the distinct values it holds, and checks the remaining
+ *   literals of the patterns found.  Patterns without a required literal are
+ *   always returned.  The original ordering of the patterns is preserved.
+ * </p>
+ * <p>
+ * Literals are the {@link CoreMapNodePattern.StringAnnotationPattern}s of
+ *   a {@link CoreMapNodePattern}, exact or case insensitive.
+ * </p>
+ */
+public class CoreMapSequencePatternTrigger implements MultiPatternMatcher.SequencePatternTrigger<CoreMap> {
+  private final List<SequencePattern<CoreMap>> patterns;
+  /** Required literals of each pattern, as key, string, ignoreCase (with string folded). */
+  private final List<List<Set<Triple<Class,String,Boolean>>>> required;
+  private final boolean[] alwaysTriggered;
+  /** Pattern indices by the literal they are indexed under, for exact and case insensitive literals. */
+  private final TwoDimensionalMap<Class, String, List<Integer>> exactTriggers = TwoDimensionalMap.hashMap();
+  private final TwoDimensionalMap<Class, String, List<Integer>> foldedTriggers = TwoDimensionalMap.hashMap();
+  private final Set<Class> exactKeys = new LinkedHashSet<Class>();
+  private final Set<Class> foldedKeys = new LinkedHashSet<Class>();
+
+  private static final Function<NodePattern<CoreMap>, List<Triple<Class,String,Boolean>>> LITERAL_FILTER =
+          new Function<NodePattern<CoreMap>, List<Triple<Class,String,Boolean>>>() {
+    @Override
+    public List<Triple<Class,String,Boolean>> apply(NodePattern<CoreMap> in) {
+      if (!(in instanceof CoreMapNodePattern)) {
+        return null;
+      }
+      List<Triple<Class,String,Boolean>> literals = new ArrayList<Triple<Class,String,Boolean>>();
+      for (Pair<Class,NodePattern> v:((CoreMapNodePattern) in).getAnnotationPatterns()) {
+        if (v.second instanceof CoreMapNodePattern.StringAnnotationPattern) {
+          CoreMapNodePattern.StringAnnotationPattern p = (CoreMapNodePattern.StringAnnotationPattern) v.second;
+          if (!p.normalize()) {
+            String target = (p.ignoreCase())? fold(p.target): p.target;
+            literals.add(Triple.makeTriple(v.first, target, p.ignoreCase()));
+          }
+        }
+      }
+      return literals;
+    }
+  };
+
+  public CoreMapSequencePatternTrigger(SequencePattern<CoreMap>... patterns) {
+    this(Arrays.asList(patterns));
+  }
+
+  public CoreMapSequencePatternTrigger(Collection<? extends SequencePattern<CoreMap>> patterns) {
+    this.patterns = new ArrayList<SequencePattern<CoreMap>>(patterns);
+    this.required = new ArrayList<List<Set<Triple<Class,String,Boolean>>>>(patterns.size());
+    this.alwaysTriggered = new boolean[patterns.size()];
+    for (int i = 0; i < this.patterns.size(); i++) {
+      List<Set<Triple<Class,String,Boolean>>> literals = this.patterns.get(i).findRequiredNodeConditions(LITERAL_FILTER);
+      required.add(literals);
+      for (Set<Triple<Class,String,Boolean>> anyOf:literals) {
+        for (Triple<Class,String,Boolean> literal:anyOf) {
+          (literal.third? foldedKeys: exactKeys).add(literal.first);
+        }
+      }
+      // Index under the condition with the fewest alternatives
+      Set<Triple<Class,String,Boolean>> trigger = null;
+      for (Set<Triple<Class,String,Boolean>> anyOf:literals) {
+        if (trigger == null || anyOf.size() < trigger.size()) {
+          trigger = anyOf;
+        }
+      }
+      if (trigger == null) {
+        alwaysTriggered[i] = true;
+      } else {
+        for (Triple<Class,String,Boolean> literal:trigger) {
+          TwoDimensionalMap<Class, String, List<Integer>> triggers = (literal.third)? foldedTriggers: exactTriggers;
+          List<Integer> indices = triggers.get(literal.first, literal.second);
+          if (indices == null) {
+            triggers.put(literal.first, literal.second, indices = new ArrayList<Integer>(1));
+          }
+          indices.add(i);
+        }
+      }
+    }
+  }
+
+  /**
+   * Folds the case of a string so that two strings are equal ignoring case
+   *   (as with {@link String#equalsIgnoreCase}) exactly when their folded forms are equal.
+   */
+  static String fold(String str) {
+    char[] chars = null;
+    for (int i = 0; i < str.length(); i++) {
+      char c = str.charAt(i);
+      char f = Character.toLowerCase(Character.toUpperCase(c));
+      if (f != c) {
+        if (chars == null) {
+          chars = str.toCharArray();
+        }
+        chars[i] = f;
+      }
+    }
+    return (chars == null)? str: new String(chars);
+  }
+
+  public List<SequencePattern<CoreMap>> getPatterns() {
+    return Collections.unmodifiableList(patterns);
+  }
+
+  /**
+   * Returns which of the patterns may match some subsequence of the given elements,
+   *   by the position of the pattern in {@link #getPatterns()}.
+   */
+  public boolean[] getTriggered(List<? extends CoreMap> elements) {
+    // Inverted index of the sequence: the values of the keys that literals look at
+    Map<Class, Set<String>> exactValues = Generics.newHashMap();
+    Map<Class, Set<String>> foldedValues = Generics.newHashMap();
+    for (Class key:exactKeys) {
+      exactValues.put(key, new HashSet<String>());
+    }
+    for (Class key:foldedKeys) {
+      foldedValues.put(key, new HashSet<String>());
+    }
+    for (CoreMap element:elements) {
+      for (Map.Entry<Class, Set<String>> entry:exactValues.entrySet()) {
+        Object value = element.get(entry.getKey());
+        if (value instanceof String) {
+          entry.getValue().add((String) value);
+        }
+      }
+      for (Map.Entry<Class, Set<String>> entry:foldedValues.entrySet()) {
+        Object value = element.get(entry.getKey());
+        if (value instanceof String) {
+          entry.getValue().add(fold((String) value));
+        }
+      }
+    }
+
+    boolean[] triggered = alwaysTriggered.clone();
+    triggerCandidates(exactTriggers, exactValues, exactValues, foldedValues, triggered);
+    triggerCandidates(foldedTriggers, foldedValues, exactValues, foldedValues, triggered);
+    return triggered;
+  }
+
+  private void triggerCandidates(TwoDimensionalMap<Class, String, List<Integer>> triggers, Map<Class, Set<String>> values,
+                                 Map<Class, Set<String>> exactValues, Map<Class, Set<String>> foldedValues,
+                                 boolean[] triggered) {
+    for (Class key:triggers.firstKeySet()) {
+      Map<String, List<Integer>> keyTriggers = triggers.get(key);
+      for (String value:values.get(key)) {
+        List<Integer> candidates = keyTriggers.get(value);
+        if (candidates == null) continue;
+        for (int i:candidates) {
+          if (!triggered[i] && isSatisfied(required.get(i), exactValues, foldedValues)) {
+            triggered[i] = true;
+          }
+        }
+      }
+    }
+  }
+
+  private static boolean isSatisfied(List<Set<Triple<Class,String,Boolean>>> literals,
+                                     Map<Class, Set<String>> exactValues, Map<Class, Set<String>> foldedValues) {
+    for (Set<Triple<Class,String,Boolean>> anyOf:literals) {
+      boolean satisfied = false;
+      for (Triple<Class,String,Boolean> literal:anyOf) {
+        Set<String> values = (literal.third? foldedValues: exactValues).get(literal.first);
+        if (values.contains(literal.second)) {
+          satisfied = true;
+          break;
+        }
+      }
+      if (!satisfied) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  @Override
+  public Collection<SequencePattern<CoreMap>> apply(List<? extends CoreMap> elements) {
+    boolean[] triggered = getTriggered(elements);
+    List<SequencePattern<CoreMap>> triggeredPatterns = new ArrayList<SequencePattern<CoreMap>>();
+    for (int i = 0; i < triggered.length; i++) {
+      if (triggered[i]) {
+        triggeredPatterns.add(patterns.get(i));
+      }
+    }
+    return triggeredPatterns;
+  }
+}
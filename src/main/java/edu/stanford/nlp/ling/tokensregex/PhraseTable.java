@@ -251,12 +251,21 @@ public class PhraseTable implements Serializable
         words[i] = tokens.get(i).word();
       }
     } else {
-      phraseText = possPattern.matcher(phraseText).replaceAll(" 's$1");
-      words = delimPattern.split(phraseText);
+      words = splitWords(phraseText);
     }
     return words;
   }
 
+  /**
+   * Splits text into words on whitespace, underscores and hyphens, separating genitive 's,
+   * as is done when there is no tokenizer
+   */
+  static String[] splitWords(String phraseText)
+  {
+    phraseText = possPattern.matcher(phraseText).replaceAll(" 's$1");
+    return delimPattern.split(phraseText);
+  }
+
   public WordList toWordList(String phraseText)
   {
     String[] words = splitText(phraseText);
@@ -495,6 +504,12 @@ public class PhraseTable implements Serializable
   private static final Pattern delimPattern = Pattern.compile("[\\s_-]+");
   private static final Pattern possPattern = Pattern.compile("'s(\\s+|$)");
   private String createNormalizedForm(String word)
+  {
+    return createNormalizedForm(word, normalize, caseInsensitive, ignorePunctuation, ignorePunctuationTokens);
+  }
+
+  static String createNormalizedForm(String word, boolean normalize, boolean caseInsensitive,
+                                     boolean ignorePunctuation, boolean ignorePunctuationTokens)
   {
     if (normalize) {
       word = StringUtils.normalize(word);
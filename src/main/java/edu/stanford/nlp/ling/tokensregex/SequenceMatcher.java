@@ -91,6 +91,12 @@ public class SequenceMatcher<T> extends BasicSequenceMatchResult<T> {
   // Branching limit for searching with back tracking
   int branchLimit = 2;
 
+  // Positions at which a match may start, given by the compiled NFA of the pattern
+  //  (computed for the region end and matchWithResult setting they were found with)
+  boolean[] matchStarts = null;
+  int matchStartsEnd = -1;
+  boolean matchStartsWithResult = false;
+
   protected SequenceMatcher(SequencePattern pattern, List<? extends T> elements)
   {
     this.pattern = pattern;
@@ -330,7 +336,12 @@ public class SequenceMatcher<T> extends BasicSequenceMatchResult<T> {
     if (matchStart)  {
       match = findMatchStart(start, false);
     } else {
+      boolean[] starts = getMatchStarts();
       for (int i = start; i < regionEnd; i++) {
+        if (starts != null && !starts[i]) {
+          // No match can start here
+          continue;
+        }
         match = findMatchStart(i, false);
         if (match) {
           break;
@@ -347,6 +358,24 @@ public class SequenceMatcher<T> extends BasicSequenceMatchResult<T> {
     return match;
   }
 
+  /**
+   * Returns for each position before the end of the region whether a match
+   *   may start there, or null if the pattern has no compiled NFA
+   */
+  private boolean[] getMatchStarts()
+  {
+    SequencePattern.CompiledNfa nfa = pattern.compiledNfa;
+    if (nfa == null) {
+      return null;
+    }
+    if (matchStarts == null || matchStartsEnd != regionEnd || matchStartsWithResult != matchWithResult) {
+      matchStarts = nfa.findMatchStarts(elements, regionEnd, matchWithResult);
+      matchStartsEnd = regionEnd;
+      matchStartsWithResult = matchWithResult;
+    }
+    return matchStarts;
+  }
+
   /**
    * Searches for pattern in the region starting
    *  at the next index
@@ -519,7 +548,8 @@ public class SequenceMatcher<T> extends BasicSequenceMatchResult<T> {
   {
     matched = false;
     matchingCompleted = false;
-    boolean status = findMatchStart(0, true);
+    boolean[] starts = getMatchStarts();
+    boolean status = (starts != null && starts.length > 0 && !starts[0])? false: findMatchStart(0, true);
     if (status) {
       // Check if entire region is matched
       status = ((matchedGroups[0].matchBegin == regionStart) && (matchedGroups[0].matchEnd == regionEnd));
@@ -92,6 +92,8 @@ public class SequencePattern<T> {
   private PatternExpr patternExpr;
   private SequenceMatchAction<T> action;
   State root;
+  // Compiled NFA for skipping positions where no match starts (null if the pattern can't be compiled)
+  CompiledNfa compiledNfa;
   int totalGroups = 0;
 
   // binding of group number to variable name
@@ -120,6 +122,7 @@ public class SequencePattern<T> {
     Frag f = nodeSequencePattern.build();
     f.connect(MATCH_STATE);
     this.root = f.start;
+    this.compiledNfa = CompiledNfa.compile(root);
     varGroupBindings = new VarGroupBindings(totalGroups+1);
     nodeSequencePattern.updateBindings(varGroupBindings);
   }
@@ -199,6 +202,73 @@ public class SequencePattern<T> {
     return null;
   }
 
+  /**
+   * Finds conditions that every sequence matched by this pattern satisfies,
+   *   so that callers can rule the pattern out without running it.
+   * The filter maps a node pattern to conditions that any element it matches
+   *   meets (or null if it knows of none).
+   * Each returned set is a disjunction: any match contains an element meeting
+   *   at least one of its conditions.  Unlike {@link #findNodePattern},
+   *   only node patterns that cannot be skipped (optional, in a repetition
+   *   that may match zero times, or in just some branches of a disjunction)
+   *   contribute.
+   * @param filter Function giving the conditions met by elements matching a node pattern
+   * @return List of conditions that must all hold, empty if nothing is required
+   */
+  public <OUT> List<Set<OUT>> findRequiredNodeConditions(Function<NodePattern<T>, ? extends Collection<OUT>> filter) {
+    return findRequiredNodeConditions(patternExpr, filter);
+  }
+
+  private static <T,OUT> List<Set<OUT>> findRequiredNodeConditions(PatternExpr expr,
+                                                                   Function<NodePattern<T>, ? extends Collection<OUT>> filter) {
+    List<Set<OUT>> required = new ArrayList<Set<OUT>>();
+    if (expr instanceof NodePatternExpr) {
+      Collection<OUT> conditions = filter.apply(((NodePatternExpr) expr).nodePattern);
+      if (conditions != null) {
+        for (OUT condition:conditions) {
+          required.add(Collections.singleton(condition));
+        }
+      }
+    } else if (expr instanceof SequencePatternExpr) {
+      for (PatternExpr p:((SequencePatternExpr) expr).patterns) {
+        required.addAll(findRequiredNodeConditions(p, filter));
+      }
+    } else if (expr instanceof AndPatternExpr) {
+      for (PatternExpr p:((AndPatternExpr) expr).patterns) {
+        required.addAll(findRequiredNodeConditions(p, filter));
+      }
+    } else if (expr instanceof OrPatternExpr) {
+      // Some branch matches, so one condition from each branch must hold
+      List<PatternExpr> patterns = ((OrPatternExpr) expr).patterns;
+      Set<OUT> anyOf = new LinkedHashSet<OUT>();
+      for (PatternExpr p:patterns) {
+        Set<OUT> smallest = null;
+        for (Set<OUT> conditions:findRequiredNodeConditions(p, filter)) {
+          if (smallest == null || conditions.size() < smallest.size()) {
+            smallest = conditions;
+          }
+        }
+        if (smallest == null) {
+          return required;
+        }
+        anyOf.addAll(smallest);
+      }
+      if (!anyOf.isEmpty()) {
+        required.add(anyOf);
+      }
+    } else if (expr instanceof GroupPatternExpr) {
+      required.addAll(findRequiredNodeConditions(((GroupPatternExpr) expr).pattern, filter));
+    } else if (expr instanceof ValuePatternExpr) {
+      required.addAll(findRequiredNodeConditions(((ValuePatternExpr) expr).expr, filter));
+    } else if (expr instanceof RepeatPatternExpr) {
+      RepeatPatternExpr repeat = (RepeatPatternExpr) expr;
+      if (repeat.minMatch > 0) {
+        required.addAll(findRequiredNodeConditions(repeat.pattern, filter));
+      }
+    }
+    return required;
+  }
+
   // Parses string to PatternExpr
   public static interface Parser<T> {
     public SequencePattern.PatternExpr parseSequence(Env env, String s) throws Exception;
@@ -1775,6 +1845,209 @@ public class SequencePattern<T> {
     }
   }
 
+  /**
+   * The NFA of a pattern compiled into arrays of state numbers, for finding,
+   *   in one pass over a sequence, the positions at which a match can start.
+   * The pass goes from the end of the sequence to its start, keeping the set of
+   *   states from which the match state can be reached consuming the elements
+   *   from the current position on.  Each distinct node pattern is tested at
+   *   most once per element, and only if a state using it can lead to a match.
+   * Counts of repetitions, group boundaries, and sequence start and end are
+   *   ignored, so the positions found are a superset of those at which the
+   *   matcher finds a match, and the matcher only needs to be run there.
+   * Patterns with back references, conjunctions, or multi node patterns are
+   *   not compiled.
+   */
+  static class CompiledNfa {
+    /** The start state is numbered 0 */
+    private final boolean[] accepting;
+    private final int[][] next;
+    /** For each state, the node pattern it consumes an element with, or -1 if it consumes none */
+    private final int[] statePatterns;
+    private final NodePattern[] nodePatterns;
+    private final int[] consumingStates;
+    /** States that consume nothing, each (except in cycles) after the states it leads to */
+    private final int[] epsilonStates;
+    private final boolean epsilonCycles;
+
+    private CompiledNfa(boolean[] accepting, int[][] next, int[] statePatterns, List<NodePattern> nodePatterns,
+                        int[] consumingStates, int[] epsilonStates, boolean epsilonCycles) {
+      this.accepting = accepting;
+      this.next = next;
+      this.statePatterns = statePatterns;
+      this.nodePatterns = nodePatterns.toArray(new NodePattern[nodePatterns.size()]);
+      this.consumingStates = consumingStates;
+      this.epsilonStates = epsilonStates;
+      this.epsilonCycles = epsilonCycles;
+    }
+
+    private static Collection<State> successors(State s) {
+      List<State> successors = new ArrayList<State>();
+      if (s.next != null) {
+        successors.addAll(s.next);
+      }
+      if (s instanceof RepeatState) {
+        successors.add(((RepeatState) s).repeatStart);
+      }
+      return successors;
+    }
+
+    private static boolean consumesNothing(State s) {
+      Class c = s.getClass();
+      return c == State.class || c == MatchState.class || c == ValueState.class || c == RepeatState.class
+          || c == GroupStartState.class || c == GroupEndState.class
+          || c == SeqStartState.class || c == SeqEndState.class;
+    }
+
+    /**
+     * Compiles the NFA starting at the given state.
+     * @return The compiled NFA, or null if it has states that cannot be compiled
+     */
+    static CompiledNfa compile(State root) {
+      Map<State,Integer> ids = new IdentityHashMap<State,Integer>();
+      List<State> states = new ArrayList<State>();
+      ids.put(root, 0);
+      states.add(root);
+      for (int i = 0; i < states.size(); i++) {
+        for (State t:successors(states.get(i))) {
+          if (!ids.containsKey(t)) {
+            ids.put(t, states.size());
+            states.add(t);
+          }
+        }
+      }
+
+      int n = states.size();
+      boolean[] accepting = new boolean[n];
+      int[][] next = new int[n][];
+      int[] statePatterns = new int[n];
+      Map<NodePattern,Integer> patternIds = new IdentityHashMap<NodePattern,Integer>();
+      List<NodePattern> nodePatterns = new ArrayList<NodePattern>();
+      int numConsuming = 0;
+      for (int i = 0; i < n; i++) {
+        State s = states.get(i);
+        if (s.getClass() == NodePatternState.class) {
+          NodePattern p = ((NodePatternState) s).pattern;
+          Integer pid = patternIds.get(p);
+          if (pid == null) {
+            patternIds.put(p, pid = nodePatterns.size());
+            nodePatterns.add(p);
+          }
+          statePatterns[i] = pid;
+          numConsuming++;
+        } else if (consumesNothing(s)) {
+          statePatterns[i] = -1;
+        } else {
+          return null;
+        }
+        accepting[i] = (s == MATCH_STATE);
+        Collection<State> successors = successors(s);
+        next[i] = new int[successors.size()];
+        int j = 0;
+        for (State t:successors) {
+          next[i][j++] = ids.get(t);
+        }
+      }
+
+      int[] consumingStates = new int[numConsuming];
+      int[] epsilonStates = new int[n - numConsuming];
+      for (int i = 0, j = 0; i < n; i++) {
+        if (statePatterns[i] >= 0) consumingStates[j++] = i;
+      }
+      // Order the states that consume nothing depth first, so that those they lead to come first
+      int numOrdered = 0;
+      boolean epsilonCycles = false;
+      byte[] visited = new byte[n];  // 1 = in progress, 2 = done
+      for (int i = 0; i < n; i++) {
+        if (statePatterns[i] >= 0 || visited[i] != 0) continue;
+        Stack<int[]> todo = new Stack<int[]>();  // state, and index of its next successor to visit
+        todo.push(new int[] { i, 0 });
+        visited[i] = 1;
+        while (!todo.isEmpty()) {
+          int[] top = todo.peek();
+          if (top[1] < next[top[0]].length) {
+            int t = next[top[0]][top[1]++];
+            if (statePatterns[t] >= 0) continue;
+            if (visited[t] == 1) {
+              epsilonCycles = true;
+            } else if (visited[t] == 0) {
+              visited[t] = 1;
+              todo.push(new int[] { t, 0 });
+            }
+          } else {
+            todo.pop();
+            visited[top[0]] = 2;
+            epsilonStates[numOrdered++] = top[0];
+          }
+        }
+      }
+      return new CompiledNfa(accepting, next, statePatterns, nodePatterns, consumingStates, epsilonStates, epsilonCycles);
+    }
+
+    /**
+     * Finds the positions before <code>end</code> at which a match of the
+     *   pattern consuming elements up to at most <code>end</code> may start.
+     * @param elements Sequence to match
+     * @param end End of the region to match
+     * @param matchWithResult Whether node patterns are matched with results (as the matcher does)
+     * @return For each position before end, whether a match may start there
+     */
+    <T> boolean[] findMatchStarts(List<? extends T> elements, int end, boolean matchWithResult) {
+      boolean[] starts = new boolean[end];
+      boolean[] live = new boolean[accepting.length];
+      boolean[] nextLive = new boolean[accepting.length];
+      byte[] matched = new byte[nodePatterns.length];  // 0 = not tested, 1 = matched, 2 = not matched
+      close(live);
+      for (int i = end - 1; i >= 0; i--) {
+        boolean[] tmp = nextLive;
+        nextLive = live;
+        live = tmp;
+        Arrays.fill(live, false);
+        Arrays.fill(matched, (byte) 0);
+        T node = elements.get(i);
+        for (int s:consumingStates) {
+          if (anyLive(next[s], nextLive)) {
+            int p = statePatterns[s];
+            if (matched[p] == 0) {
+              boolean m;
+              if (matchWithResult) {
+                m = nodePatterns[p].matchWithResult(node) != null;
+              } else {
+                m = node != null && nodePatterns[p].match(node);
+              }
+              matched[p] = (byte) (m? 1: 2);
+            }
+            live[s] = (matched[p] == 1);
+          }
+        }
+        close(live);
+        starts[i] = live[0];
+      }
+      return starts;
+    }
+
+    /** Adds the states that lead to a live state (or the match) without consuming anything */
+    private void close(boolean[] live) {
+      boolean changed;
+      do {
+        changed = false;
+        for (int s:epsilonStates) {
+          if (!live[s] && (accepting[s] || anyLive(next[s], live))) {
+            live[s] = true;
+            changed = true;
+          }
+        }
+      } while (changed && epsilonCycles);
+    }
+
+    private static boolean anyLive(int[] states, boolean[] live) {
+      for (int s:states) {
+        if (live[s]) return true;
+      }
+      return false;
+    }
+  }
+
   /**
    * Represents a incomplete NFS with start State and a set of unlinked out states.
    */
@@ -277,9 +277,7 @@ public class TokenSequencePattern extends SequencePattern<CoreMap> {
    */
   public static MultiPatternMatcher<CoreMap> getMultiPatternMatcher(Collection<TokenSequencePattern> patterns) {
     return new MultiPatternMatcher<CoreMap>(
-            new MultiPatternMatcher.BasicSequencePatternTrigger<CoreMap>(
-                    new CoreMapNodePatternTrigger(patterns)
-            ), patterns);
+            new CoreMapSequencePatternTrigger(patterns), patterns);
   }
 
   /**
@@ -289,9 +287,7 @@ public class TokenSequencePattern extends SequencePattern<CoreMap> {
    */
   public static MultiPatternMatcher<CoreMap> getMultiPatternMatcher(TokenSequencePattern... patterns) {
     return new MultiPatternMatcher<CoreMap>(
-            new MultiPatternMatcher.BasicSequencePatternTrigger<CoreMap>(
-                    new CoreMapNodePatternTrigger(patterns)
-            ), patterns);
+            new CoreMapSequencePatternTrigger(patterns), patterns);
   }
 
 }
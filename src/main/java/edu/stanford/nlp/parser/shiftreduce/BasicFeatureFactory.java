@@ -10,75 +10,94 @@ import edu.stanford.nlp.util.Generics;
 import edu.stanford.nlp.util.TreeShapedStack;
 
 public class BasicFeatureFactory extends FeatureFactory {
-  public static void addUnaryStackFeatures(List<String> features, CoreLabel label, String conFeature, String wordTagFeature, String tagFeature, String wordConFeature, String tagConFeature) {
+  public static void addUnaryStackFeatures(FeatureSink features, CoreLabel label, String conFeature, String wordTagFeature, String tagFeature, String wordConFeature, String tagConFeature) {
     if (label == null) {
-      features.add(conFeature + NULL);
+      features.append(conFeature).append(NULL).end();
       return;
     }
     String constituent = getFeatureFromCoreLabel(label, FeatureComponent.VALUE);
     String tag = getFeatureFromCoreLabel(label, FeatureComponent.HEADTAG);
     String word = getFeatureFromCoreLabel(label, FeatureComponent.HEADWORD);
 
-    features.add(conFeature + constituent);
-    features.add(wordTagFeature + word + "-" + tag);
-    features.add(tagFeature + tag);
-    features.add(wordConFeature + word + "-" + constituent);
-    features.add(tagConFeature + tag + "-" + constituent);
+    features.append(conFeature).append(constituent).end();
+    features.append(wordTagFeature).append(word).append("-").append(tag).end();
+    features.append(tagFeature).append(tag).end();
+    features.append(wordConFeature).append(word).append("-").append(constituent).end();
+    features.append(tagConFeature).append(tag).append("-").append(constituent).end();
   }
 
-  public static void addUnaryQueueFeatures(List<String> features, CoreLabel label, String wtFeature) {
+  public static void addUnaryQueueFeatures(FeatureSink features, CoreLabel label, String wtFeature) {
     if (label == null) {
-      features.add(wtFeature + NULL);
+      features.append(wtFeature).append(NULL).end();
       return;
     }
     String tag = label.get(TreeCoreAnnotations.HeadTagAnnotation.class).label().value();
     String word = label.get(TreeCoreAnnotations.HeadWordAnnotation.class).label().value();
 
-    // TODO: check to see if this is slow because of the string concat
-    features.add(wtFeature + tag + "-" + word);
+    features.append(wtFeature).append(tag).append("-").append(word).end();
   }
 
-  public static void addBinaryFeatures(List<String> features, 
+  public static void addBinaryFeatures(FeatureSink features, 
                                        String name1, CoreLabel label1, FeatureComponent feature11, FeatureComponent feature12, 
                                        String name2, CoreLabel label2, FeatureComponent feature21, FeatureComponent feature22) {
     if (label1 == null) {
       if (label2 == null) {
-        features.add(name1 + "n" + name2 + "n");
+        features.append(name1).append("n").append(name2).append("n").end();
       } else {
-        addUnaryFeature(features, name1 + "n" + name2 + feature21.shortName() + "-", label2, feature21);
-        addUnaryFeature(features, name1 + "n" + name2 + feature22.shortName() + "-", label2, feature22);
+        addBinaryFeature(features, name1, "n", label1, null, name2, feature21.shortName(), label2, feature21);
+        addBinaryFeature(features, name1, "n", label1, null, name2, feature22.shortName(), label2, feature22);
       }
     } else if (label2 == null) {
-      addUnaryFeature(features, name1 + feature11.shortName() + name2 + "n-", label1, feature11);
-      addUnaryFeature(features, name1 + feature12.shortName() + name2 + "n-", label1, feature12);
+      addBinaryFeature(features, name1, feature11.shortName(), label1, feature11, name2, "n", label2, null);
+      addBinaryFeature(features, name1, feature12.shortName(), label1, feature12, name2, "n", label2, null);
     } else {
-      addBinaryFeature(features, name1 + feature11.shortName() + name2 + feature21.shortName() + "-", label1, feature11, label2, feature21);
-      addBinaryFeature(features, name1 + feature11.shortName() + name2 + feature22.shortName() + "-", label1, feature11, label2, feature22);
-      addBinaryFeature(features, name1 + feature12.shortName() + name2 + feature21.shortName() + "-", label1, feature12, label2, feature21);
-      addBinaryFeature(features, name1 + feature12.shortName() + name2 + feature22.shortName() + "-", label1, feature12, label2, feature22);
+      addBinaryFeature(features, name1, feature11.shortName(), label1, feature11, name2, feature21.shortName(), label2, feature21);
+      addBinaryFeature(features, name1, feature11.shortName(), label1, feature11, name2, feature22.shortName(), label2, feature22);
+      addBinaryFeature(features, name1, feature12.shortName(), label1, feature12, name2, feature21.shortName(), label2, feature21);
+      addBinaryFeature(features, name1, feature12.shortName(), label1, feature12, name2, feature22.shortName(), label2, feature22);
     }
   }
 
-  public static void addUnaryFeature(List<String> features, String featureType, CoreLabel label, FeatureComponent feature) {
+  /**
+   * Adds name1 + shortName1 + name2 + shortName2 + "-" followed by the
+   * values of the features which are not null, separated by "-"
+   */
+  private static void addBinaryFeature(FeatureSink features, 
+                                       String name1, String shortName1, CoreLabel label1, FeatureComponent feature1, 
+                                       String name2, String shortName2, CoreLabel label2, FeatureComponent feature2) {
+    features.append(name1).append(shortName1).append(name2).append(shortName2).append("-");
+    if (feature1 != null) {
+      features.append(getFeatureFromCoreLabel(label1, feature1));
+      if (feature2 != null) {
+        features.append("-");
+      }
+    }
+    if (feature2 != null) {
+      features.append(getFeatureFromCoreLabel(label2, feature2));
+    }
+    features.end();
+  }
+
+  public static void addUnaryFeature(FeatureSink features, String featureType, CoreLabel label, FeatureComponent feature) {
     String value = getFeatureFromCoreLabel(label, feature);
-    features.add(featureType + value);
+    features.append(featureType).append(value).end();
   }
 
-  public static void addBinaryFeature(List<String> features, String featureType, CoreLabel label1, FeatureComponent feature1, CoreLabel label2, FeatureComponent feature2) {
+  public static void addBinaryFeature(FeatureSink features, String featureType, CoreLabel label1, FeatureComponent feature1, CoreLabel label2, FeatureComponent feature2) {
     String value1 = getFeatureFromCoreLabel(label1, feature1);
     String value2 = getFeatureFromCoreLabel(label2, feature2);
-    features.add(featureType + value1 + "-" + value2);
+    features.append(featureType).append(value1).append("-").append(value2).end();
   }
 
-  public static void addTrigramFeature(List<String> features, String featureType, CoreLabel label1, FeatureComponent feature1, CoreLabel label2, FeatureComponent feature2, CoreLabel label3, FeatureComponent feature3) {
+  public static void addTrigramFeature(FeatureSink features, String featureType, CoreLabel label1, FeatureComponent feature1, CoreLabel label2, FeatureComponent feature2, CoreLabel label3, FeatureComponent feature3) {
     String value1 = getFeatureFromCoreLabel(label1, feature1);
     String value2 = getFeatureFromCoreLabel(label2, feature2);
     String value3 = getFeatureFromCoreLabel(label3, feature3);
 
-    features.add(featureType + value1 + "-" + value2 + "-" + value3);
+    features.append(featureType).append(value1).append("-").append(value2).append("-").append(value3).end();
   }
 
-  public static void addPositionFeatures(List<String> features, State state) {
+  public static void addPositionFeatures(FeatureSink features, State state) {
     if (state.tokenPosition >= state.sentence.size()) {
       features.add("QUEUE_FINISHED");
     }
@@ -87,60 +106,62 @@ public class BasicFeatureFactory extends FeatureFactory {
     }
   }
 
-  public static void addSeparatorFeature(List<String> features, String featureType, State.HeadPosition separator) {
+  public static void addSeparatorFeature(FeatureSink features, String featureType, State.HeadPosition separator) {
     if (separator == null) {
       return;
     }
-    features.add(featureType + separator);
+    features.append(featureType).append(separator.toString()).end();
   }
 
-  public static void addSeparatorFeature(List<String> features, String featureType, CoreLabel label, FeatureComponent feature, State.HeadPosition separator) {
+  public static void addSeparatorFeature(FeatureSink features, String featureType, CoreLabel label, FeatureComponent feature, State.HeadPosition separator) {
     if (separator == null) {
       return;
     }
 
     String value = getFeatureFromCoreLabel(label, feature);
 
-    features.add(featureType + value + "-" + separator);
+    features.append(featureType).append(value).append("-").append(separator.toString()).end();
   }
 
-  public static void addSeparatorFeature(List<String> features, String featureType, CoreLabel label, FeatureComponent feature, boolean between) {
+  public static void addSeparatorFeature(FeatureSink features, String featureType, CoreLabel label, FeatureComponent feature, boolean between) {
     String value = getFeatureFromCoreLabel(label, feature);
 
-    features.add(featureType + value + "-" + between);
+    features.append(featureType).append(value).append("-").append(String.valueOf(between)).end();
   }
 
-  public static void addSeparatorFeature(List<String> features, String featureType, CoreLabel label1, FeatureComponent feature1, CoreLabel label2, FeatureComponent feature2, boolean between) {
+  public static void addSeparatorFeature(FeatureSink features, String featureType, CoreLabel label1, FeatureComponent feature1, CoreLabel label2, FeatureComponent feature2, boolean between) {
     String value1 = getFeatureFromCoreLabel(label1, feature1);
     String value2 = getFeatureFromCoreLabel(label2, feature2);
 
-    features.add(featureType + value1 + "-" + value2 + "-" + between);
+    features.append(featureType).append(value1).append("-").append(value2).append("-").append(String.valueOf(between)).end();
   }
 
-  public static void addSeparatorFeatures(List<String> features, String name1, CoreLabel label1, String name2, CoreLabel label2, String separatorBetween, int countBetween) {
+  public static void addSeparatorFeatures(FeatureSink features, String name1, CoreLabel label1, String name2, CoreLabel label2, String separatorBetween, int countBetween) {
     if (label1 == null || label2 == null) {
       return;
     }
 
     // 0 separators is captured by the countBetween features
     if (separatorBetween != null) {
-      String separatorBetweenName = "Sepb" + name1 + name2 + "-" + separatorBetween + "-";
-      addUnaryFeature(features, name1 + "w" + separatorBetweenName, label1, FeatureComponent.HEADWORD);
-      addBinaryFeature(features, name1 + "wc" + separatorBetweenName, label1, FeatureComponent.HEADWORD, label1, FeatureComponent.VALUE);
-      addUnaryFeature(features, name2 + "w" + separatorBetweenName, label2, FeatureComponent.HEADWORD);
-      addBinaryFeature(features, name2 + "wc" + separatorBetweenName, label2, FeatureComponent.HEADWORD, label2, FeatureComponent.VALUE);
-      addBinaryFeature(features, name1 + "c" + name2 + "c" + separatorBetweenName, label1, FeatureComponent.VALUE, label2, FeatureComponent.VALUE);
+      addSeparatorFeatures(features, name1, label1, name2, label2, "Sepb" + name1 + name2 + "-" + separatorBetween + "-");
     }
 
-    String countBetweenName = "Sepb" + name1 + name2 + "-" + countBetween + "-";
-    addUnaryFeature(features, name1 + "w" + countBetweenName, label1, FeatureComponent.HEADWORD);
-    addBinaryFeature(features, name1 + "wc" + countBetweenName, label1, FeatureComponent.HEADWORD, label1, FeatureComponent.VALUE);
-    addUnaryFeature(features, name2 + "w" + countBetweenName, label2, FeatureComponent.HEADWORD);
-    addBinaryFeature(features, name2 + "wc" + countBetweenName, label2, FeatureComponent.HEADWORD, label2, FeatureComponent.VALUE);
-    addBinaryFeature(features, name1 + "c" + name2 + "c" + countBetweenName, label1, FeatureComponent.VALUE, label2, FeatureComponent.VALUE);
+    addSeparatorFeatures(features, name1, label1, name2, label2, "Sepb" + name1 + name2 + "-" + countBetween + "-");
   }
 
-  public static void addSeparatorFeatures(List<String> features, CoreLabel s0Label, CoreLabel s1Label, State.HeadPosition s0Separator, State.HeadPosition s1Separator) {
+  private static void addSeparatorFeatures(FeatureSink features, String name1, CoreLabel label1, String name2, CoreLabel label2, String betweenName) {
+    String word1 = getFeatureFromCoreLabel(label1, FeatureComponent.HEADWORD);
+    String con1 = getFeatureFromCoreLabel(label1, FeatureComponent.VALUE);
+    String word2 = getFeatureFromCoreLabel(label2, FeatureComponent.HEADWORD);
+    String con2 = getFeatureFromCoreLabel(label2, FeatureComponent.VALUE);
+    features.append(name1).append("w").append(betweenName).append(word1).end();
+    features.append(name1).append("wc").append(betweenName).append(word1).append("-").append(con1).end();
+    features.append(name2).append("w").append(betweenName).append(word2).end();
+    features.append(name2).append("wc").append(betweenName).append(word2).append("-").append(con2).end();
+    features.append(name1).append("c").append(name2).append("c").append(betweenName).append(con1).append("-").append(con2).end();
+  }
+
+  public static void addSeparatorFeatures(FeatureSink features, CoreLabel s0Label, CoreLabel s1Label, State.HeadPosition s0Separator, State.HeadPosition s1Separator) {
     boolean between = false;
     if ((s0Separator != null && (s0Separator == State.HeadPosition.BOTH || s0Separator == State.HeadPosition.LEFT)) ||
         (s1Separator != null && (s1Separator == State.HeadPosition.BOTH || s1Separator == State.HeadPosition.RIGHT))) {
@@ -184,7 +205,7 @@ public class BasicFeatureFactory extends FeatureFactory {
    * ends of the tree.  Also adds notes about the sizes of the given
    * tree.  However, it seems somewhat slow and doesn't help accuracy.
    */
-  public void addEdgeFeatures(List<String> features, State state, String nodeName, String neighborName, Tree node, Tree neighbor) {
+  public void addEdgeFeatures(FeatureSink features, State state, String nodeName, String neighborName, Tree node, Tree neighbor) {
     if (node == null) {
       return;
     }
@@ -194,7 +215,7 @@ public class BasicFeatureFactory extends FeatureFactory {
 
     // Trees of size one are already featurized
     if (right == left) {
-      features.add(nodeName + "SZ1");
+      features.append(nodeName).append("SZ1").end();
       return;
     }
 
@@ -206,23 +227,23 @@ public class BasicFeatureFactory extends FeatureFactory {
     }
 
     if (right - left == 1) {
-      features.add(nodeName + "SZ2");
+      features.append(nodeName).append("SZ2").end();
       return;
     }
 
     if (right - left == 2) {
-      features.add(nodeName + "SZ3");
+      features.append(nodeName).append("SZ3").end();
       addUnaryQueueFeatures(features, getCoreLabel(state.sentence.get(left + 1)), nodeName + "EM-");
       return;
     }
 
-    features.add(nodeName + "SZB");
+    features.append(nodeName).append("SZB").end();
     addUnaryQueueFeatures(features, getCoreLabel(state.sentence.get(left + 1)), nodeName + "El-");
     addUnaryQueueFeatures(features, getCoreLabel(state.sentence.get(right - 1)), nodeName + "Er-");
   }
 
   /** This option also does not seem to help */
-  public void addEdgeFeatures2(List<String> features, State state, String nodeName, Tree node) {
+  public void addEdgeFeatures2(FeatureSink features, State state, String nodeName, Tree node) {
     if (node == null) {
       return;
     }
@@ -246,7 +267,7 @@ public class BasicFeatureFactory extends FeatureFactory {
   }
 
   @Override
-  public List<String> featurize(State state, List<String> features) {
+  public void featurize(State state, FeatureSink features) {
     final TreeShapedStack<Tree> stack = state.stack;
     final List<Tree> sentence = state.sentence;
     final int tokenPosition = state.tokenPosition;
@@ -356,8 +377,6 @@ public class BasicFeatureFactory extends FeatureFactory {
     Tree q0Node = state.getQueueNode(0);
     addSeparatorFeatures(features, "S0", s0Label, "S1", s1Label, state.getSeparatorBetween(s0Node, s1Node), state.getSeparatorCount(s0Node, s1Node));
     addSeparatorFeatures(features, "S0", s0Label, "Q0", q0Label, state.getSeparatorBetween(q0Node, s0Node), state.getSeparatorCount(q0Node, s0Node));
-
-    return features;
   }
 
   private static final long serialVersionUID = 1;  
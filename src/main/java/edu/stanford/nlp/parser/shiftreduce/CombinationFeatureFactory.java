@@ -1,7 +1,5 @@
 package edu.stanford.nlp.parser.shiftreduce;
 
-import java.util.List;
-
 import edu.stanford.nlp.util.Generics;
 
 /**
@@ -17,11 +15,10 @@ public class CombinationFeatureFactory extends FeatureFactory {
   }
   
   @Override
-  public List<String> featurize(State state, List<String> features) {
+  public void featurize(State state, FeatureSink features) {
     for (FeatureFactory factory : factories) {
       factory.featurize(state, features);
     }
-    return features;
   }
 
   private static final long serialVersionUID = 1;  
@@ -1,7 +1,5 @@
 package edu.stanford.nlp.parser.shiftreduce;
 
-import java.util.List;
-
 import edu.stanford.nlp.ling.CoreLabel;
 import edu.stanford.nlp.tagger.maxent.Distsim;
 import edu.stanford.nlp.util.Generics;
@@ -23,7 +21,7 @@ public class DistsimFeatureFactory extends FeatureFactory {
     distsim = Distsim.initLexicon(path);
   }
 
-  public void addDistsimFeatures(List<String> features, CoreLabel label, String featureName) {
+  public void addDistsimFeatures(FeatureSink features, CoreLabel label, String featureName) {
     if (label == null) {
       return;
     }
@@ -33,12 +31,12 @@ public class DistsimFeatureFactory extends FeatureFactory {
 
     String cluster = distsim.getMapping(word);
 
-    features.add(featureName + "dis-" + cluster);
-    features.add(featureName + "disT-" + cluster + "-" + tag);
+    features.append(featureName).append("dis-").append(cluster).end();
+    features.append(featureName).append("disT-").append(cluster).append("-").append(tag).end();
   }
 
   @Override
-  public List<String> featurize(State state, List<String> features) {
+  public void featurize(State state, FeatureSink features) {
     CoreLabel s0Label = getStackLabel(state.stack, 0); // current top of stack
     CoreLabel s1Label = getStackLabel(state.stack, 1); // one previous
     CoreLabel q0Label = getQueueLabel(state.sentence, state.tokenPosition, 0); // current location in queue
@@ -46,8 +44,6 @@ public class DistsimFeatureFactory extends FeatureFactory {
     addDistsimFeatures(features, s0Label, "S0");
     addDistsimFeatures(features, s1Label, "S1");
     addDistsimFeatures(features, q0Label, "Q0");
-
-    return features;
   }
 
   private static final long serialVersionUID = -396152777907151063L;
@@ -14,7 +14,16 @@ public abstract class FeatureFactory implements Serializable {
     return featurize(state, Generics.<String>newArrayList(200));
   }
 
-  abstract public List<String> featurize(State state, List<String> features);
+  public List<String> featurize(State state, List<String> features) {
+    featurize(state, new FeatureSink.ListSink(features));
+    return features;
+  }
+
+  /**
+   * Adds the features of the state to the sink, so they can be built
+   * as strings or hashed directly with {@link HashedFeatures}
+   */
+  abstract public void featurize(State state, FeatureSink features);
 
   enum Transition {
     LEFT, RIGHT, UNARY
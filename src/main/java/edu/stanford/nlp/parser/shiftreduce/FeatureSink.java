@@ -0,0 +1,47 @@
+package edu.stanford.nlp.parser.shiftreduce;
+
+import java.util.List;
+
+/**
+ * Receives the features of a state as a FeatureFactory produces them,
+ * each feature as the pieces its name is concatenated from.  This lets
+ * the same featurization code either build the feature strings
+ * ({@link ListSink}) or compute the hashes of those strings without
+ * building them ({@link HashedFeatures}).
+ */
+public abstract class FeatureSink {
+  /** Appends a piece to the name of the current feature.  A null piece is appended as "null". */
+  public abstract FeatureSink append(String piece);
+
+  /** Finishes the current feature; the next piece starts a new one. */
+  public abstract void end();
+
+  /** Adds a feature whose whole name is given. */
+  public void add(String feature) {
+    append(feature).end();
+  }
+
+  /**
+   * Builds the feature strings and adds them to a list.
+   */
+  public static class ListSink extends FeatureSink {
+    private final List<String> features;
+    private final StringBuilder current = new StringBuilder();
+
+    public ListSink(List<String> features) {
+      this.features = features;
+    }
+
+    @Override
+    public FeatureSink append(String piece) {
+      current.append(piece);
+      return this;
+    }
+
+    @Override
+    public void end() {
+      features.add(current.toString());
+      current.setLength(0);
+    }
+  }
+}
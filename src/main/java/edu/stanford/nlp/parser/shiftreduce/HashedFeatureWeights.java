@@ -0,0 +1,98 @@
+package edu.stanford.nlp.parser.shiftreduce;
+
+import java.io.Serializable;
+import java.util.Map;
+
+/**
+ * The feature weights of a ShiftReduceParser keyed by the 64-bit hashes
+ * of the feature strings (see {@link HashedFeatures}), in an open
+ * addressed table of primitive keys.  Scoring a state then needs no
+ * feature strings and no String hashing or comparisons.
+ * <br>
+ * Two features of a model hashing to the same value is detected when
+ * the table is built.  A feature unknown to the model is taken for a
+ * known one only if their 64-bit hashes collide, which is negligibly
+ * rare.
+ * <br>
+ * Run as a program, it converts a model so that it only keeps the hashed
+ * weights, which makes it smaller and faster to load.  Such a model can
+ * still parse, but cannot be trained further:
+ * <br>
+ * <code>java edu.stanford.nlp.parser.shiftreduce.HashedFeatureWeights model.ser.gz hashed.ser.gz</code>
+ */
+public class HashedFeatureWeights implements Serializable {
+  private final long[] keys;
+  /** Null where the table is empty */
+  private final Weight[] weights;
+  private final int size;
+
+  public HashedFeatureWeights(Map<String, Weight> featureWeights) {
+    int capacity = 2;
+    while (capacity < featureWeights.size() * 2) {
+      capacity <<= 1;
+    }
+    keys = new long[capacity];
+    weights = new Weight[capacity];
+    int numKeys = 0;
+    for (Map.Entry<String, Weight> entry : featureWeights.entrySet()) {
+      Weight weight = entry.getValue();
+      if (weight.size() == 0) {
+        continue;
+      }
+      long key = HashedFeatures.hash(entry.getKey());
+      int slot = slot(key, capacity);
+      while (weights[slot] != null) {
+        if (keys[slot] == key) {
+          throw new IllegalArgumentException("Feature " + entry.getKey() + " has the same hash as another feature");
+        }
+        slot = (slot + 1) & (capacity - 1);
+      }
+      keys[slot] = key;
+      weights[slot] = weight;
+      ++numKeys;
+    }
+    size = numKeys;
+  }
+
+  private static int slot(long key, int capacity) {
+    return ((int) (key ^ (key >>> 32))) & (capacity - 1);
+  }
+
+  /** Returns the weights of the feature with the given hash, or null if the feature is not known */
+  public Weight get(long key) {
+    final int mask = keys.length - 1;
+    for (int slot = slot(key, keys.length); ; slot = (slot + 1) & mask) {
+      Weight weight = weights[slot];
+      if (weight == null || keys[slot] == key) {
+        return weight;
+      }
+    }
+  }
+
+  /** Adds the weights of all the given features to the scores of the transitions */
+  public void score(HashedFeatures features, float[] scores) {
+    for (int i = 0, n = features.size(); i < n; ++i) {
+      Weight weight = get(features.get(i));
+      if (weight != null) {
+        weight.score(scores);
+      }
+    }
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public static void main(String[] args) {
+    if (args.length != 2) {
+      System.err.println("Usage: java " + HashedFeatureWeights.class.getName() + " <model> <output>");
+      System.exit(1);
+    }
+    ShiftReduceParser parser = ShiftReduceParser.loadModel(args[0]);
+    parser.hashFeatureWeights();
+    parser.saveModel(args[1]);
+    System.err.println("Saved " + parser.hashedWeights.size() + " hashed features to " + args[1]);
+  }
+
+  private static final long serialVersionUID = 1;
+}
@@ -0,0 +1,68 @@
+package edu.stanford.nlp.parser.shiftreduce;
+
+/**
+ * Collects 64-bit hashes of features instead of the feature strings.
+ * The hash (64-bit FNV-1a over the chars of the name) is computed as the
+ * pieces of a feature's name are appended, so it is the same as
+ * {@link #hash(String)} of the concatenated name, but the name is never
+ * built.  Weights are then looked up by hash in a
+ * {@link HashedFeatureWeights}.
+ * <br>
+ * An instance can be reused for many states with {@link #clear}.
+ */
+public class HashedFeatures extends FeatureSink {
+  private static final long OFFSET_BASIS = 0xcbf29ce484222325L;
+  private static final long PRIME = 0x100000001b3L;
+
+  private long[] hashes = new long[256];
+  private int size = 0;
+  private long current = OFFSET_BASIS;
+
+  public static long hash(String feature) {
+    return hash(OFFSET_BASIS, feature);
+  }
+
+  private static long hash(long hash, String piece) {
+    if (piece == null) {
+      piece = "null";
+    }
+    for (int i = 0, length = piece.length(); i < length; ++i) {
+      hash ^= piece.charAt(i);
+      hash *= PRIME;
+    }
+    return hash;
+  }
+
+  @Override
+  public FeatureSink append(String piece) {
+    current = hash(current, piece);
+    return this;
+  }
+
+  @Override
+  public void end() {
+    if (size == hashes.length) {
+      long[] newHashes = new long[hashes.length * 2];
+      System.arraycopy(hashes, 0, newHashes, 0, size);
+      hashes = newHashes;
+    }
+    hashes[size++] = current;
+    current = OFFSET_BASIS;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public long get(int i) {
+    if (i >= size) {
+      throw new IndexOutOfBoundsException("Index " + i + " >= " + size);
+    }
+    return hashes[i];
+  }
+
+  public void clear() {
+    size = 0;
+    current = OFFSET_BASIS;
+  }
+}
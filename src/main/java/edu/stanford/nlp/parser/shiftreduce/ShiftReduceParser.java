@@ -101,6 +101,17 @@ public class ShiftReduceParser extends ParserGrammar implements Serializable {
   Map<String, Weight> featureWeights;
   //final Map<String, List<ScoredObject<Integer>>> featureWeights;
 
+  /**
+   * featureWeights keyed by the hashes of the features, which is what
+   * parsing uses.  Built from featureWeights when first needed and
+   * dropped whenever featureWeights changes.  A model converted with
+   * {@link HashedFeatureWeights#main} keeps only this.
+   */
+  volatile HashedFeatureWeights hashedWeights;
+
+  /** Set if two known features have the same hash, in which case features are scored as strings */
+  private transient volatile boolean hashingFailed;
+
   ShiftReduceOptions op;
 
   FeatureFactory featureFactory;
@@ -216,6 +227,11 @@ public class ShiftReduceParser extends ParserGrammar implements Serializable {
     for (String feature : other.featureWeights.keySet()) {
       featureWeights.put(feature, new Weight(other.featureWeights.get(feature)));
     }
+    clearHashedWeights();
+    if (other.isHashedOnly()) {
+      // the weights can no longer change, so they can be shared
+      hashedWeights = other.hashedWeights;
+    }
   }
 
   public static ShiftReduceParser averageScoredModels(Collection<ScoredObject<ShiftReduceParser>> scoredModels) {
@@ -246,6 +262,9 @@ public class ShiftReduceParser extends ParserGrammar implements Serializable {
       if (!model.transitionIndex.equals(copy.transitionIndex)) {
         throw new IllegalArgumentException("Can only average models with the same transition index");
       }
+      if (model.isHashedOnly()) {
+        throw new IllegalArgumentException("Cannot average models which only have hashed feature weights");
+      }
     }
 
     Set<String> features = Generics.newHashSet();
@@ -293,6 +312,9 @@ public class ShiftReduceParser extends ParserGrammar implements Serializable {
    * Any feature with no transitions left is then removed
    */
   public void condenseFeatures() {
+    if (isHashedOnly()) {
+      throw new IllegalArgumentException("Cannot condense the features of a model which only has hashed feature weights");
+    }
     Iterator<String> featureIt = featureWeights.keySet().iterator();
     while (featureIt.hasNext()) {
       String feature = featureIt.next();
@@ -302,15 +324,63 @@ public class ShiftReduceParser extends ParserGrammar implements Serializable {
         featureIt.remove();
       }
     }
+    clearHashedWeights();
   }
 
   public void filterFeatures(Set<String> keep) {
+    if (isHashedOnly()) {
+      throw new IllegalArgumentException("Cannot filter the features of a model which only has hashed feature weights");
+    }
     Iterator<String> featureIt = featureWeights.keySet().iterator();
     while (featureIt.hasNext()) {
       if (!keep.contains(featureIt.next())) {
         featureIt.remove();
       }
     }
+    clearHashedWeights();
+  }
+
+  /**
+   * Whether this model was converted by {@link HashedFeatureWeights#main},
+   * so its weights are only kept by feature hash
+   */
+  boolean isHashedOnly() {
+    HashedFeatureWeights weights = hashedWeights;
+    return featureWeights.isEmpty() && weights != null && weights.size() > 0;
+  }
+
+  /** Drops the hashed feature weights after featureWeights changed, so they get rebuilt */
+  private void clearHashedWeights() {
+    hashedWeights = null;
+    hashingFailed = false;
+  }
+
+  /**
+   * Returns the hashed feature weights, building them if needed, or
+   * null if the features have to be scored as strings.
+   */
+  HashedFeatureWeights hashedWeights() {
+    HashedFeatureWeights weights = hashedWeights;
+    if (weights == null && !hashingFailed) {
+      try {
+        weights = new HashedFeatureWeights(featureWeights);
+        hashedWeights = weights;
+      } catch (IllegalArgumentException e) {
+        System.err.println("Unable to hash the features of this model: " + e.getMessage());
+        hashingFailed = true;
+      }
+    }
+    return weights;
+  }
+
+  /**
+   * Replaces the feature weights with their hashed version.  The model
+   * is then smaller and can still be used for parsing, but can no
+   * longer be trained.
+   */
+  public void hashFeatureWeights() {
+    hashedWeights = new HashedFeatureWeights(featureWeights);
+    featureWeights = Generics.newHashMap();
   }
 
 
@@ -426,8 +496,10 @@ public class ShiftReduceParser extends ParserGrammar implements Serializable {
 
   public Collection<ScoredObject<Integer>> findHighestScoringTransitions(State state, List<String> features, boolean requireLegal, int numTransitions, List<ParserConstraint> constraints) {
     float[] scores = new float[transitionIndex.size()];
+    // models converted by HashedFeatureWeights only have the hashed weights
+    HashedFeatureWeights hashed = featureWeights.isEmpty() ? hashedWeights : null;
     for (String feature : features) {
-      Weight weight = featureWeights.get(feature);
+      Weight weight = (hashed == null) ? featureWeights.get(feature) : hashed.get(HashedFeatures.hash(feature));
       if (weight == null) {
         // Features not in our index are ignored
         continue;
@@ -435,6 +507,21 @@ public class ShiftReduceParser extends ParserGrammar implements Serializable {
       weight.score(scores);
     }
 
+    return highestScoringTransitions(state, scores, requireLegal, numTransitions, constraints);
+  }
+
+  /**
+   * Same as the version which takes feature strings, but looks up the
+   * hashes of the features in the hashed feature weights.  Use
+   * {@link #hashedWeights()} to check that those are available first.
+   */
+  public Collection<ScoredObject<Integer>> findHighestScoringTransitions(State state, HashedFeatures features, boolean requireLegal, int numTransitions, List<ParserConstraint> constraints) {
+    float[] scores = new float[transitionIndex.size()];
+    hashedWeights().score(features, scores);
+    return highestScoringTransitions(state, scores, requireLegal, numTransitions, constraints);
+  }
+
+  private Collection<ScoredObject<Integer>> highestScoringTransitions(State state, float[] scores, boolean requireLegal, int numTransitions, List<ParserConstraint> constraints) {
     PriorityQueue<ScoredObject<Integer>> queue = new PriorityQueue<ScoredObject<Integer>>(numTransitions + 1, ScoredComparator.ASCENDING_COMPARATOR);
     for (int i = 0; i < scores.length; ++i) {
       if (!requireLegal || transitionIndex.get(i).isLegal(state, constraints)) {
@@ -808,6 +895,10 @@ public class ShiftReduceParser extends ParserGrammar implements Serializable {
   private void trainAndSave(List<Pair<String, FileFilter>> trainTreebankPath, 
                             Pair<String, FileFilter> devTreebankPath,
                             String serializedPath) {
+    if (isHashedOnly()) {
+      throw new IllegalArgumentException("Cannot train a model which only has hashed feature weights");
+    }
+
     List<Tree> binarizedTrees = Generics.newArrayList();
     for (Pair<String, FileFilter> treebank : trainTreebankPath) {
       binarizedTrees.addAll(readBinarizedTreebank(treebank.first(), treebank.second()));
@@ -910,6 +1001,7 @@ public class ShiftReduceParser extends ParserGrammar implements Serializable {
             }
           }
         }
+        clearHashedWeights();
         updates.clear();
       }
       trainingTimer.done("Iteration " + iteration);
@@ -1024,6 +1116,11 @@ public class ShiftReduceParser extends ParserGrammar implements Serializable {
   }
 
   public void saveModel(String path) {
+    // The hashed weights are only saved for models which no longer
+    // have the feature strings; otherwise they are rebuilt after loading
+    if (!featureWeights.isEmpty()) {
+      hashedWeights = null;
+    }
     try {
       IOUtils.writeObjectToFile(this, path);
     } catch (IOException e) {
@@ -59,6 +59,8 @@ public class ShiftReduceParserQuery implements ParserQuery {
 
     success = true;
     unparsable = false;
+    // Features are hashed directly unless the model's features cannot be hashed
+    HashedFeatures hashedFeatures = (parser.hashedWeights() != null) ? new HashedFeatures() : null;
     PriorityQueue<State> beam = new PriorityQueue<State>(maxBeamSize + 1, ScoredComparator.ASCENDING_COMPARATOR);
     beam.add(initialState);
     // TODO: don't construct as many PriorityQueues
@@ -70,8 +72,15 @@ public class ShiftReduceParserQuery implements ParserQuery {
       beam = new PriorityQueue<State>(maxBeamSize + 1, ScoredComparator.ASCENDING_COMPARATOR);
       State bestState = null;
       for (State state : oldBeam) {
-        List<String> features = parser.featureFactory.featurize(state);
-        Collection<ScoredObject<Integer>> predictedTransitions = parser.findHighestScoringTransitions(state, features, true, maxBeamSize, constraints);
+        Collection<ScoredObject<Integer>> predictedTransitions;
+        if (hashedFeatures != null) {
+          hashedFeatures.clear();
+          parser.featureFactory.featurize(state, hashedFeatures);
+          predictedTransitions = parser.findHighestScoringTransitions(state, hashedFeatures, true, maxBeamSize, constraints);
+        } else {
+          List<String> features = parser.featureFactory.featurize(state);
+          predictedTransitions = parser.findHighestScoringTransitions(state, features, true, maxBeamSize, constraints);
+        }
         // System.err.println("Examining state: " + state);
         for (ScoredObject<Integer> predictedTransition : predictedTransitions) {
           Transition transition = parser.transitionIndex.get(predictedTransition.object());
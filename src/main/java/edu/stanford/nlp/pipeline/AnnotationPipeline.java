@@ -3,10 +3,15 @@ package edu.stanford.nlp.pipeline;
 import edu.stanford.nlp.ling.CoreAnnotations;
 import edu.stanford.nlp.trees.TreeCoreAnnotations;
 import edu.stanford.nlp.util.*;
-import edu.stanford.nlp.util.logging.Redwood;
+import edu.stanford.nlp.util.concurrent.WorkerPool;
 
+import java.io.Closeable;
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 
 
 /**
@@ -17,17 +22,28 @@ import java.util.*;
  * them in and get back in return a fully annotated object.
  * Please see the package level javadoc for sample usage
  * and a more complete description.
+ * <p>
+ * Annotators which work on several sentences at once hand them to the
+ * pipeline's {@link WorkerPool}, whose threads live as long as the pipeline.
+ * Call {@link #close()} when done with the pipeline to stop them.
  *
  * @author Jenny Finkel
  */
 
-public class AnnotationPipeline implements Annotator {
+public class AnnotationPipeline implements Annotator, Closeable {
 
   protected static final boolean TIME = true;
 
   private final List<Annotator> annotators;
   private List<MutableLong> accumulatedTime;
 
+  /** Worker threads shared by this pipeline's annotators; made on first use. */
+  private WorkerPool workers; // = null;
+  private int workerThreads; // = 0;
+  private int workerQueueSize; // = 0;
+
+  private volatile PipelineMetrics metrics; // = null;
+
   public AnnotationPipeline(List<Annotator> annotators) {
     this.annotators = annotators;
     if (TIME) {
@@ -60,16 +76,102 @@ public class AnnotationPipeline implements Annotator {
   public void annotate(Annotation annotation) {
     Iterator<MutableLong> it = accumulatedTime.iterator();
     Timing t = new Timing();
-    for (Annotator annotator : annotators) {
-      if (TIME) {
-        t.start();
+    PipelineMetrics metrics = this.metrics;
+    long documentStart = (metrics != null) ? System.nanoTime() : 0;
+    WorkerPool previous = WorkerPool.setCurrent(getWorkerPool());
+    try {
+      int index = 0;
+      for (Annotator annotator : annotators) {
+        if (TIME) {
+          t.start();
+        }
+        long start = 0;
+        long allocatedStart = 0;
+        if (metrics != null) {
+          allocatedStart = PipelineMetrics.allocatedBytes();
+          start = System.nanoTime();
+        }
+        annotator.annotate(annotation);
+        if (metrics != null) {
+          long nanos = System.nanoTime() - start;
+          long allocated = (allocatedStart < 0) ? -1 : PipelineMetrics.allocatedBytes() - allocatedStart;
+          metrics.recordAnnotator(index, StringUtils.getShortClassName(annotator), annotation, nanos, allocated);
+        }
+        if (TIME) {
+          int elapsed = (int) t.stop();
+          MutableLong m = it.next();
+          synchronized (m) {
+            m.incValue(elapsed);
+          }
+        }
+        index++;
       }
-      annotator.annotate(annotation);
-      if (TIME) {
-        int elapsed = (int) t.stop();
-        MutableLong m = it.next();
-        m.incValue(elapsed);
+      if (metrics != null) {
+        metrics.recordDocument(annotation, System.nanoTime() - documentStart);
       }
+    } finally {
+      WorkerPool.setCurrent(previous);
+    }
+  }
+
+  /**
+   * Sets the size of the pool of worker threads this pipeline's annotators
+   * share. Has no effect once the pool has been made.
+   *
+   * @param nThreads If less than or equal to 0, the number of available processors
+   * @param queueSize How much work may wait for a worker before more blocks;
+   *                  if less than or equal to 0, four times the number of threads
+   */
+  public synchronized void setWorkerPoolSize(int nThreads, int queueSize) {
+    this.workerThreads = nThreads;
+    this.workerQueueSize = queueSize;
+  }
+
+  /**
+   * Makes the pipeline's annotators use <code>pool</code>. The pipeline shuts
+   * the pool down when it is closed.
+   */
+  public synchronized void setWorkerPool(WorkerPool pool) {
+    this.workers = pool;
+  }
+
+  /** Returns the pool of worker threads this pipeline's annotators share. */
+  public synchronized WorkerPool getWorkerPool() {
+    if (workers == null) {
+      workers = new WorkerPool(workerThreads, workerQueueSize);
+    }
+    return workers;
+  }
+
+  /**
+   * Starts collecting {@link PipelineMetrics} for this pipeline, if it is
+   * not already, and returns them.
+   */
+  public synchronized PipelineMetrics enableMetrics() {
+    if (metrics == null) {
+      PipelineMetrics m = new PipelineMetrics();
+      m.setWorkerPool(getWorkerPool());
+      metrics = m;
+    }
+    return metrics;
+  }
+
+  /** The metrics collected for this pipeline, or null if they are not enabled. */
+  public PipelineMetrics getMetrics() {
+    return metrics;
+  }
+
+  /**
+   * Stops the pipeline's worker threads. Annotators which need them fail
+   * after this. Metrics exported over JMX are unregistered.
+   */
+  @Override
+  public synchronized void close() {
+    if (workers != null) {
+      workers.shutdown();
+    }
+    if (metrics != null) {
+      metrics.unregisterMBeans();
     }
   }
 
@@ -115,56 +217,96 @@ public class AnnotationPipeline implements Annotator {
    * @param annotations The input annotations to process
    * @param numThreads The number of threads to run on
    * @param callback A function to be called when an annotation finishes.
+   *                 It is called on this thread, in the order of the input.
    *                 The return value of the callback is ignored.
    */
   public void annotate(final Iterable<Annotation> annotations, int numThreads, final Function<Annotation,Object> callback){
-    // case: single thread (no point in spawning threads)
-    if(numThreads == 1) {
-      for(Annotation ann : annotations) {
-        annotate(ann);
-        callback.apply(ann);
-      }
+    for (Iterator<Annotation> it = annotateInOrder(annotations, numThreads); it.hasNext(); ) {
+      callback.apply(it.next());
     }
-    // Java's equivalent to ".map{ lambda(annotation) => annotate(annotation) }
-    Iterable<Runnable> threads = new Iterable<Runnable>() {
-      @Override
-      public Iterator<Runnable> iterator() {
-        final Iterator<Annotation> iter = annotations.iterator();
-        return new Iterator<Runnable>() {
-          @Override
-          public boolean hasNext() {
-            return iter.hasNext();
-          }
-          @Override
-          public Runnable next() {
-            if ( ! iter.hasNext()) {
-              throw new NoSuchElementException();
+  }
+
+  /**
+   * Annotates a stream of documents, running the whole pipeline on up to
+   * numThreads of them at once on the pipeline's {@link WorkerPool}, and
+   * returns them in input order as they are done. Documents are read from
+   * <code>annotations</code> only as the returned iterator is consumed, so
+   * at most numThreads annotated documents are held at a time, and the
+   * input may be unbounded. The annotators must be safe to call from
+   * several threads at once.
+   * <p>
+   * If annotating a document throws, the exception is rethrown when that
+   * document is reached.
+   *
+   * @param annotations The input annotations to process
+   * @param numThreads The most documents to annotate at once; if less than
+   *                   or equal to 0, the size of the worker pool
+   */
+  public Iterator<Annotation> annotateInOrder(final Iterable<Annotation> annotations, int numThreads) {
+    final Iterator<Annotation> input = annotations.iterator();
+    if (numThreads <= 0) {
+      numThreads = getWorkerPool().size();
+    }
+    final int window = numThreads;
+    return new Iterator<Annotation>() {
+      private final Deque<Future<Annotation>> inFlight = new ArrayDeque<Future<Annotation>>(window);
+
+      private void fill() {
+        while (inFlight.size() < window && input.hasNext()) {
+          final Annotation annotation = input.next();
+          Callable<Annotation> job = new Callable<Annotation>() {
+            @Override
+            public Annotation call() {
+              annotate(annotation);
+              return annotation;
             }
-            final Annotation input = iter.next();
-            return new Runnable() {
-              @Override
-              public void run() {
-                //(logging)
-                String beginningOfDocument = input.toString().substring(0,Math.min(50,input.toString().length()));
-                Redwood.startTrack("Annotating \"" + beginningOfDocument + "...\"");
-                //(annotate)
-                annotate(input);
-                //(callback)
-                callback.apply(input);
-                //(logging again)
-                Redwood.endTrack("Annotating \"" + beginningOfDocument + "...\"");
-              }
-            };
+          };
+          if (window == 1) {
+            // no point in handing off to another thread
+            FutureTask<Annotation> task = new FutureTask<Annotation>(job);
+            task.run();
+            inFlight.add(task);
+          } else {
+            inFlight.add(getWorkerPool().submit(job));
           }
-          @Override
-          public void remove() {
-            iter.remove();
+        }
+      }
+
+      @Override
+      public boolean hasNext() {
+        fill();
+        return ! inFlight.isEmpty();
+      }
+
+      @Override
+      public Annotation next() {
+        if ( ! hasNext()) {
+          throw new NoSuchElementException();
+        }
+        Future<Annotation> head = inFlight.removeFirst();
+        Annotation annotation;
+        try {
+          annotation = head.get();
+        } catch (InterruptedException e) {
+          throw new RuntimeInterruptedException(e);
+        } catch (ExecutionException e) {
+          Throwable cause = e.getCause();
+          if (cause instanceof RuntimeException) {
+            throw (RuntimeException) cause;
+          } else if (cause instanceof Error) {
+            throw (Error) cause;
           }
-        };
+          throw new RuntimeException(cause);
+        }
+        fill();
+        return annotation;
+      }
+
+      @Override
+      public void remove() {
+        throw new UnsupportedOperationException();
       }
     };
-    // Thread
-    Redwood.Util.threadAndRun(this.getClass().getSimpleName(), threads, numThreads );
   }
 
   /** Return the total pipeline annotation time in milliseconds.
@@ -0,0 +1,151 @@
+package edu.stanford.nlp.pipeline;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import edu.stanford.nlp.ling.CoreAnnotations;
+import edu.stanford.nlp.stats.ConcurrentHistogram;
+
+/**
+ * Latency, throughput and allocation of one annotator in a pipeline, as
+ * collected by {@link PipelineMetrics}.
+ * <p>
+ * Throughput is over the time spent in the annotator, so it is what one
+ * thread achieves, not what the pipeline achieves when annotating several
+ * documents at once. Tokens and sentences are those of the document after
+ * the annotator ran. Allocation is measured on the thread calling the
+ * annotator, so work it hands to the pipeline's worker pool is not counted.
+ */
+public class AnnotatorMetrics implements AnnotatorMetricsMBean {
+
+  private static final double NANOS_PER_MILLI = 1e6;
+
+  private final String name;
+  private final ConcurrentHistogram latency = new ConcurrentHistogram();
+  private final AtomicLong tokens = new AtomicLong();
+  private final AtomicLong sentences = new AtomicLong();
+  private final AtomicLong allocated = new AtomicLong();
+
+  public AnnotatorMetrics(String name) {
+    this.name = name;
+  }
+
+  /**
+   * Records one run of the annotator.
+   *
+   * @param annotation The document, as the annotator left it
+   * @param nanos How long the annotator took
+   * @param allocatedBytes How much it allocated, or a negative number if unknown
+   */
+  public void record(Annotation annotation, long nanos, long allocatedBytes) {
+    latency.record(nanos);
+    List<?> t = annotation.get(CoreAnnotations.TokensAnnotation.class);
+    if (t != null) {
+      tokens.addAndGet(t.size());
+    }
+    List<?> s = annotation.get(CoreAnnotations.SentencesAnnotation.class);
+    if (s != null) {
+      sentences.addAndGet(s.size());
+    }
+    if (allocatedBytes > 0) {
+      allocated.addAndGet(allocatedBytes);
+    }
+  }
+
+  /** Latencies in nanoseconds. */
+  public ConcurrentHistogram latency() {
+    return latency;
+  }
+
+  @Override
+  public String getAnnotator() {
+    return name;
+  }
+
+  @Override
+  public long getDocuments() {
+    return latency.count();
+  }
+
+  @Override
+  public long getTokens() {
+    return tokens.get();
+  }
+
+  @Override
+  public long getSentences() {
+    return sentences.get();
+  }
+
+  @Override
+  public double getTotalMillis() {
+    return latency.sum() / NANOS_PER_MILLI;
+  }
+
+  @Override
+  public double getMeanMillis() {
+    return latency.mean() / NANOS_PER_MILLI;
+  }
+
+  @Override
+  public double getP50Millis() {
+    return latency.percentile(50) / NANOS_PER_MILLI;
+  }
+
+  @Override
+  public double getP90Millis() {
+    return latency.percentile(90) / NANOS_PER_MILLI;
+  }
+
+  @Override
+  public double getP99Millis() {
+    return latency.percentile(99) / NANOS_PER_MILLI;
+  }
+
+  @Override
+  public double getMaxMillis() {
+    return latency.max() / NANOS_PER_MILLI;
+  }
+
+  @Override
+  public double getTokensPerSecond() {
+    return perSecond(tokens.get());
+  }
+
+  @Override
+  public double getSentencesPerSecond() {
+    return perSecond(sentences.get());
+  }
+
+  private double perSecond(long n) {
+    long nanos = latency.sum();
+    return nanos == 0 ? 0.0 : n * 1e9 / nanos;
+  }
+
+  @Override
+  public long getAllocatedBytes() {
+    return allocated.get();
+  }
+
+  @Override
+  public long getAllocatedBytesPerDocument() {
+    long n = latency.count();
+    return n == 0 ? 0 : allocated.get() / n;
+  }
+
+  @Override
+  public void reset() {
+    latency.reset();
+    tokens.set(0);
+    sentences.set(0);
+    allocated.set(0);
+  }
+
+  @Override
+  public String toString() {
+    return String.format("%s: docs=%d mean=%.1fms p50=%.1fms p90=%.1fms p99=%.1fms max=%.1fms tokens/s=%.0f sentences/s=%.1f alloc/doc=%dKB",
+        name, getDocuments(), getMeanMillis(), getP50Millis(), getP90Millis(), getP99Millis(), getMaxMillis(),
+        getTokensPerSecond(), getSentencesPerSecond(), getAllocatedBytesPerDocument() / 1024);
+  }
+
+}
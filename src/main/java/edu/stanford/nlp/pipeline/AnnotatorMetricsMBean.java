@@ -0,0 +1,38 @@
+package edu.stanford.nlp.pipeline;
+
+/**
+ * What {@link AnnotatorMetrics} export over JMX.
+ */
+public interface AnnotatorMetricsMBean {
+
+  public String getAnnotator();
+
+  public long getDocuments();
+
+  public long getTokens();
+
+  public long getSentences();
+
+  public double getTotalMillis();
+
+  public double getMeanMillis();
+
+  public double getP50Millis();
+
+  public double getP90Millis();
+
+  public double getP99Millis();
+
+  public double getMaxMillis();
+
+  public double getTokensPerSecond();
+
+  public double getSentencesPerSecond();
+
+  public long getAllocatedBytes();
+
+  public long getAllocatedBytesPerDocument();
+
+  public void reset();
+
+}
@@ -0,0 +1,936 @@
+package edu.stanford.nlp.pipeline;
+
+import java.io.*;
+import java.util.*;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import edu.stanford.nlp.dcoref.CorefChain;
+import edu.stanford.nlp.dcoref.CorefCoreAnnotations;
+import edu.stanford.nlp.dcoref.Dictionaries;
+import edu.stanford.nlp.io.RuntimeIOException;
+import edu.stanford.nlp.ling.CoreAnnotations;
+import edu.stanford.nlp.ling.CoreLabel;
+import edu.stanford.nlp.ling.IndexedWord;
+import edu.stanford.nlp.ling.LabelFactory;
+import edu.stanford.nlp.semgraph.SemanticGraph;
+import edu.stanford.nlp.semgraph.SemanticGraphCoreAnnotations;
+import edu.stanford.nlp.semgraph.SemanticGraphEdge;
+import edu.stanford.nlp.trees.GrammaticalRelation;
+import edu.stanford.nlp.trees.LabeledScoredTreeFactory;
+import edu.stanford.nlp.trees.Tree;
+import edu.stanford.nlp.trees.TreeCoreAnnotations;
+import edu.stanford.nlp.trees.TreeFactory;
+import edu.stanford.nlp.util.*;
+
+/**
+ * Serializes Annotation objects in a compact binary format, for caching the
+ * output of a pipeline on disk.  Documents are written and read much faster
+ * than with Java serialization or the text format of
+ * {@link CustomAnnotationSerializer}, and take a fraction of the space.
+ * <p>
+ * A stream starts with {@link #MAGIC} and {@link #VERSION}, followed by
+ * any number of documents, each of which can be read in turn by
+ * {@link #read} or {@link #documents}.  Numbers are written as varints,
+ * character offsets as the (zigzag encoded) distance from the previous
+ * offset, and strings other than the document text through a string table:
+ * the first time a string occurs in a document it is written out in full,
+ * and after that as its number in the table.  Parse trees are written in
+ * preorder as labels and numbers of children, and dependency graphs as
+ * their nodes, edges between node numbers, and roots.
+ * <p>
+ * What is saved is fixed: the text and id of the document; its sentences,
+ * with their offsets, tokens, parse tree and the three kinds of dependency
+ * graph; and its coref chains and coref graph.  Of each token, its text,
+ * value, original text, lemma, part of speech, named entity tag and
+ * normalized tag, whitespace before and after, character offsets, index
+ * and antecedent are saved.  Other annotations are dropped.  On reading,
+ * the tokens of the sentences are also put together as the tokens of the
+ * document.
+ * <p>
+ * The serializer can be used by {@link StanfordCoreNLP} through its
+ * <code>serializer</code> property; <code>serializer.compress</code>
+ * gzips the stream as well.
+ */
+public class BinaryAnnotationSerializer extends AnnotationSerializer {
+
+  /** Leading bytes of a stream written by this serializer: "ANNB". */
+  public static final int MAGIC = 0x414e4e42;
+  public static final int VERSION = 1;
+
+  // what a document has
+  private static final int DOC_TEXT = 1;
+  private static final int DOC_ID = 1 << 1;
+  private static final int DOC_SENTENCES = 1 << 2;
+  private static final int DOC_TOKENS = 1 << 3;
+  private static final int DOC_COREF_CHAINS = 1 << 4;
+  private static final int DOC_COREF_GRAPH = 1 << 5;
+
+  // what a sentence has
+  private static final int SENT_CHAR_OFFSETS = 1;
+  private static final int SENT_TOKEN_OFFSETS = 1 << 1;
+  private static final int SENT_INDEX = 1 << 2;
+  private static final int SENT_TREE = 1 << 3;
+  private static final int SENT_COLLAPSED_DEPS = 1 << 4;
+  private static final int SENT_BASIC_DEPS = 1 << 5;
+  private static final int SENT_CC_DEPS = 1 << 6;
+
+  // what a token has
+  private static final int TOKEN_TEXT = 1;
+  private static final int TOKEN_VALUE = 1 << 1;
+  private static final int TOKEN_ORIGINAL_TEXT = 1 << 2;
+  private static final int TOKEN_LEMMA = 1 << 3;
+  private static final int TOKEN_POS = 1 << 4;
+  private static final int TOKEN_NER = 1 << 5;
+  private static final int TOKEN_NORMALIZED_NER = 1 << 6;
+  private static final int TOKEN_BEFORE = 1 << 7;
+  private static final int TOKEN_AFTER = 1 << 8;
+  private static final int TOKEN_BEGIN = 1 << 9;
+  private static final int TOKEN_END = 1 << 10;
+  private static final int TOKEN_INDEX = 1 << 11;
+  private static final int TOKEN_SENTENCE_INDEX = 1 << 12;
+  private static final int TOKEN_ANTECEDENT = 1 << 13;
+
+  private final boolean compress;
+
+  public BinaryAnnotationSerializer() {
+    this(false);
+  }
+
+  public BinaryAnnotationSerializer(boolean compress) {
+    this.compress = compress;
+  }
+
+  /** Constructor used by {@link StanfordCoreNLP}, which reads <code>name.compress</code>. */
+  public BinaryAnnotationSerializer(String name, Properties props) {
+    this(PropertiesUtils.getBool(props, name + ".compress", false));
+  }
+
+
+  /**
+   * The stream documents are written to, which also keeps the string table
+   * of the document being written.  It does its own buffering, as most of
+   * what it writes is a byte or two at a time.
+   */
+  private static class Output extends FilterOutputStream {
+
+    private final byte[] buffer = new byte[1 << 16];
+    private int count; // = 0;
+    private final Map<String, Integer> strings = Generics.newHashMap();
+    private int lastOffset; // = 0;
+
+    Output(OutputStream os) {
+      super(os);
+    }
+
+    void startDocument() {
+      strings.clear();
+      lastOffset = 0;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+      if (count == buffer.length) {
+        drain();
+      }
+      buffer[count++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      if (len > buffer.length - count) {
+        drain();
+        if (len > buffer.length) {
+          out.write(b, off, len);
+          return;
+        }
+      }
+      System.arraycopy(b, off, buffer, count, len);
+      count += len;
+    }
+
+    private void drain() throws IOException {
+      if (count > 0) {
+        out.write(buffer, 0, count);
+        count = 0;
+      }
+    }
+
+    @Override
+    public void flush() throws IOException {
+      drain();
+      out.flush();
+    }
+
+    void writeInt(int v) throws IOException {
+      write(v >>> 24);
+      write(v >>> 16);
+      write(v >>> 8);
+      write(v);
+    }
+
+    void writeBoolean(boolean b) throws IOException {
+      write(b ? 1 : 0);
+    }
+
+    void writeVarint(int v) throws IOException {
+      while ((v & ~0x7F) != 0) {
+        write((v & 0x7F) | 0x80);
+        v >>>= 7;
+      }
+      write(v);
+    }
+
+    /** Zigzag encodes v first, so that small negative numbers stay short. */
+    void writeSignedVarint(int v) throws IOException {
+      writeVarint((v << 1) ^ (v >> 31));
+    }
+
+    /** A character offset, as the distance from the last one written. */
+    void writeOffset(int offset) throws IOException {
+      writeSignedVarint(offset - lastOffset);
+      lastOffset = offset;
+    }
+
+    /** 0 for null, else the length of the UTF-8 bytes plus one, then the bytes. */
+    void writeString(String s) throws IOException {
+      if (s == null) {
+        writeVarint(0);
+        return;
+      }
+      byte[] bytes = s.getBytes("UTF-8");
+      writeVarint(bytes.length + 1);
+      write(bytes, 0, bytes.length);
+    }
+
+    /**
+     * 0 for null, 1 followed by the string the first time it occurs, and its
+     * number in the string table plus 2 after that.
+     */
+    void writeTableString(String s) throws IOException {
+      if (s == null) {
+        writeVarint(0);
+        return;
+      }
+      Integer n = strings.get(s);
+      if (n != null) {
+        writeVarint(n + 2);
+      } else {
+        strings.put(s, strings.size());
+        writeVarint(1);
+        writeString(s);
+      }
+    }
+
+  } // end class Output
+
+
+  /** The stream documents are read from, the mirror image of Output. */
+  private static class Input extends FilterInputStream {
+
+    private final byte[] buffer = new byte[1 << 16];
+    private int pos; // = 0;
+    private int count; // = 0;
+    private final List<String> strings = new ArrayList<String>();
+    private int lastOffset; // = 0;
+
+    Input(InputStream is) {
+      super(is);
+    }
+
+    void startDocument() {
+      strings.clear();
+      lastOffset = 0;
+    }
+
+    /** Refills the buffer, returning false at the end of the stream. */
+    private boolean fill() throws IOException {
+      pos = 0;
+      count = 0;
+      int n;
+      do {
+        n = in.read(buffer, 0, buffer.length);
+      } while (n == 0);
+      if (n < 0) {
+        return false;
+      }
+      count = n;
+      return true;
+    }
+
+    /** Whether the stream has no more documents. */
+    boolean atEnd() throws IOException {
+      return pos == count && ! fill();
+    }
+
+    @Override
+    public int read() throws IOException {
+      if (pos == count && ! fill()) {
+        return -1;
+      }
+      return buffer[pos++] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      if (len == 0) {
+        return 0;
+      }
+      if (pos == count && ! fill()) {
+        return -1;
+      }
+      int n = Math.min(len, count - pos);
+      System.arraycopy(buffer, pos, b, off, n);
+      pos += n;
+      return n;
+    }
+
+    @Override
+    public int available() throws IOException {
+      return (count - pos) + in.available();
+    }
+
+    @Override
+    public boolean markSupported() {
+      return false;
+    }
+
+    int readByte() throws IOException {
+      if (pos == count && ! fill()) {
+        throw new EOFException();
+      }
+      return buffer[pos++] & 0xFF;
+    }
+
+    void readFully(byte[] b, int off, int len) throws IOException {
+      while (len > 0) {
+        int n = read(b, off, len);
+        if (n < 0) {
+          throw new EOFException();
+        }
+        off += n;
+        len -= n;
+      }
+    }
+
+    int readInt() throws IOException {
+      return (readByte() << 24) | (readByte() << 16) | (readByte() << 8) | readByte();
+    }
+
+    boolean readBoolean() throws IOException {
+      return readByte() != 0;
+    }
+
+    int readVarint() throws IOException {
+      int v = 0;
+      for (int shift = 0; ; shift += 7) {
+        int b = readByte();
+        v |= (b & 0x7F) << shift;
+        if ((b & 0x80) == 0) {
+          return v;
+        }
+        if (shift > 28) {
+          throw new StreamCorruptedException("Varint too long");
+        }
+      }
+    }
+
+    int readSignedVarint() throws IOException {
+      int v = readVarint();
+      return (v >>> 1) ^ -(v & 1);
+    }
+
+    int readOffset() throws IOException {
+      lastOffset += readSignedVarint();
+      return lastOffset;
+    }
+
+    String readString() throws IOException {
+      int n = readVarint();
+      if (n == 0) {
+        return null;
+      }
+      n--;
+      if (n <= count - pos) {
+        String s = new String(buffer, pos, n, "UTF-8");
+        pos += n;
+        return s;
+      }
+      byte[] bytes = new byte[n];
+      readFully(bytes, 0, n);
+      return new String(bytes, "UTF-8");
+    }
+
+    String readTableString() throws IOException {
+      int n = readVarint();
+      if (n == 0) {
+        return null;
+      } else if (n == 1) {
+        String s = readString();
+        strings.add(s);
+        return s;
+      }
+      return strings.get(n - 2);
+    }
+
+  } // end class Input
+
+
+  private Output open(OutputStream os) throws IOException {
+    if (os instanceof Output) {
+      return (Output) os;
+    }
+    if (compress && !(os instanceof GZIPOutputStream)) {
+      os = new GZIPOutputStream(os);
+    }
+    Output out = new Output(os);
+    out.writeInt(MAGIC);
+    out.writeInt(VERSION);
+    return out;
+  }
+
+  private Input open(InputStream is) throws IOException {
+    if (is instanceof Input) {
+      return (Input) is;
+    }
+    if (compress && !(is instanceof GZIPInputStream)) {
+      is = new GZIPInputStream(is);
+    }
+    Input in = new Input(is);
+    int magic = in.readInt();
+    if (magic != MAGIC) {
+      throw new StreamCorruptedException("Not a binary annotation stream: magic " + Integer.toHexString(magic));
+    }
+    int version = in.readInt();
+    if (version != VERSION) {
+      throw new StreamCorruptedException("Unsupported binary annotation version " + version);
+    }
+    return in;
+  }
+
+  @Override
+  public OutputStream write(Annotation corpus, OutputStream os) throws IOException {
+    Output out = open(os);
+    out.startDocument();
+
+    String text = corpus.get(CoreAnnotations.TextAnnotation.class);
+    String docId = corpus.get(CoreAnnotations.DocIDAnnotation.class);
+    List<CoreMap> sentences = corpus.get(CoreAnnotations.SentencesAnnotation.class);
+    List<CoreLabel> tokens = corpus.get(CoreAnnotations.TokensAnnotation.class);
+    Map<Integer, CorefChain> chains = corpus.get(CorefCoreAnnotations.CorefChainAnnotation.class);
+    List<Pair<IntTuple, IntTuple>> corefGraph = corpus.get(CorefCoreAnnotations.CorefGraphAnnotation.class);
+
+    int flags = 0;
+    if (text != null) flags |= DOC_TEXT;
+    if (docId != null) flags |= DOC_ID;
+    if (sentences != null) flags |= DOC_SENTENCES;
+    // the tokens of the document are those of its sentences, unless it has none
+    else if (tokens != null) flags |= DOC_TOKENS;
+    if (chains != null) flags |= DOC_COREF_CHAINS;
+    if (corefGraph != null) flags |= DOC_COREF_GRAPH;
+    out.writeVarint(flags);
+
+    if (text != null) out.writeString(text);
+    if (docId != null) out.writeTableString(docId);
+    if (sentences != null) {
+      out.writeVarint(sentences.size());
+      for (CoreMap sentence : sentences) {
+        writeSentence(sentence, out);
+      }
+    } else if (tokens != null) {
+      writeTokens(tokens, out);
+    }
+    if (chains != null) writeCorefChains(chains, out);
+    if (corefGraph != null) {
+      out.writeVarint(corefGraph.size());
+      for (Pair<IntTuple, IntTuple> arc : corefGraph) {
+        out.writeVarint(arc.first.get(0));
+        out.writeVarint(arc.first.get(1));
+        out.writeVarint(arc.second.get(0));
+        out.writeVarint(arc.second.get(1));
+      }
+    }
+    out.flush();
+    return out;
+  }
+
+  @Override
+  public Pair<Annotation, InputStream> read(InputStream is) throws IOException {
+    Input in = open(is);
+    in.startDocument();
+
+    int flags = in.readVarint();
+    String text = ((flags & DOC_TEXT) != 0) ? in.readString() : null;
+    Annotation doc = new Annotation(text == null ? "" : text);
+    if ((flags & DOC_ID) != 0) {
+      doc.set(CoreAnnotations.DocIDAnnotation.class, in.readTableString());
+    }
+    if ((flags & DOC_SENTENCES) != 0) {
+      int numSentences = in.readVarint();
+      List<CoreMap> sentences = new ArrayList<CoreMap>(numSentences);
+      List<CoreLabel> tokens = new ArrayList<CoreLabel>();
+      for (int i = 0; i < numSentences; i++) {
+        sentences.add(readSentence(in, text, i, tokens));
+      }
+      doc.set(CoreAnnotations.SentencesAnnotation.class, sentences);
+      doc.set(CoreAnnotations.TokensAnnotation.class, tokens);
+    } else if ((flags & DOC_TOKENS) != 0) {
+      doc.set(CoreAnnotations.TokensAnnotation.class, readTokens(in, -1));
+    }
+    if ((flags & DOC_COREF_CHAINS) != 0) {
+      doc.set(CorefCoreAnnotations.CorefChainAnnotation.class, readCorefChains(in));
+    }
+    if ((flags & DOC_COREF_GRAPH) != 0) {
+      int numArcs = in.readVarint();
+      List<Pair<IntTuple, IntTuple>> corefGraph = new ArrayList<Pair<IntTuple, IntTuple>>(numArcs);
+      for (int i = 0; i < numArcs; i++) {
+        IntTuple src = new IntTuple(2);
+        IntTuple dst = new IntTuple(2);
+        src.set(0, in.readVarint());
+        src.set(1, in.readVarint());
+        dst.set(0, in.readVarint());
+        dst.set(1, in.readVarint());
+        corefGraph.add(new Pair<IntTuple, IntTuple>(src, dst));
+      }
+      doc.set(CorefCoreAnnotations.CorefGraphAnnotation.class, corefGraph);
+    }
+    return Pair.makePair(doc, (InputStream) in);
+  }
+
+  /**
+   * Reads the documents of a stream one at a time, as the iterator is
+   * advanced, so that a corpus need not fit in memory.  The stream is
+   * closed once the last document has been read.
+   */
+  public Iterable<Annotation> documents(final InputStream is) {
+    return new Iterable<Annotation>() {
+      @Override
+      public Iterator<Annotation> iterator() {
+        final Input in;
+        try {
+          in = open(is);
+        } catch (IOException e) {
+          throw new RuntimeIOException(e);
+        }
+        return new AbstractIterator<Annotation>() {
+          private boolean done; // = false;
+
+          @Override
+          public boolean hasNext() {
+            if (done) {
+              return false;
+            }
+            try {
+              if (in.atEnd()) {
+                done = true;
+                in.close();
+              }
+            } catch (IOException e) {
+              throw new RuntimeIOException(e);
+            }
+            return !done;
+          }
+
+          @Override
+          public Annotation next() {
+            if (!hasNext()) {
+              throw new NoSuchElementException();
+            }
+            try {
+              return read(in).first();
+            } catch (IOException e) {
+              throw new RuntimeIOException(e);
+            }
+          }
+        };
+      }
+    };
+  }
+
+  private static void writeSentence(CoreMap sentence, Output out) throws IOException {
+    Integer begin = sentence.get(CoreAnnotations.CharacterOffsetBeginAnnotation.class);
+    Integer end = sentence.get(CoreAnnotations.CharacterOffsetEndAnnotation.class);
+    Integer tokenBegin = sentence.get(CoreAnnotations.TokenBeginAnnotation.class);
+    Integer tokenEnd = sentence.get(CoreAnnotations.TokenEndAnnotation.class);
+    Tree tree = sentence.get(TreeCoreAnnotations.TreeAnnotation.class);
+    SemanticGraph collapsedDeps = sentence.get(SemanticGraphCoreAnnotations.CollapsedDependenciesAnnotation.class);
+    SemanticGraph basicDeps = sentence.get(SemanticGraphCoreAnnotations.BasicDependenciesAnnotation.class);
+    SemanticGraph ccDeps = sentence.get(SemanticGraphCoreAnnotations.CollapsedCCProcessedDependenciesAnnotation.class);
+
+    int flags = 0;
+    if (begin != null && end != null) flags |= SENT_CHAR_OFFSETS;
+    if (tokenBegin != null && tokenEnd != null) flags |= SENT_TOKEN_OFFSETS;
+    if (sentence.containsKey(CoreAnnotations.SentenceIndexAnnotation.class)) flags |= SENT_INDEX;
+    if (tree != null) flags |= SENT_TREE;
+    if (collapsedDeps != null) flags |= SENT_COLLAPSED_DEPS;
+    if (basicDeps != null) flags |= SENT_BASIC_DEPS;
+    if (ccDeps != null) flags |= SENT_CC_DEPS;
+    out.writeVarint(flags);
+
+    if (begin != null && end != null) {
+      out.writeOffset(begin);
+      out.writeOffset(end);
+    }
+    List<CoreLabel> tokens = sentence.get(CoreAnnotations.TokensAnnotation.class);
+    writeTokens(tokens == null ? Collections.<CoreLabel>emptyList() : tokens, out);
+    if (tree != null) writeTree(tree, out);
+    if (collapsedDeps != null) writeGraph(collapsedDeps, out);
+    if (basicDeps != null) writeGraph(basicDeps, out);
+    if (ccDeps != null) writeGraph(ccDeps, out);
+  }
+
+  /**
+   * Reads a sentence, adding its tokens to those of the document.  Token
+   * offsets and the sentence index are those of the sentence in the
+   * document, so they are worked out rather than read.
+   */
+  private static CoreMap readSentence(Input in, String docText, int sentenceIndex,
+                                      List<CoreLabel> docTokens) throws IOException {
+    int flags = in.readVarint();
+    int begin = -1;
+    int end = -1;
+    if ((flags & SENT_CHAR_OFFSETS) != 0) {
+      begin = in.readOffset();
+      end = in.readOffset();
+    }
+    CoreMap sentence;
+    if (docText != null && begin >= 0 && begin <= end && end <= docText.length()) {
+      sentence = new Annotation(docText.substring(begin, end));
+    } else {
+      sentence = new ArrayCoreMap();
+    }
+    if (begin >= 0) {
+      sentence.set(CoreAnnotations.CharacterOffsetBeginAnnotation.class, begin);
+      sentence.set(CoreAnnotations.CharacterOffsetEndAnnotation.class, end);
+    }
+    if ((flags & SENT_INDEX) != 0) {
+      sentence.set(CoreAnnotations.SentenceIndexAnnotation.class, sentenceIndex);
+    }
+
+    List<CoreLabel> tokens = readTokens(in, sentenceIndex);
+    sentence.set(CoreAnnotations.TokensAnnotation.class, tokens);
+    if ((flags & SENT_TOKEN_OFFSETS) != 0) {
+      sentence.set(CoreAnnotations.TokenBeginAnnotation.class, docTokens.size());
+      sentence.set(CoreAnnotations.TokenEndAnnotation.class, docTokens.size() + tokens.size());
+    }
+    docTokens.addAll(tokens);
+
+    if ((flags & SENT_TREE) != 0) {
+      sentence.set(TreeCoreAnnotations.TreeAnnotation.class, readTree(in, new LabeledScoredTreeFactory(CoreLabel.factory())));
+    }
+    if ((flags & SENT_COLLAPSED_DEPS) != 0) {
+      sentence.set(SemanticGraphCoreAnnotations.CollapsedDependenciesAnnotation.class, readGraph(in, tokens));
+    }
+    if ((flags & SENT_BASIC_DEPS) != 0) {
+      sentence.set(SemanticGraphCoreAnnotations.BasicDependenciesAnnotation.class, readGraph(in, tokens));
+    }
+    if ((flags & SENT_CC_DEPS) != 0) {
+      sentence.set(SemanticGraphCoreAnnotations.CollapsedCCProcessedDependenciesAnnotation.class, readGraph(in, tokens));
+    }
+    return sentence;
+  }
+
+  private static void writeTokens(List<CoreLabel> tokens, Output out) throws IOException {
+    out.writeVarint(tokens.size());
+    for (CoreLabel token : tokens) {
+      String text = token.get(CoreAnnotations.TextAnnotation.class);
+      String value = token.get(CoreAnnotations.ValueAnnotation.class);
+      String originalText = token.get(CoreAnnotations.OriginalTextAnnotation.class);
+      String lemma = token.get(CoreAnnotations.LemmaAnnotation.class);
+      String pos = token.get(CoreAnnotations.PartOfSpeechAnnotation.class);
+      String ner = token.get(CoreAnnotations.NamedEntityTagAnnotation.class);
+      String normNer = token.get(CoreAnnotations.NormalizedNamedEntityTagAnnotation.class);
+      String before = token.get(CoreAnnotations.BeforeAnnotation.class);
+      String after = token.get(CoreAnnotations.AfterAnnotation.class);
+      Integer begin = token.get(CoreAnnotations.CharacterOffsetBeginAnnotation.class);
+      Integer end = token.get(CoreAnnotations.CharacterOffsetEndAnnotation.class);
+      Integer index = token.get(CoreAnnotations.IndexAnnotation.class);
+      String antecedent = token.get(CoreAnnotations.AntecedentAnnotation.class);
+
+      int flags = 0;
+      if (text != null) flags |= TOKEN_TEXT;
+      if (value != null) flags |= TOKEN_VALUE;
+      if (originalText != null) flags |= TOKEN_ORIGINAL_TEXT;
+      if (lemma != null) flags |= TOKEN_LEMMA;
+      if (pos != null) flags |= TOKEN_POS;
+      if (ner != null) flags |= TOKEN_NER;
+      if (normNer != null) flags |= TOKEN_NORMALIZED_NER;
+      if (before != null) flags |= TOKEN_BEFORE;
+      if (after != null) flags |= TOKEN_AFTER;
+      if (begin != null) flags |= TOKEN_BEGIN;
+      if (end != null) flags |= TOKEN_END;
+      if (index != null) flags |= TOKEN_INDEX;
+      if (token.containsKey(CoreAnnotations.SentenceIndexAnnotation.class)) flags |= TOKEN_SENTENCE_INDEX;
+      if (antecedent != null) flags |= TOKEN_ANTECEDENT;
+      out.writeVarint(flags);
+
+      if (text != null) out.writeTableString(text);
+      if (value != null) out.writeTableString(value);
+      if (originalText != null) out.writeTableString(originalText);
+      if (lemma != null) out.writeTableString(lemma);
+      if (pos != null) out.writeTableString(pos);
+      if (ner != null) out.writeTableString(ner);
+      if (normNer != null) out.writeTableString(normNer);
+      if (before != null) out.writeTableString(before);
+      if (after != null) out.writeTableString(after);
+      if (begin != null) out.writeOffset(begin);
+      if (end != null) out.writeOffset(end);
+      if (index != null) out.writeVarint(index);
+      if (antecedent != null) out.writeTableString(antecedent);
+    }
+  }
+
+  /** @param sentenceIndex The index of the sentence the tokens are in, or -1 if none */
+  private static List<CoreLabel> readTokens(Input in, int sentenceIndex) throws IOException {
+    int numTokens = in.readVarint();
+    List<CoreLabel> tokens = new ArrayList<CoreLabel>(numTokens);
+    for (int i = 0; i < numTokens; i++) {
+      int flags = in.readVarint();
+      CoreLabel token = new CoreLabel(Integer.bitCount(flags));
+      if ((flags & TOKEN_TEXT) != 0) token.set(CoreAnnotations.TextAnnotation.class, in.readTableString());
+      if ((flags & TOKEN_VALUE) != 0) token.set(CoreAnnotations.ValueAnnotation.class, in.readTableString());
+      if ((flags & TOKEN_ORIGINAL_TEXT) != 0) token.set(CoreAnnotations.OriginalTextAnnotation.class, in.readTableString());
+      if ((flags & TOKEN_LEMMA) != 0) token.set(CoreAnnotations.LemmaAnnotation.class, in.readTableString());
+      if ((flags & TOKEN_POS) != 0) token.set(CoreAnnotations.PartOfSpeechAnnotation.class, in.readTableString());
+      if ((flags & TOKEN_NER) != 0) token.set(CoreAnnotations.NamedEntityTagAnnotation.class, in.readTableString());
+      if ((flags & TOKEN_NORMALIZED_NER) != 0) token.set(CoreAnnotations.NormalizedNamedEntityTagAnnotation.class, in.readTableString());
+      if ((flags & TOKEN_BEFORE) != 0) token.set(CoreAnnotations.BeforeAnnotation.class, in.readTableString());
+      if ((flags & TOKEN_AFTER) != 0) token.set(CoreAnnotations.AfterAnnotation.class, in.readTableString());
+      if ((flags & TOKEN_BEGIN) != 0) token.set(CoreAnnotations.CharacterOffsetBeginAnnotation.class, in.readOffset());
+      if ((flags & TOKEN_END) != 0) token.set(CoreAnnotations.CharacterOffsetEndAnnotation.class, in.readOffset());
+      if ((flags & TOKEN_INDEX) != 0) token.set(CoreAnnotations.IndexAnnotation.class, in.readVarint());
+      if ((flags & TOKEN_SENTENCE_INDEX) != 0) token.set(CoreAnnotations.SentenceIndexAnnotation.class, sentenceIndex);
+      if ((flags & TOKEN_ANTECEDENT) != 0) token.set(CoreAnnotations.AntecedentAnnotation.class, in.readTableString());
+      tokens.add(token);
+    }
+    return tokens;
+  }
+
+  /** Preorder: each node's label, then its number of children, then the children. */
+  private static void writeTree(Tree tree, Output out) throws IOException {
+    out.writeTableString(tree.label() == null ? null : tree.label().value());
+    Tree[] kids = tree.children();
+    out.writeVarint(kids.length);
+    for (Tree kid : kids) {
+      writeTree(kid, out);
+    }
+  }
+
+  private static Tree readTree(Input in, TreeFactory tf) throws IOException {
+    String value = in.readTableString();
+    int numKids = in.readVarint();
+    LabelFactory lf = CoreLabel.factory();
+    if (numKids == 0) {
+      return tf.newLeaf(lf.newLabel(value));
+    }
+    List<Tree> kids = new ArrayList<Tree>(numKids);
+    for (int i = 0; i < numKids; i++) {
+      kids.add(readTree(in, tf));
+    }
+    return tf.newTreeNode(lf.newLabel(value), kids);
+  }
+
+  /**
+   * The document id and sentence index of the nodes, the nodes as token
+   * indices and copy numbers, the edges as relation names and node numbers,
+   * and the node numbers of the roots.
+   */
+  private static void writeGraph(SemanticGraph graph, Output out) throws IOException {
+    Set<IndexedWord> nodes = graph.vertexSet();
+    Map<IndexedWord, Integer> nodeNumbers = Generics.newHashMap();
+    String docId = null;
+    int sentenceIndex = -1;
+    if ( ! nodes.isEmpty()) {
+      IndexedWord first = nodes.iterator().next();
+      docId = first.get(CoreAnnotations.DocIDAnnotation.class);
+      Integer index = first.get(CoreAnnotations.SentenceIndexAnnotation.class);
+      if (index != null) sentenceIndex = index;
+    }
+    out.writeTableString(docId);
+    out.writeSignedVarint(sentenceIndex);
+
+    out.writeVarint(nodes.size());
+    for (IndexedWord node : nodes) {
+      nodeNumbers.put(node, nodeNumbers.size());
+      out.writeVarint(node.index());
+      Integer copy = node.get(CoreAnnotations.CopyAnnotation.class);
+      out.writeVarint(copy == null ? 0 : copy + 1);
+    }
+
+    out.writeVarint(graph.edgeCount());
+    for (SemanticGraphEdge edge : graph.edgeIterable()) {
+      out.writeTableString(edge.getRelation().toString());
+      out.writeVarint(nodeNumbers.get(edge.getSource()));
+      out.writeVarint(nodeNumbers.get(edge.getTarget()));
+      out.writeBoolean(edge.isExtra());
+    }
+
+    Collection<IndexedWord> roots = graph.getRoots();
+    out.writeVarint(roots.size());
+    for (IndexedWord root : roots) {
+      out.writeVarint(nodeNumbers.get(root));
+    }
+  }
+
+  private static SemanticGraph readGraph(Input in, List<CoreLabel> sentence) throws IOException {
+    SemanticGraph graph = new SemanticGraph();
+    String docId = in.readTableString();
+    if (docId == null) docId = "";
+    int sentenceIndex = in.readSignedVarint();
+
+    int numNodes = in.readVarint();
+    IndexedWord[] nodes = new IndexedWord[numNodes];
+    for (int i = 0; i < numNodes; i++) {
+      int index = in.readVarint();
+      int copy = in.readVarint();
+      // index starts at 1!
+      CoreLabel token = (index >= 1 && index <= sentence.size()) ? sentence.get(index - 1) : new CoreLabel();
+      IndexedWord word = new IndexedWord(docId, sentenceIndex, index, token);
+      word.set(CoreAnnotations.ValueAnnotation.class, word.get(CoreAnnotations.TextAnnotation.class));
+      if (copy > 0) {
+        word.set(CoreAnnotations.CopyAnnotation.class, copy - 1);
+      }
+      nodes[i] = word;
+      graph.addVertex(word);
+    }
+
+    int numEdges = in.readVarint();
+    // relations are looked up once per name; the lookup isn't thread-safe
+    Map<String, GrammaticalRelation> relations = Generics.newHashMap();
+    for (int i = 0; i < numEdges; i++) {
+      String dep = in.readTableString();
+      IndexedWord source = nodes[in.readVarint()];
+      IndexedWord target = nodes[in.readVarint()];
+      boolean isExtra = in.readBoolean();
+      GrammaticalRelation rel = relations.get(dep);
+      if (rel == null) {
+        synchronized (CustomAnnotationSerializer.LOCK) {
+          rel = GrammaticalRelation.valueOf(dep);
+        }
+        relations.put(dep, rel);
+      }
+      graph.addEdge(source, target, rel, 1.0, isExtra);
+    }
+
+    int numRoots = in.readVarint();
+    if (numRoots > 0) {
+      List<IndexedWord> roots = new ArrayList<IndexedWord>(numRoots);
+      for (int i = 0; i < numRoots; i++) {
+        roots.add(nodes[in.readVarint()]);
+      }
+      graph.setRoots(roots);
+    }
+    return graph;
+  }
+
+  private static void writeCorefChains(Map<Integer, CorefChain> chains, Output out) throws IOException {
+    out.writeVarint(chains.size());
+    for (Map.Entry<Integer, CorefChain> entry : chains.entrySet()) {
+      CorefChain chain = entry.getValue();
+      Map<IntPair, Set<CorefChain.CorefMention>> mentionMap = chain.getMentionMap();
+      out.writeSignedVarint(entry.getKey());
+      out.writeVarint(mentionMap.size());
+      for (Map.Entry<IntPair, Set<CorefChain.CorefMention>> mentions : mentionMap.entrySet()) {
+        out.writeSignedVarint(mentions.getKey().getSource());
+        out.writeSignedVarint(mentions.getKey().getTarget());
+        out.writeVarint(mentions.getValue().size());
+        for (CorefChain.CorefMention mention : mentions.getValue()) {
+          out.writeBoolean(mention == chain.getRepresentativeMention());
+          out.writeTableString(mention.mentionType == null ? null : mention.mentionType.name());
+          out.writeTableString(mention.number == null ? null : mention.number.name());
+          out.writeTableString(mention.gender == null ? null : mention.gender.name());
+          out.writeTableString(mention.animacy == null ? null : mention.animacy.name());
+          out.writeSignedVarint(mention.startIndex);
+          out.writeSignedVarint(mention.endIndex);
+          out.writeSignedVarint(mention.headIndex);
+          out.writeSignedVarint(mention.corefClusterID);
+          out.writeSignedVarint(mention.mentionID);
+          out.writeSignedVarint(mention.sentNum);
+          out.writeVarint(mention.position.length());
+          for (int i = 0; i < mention.position.length(); i++) {
+            out.writeSignedVarint(mention.position.get(i));
+          }
+          out.writeTableString(mention.mentionSpan);
+        }
+      }
+    }
+  }
+
+  private static Map<Integer, CorefChain> readCorefChains(Input in) throws IOException {
+    int numChains = in.readVarint();
+    Map<Integer, CorefChain> chains = Generics.newHashMap();
+    for (int c = 0; c < numChains; c++) {
+      int cid = in.readSignedVarint();
+      int numHeads = in.readVarint();
+      Map<IntPair, Set<CorefChain.CorefMention>> mentionMap = Generics.newHashMap();
+      CorefChain.CorefMention representative = null;
+      for (int h = 0; h < numHeads; h++) {
+        IntPair key = new IntPair(in.readSignedVarint(), in.readSignedVarint());
+        int numMentions = in.readVarint();
+        Set<CorefChain.CorefMention> mentionsWithThisHead = Generics.newHashSet();
+        for (int m = 0; m < numMentions; m++) {
+          boolean rep = in.readBoolean();
+          String mentionType = in.readTableString();
+          String number = in.readTableString();
+          String gender = in.readTableString();
+          String animacy = in.readTableString();
+          int startIndex = in.readSignedVarint();
+          int endIndex = in.readSignedVarint();
+          int headIndex = in.readSignedVarint();
+          int clusterID = in.readSignedVarint();
+          int mentionID = in.readSignedVarint();
+          int sentNum = in.readSignedVarint();
+          int[] posElems = new int[in.readVarint()];
+          for (int i = 0; i < posElems.length; i++) {
+            posElems[i] = in.readSignedVarint();
+          }
+          String span = in.readTableString();
+          CorefChain.CorefMention mention = new CorefChain.CorefMention(
+                  mentionType == null ? null : Dictionaries.MentionType.valueOf(mentionType),
+                  number == null ? null : Dictionaries.Number.valueOf(number),
+                  gender == null ? null : Dictionaries.Gender.valueOf(gender),
+                  animacy == null ? null : Dictionaries.Animacy.valueOf(animacy),
+                  startIndex,
+                  endIndex,
+                  headIndex,
+                  clusterID,
+                  mentionID,
+                  sentNum,
+                  new IntTuple(posElems),
+                  span);
+          mentionsWithThisHead.add(mention);
+          if (rep) representative = mention;
+        }
+        mentionMap.put(key, mentionsWithThisHead);
+      }
+      chains.put(cid, new CorefChain(cid, mentionMap, representative));
+    }
+    return chains;
+  }
+
+  public static void main(String[] args) throws Exception {
+    Properties props = StringUtils.argsToProperties(args);
+    String file = props.getProperty("file");
+    String loadFile = props.getProperty("loadFile");
+    if (loadFile != null && ! loadFile.equals("")) {
+      BinaryAnnotationSerializer ser = new BinaryAnnotationSerializer(false);
+      InputStream is = new FileInputStream(loadFile);
+      for (Annotation anno : ser.documents(is)) {
+        System.out.println(anno.toShorterString(new String[0]));
+      }
+    } else if (file != null && ! file.equals("")) {
+      StanfordCoreNLP pipeline = new StanfordCoreNLP(props);
+      String text = edu.stanford.nlp.io.IOUtils.slurpFile(file);
+      Annotation doc = new Annotation(text);
+      pipeline.annotate(doc);
+
+      BinaryAnnotationSerializer ser = new BinaryAnnotationSerializer(false);
+      OutputStream os = new FileOutputStream(file + ".bin");
+      ser.write(doc, os).close();
+      System.err.println("Serialized annotation saved in " + file + ".bin");
+    } else {
+      System.err.println("usage: BinaryAnnotationSerializer [-file file] [-loadFile file]");
+    }
+  }
+
+}
@@ -1,5 +1,6 @@
 package edu.stanford.nlp.pipeline;
 
+import java.io.StringReader;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
@@ -12,8 +13,12 @@ import edu.stanford.nlp.ling.CoreLabel;
 import edu.stanford.nlp.ling.ChineseCoreAnnotations;
 import edu.stanford.nlp.ling.CoreAnnotations;
 import edu.stanford.nlp.util.CoreMap;
+import edu.stanford.nlp.util.ModelRegistry;
 import edu.stanford.nlp.util.PropertiesUtils;
 import edu.stanford.nlp.util.Timing;
+import edu.stanford.nlp.util.concurrent.ThreadsafeProcessor;
+import edu.stanford.nlp.util.concurrent.WorkerPool;
+import edu.stanford.nlp.wordseg.StreamingSegmenter;
 
 /**
  * This class will add Segmentation information to an
@@ -22,6 +27,9 @@ import edu.stanford.nlp.util.Timing;
  * and also corresponding character level information is under Annotation.WORDS_KEY
  * and addes segmentation information to each CoreLabel,
  * in the CoreLabel.CH_SEG_KEY field.
+ * With nthreads other than 1, sentences are segmented in parallel, as are
+ * the chunks of a text chunked by maxChunkLength.  The number of threads
+ * never changes the segmentation.
  *
  * @author Pi-Chuan Chang
  */
@@ -32,6 +40,11 @@ public class ChineseSegmenterAnnotator implements Annotator {
   private Timing timer = new Timing();
   private static long millisecondsAnnotating = 0;
   private boolean VERBOSE = false;
+  /** Texts longer than this are segmented in bounded chunks by a {@link StreamingSegmenter}; 0 disables chunking. */
+  private int maxChunkLength = 0;
+  /** Whether the model comes from the {@link ModelRegistry}, shared with other annotators loading it with the same properties. */
+  private boolean sharedModel = true;
+  private int nThreads = 1;
   
   private static final String DEFAULT_SEG_LOC =
     "/u/nlp/data/gale/segtool/stanford-seg/classifiers-2010/05202008-ctb6.processed-chris6.lex.gz";
@@ -72,11 +85,20 @@ public class ChineseSegmenterAnnotator implements Annotator {
         String modelKey = key.substring(name.length() + 1);
         if (modelKey.equals("model")) {
           model = props.getProperty(key);
+        } else if (modelKey.equals("maxChunkLength")) {
+          maxChunkLength = Integer.parseInt(props.getProperty(key));
+        } else if (modelKey.equals("sharedModel")) {
+          sharedModel = Boolean.parseBoolean(props.getProperty(key));
+        } else if (modelKey.equals("nthreads")) {
+          nThreads = Integer.parseInt(props.getProperty(key));
         } else {
           modelProps.setProperty(modelKey, props.getProperty(key));
         }
       }
     }
+    if ( ! props.containsKey(name + ".nthreads")) {
+      nThreads = PropertiesUtils.getInt(props, "nthreads", 1);
+    }
     this.VERBOSE = PropertiesUtils.getBool(props, name + ".verbose", true);
     if (model == null) {
       throw new RuntimeException("Expected a property " + name + ".model");
@@ -101,7 +123,11 @@ public class ChineseSegmenterAnnotator implements Annotator {
       System.err.print("Loading Segmentation Model ["+segLoc+"]...");
     }
     try {
-      segmenter = CRFClassifier.getClassifier(segLoc, props);
+      if (sharedModel) {
+        segmenter = CRFClassifier.getSharedClassifier(segLoc, props);
+      } else {
+        segmenter = CRFClassifier.getClassifier(segLoc, props);
+      }
     } catch (RuntimeException e) {
       throw e;
     } catch (Exception e) {
@@ -119,8 +145,12 @@ public class ChineseSegmenterAnnotator implements Annotator {
     }
     List<CoreMap> sentences = annotation.get(CoreAnnotations.SentencesAnnotation.class);
     if (sentences != null) {
-      for (CoreMap sentence : sentences) {
-        doOneSentence(sentence);
+      if (nThreads == 1) {
+        for (CoreMap sentence : sentences) {
+          doOneSentence(sentence);
+        }
+      } else {
+        WorkerPool.current().map(sentences, new SegmenterProcessor(), nThreads);
       }
     } else {
       doOneSentence(annotation);
@@ -136,6 +166,31 @@ public class ChineseSegmenterAnnotator implements Annotator {
     runSegmentation(annotation);
   }
 
+  private class SegmenterProcessor implements ThreadsafeProcessor<CoreMap, CoreMap> {
+    @Override
+    public CoreMap process(CoreMap sentence) {
+      doOneSentence(sentence);
+      return sentence;
+    }
+
+    @Override
+    public ThreadsafeProcessor<CoreMap, CoreMap> newInstance() {
+      return this;
+    }
+  }
+
+  private class ChunkProcessor implements ThreadsafeProcessor<String, List<String>> {
+    @Override
+    public List<String> process(String chunk) {
+      return StreamingSegmenter.segmentChunk(segmenter, chunk);
+    }
+
+    @Override
+    public ThreadsafeProcessor<String, List<String>> newInstance() {
+      return this;
+    }
+  }
+
   public void splitCharacters(CoreMap annotation) {
     String origText = annotation.get(CoreAnnotations.TextAnnotation.class);
     
@@ -184,7 +239,24 @@ public class ChineseSegmenterAnnotator implements Annotator {
     List<CoreLabel> tokens = new ArrayList<CoreLabel>();
     annotation.set(CoreAnnotations.TokensAnnotation.class, tokens);
 
-    List<String> words = segmenter.segmentString(text);
+    List<String> words;
+    if (maxChunkLength > 0 && text.length() > maxChunkLength) {
+      words = new ArrayList<String>();
+      if (nThreads != 1) {
+        // the same chunks the StreamingSegmenter cuts, segmented in parallel
+        List<String> chunks = StreamingSegmenter.chunks(text, maxChunkLength);
+        for (List<String> chunkWords : WorkerPool.current().map(chunks, new ChunkProcessor(), nThreads)) {
+          words.addAll(chunkWords);
+        }
+      } else {
+        StreamingSegmenter stream = new StreamingSegmenter(segmenter, new StringReader(text), maxChunkLength);
+        while (stream.hasNext()) {
+          words.add(stream.next());
+        }
+      }
+    } else {
+      words = segmenter.segmentString(text);
+    }
     if (VERBOSE) {
       System.err.println(text);
       System.err.println("--->");
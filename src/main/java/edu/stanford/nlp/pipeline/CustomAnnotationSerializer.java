@@ -48,7 +48,8 @@ public class CustomAnnotationSerializer extends AnnotationSerializer {
   }
 
 
-  private static final Object LOCK = new Object();
+  // GrammaticalRelation.valueOf() isn't thread-safe; BinaryAnnotationSerializer locks this too
+  static final Object LOCK = new Object();
 
   static SemanticGraph convertIntermediateGraph(IntermediateSemanticGraph ig, List<CoreLabel> sentence) {
     SemanticGraph graph = new SemanticGraph();
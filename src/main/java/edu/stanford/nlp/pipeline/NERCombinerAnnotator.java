@@ -9,6 +9,8 @@ import edu.stanford.nlp.ling.CoreLabel;
 import edu.stanford.nlp.util.CoreMap;
 import edu.stanford.nlp.util.PropertiesUtils;
 import edu.stanford.nlp.util.Timing;
+import edu.stanford.nlp.util.concurrent.ThreadsafeProcessor;
+import edu.stanford.nlp.util.concurrent.WorkerPool;
 
 import java.io.FileNotFoundException;
 import java.io.IOException;
@@ -24,6 +26,9 @@ import java.util.*;
  * and adds NER information to each CoreLabel,
  * in the CoreLabel.NER_KEY field.  It uses
  * the NERClassifierCombiner class in the ie package.
+ * With nthreads other than 1, the base classifiers run on the sentences of a
+ * document in parallel; the numeric classifiers, which keep state across a
+ * document, then run on the sentences in order.
  *
  * @author Jenny Finkel
  * @author Mihai Surdeanu (modified it to work with the new NERClassifierCombiner)
@@ -35,6 +40,8 @@ public class NERCombinerAnnotator implements Annotator {
   private final Timing timer = new Timing();
   private boolean VERBOSE = true;
 
+  private final int nThreads;
+
   public NERCombinerAnnotator() throws IOException, ClassNotFoundException {
     this(true);
   }
@@ -53,6 +60,7 @@ public class NERCombinerAnnotator implements Annotator {
 
   public NERCombinerAnnotator(boolean verbose) throws IOException, ClassNotFoundException {
     VERBOSE = verbose;
+    nThreads = 1;
     timerStart("Loading NER combiner model...");
     ner = new NERClassifierCombiner(new Properties());
     timerStop();
@@ -61,18 +69,25 @@ public class NERCombinerAnnotator implements Annotator {
   public NERCombinerAnnotator(boolean verbose, String... classifiers)
   throws IOException, ClassNotFoundException {
     VERBOSE = verbose;
+    nThreads = 1;
     timerStart("Loading NER combiner model...");
     ner = new NERClassifierCombiner(classifiers);
     timerStop();
   }
 
   public NERCombinerAnnotator(NERClassifierCombiner ner, boolean verbose) {
+    this(ner, verbose, 1);
+  }
+
+  public NERCombinerAnnotator(NERClassifierCombiner ner, boolean verbose, int nThreads) {
     VERBOSE = verbose;
     this.ner = ner;
+    this.nThreads = nThreads;
   }
 
   public NERCombinerAnnotator(String name, Properties properties) {
-    this(createNERClassifierCombiner(name, properties), false);
+    this(createNERClassifierCombiner(name, properties), false,
+         PropertiesUtils.getInt(properties, ((name != null) ? name : "ner") + ".nthreads", PropertiesUtils.getInt(properties, "nthreads", 1)));
   }
 
   private final static NERClassifierCombiner createNERClassifierCombiner(String name, Properties properties) {
@@ -114,9 +129,19 @@ public class NERCombinerAnnotator implements Annotator {
 public void annotate(Annotation annotation) {
     timerStart("Adding NER Combiner annotation...");
     if (annotation.containsKey(CoreAnnotations.SentencesAnnotation.class)) {
-      // classify tokens for each sentence
-      for (CoreMap sentence: annotation.get(CoreAnnotations.SentencesAnnotation.class)) {
-        doOneSentence(annotation, sentence);
+      List<CoreMap> sentences = annotation.get(CoreAnnotations.SentencesAnnotation.class);
+      if (nThreads == 1) {
+        // classify tokens for each sentence
+        for (CoreMap sentence: sentences) {
+          doOneSentence(annotation, sentence);
+        }
+      } else {
+        List<List<CoreLabel>> outputs = WorkerPool.current().map(sentences, new BaseClassifierProcessor(), nThreads);
+        for (int i = 0, sz = sentences.size(); i < sz; i++) {
+          CoreMap sentence = sentences.get(i);
+          List<CoreLabel> output = this.ner.classifyWithNumericClassifiers(outputs.get(i), annotation, sentence);
+          setNamedEntityTags(sentence, output);
+        }
       }
       this.ner.finalizeAnnotation(annotation);
     } else {
@@ -128,6 +153,27 @@ public void annotate(Annotation annotation) {
   public CoreMap doOneSentence(Annotation annotation, CoreMap sentence) {
     List<CoreLabel> tokens = sentence.get(CoreAnnotations.TokensAnnotation.class);
     List<CoreLabel> output = this.ner.classifySentenceWithGlobalInformation(tokens, annotation, sentence);
+    setNamedEntityTags(sentence, output);
+    return sentence;
+  }
+
+  /** Runs the base classifiers on a sentence's tokens. */
+  private class BaseClassifierProcessor implements ThreadsafeProcessor<CoreMap, List<CoreLabel>> {
+    @Override
+    public List<CoreLabel> process(CoreMap sentence) {
+      List<CoreLabel> tokens = sentence.get(CoreAnnotations.TokensAnnotation.class);
+      return ner.classifyWithBaseClassifiers(ner.copySentence(tokens));
+    }
+
+    @Override
+    public ThreadsafeProcessor<CoreMap, List<CoreLabel>> newInstance() {
+      return this;
+    }
+  }
+
+  /** Copies the classifier output onto the sentence's tokens. */
+  private void setNamedEntityTags(CoreMap sentence, List<CoreLabel> output) {
+    List<CoreLabel> tokens = sentence.get(CoreAnnotations.TokensAnnotation.class);
     if (VERBOSE) {
       boolean first = true;
       System.err.print("NERCombinerAnnotator direct output: [");
@@ -156,7 +202,6 @@ public void annotate(Annotation annotation) {
       }
       System.err.println(']');
     }
-    return sentence;
   }
 
   @Override
@@ -13,8 +13,8 @@ import edu.stanford.nlp.tagger.maxent.MaxentTagger;
 import edu.stanford.nlp.util.CoreMap;
 import edu.stanford.nlp.util.PropertiesUtils;
 import edu.stanford.nlp.util.Timing;
-import edu.stanford.nlp.util.concurrent.MulticoreWrapper;
 import edu.stanford.nlp.util.concurrent.ThreadsafeProcessor;
+import edu.stanford.nlp.util.concurrent.WorkerPool;
 
 /**
  * Wrapper for the maxent part of speech tagger.
@@ -110,17 +110,7 @@ public class POSTaggerAnnotator implements Annotator {
           doOneSentence(sentence);
         }
       } else {
-        MulticoreWrapper<CoreMap, CoreMap> wrapper = new MulticoreWrapper<CoreMap, CoreMap>(nThreads, new POSTaggerProcessor());
-        for (CoreMap sentence : annotation.get(CoreAnnotations.SentencesAnnotation.class)) {
-          wrapper.put(sentence);
-          while (wrapper.peek()) {
-            wrapper.poll();
-          }
-        }
-        wrapper.join();
-        while (wrapper.peek()) {
-          wrapper.poll();
-        }
+        WorkerPool.current().map(annotation.get(CoreAnnotations.SentencesAnnotation.class), new POSTaggerProcessor(), nThreads);
       }
     } else {
       throw new RuntimeException("unable to find words/tokens in: " + annotation);
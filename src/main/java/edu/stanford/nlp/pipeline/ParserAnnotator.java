@@ -28,6 +28,7 @@ import edu.stanford.nlp.util.RuntimeInterruptedException;
 import edu.stanford.nlp.util.StringUtils;
 import edu.stanford.nlp.util.concurrent.MulticoreWrapper;
 import edu.stanford.nlp.util.concurrent.ThreadsafeProcessor;
+import edu.stanford.nlp.util.concurrent.WorkerPool;
 
 /**
  * This class will add parse information to an Annotation.
@@ -211,7 +212,9 @@ public class ParserAnnotator implements Annotator {
   @Override
   public void annotate(Annotation annotation) {
     if (annotation.containsKey(CoreAnnotations.SentencesAnnotation.class)) {
-      if (nThreads != 1 || maxParseTime > 0) {
+      if (nThreads != 1 && maxParseTime <= 0) {
+        WorkerPool.current().map(annotation.get(CoreAnnotations.SentencesAnnotation.class), new ParserAnnotatorProcessor(), nThreads);
+      } else if (maxParseTime > 0) {
         MulticoreWrapper<CoreMap, CoreMap> wrapper = new MulticoreWrapper<CoreMap, CoreMap>(nThreads, new ParserAnnotatorProcessor());
         if (maxParseTime > 0) {
           wrapper.setMaxBlockTime(maxParseTime);
@@ -0,0 +1,267 @@
+package edu.stanford.nlp.pipeline;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import edu.stanford.nlp.ling.CoreAnnotations;
+import edu.stanford.nlp.stats.ConcurrentHistogram;
+import edu.stanford.nlp.util.concurrent.WorkerPool;
+
+/**
+ * Metrics of an {@link AnnotationPipeline}: a latency histogram of whole
+ * documents and {@link AnnotatorMetrics} for each annotator, token
+ * throughput, the depth of the worker pool's queue, and the bytes each
+ * annotator allocates where the JVM can measure it. Enable them with
+ * {@link AnnotationPipeline#enableMetrics()}, or the <code>metrics</code>
+ * property of {@link StanfordCoreNLP}.
+ * <p>
+ * Other monitoring systems can be fed through a {@link Listener}, and
+ * {@link #registerMBeans} exports everything over JMX.
+ */
+public class PipelineMetrics implements PipelineMetricsMBean {
+
+  /** Hears about every annotator run and document the metrics record. */
+  public interface Listener {
+    public void annotatorDone(String annotator, Annotation annotation, long nanos, long allocatedBytes);
+
+    public void documentDone(Annotation annotation, long nanos);
+  }
+
+  private static final String JMX_DOMAIN = "edu.stanford.nlp.pipeline";
+
+  private static final ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+  private static final com.sun.management.ThreadMXBean allocationBean = allocationBean();
+
+  private final List<AnnotatorMetrics> annotators = new CopyOnWriteArrayList<AnnotatorMetrics>();
+  private final ConcurrentHistogram latency = new ConcurrentHistogram();
+  private final AtomicLong tokens = new AtomicLong();
+  private final List<Listener> listeners = new CopyOnWriteArrayList<Listener>();
+  private volatile long startNanos = System.nanoTime();
+  private volatile WorkerPool workers; // = null;
+
+  private String jmxName; // = null;
+  private final List<ObjectName> registered = new ArrayList<ObjectName>();
+
+  private static com.sun.management.ThreadMXBean allocationBean() {
+    try {
+      if (threadBean instanceof com.sun.management.ThreadMXBean) {
+        com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) threadBean;
+        if (bean.isThreadAllocatedMemorySupported()) {
+          bean.setThreadAllocatedMemoryEnabled(true);
+          return bean;
+        }
+      }
+    } catch (Throwable t) {
+      // not a HotSpot JVM, or not allowed; allocation is not measured
+    }
+    return null;
+  }
+
+  /** Bytes allocated so far by this thread, or -1 if the JVM cannot tell. */
+  public static long allocatedBytes() {
+    if (allocationBean == null) {
+      return -1;
+    }
+    return allocationBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+  }
+
+  public void addListener(Listener listener) {
+    listeners.add(listener);
+  }
+
+  public void removeListener(Listener listener) {
+    listeners.remove(listener);
+  }
+
+  /** Reports the queue of <code>pool</code> as the pipeline's. */
+  public void setWorkerPool(WorkerPool pool) {
+    this.workers = pool;
+  }
+
+  /** Metrics of the annotator at the given position of the pipeline. */
+  public AnnotatorMetrics annotator(int index, String name) {
+    if (index < annotators.size()) {
+      return annotators.get(index);
+    }
+    synchronized (this) {
+      while (annotators.size() <= index) {
+        AnnotatorMetrics metrics = new AnnotatorMetrics(name);
+        annotators.add(metrics);
+        if (jmxName != null) {
+          register(metrics, annotators.size() - 1);
+        }
+      }
+      return annotators.get(index);
+    }
+  }
+
+  public List<AnnotatorMetrics> annotators() {
+    return annotators;
+  }
+
+  /**
+   * Records one run of the annotator at position <code>index</code>.
+   *
+   * @param allocatedBytes How much it allocated, or a negative number if unknown
+   */
+  public void recordAnnotator(int index, String name, Annotation annotation, long nanos, long allocatedBytes) {
+    annotator(index, name).record(annotation, nanos, allocatedBytes);
+    for (Listener listener : listeners) {
+      listener.annotatorDone(name, annotation, nanos, allocatedBytes);
+    }
+  }
+
+  /** Records a document the whole pipeline has annotated. */
+  public void recordDocument(Annotation annotation, long nanos) {
+    latency.record(nanos);
+    List<?> t = annotation.get(CoreAnnotations.TokensAnnotation.class);
+    if (t != null) {
+      tokens.addAndGet(t.size());
+    }
+    for (Listener listener : listeners) {
+      listener.documentDone(annotation, nanos);
+    }
+  }
+
+  /** Latencies of whole documents in nanoseconds. */
+  public ConcurrentHistogram latency() {
+    return latency;
+  }
+
+  @Override
+  public long getDocuments() {
+    return latency.count();
+  }
+
+  @Override
+  public double getMeanMillis() {
+    return latency.mean() / 1e6;
+  }
+
+  @Override
+  public double getP50Millis() {
+    return latency.percentile(50) / 1e6;
+  }
+
+  @Override
+  public double getP90Millis() {
+    return latency.percentile(90) / 1e6;
+  }
+
+  @Override
+  public double getP99Millis() {
+    return latency.percentile(99) / 1e6;
+  }
+
+  @Override
+  public double getMaxMillis() {
+    return latency.max() / 1e6;
+  }
+
+  /** Documents per second of wall clock time since the metrics were enabled or reset. */
+  @Override
+  public double getDocumentsPerSecond() {
+    return perSecond(latency.count());
+  }
+
+  /** Tokens per second of wall clock time since the metrics were enabled or reset. */
+  @Override
+  public double getTokensPerSecond() {
+    return perSecond(tokens.get());
+  }
+
+  private double perSecond(long n) {
+    long nanos = System.nanoTime() - startNanos;
+    return nanos <= 0 ? 0.0 : n * 1e9 / nanos;
+  }
+
+  @Override
+  public int getQueuedTasks() {
+    WorkerPool pool = workers;
+    return pool == null ? 0 : pool.queued();
+  }
+
+  @Override
+  public int getActiveWorkers() {
+    WorkerPool pool = workers;
+    return pool == null ? 0 : pool.active();
+  }
+
+  @Override
+  public void reset() {
+    latency.reset();
+    tokens.set(0);
+    for (AnnotatorMetrics metrics : annotators) {
+      metrics.reset();
+    }
+    startNanos = System.nanoTime();
+  }
+
+  /**
+   * Registers these metrics and those of each annotator with the platform
+   * MBean server, under the domain edu.stanford.nlp.pipeline and the given
+   * pipeline name.
+   */
+  public synchronized void registerMBeans(String name) {
+    if (jmxName != null) {
+      throw new IllegalStateException("Metrics already registered as " + jmxName);
+    }
+    jmxName = name;
+    try {
+      ObjectName objectName = new ObjectName(JMX_DOMAIN + ":type=PipelineMetrics,name=" + ObjectName.quote(name));
+      ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+      registered.add(objectName);
+    } catch (JMException e) {
+      throw new RuntimeException(e);
+    }
+    for (int i = 0; i < annotators.size(); i++) {
+      register(annotators.get(i), i);
+    }
+  }
+
+  private void register(AnnotatorMetrics metrics, int index) {
+    try {
+      ObjectName objectName = new ObjectName(JMX_DOMAIN + ":type=AnnotatorMetrics,pipeline=" + ObjectName.quote(jmxName) +
+          ",name=" + ObjectName.quote(index + "-" + metrics.getAnnotator()));
+      ManagementFactory.getPlatformMBeanServer().registerMBean(metrics, objectName);
+      registered.add(objectName);
+    } catch (JMException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  /** Removes whatever {@link #registerMBeans} registered. */
+  public synchronized void unregisterMBeans() {
+    MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    for (ObjectName objectName : registered) {
+      try {
+        server.unregisterMBean(objectName);
+      } catch (JMException e) {
+        // already gone
+      }
+    }
+    registered.clear();
+    jmxName = null;
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder sb = new StringBuilder();
+    sb.append(String.format("Pipeline: docs=%d mean=%.1fms p50=%.1fms p90=%.1fms p99=%.1fms max=%.1fms docs/s=%.1f tokens/s=%.0f queued=%d active=%d",
+        getDocuments(), getMeanMillis(), getP50Millis(), getP90Millis(), getP99Millis(), getMaxMillis(),
+        getDocumentsPerSecond(), getTokensPerSecond(), getQueuedTasks(), getActiveWorkers()));
+    for (AnnotatorMetrics metrics : annotators) {
+      sb.append('\n').append(metrics);
+    }
+    return sb.toString();
+  }
+
+}
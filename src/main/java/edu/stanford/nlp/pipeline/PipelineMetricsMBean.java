@@ -0,0 +1,30 @@
+package edu.stanford.nlp.pipeline;
+
+/**
+ * What {@link PipelineMetrics} export over JMX.
+ */
+public interface PipelineMetricsMBean {
+
+  public long getDocuments();
+
+  public double getMeanMillis();
+
+  public double getP50Millis();
+
+  public double getP90Millis();
+
+  public double getP99Millis();
+
+  public double getMaxMillis();
+
+  public double getDocumentsPerSecond();
+
+  public double getTokensPerSecond();
+
+  public int getQueuedTasks();
+
+  public int getActiveWorkers();
+
+  public void reset();
+
+}
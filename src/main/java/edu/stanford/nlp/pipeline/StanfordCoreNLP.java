@@ -42,6 +42,7 @@ import edu.stanford.nlp.util.logging.StanfordRedwoodConfiguration;
 
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.util.regex.Pattern;
@@ -100,7 +101,7 @@ public class StanfordCoreNLP extends AnnotationPipeline {
   private TreePrint dependencyTreePrinter;
 
   /** Stores the overall number of words processed */
-  private int numWords;
+  private final AtomicInteger numWords = new AtomicInteger();
 
   /** Maintains the shared pool of annotators */
   private static AnnotatorPool pool = null;
@@ -238,7 +239,6 @@ public class StanfordCoreNLP extends AnnotationPipeline {
   //
 
   private void construct(Properties props, boolean enforceRequirements) {
-    this.numWords = 0;
     this.constituentTreePrinter = new TreePrint("penn");
     this.dependencyTreePrinter = new TreePrint("typedDependenciesCollapsed");
 
@@ -253,6 +253,8 @@ public class StanfordCoreNLP extends AnnotationPipeline {
       props = fromClassPath;
     }
     this.properties = props;
+    setWorkerPoolSize(PropertiesUtils.getInt(props, "workers.nthreads", 0),
+                      PropertiesUtils.getInt(props, "workers.queueSize", 0));
     AnnotatorPool pool = getDefaultAnnotatorPool(props);
 
     // now construct the annotators from the given properties in the given order
@@ -286,14 +288,24 @@ public class StanfordCoreNLP extends AnnotationPipeline {
     if (! alreadyAddedAnnoNames.contains(STANFORD_SSPLIT)) {
       System.setProperty(NEWLINE_SPLITTER_PROPERTY, "false");
     }
+
+    if (PropertiesUtils.getBool(props, "metrics", false)) {
+      PipelineMetrics metrics = enableMetrics();
+      if (PropertiesUtils.getBool(props, "metrics.jmx", false)) {
+        metrics.registerMBeans(props.getProperty("metrics.name",
+            "StanfordCoreNLP@" + Integer.toHexString(System.identityHashCode(this))));
+      }
+    }
   }
 
   /**
    * Call this if you are no longer using StanfordCoreNLP and want to
-   * release the memory associated with the annotators.
+   * release the memory associated with the annotators.  This also
+   * empties the {@link ModelRegistry} of models shared between them.
    */
   public static synchronized void clearAnnotatorPool() {
     pool = null;
+    ModelRegistry.clear();
   }
 
   private static synchronized AnnotatorPool getDefaultAnnotatorPool(final Properties inputProps) {
@@ -620,7 +632,8 @@ public class StanfordCoreNLP extends AnnotationPipeline {
         } catch (FileNotFoundException e) {
           throw new RuntimeIOException(e);
         }
-        return new NERCombinerAnnotator(nerCombiner, false);
+        int nThreads = PropertiesUtils.getInt(properties, "ner.nthreads", PropertiesUtils.getInt(properties, "nthreads", 1));
+        return new NERCombinerAnnotator(nerCombiner, false, nThreads);
       }
 
       @Override
@@ -642,7 +655,9 @@ public class StanfordCoreNLP extends AnnotationPipeline {
                         Boolean.toString(NERClassifierCombiner.APPLY_NUMERIC_CLASSIFIERS_DEFAULT)) +
                 NumberSequenceClassifier.USE_SUTIME_PROPERTY + ":" +
                 properties.getProperty(NumberSequenceClassifier.USE_SUTIME_PROPERTY,
-                        Boolean.toString(NumberSequenceClassifier.USE_SUTIME_DEFAULT));
+                        Boolean.toString(NumberSequenceClassifier.USE_SUTIME_DEFAULT)) +
+                "ner.nthreads:" +
+                properties.getProperty("ner.nthreads", properties.getProperty("nthreads", ""));
       }
     });
 
@@ -871,7 +886,7 @@ public class StanfordCoreNLP extends AnnotationPipeline {
     super.annotate(annotation);
     List<CoreLabel> words = annotation.get(CoreAnnotations.TokensAnnotation.class);
     if (words != null) {
-      numWords += words.size();
+      numWords.addAndGet(words.size());
     }
   }
 
@@ -1070,6 +1085,10 @@ public class StanfordCoreNLP extends AnnotationPipeline {
     os.println("\t\"replaceExtension\" - flag to chop off the last extension before adding outputExtension to file");
     os.println("\t\"noClobber\" - don't automatically override (clobber) output files that already exist");
 		os.println("\t\"threads\" - multithread on this number of threads");
+    os.println("\t\"workers.nthreads\" - size of the thread pool annotators share for per-sentence work (defaults to the number of processors)");
+    os.println("\t\"workers.queueSize\" - how much per-sentence work may wait for a free thread (defaults to 4 per thread)");
+    os.println("\t\"metrics\" - collect latency histograms, throughput and allocation per annotator");
+    os.println("\t\"metrics.jmx\" - also export the metrics over JMX, under the name given by \"metrics.name\"");
     os.println();
     os.println("If none of the above are present, run the pipeline in an interactive shell (default properties will be loaded from the classpath).");
     os.println("The shell accepts input from stdin and displays the output at stdout.");
@@ -1087,9 +1106,10 @@ public class StanfordCoreNLP extends AnnotationPipeline {
   @Override
   public String timingInformation() {
     StringBuilder sb = new StringBuilder(super.timingInformation());
+    int numWords = this.numWords.get();
     if (TIME && numWords >= 0) {
       long total = this.getTotalTime();
-      sb.append(" for ").append(this.numWords).append(" tokens at ");
+      sb.append(" for ").append(numWords).append(" tokens at ");
       sb.append(String.format("%.1f", numWords / (((double) total)/1000)));
       sb.append( " tokens/sec.");
     }
@@ -1475,6 +1495,9 @@ public class StanfordCoreNLP extends AnnotationPipeline {
     if (TIME) {
       log();
       log(pipeline.timingInformation());
+      if (pipeline.getMetrics() != null) {
+        log(pipeline.getMetrics());
+      }
       log("Pipeline setup: " +
           Timing.toSecondsString(setupTime) + " sec.");
       log("Total time for StanfordCoreNLP pipeline: " +
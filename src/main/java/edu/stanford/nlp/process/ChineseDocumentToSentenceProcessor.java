@@ -50,6 +50,18 @@ public class ChineseDocumentToSentenceProcessor implements Serializable {
 
   private static final Set<Character> rightMarkSet = Generics.newHashSet(Arrays.asList(new Character[]{'\u201d', '\u2019', '\u300b', '\u300f', '\u3009', '\u300d', '\uff1e', '\uff07', '\uff09', '\'', '"', ')', ']', '>'}));
 
+  /** Whether <code>c</code> ends a sentence in {@link #fromPlainText}. */
+  public static boolean isFullStop(char c) {
+    return fullStopsSet.contains(c);
+  }
+
+  /** Whether <code>c</code> is a closing mark that stays attached to the
+   *  sentence ended by a preceding full stop.
+   */
+  public static boolean isRightMark(char c) {
+    return rightMarkSet.contains(c);
+  }
+
   // private final String normalizationTableFile;
 
   private final String encoding = "UTF-8";
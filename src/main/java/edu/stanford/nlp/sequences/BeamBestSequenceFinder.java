@@ -17,8 +17,10 @@ import java.util.NoSuchElementException;
 public class BeamBestSequenceFinder implements BestSequenceFinder {
 
   // todo [CDM 2013]: AFAICS, this class doesn't actually work correctly AND gives nondeterministic answers. See the commented out test in BestSequenceFinderTest
-
-  private static int[] tmp = null;
+  // The tag buffer used to be a static shared by every search, so searches
+  // running at the same time in different threads scored each other's tags;
+  // each search now has its own.  Ties between hypotheses may still come out
+  // of the beam in either order.
 
   private static class TagSeq implements Scored {
 
@@ -41,11 +43,8 @@ public class BeamBestSequenceFinder implements BestSequenceFinder {
 
     private TagList info = null;
 
-    public int[] tmpTags(int count, int s) {
-      if (tmp == null || tmp.length < s) {
-        //tmp = new int[1024*128];
-        tmp = new int[s];
-      }
+    /** Writes the last count + 1 tags of this sequence into tmp, at their positions. */
+    public int[] tmpTags(int count, int[] tmp) {
       TagList tl = info;
       int i = size() - 1;
       while (tl != null && count >= 0) {
@@ -75,9 +74,9 @@ public class BeamBestSequenceFinder implements BestSequenceFinder {
       size++;
     }
 
-    public void extendWith(int tag, SequenceModel ts, int s) {
+    public void extendWith(int tag, SequenceModel ts, int[] tmp) {
       extendWith(tag);
-      int[] tags = tmpTags(ts.leftWindow() + 1 + ts.rightWindow(), s);
+      int[] tags = tmpTags(ts.leftWindow() + 1 + ts.rightWindow(), tmp);
       score += ts.scoreOf(tags, size() - ts.rightWindow() - 1);
 
       //for (int i=0; i<tags.length; i++)
@@ -104,6 +103,12 @@ public class BeamBestSequenceFinder implements BestSequenceFinder {
     return bestSequence(ts, (1024 * 128));
   }
 
+  /**
+   * Runs the beam search.
+   *
+   * @param size No longer used: the search sizes its tag buffer to the
+   *     padded length of the sequence
+   */
   public int[] bestSequence(SequenceModel ts, int size) {
 
     // Set up tag options
@@ -117,6 +122,7 @@ public class BeamBestSequenceFinder implements BestSequenceFinder {
       tags[pos] = ts.getPossibleValues(pos);
       tagNum[pos] = tags[pos].length;
     }
+    int[] tmp = new int[padLength];
 
     Beam newBeam = new Beam(beamSize, ScoredComparator.ASCENDING_COMPARATOR);
     TagSeq initSeq = new TagSeq();
@@ -135,11 +141,23 @@ public class BeamBestSequenceFinder implements BestSequenceFinder {
       for (Iterator beamI = oldBeam.iterator(); beamI.hasNext();) {
         // System.out.print("#"); System.out.flush();
         TagSeq tagSeq = (TagSeq) beamI.next();
+        // With no right context, all the ways of extending a hypothesis share
+        // their history, so one call scores them all, rather than one call
+        // to scoreOf (which may well work out every score anyway) for each
+        double[] scores = null;
+        if (rightWindow == 0 && pos >= leftWindow) {
+          tagSeq.tmpTags(leftWindow - 1, tmp);
+          tmp[pos] = tags[pos][0];
+          scores = ts.scoresOf(tmp, pos);
+        }
         for (int nextTagNum = 0; nextTagNum < tagNum[pos]; nextTagNum++) {
           TagSeq nextSeq = tagSeq.tclone();
 
-          if (pos >= leftWindow + rightWindow) {
-            nextSeq.extendWith(tags[pos][nextTagNum], ts, size);
+          if (scores != null) {
+            nextSeq.extendWith(tags[pos][nextTagNum]);
+            nextSeq.score += scores[nextTagNum];
+          } else if (pos >= leftWindow + rightWindow) {
+            nextSeq.extendWith(tags[pos][nextTagNum], ts, tmp);
           } else {
             nextSeq.extendWith(tags[pos][nextTagNum]);
           }
@@ -15,8 +15,25 @@ public class ExactBestSequenceFinder implements BestSequenceFinder {
 
   private static final boolean DEBUG = false;
 
+  /** Arrays kept from one sequence to the next, or null to allocate them each time. */
+  private final Workspace workspace;
+
+  public ExactBestSequenceFinder() {
+    this(false);
+  }
+
+  /**
+   * @param reuseArrays If true, the finder keeps its working arrays between
+   *   calls, growing them as needed, so that decoding many sequences makes
+   *   next to no garbage.  Such a finder must only be used by one thread at
+   *   a time.
+   */
+  public ExactBestSequenceFinder(boolean reuseArrays) {
+    workspace = reuseArrays ? new Workspace() : null;
+  }
+
   public static Pair<int[], Double> bestSequenceWithLinearConstraints(SequenceModel ts, double[][] linearConstraints) {
-    return bestSequence(ts, linearConstraints);
+    return bestSequence(ts, linearConstraints, null);
   }
 
   /**
@@ -28,10 +45,10 @@ public class ExactBestSequenceFinder implements BestSequenceFinder {
    */
   @Override
   public int[] bestSequence(SequenceModel ts) {
-    return bestSequence(ts, null).first();
+    return bestSequence(ts, null, workspace).first();
   }
 
-  private static Pair<int[], Double> bestSequence(SequenceModel ts, double[][] linearConstraints) {
+  private static Pair<int[], Double> bestSequence(SequenceModel ts, double[][] linearConstraints, Workspace ws) {
     // Set up tag options
     int length = ts.length();
     int leftWindow = ts.leftWindow();
@@ -39,8 +56,11 @@ public class ExactBestSequenceFinder implements BestSequenceFinder {
     int padLength = length + leftWindow + rightWindow;
     if (linearConstraints != null && linearConstraints.length != padLength)
       throw new RuntimeException("linearConstraints.length (" +  linearConstraints.length + ") does not match padLength (" + padLength + ") of SequenceModel" + ", length=="+length+", leftW="+leftWindow+", rightW="+rightWindow);
-    int[][] tags = new int[padLength][];
-    int[] tagNum = new int[padLength];
+    if (ws != null) {
+      ws.ensureLength(padLength);
+    }
+    int[][] tags = (ws == null) ? new int[padLength][] : ws.tags;
+    int[] tagNum = (ws == null) ? new int[padLength] : ws.tagNum;
     if (DEBUG) { System.err.println("Doing bestSequence length " + length + "; leftWin " + leftWindow + "; rightWin " + rightWindow + "; padLength " + padLength); }
     for (int pos = 0; pos < padLength; pos++) {
       tags[pos] = ts.getPossibleValues(pos);
@@ -48,10 +68,16 @@ public class ExactBestSequenceFinder implements BestSequenceFinder {
       if (DEBUG) { System.err.println("There are " + tagNum[pos] + " values at position " + pos + ": " + Arrays.toString(tags[pos])); }
     }
 
-    int[] tempTags = new int[padLength];
+    int[] tempTags = (ws == null) ? new int[padLength] : ws.tempTags;
 
     // Set up product space sizes
-    int[] productSizes = new int[padLength];
+    int[] productSizes;
+    if (ws == null) {
+      productSizes = new int[padLength];
+    } else {
+      productSizes = ws.productSizes;
+      Arrays.fill(productSizes, 0, padLength, 0);
+    }
 
     int curProduct = 1;
     for (int i = 0; i < leftWindow + rightWindow; i++) {
@@ -66,11 +92,15 @@ public class ExactBestSequenceFinder implements BestSequenceFinder {
     }
 
     // Score all of each window's options
-    double[][] windowScore = new double[padLength][];
+    double[][] windowScore = (ws == null) ? new double[padLength][] : ws.windowScore;
     for (int pos = leftWindow; pos < leftWindow + length; pos++) {
       if (DEBUG) { System.err.println("scoring word " + pos + " / " + (leftWindow + length) + ", productSizes =  " + productSizes[pos] + ", tagNum = " + tagNum[pos] + "..."); }
-      windowScore[pos] = new double[productSizes[pos]];
-      Arrays.fill(tempTags, tags[0][0]);
+      if (ws == null) {
+        windowScore[pos] = new double[productSizes[pos]];
+      } else {
+        windowScore[pos] = ws.doubles(windowScore[pos], productSizes[pos]);
+      }
+      Arrays.fill(tempTags, 0, padLength, tags[0][0]);
       if (DEBUG) { System.err.println("windowScore[" + pos + "] has size (productSizes[pos]) " + windowScore[pos].length); }
 
       for (int product = 0; product < productSizes[pos]; product++) {
@@ -102,11 +132,16 @@ public class ExactBestSequenceFinder implements BestSequenceFinder {
     }
 
     // Set up score and backtrace arrays
-    double[][] score = new double[padLength][];
-    int[][] trace = new int[padLength][];
+    double[][] score = (ws == null) ? new double[padLength][] : ws.score;
+    int[][] trace = (ws == null) ? new int[padLength][] : ws.trace;
     for (int pos = 0; pos < padLength; pos++) {
-      score[pos] = new double[productSizes[pos]];
-      trace[pos] = new int[productSizes[pos]];
+      if (ws == null) {
+        score[pos] = new double[productSizes[pos]];
+        trace[pos] = new int[productSizes[pos]];
+      } else {
+        score[pos] = ws.doubles(score[pos], productSizes[pos]);
+        trace[pos] = ws.ints(trace[pos], productSizes[pos]);
+      }
     }
 
     // Do forward Viterbi algorithm
@@ -178,6 +213,53 @@ public class ExactBestSequenceFinder implements BestSequenceFinder {
       bestCurrentProduct = trace[pos + 1][bestNextProduct];
       tempTags[pos - leftWindow] = tags[pos - leftWindow][bestCurrentProduct / (productSizes[pos] / tagNum[pos - leftWindow])];
     }
+    if (ws != null) {
+      // the workspace's array may be longer, and is overwritten by the next call
+      tempTags = Arrays.copyOf(tempTags, padLength);
+    }
     return new Pair<int[], Double>(tempTags, bestFinalScore);
   }
+
+  /**
+   * The arrays bestSequence works in, kept by a finder that reuses them.
+   * Each array is at least as long as needed; the arrays of the window and
+   * Viterbi scores are zeroed before use as freshly allocated ones would be.
+   */
+  private static class Workspace {
+    int[][] tags = new int[0][];
+    int[] tagNum = new int[0];
+    int[] tempTags = new int[0];
+    int[] productSizes = new int[0];
+    double[][] windowScore = new double[0][];
+    double[][] score = new double[0][];
+    int[][] trace = new int[0][];
+
+    void ensureLength(int padLength) {
+      if (tags.length < padLength) {
+        tags = new int[padLength][];
+        tagNum = new int[padLength];
+        tempTags = new int[padLength];
+        productSizes = new int[padLength];
+        windowScore = Arrays.copyOf(windowScore, padLength);
+        score = Arrays.copyOf(score, padLength);
+        trace = Arrays.copyOf(trace, padLength);
+      }
+    }
+
+    double[] doubles(double[] old, int length) {
+      if (old == null || old.length < length) {
+        return new double[length];
+      }
+      Arrays.fill(old, 0, length, 0.0);
+      return old;
+    }
+
+    int[] ints(int[] old, int length) {
+      if (old == null || old.length < length) {
+        return new int[length];
+      }
+      Arrays.fill(old, 0, length, 0);
+      return old;
+    }
+  }
 }
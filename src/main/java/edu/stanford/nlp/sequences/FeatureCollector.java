@@ -0,0 +1,78 @@
+package edu.stanford.nlp.sequences;
+
+import java.util.Collection;
+
+/**
+ * Receives the features generated by a {@link FeatureFactory}. Templates
+ * build each feature name in a shared {@link StringBuilder} (see
+ * {@link #key()} and {@link #addKey()}, or the {@code add} shortcuts), so
+ * a collector that does not need the name as a String never has to
+ * materialize it. If a suffix is set, it is appended to every feature as
+ * {@code '|' + suffix}, in the same way as
+ * {@link FeatureFactory#addAllInterningAndSuffixing}.
+ *
+ * @see FeatureIndexCollector
+ */
+public abstract class FeatureCollector {
+
+  private final StringBuilder key = new StringBuilder(32);
+  private String suffix;
+
+  /** Sets the suffix appended to the following features, or null for none. */
+  public void setSuffix(String suffix) {
+    this.suffix = (suffix == null || suffix.length() == 0) ? null : '|' + suffix;
+  }
+
+  /** Clears and returns the builder for the next feature name. */
+  public StringBuilder key() {
+    key.setLength(0);
+    return key;
+  }
+
+  /** Adds the feature whose name is currently in {@link #key()}. */
+  public void addKey() {
+    if (suffix != null) {
+      key.append(suffix);
+    }
+    collect(key);
+  }
+
+  public void add(String a) {
+    key().append(a);
+    addKey();
+  }
+
+  public void add(String a, String b) {
+    key().append(a).append(b);
+    addKey();
+  }
+
+  public void add(String a, String b, String c) {
+    key().append(a).append(b).append(c);
+    addKey();
+  }
+
+  /**
+   * Called once per feature with its full name. The builder is reused, so
+   * implementations must not keep a reference to it.
+   */
+  protected abstract void collect(CharSequence feature);
+
+
+  /** Collects the feature names as Strings. */
+  public static class StringCollector extends FeatureCollector {
+
+    private final Collection<String> features;
+
+    public StringCollector(Collection<String> features) {
+      this.features = features;
+    }
+
+    @Override
+    protected void collect(CharSequence feature) {
+      features.add(feature.toString());
+    }
+
+  }
+
+}
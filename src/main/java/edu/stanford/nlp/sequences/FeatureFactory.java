@@ -80,6 +80,25 @@ public abstract class FeatureFactory<IN> implements Serializable {
    */
   public abstract Collection<String> getCliqueFeatures(PaddedList<IN> info, int position, Clique clique);
 
+  /**
+   * Hands the features for the given clique to a {@link FeatureCollector}.
+   * The default implementation goes through {@link #getCliqueFeatures};
+   * factories can override it to emit their features into the collector
+   * directly, without building intermediate Strings and Sets.
+   *
+   * @param info The complete data set as a List
+   * @param position The current position to extract features at
+   * @param clique The particular clique for which to extract features
+   * @param collector Receives the features, which are suffixed just as those
+   *     from {@link #getCliqueFeatures}
+   */
+  public void collectCliqueFeatures(PaddedList<IN> info, int position, Clique clique, FeatureCollector collector) {
+    collector.setSuffix(null);
+    for (String feature : getCliqueFeatures(info, position, clique)) {
+      collector.add(feature);
+    }
+  }
+
 
   /** Makes more complete feature names out of partial feature names, by
    *  adding a suffix to the String feature name, adding results to an
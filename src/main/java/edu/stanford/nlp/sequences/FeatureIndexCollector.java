@@ -0,0 +1,80 @@
+package edu.stanford.nlp.sequences;
+
+import java.util.Arrays;
+
+import edu.stanford.nlp.util.Index;
+import edu.stanford.nlp.util.PerfectHashIndex;
+
+/**
+ * A {@link FeatureCollector} that looks each feature up in a feature index
+ * and keeps only the indices. Features that are not in the index are
+ * dropped. With a {@link PerfectHashIndex} the lookup works directly on the
+ * reused name buffer, so no feature String is ever created; other indices
+ * get a String per lookup.
+ * <p/>
+ * Indices are gathered in groups (one per {@link #startGroup()} /
+ * {@link #endGroup()} pair); duplicates within a group are removed, which
+ * matches the Set returned by {@link FeatureFactory#getCliqueFeatures}.
+ * A collector is not thread-safe; use one per thread.
+ */
+public class FeatureIndexCollector extends FeatureCollector {
+
+  private final Index<String> featureIndex;
+  private final PerfectHashIndex perfectHashIndex;
+
+  private int[] ids = new int[64];
+  private int size;
+  private int groupStart;
+
+  public FeatureIndexCollector(Index<String> featureIndex) {
+    this.featureIndex = featureIndex;
+    this.perfectHashIndex = (featureIndex instanceof PerfectHashIndex) ? (PerfectHashIndex) featureIndex : null;
+  }
+
+  @Override
+  protected void collect(CharSequence feature) {
+    int id = (perfectHashIndex != null) ? perfectHashIndex.indexOf(feature) : featureIndex.indexOf(feature.toString());
+    if (id >= 0) {
+      add(id);
+    }
+  }
+
+  /** Adds a feature index directly. */
+  public void add(int id) {
+    if (size == ids.length) {
+      ids = Arrays.copyOf(ids, size * 2);
+    }
+    ids[size++] = id;
+  }
+
+  public void startGroup() {
+    groupStart = size;
+  }
+
+  /** Removes duplicate indices added since the last {@link #startGroup()}. */
+  public void endGroup() {
+    if (size - groupStart < 2) {
+      return;
+    }
+    Arrays.sort(ids, groupStart, size);
+    int last = groupStart;
+    for (int i = groupStart + 1; i < size; i++) {
+      if (ids[i] != ids[last]) {
+        ids[++last] = ids[i];
+      }
+    }
+    size = last + 1;
+    groupStart = size;
+  }
+
+  /** Returns the indices gathered since the last {@link #clear()}. */
+  public int[] toArray() {
+    return Arrays.copyOf(ids, size);
+  }
+
+  public void clear() {
+    size = 0;
+    groupStart = 0;
+  }
+
+}
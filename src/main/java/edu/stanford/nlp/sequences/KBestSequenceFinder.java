@@ -21,6 +21,13 @@ public class KBestSequenceFinder implements BestSequenceFinder {
     return Counters.argmax(kBestSequences(ts, 1));
   }
 
+  /**
+   * Finds the k best sequences of the model, which must not look at tags to
+   * the right.  There are fewer than k if the model allows fewer.
+   *
+   * @return The sequences, laid out like {@link #bestSequence}'s (that is,
+   *     indexed by padded position), each with its total score
+   */
   public ClassicCounter<int[]> kBestSequences(SequenceModel ts, int k) {
 
     // Set up tag options
@@ -174,9 +181,9 @@ public class KBestSequenceFinder implements BestSequenceFinder {
         for (int k2 = 0; k2 < bestFinalScores.length; k2++) {
           if (score[padLength - 1][product][k1] > bestFinalScores[k2]) {
 
-            System.arraycopy(bestFinalScores, k1, bestFinalScores, k1+1, bestFinalScores.length-(k1+1));
-            System.arraycopy(whichDerivation, k1, whichDerivation, k1+1, whichDerivation.length-(k1+1));
-            System.arraycopy(bestCurrentProducts, k1, bestCurrentProducts, k1+1, bestCurrentProducts.length-(k1+1));
+            System.arraycopy(bestFinalScores, k2, bestFinalScores, k2+1, bestFinalScores.length-(k2+1));
+            System.arraycopy(whichDerivation, k2, whichDerivation, k2+1, whichDerivation.length-(k2+1));
+            System.arraycopy(bestCurrentProducts, k2, bestCurrentProducts, k2+1, bestCurrentProducts.length-(k2+1));
 
             bestCurrentProducts[k2] = product;
             whichDerivation[k2] = k1;
@@ -186,7 +193,12 @@ public class KBestSequenceFinder implements BestSequenceFinder {
         }
       }
     }
-    int[] lastProducts = new int[k];
+    // there may be fewer than k sequences; only follow the ones found
+    int found = 0;
+    while (found < k && bestFinalScores[found] > Double.NEGATIVE_INFINITY) {
+      found++;
+    }
+    int[] lastProducts = new int[found];
     System.arraycopy(bestCurrentProducts, 0, lastProducts, 0, lastProducts.length);
 
     for (int last = padLength - 1; last >= length - 1 && last >= 0; last--) {
@@ -206,7 +218,7 @@ public class KBestSequenceFinder implements BestSequenceFinder {
     }
 
     ClassicCounter<int[]> kBestWithScores = new ClassicCounter<int[]>();
-    for (int i = 0; i < kBest.length; i++) {
+    for (int i = 0; i < found; i++) {
       if(bestFinalScores[i] > Double.NEGATIVE_INFINITY) {
         kBestWithScores.setCount(kBest[i], bestFinalScores[i]);
         //System.err.println(bestFinalScores[i]+"\t"+Arrays.toString(kBest[i]));
@@ -435,6 +435,7 @@ public class SeqClassifierFlags implements Serializable {
   public transient String loadAuxClassifier = null;
   public transient String serializeTo = null;
   public transient String serializeToText = null;
+  public transient String serializeToBinary = null;
   public transient int interimOutputFreq = 0;
   public transient String initialWeights = null;
   public transient List<String> gazettes = new ArrayList<String>();
@@ -1021,6 +1022,27 @@ public class SeqClassifierFlags implements Serializable {
 
   public boolean useRandomSeed = false;
   public boolean terminateOnAvgImprovement = false;
+
+  /**
+   * Precision of the CRF weights used at inference time: double, float,
+   * int16 or int8. Anything but double replaces the weights matrix with a
+   * compact copy when the classifier is loaded.
+   */
+  public transient String inferenceWeights = "double";
+
+  /**
+   * Keep the feature index of a binary CRF model as a read-only,
+   * off-heap {@link edu.stanford.nlp.util.PerfectHashIndex} rather than
+   * copying it into a HashIndex when the classifier is loaded.
+   */
+  public transient boolean offHeapFeatureIndex = false;
+
+  /**
+   * Have the CRF feature factories resolve features to feature indices as
+   * they generate them, instead of building a Set of feature Strings per
+   * clique. Most effective together with offHeapFeatureIndex.
+   */
+  public transient boolean directFeatureIds = false;
   // "ADD VARIABLES ABOVE HERE"
 
   public transient List<String> phraseGazettes = null;
@@ -1492,6 +1514,8 @@ public class SeqClassifierFlags implements Serializable {
         serializeTo = val;
       } else if (key.equalsIgnoreCase("serializeToText")) {
         serializeToText = val;
+      } else if (key.equalsIgnoreCase("serializeToBinary")) {
+        serializeToBinary = val;
       } else if (key.equalsIgnoreCase("serializeDatasetsDir")) {
         serializeDatasetsDir = val;
       } else if (key.equalsIgnoreCase("loadDatasetsDir")) {
@@ -2524,6 +2548,12 @@ public class SeqClassifierFlags implements Serializable {
         useRandomSeed = Boolean.parseBoolean(val);
       } else if (key.equalsIgnoreCase("terminateOnAvgImprovement")){
         terminateOnAvgImprovement = Boolean.parseBoolean(val);
+      } else if (key.equalsIgnoreCase("inferenceWeights")){
+        inferenceWeights = val;
+      } else if (key.equalsIgnoreCase("offHeapFeatureIndex")){
+        offHeapFeatureIndex = Boolean.parseBoolean(val);
+      } else if (key.equalsIgnoreCase("directFeatureIds")){
+        directFeatureIds = Boolean.parseBoolean(val);
 
         // ADD VALUE ABOVE HERE
       } else if (key.length() > 0 && !key.equals("prop")) {
@@ -0,0 +1,127 @@
+package edu.stanford.nlp.stats;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A histogram of non-negative long values, such as latencies in nanoseconds,
+ * which many threads can record into without locking.
+ * <p>
+ * As in an HDR histogram, values are kept in buckets whose width grows with
+ * the value: each power of two range is split into 32 equal buckets, so any
+ * value is known to within about 3% while the whole range of longs takes a
+ * fixed 1888 counters. Values below 32 are kept exactly. Percentiles are
+ * reported as the upper end of the bucket they fall in.
+ * <p>
+ * Reads made while other threads record may be slightly inconsistent with
+ * each other, which is fine for monitoring.
+ */
+public class ConcurrentHistogram {
+
+  private static final int SUB_BUCKET_BITS = 5;
+  private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+  private static final int NUM_BUCKETS = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+  private final AtomicLongArray counts = new AtomicLongArray(NUM_BUCKETS);
+  private final AtomicLong count = new AtomicLong();
+  private final AtomicLong sum = new AtomicLong();
+  private final AtomicLong max = new AtomicLong();
+
+  /** Records one value; negative values are recorded as 0. */
+  public void record(long value) {
+    if (value < 0) {
+      value = 0;
+    }
+    counts.incrementAndGet(bucketOf(value));
+    count.incrementAndGet();
+    sum.addAndGet(value);
+    for (long m = max.get(); value > m && ! max.compareAndSet(m, value); m = max.get()) { }
+  }
+
+  private static int bucketOf(long value) {
+    if (value < SUB_BUCKETS) {
+      return (int) value;
+    }
+    int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+    return (shift + 1) * SUB_BUCKETS + (int) ((value >>> shift) - SUB_BUCKETS);
+  }
+
+  /** The largest value that falls in the given bucket. */
+  private static long highestInBucket(int bucket) {
+    int group = bucket / SUB_BUCKETS;
+    long sub = bucket % SUB_BUCKETS;
+    if (group == 0) {
+      return sub;
+    }
+    int shift = group - 1;
+    long high = ((SUB_BUCKETS + sub + 1) << shift) - 1;
+    return high < 0 ? Long.MAX_VALUE : high;
+  }
+
+  /** Number of values recorded. */
+  public long count() {
+    return count.get();
+  }
+
+  /** Sum of the values recorded. */
+  public long sum() {
+    return sum.get();
+  }
+
+  /** Largest value recorded, or 0 if none. */
+  public long max() {
+    return max.get();
+  }
+
+  public double mean() {
+    long n = count.get();
+    return n == 0 ? 0.0 : ((double) sum.get()) / n;
+  }
+
+  /**
+   * Returns a value which at least <code>percent</code> percent of the
+   * recorded values are no larger than, or 0 if none were recorded.
+   *
+   * @param percent Between 0 and 100
+   */
+  public long percentile(double percent) {
+    long n = 0;
+    long[] snapshot = new long[NUM_BUCKETS];
+    for (int i = 0; i < NUM_BUCKETS; i++) {
+      snapshot[i] = counts.get(i);
+      n += snapshot[i];
+    }
+    if (n == 0) {
+      return 0;
+    }
+    long rank = (long) Math.ceil(percent / 100.0 * n);
+    if (rank < 1) {
+      rank = 1;
+    }
+    long seen = 0;
+    for (int i = 0; i < NUM_BUCKETS; i++) {
+      seen += snapshot[i];
+      if (seen >= rank) {
+        return Math.min(highestInBucket(i), max.get());
+      }
+    }
+    return max.get();
+  }
+
+  /** Forgets all values recorded so far. */
+  public void reset() {
+    for (int i = 0; i < NUM_BUCKETS; i++) {
+      counts.set(i, 0);
+    }
+    count.set(0);
+    sum.set(0);
+    max.set(0);
+  }
+
+  @Override
+  public String toString() {
+    return String.format("n=%d mean=%.1f p50=%d p90=%d p99=%d max=%d",
+        count(), mean(), percentile(50), percentile(90), percentile(99), max());
+  }
+
+}
@@ -521,12 +521,58 @@ public class ExtractorFrames {
 
     private static final long serialVersionUID = 3;
 
+    private static final int MEMO_SIZE = 1024;
+
+    /**
+     * Conjunctions of up to three tags built lately, found by the identity
+     * of the tags, which come from the tagger's TTags as the same strings
+     * every time.  This saves building the same few strings over and over
+     * while tagging.  Threads may race to fill a slot, which only costs a
+     * rebuild.
+     */
+    private transient Conjunction[] memo; // = null;
+
+    private static final class Conjunction {
+      final String t1, t2, t3, value;
+
+      Conjunction(String t1, String t2, String t3, String value) {
+        this.t1 = t1;
+        this.t2 = t2;
+        this.t3 = t3;
+        this.value = value;
+      }
+    }
+
     public ExtractorContinuousTagConjunction(int maxPosition) {
       super(maxPosition, true);
     }
 
     @Override
     String extract(History h, PairsHolder pH) {
+      int n = Math.abs(position);
+      if (n > 3) {
+        return conjoin(h, pH);
+      }
+      int step = (position < 0) ? 1 : -1;
+      String t1 = pH.getTag(h, position);
+      String t2 = (n > 1) ? pH.getTag(h, position + step) : null;
+      String t3 = (n > 2) ? pH.getTag(h, position + 2 * step) : null;
+      Conjunction[] memo = this.memo;
+      if (memo == null) {
+        memo = new Conjunction[MEMO_SIZE];
+        this.memo = memo;
+      }
+      int hash = (System.identityHashCode(t1) * 31 + System.identityHashCode(t2)) * 31 + System.identityHashCode(t3);
+      int slot = (hash ^ (hash >>> 16)) & (MEMO_SIZE - 1);
+      Conjunction c = memo[slot];
+      if (c == null || c.t1 != t1 || c.t2 != t2 || c.t3 != t3) {
+        c = new Conjunction(t1, t2, t3, conjoin(h, pH));
+        memo[slot] = c;
+      }
+      return c.value;
+    }
+
+    private String conjoin(History h, PairsHolder pH) {
       StringBuilder sb = new StringBuilder();
       if (position < 0) {
         for (int idx = position; idx < 0; idx++) {
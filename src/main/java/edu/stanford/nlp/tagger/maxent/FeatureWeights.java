@@ -0,0 +1,156 @@
+package edu.stanford.nlp.tagger.maxent;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The weights of a trained tagger compiled for scoring.  For each kind of
+ * feature (common extractors first, then rare ones, as in
+ * {@link MaxentTagger#fAssociations}) an open-addressed hash table maps a
+ * feature value to a row, and a row lists the tags the value has a non-zero
+ * weight for, in increasing order, next to the weights themselves.  Scoring
+ * a history then costs one probe per extractor and a walk over a few
+ * adjacent array entries, rather than a HashMap lookup, a scan of an
+ * <code>int[ySize]</code> of feature numbers and a jump into the lambda
+ * array for each of them.
+ * <p>
+ * The tables are built from the feature associations and lambdas of the
+ * tagger and must be rebuilt if those change.
+ *
+ * @see TestSentence
+ */
+class FeatureWeights {
+
+  /** Per feature kind: the table's keys, and the row each key maps to. */
+  private final String[][] keys;
+  private final int[][] rows;
+
+  /** Row r occupies positions rowStart[r] (inclusive) to rowStart[r + 1]. */
+  private final int[] rowStart;
+  private final int[] tagIndices;
+  private final double[] weights;
+
+  FeatureWeights(List<Map<String, int[]>> fAssociations, double[] lambda) {
+    int numKinds = fAssociations.size();
+    keys = new String[numKinds][];
+    rows = new int[numKinds][];
+
+    int numRows = 0;
+    int numEntries = 0;
+    for (Map<String, int[]> fValueAssociations : fAssociations) {
+      for (int[] fTagAssociations : fValueAssociations.values()) {
+        int n = nonZero(fTagAssociations, lambda);
+        if (n > 0) {
+          numRows++;
+          numEntries += n;
+        }
+      }
+    }
+    rowStart = new int[numRows + 1];
+    tagIndices = new int[numEntries];
+    weights = new double[numEntries];
+
+    int row = 0;
+    int pos = 0;
+    for (int k = 0; k < numKinds; k++) {
+      Map<String, int[]> fValueAssociations = fAssociations.get(k);
+      int capacity = tableSize(fValueAssociations.size());
+      String[] kindKeys = new String[capacity];
+      int[] kindRows = new int[capacity];
+      for (Map.Entry<String, int[]> entry : fValueAssociations.entrySet()) {
+        int[] fTagAssociations = entry.getValue();
+        if (nonZero(fTagAssociations, lambda) == 0) {
+          continue;
+        }
+        rowStart[row] = pos;
+        for (int tag = 0; tag < fTagAssociations.length; tag++) {
+          int fNum = fTagAssociations[tag];
+          if (fNum > -1 && lambda[fNum] != 0.0) {
+            tagIndices[pos] = tag;
+            weights[pos] = lambda[fNum];
+            pos++;
+          }
+        }
+        int slot = slot(entry.getKey(), capacity);
+        while (kindKeys[slot] != null) {
+          slot = (slot + 1) & (capacity - 1);
+        }
+        kindKeys[slot] = entry.getKey();
+        kindRows[slot] = row;
+        row++;
+      }
+      keys[k] = kindKeys;
+      rows[k] = kindRows;
+    }
+    rowStart[numRows] = pos;
+  }
+
+  /** Feature numbers with a non-zero weight; a zero weight never changes a score. */
+  private static int nonZero(int[] fTagAssociations, double[] lambda) {
+    int n = 0;
+    for (int fNum : fTagAssociations) {
+      if (fNum > -1 && lambda[fNum] != 0.0) {
+        n++;
+      }
+    }
+    return n;
+  }
+
+  /** A power of two at least twice the number of keys, so probes stay short. */
+  private static int tableSize(int numKeys) {
+    int capacity = 2;
+    while (capacity < 2 * numKeys) {
+      capacity <<= 1;
+    }
+    return capacity;
+  }
+
+  private static int slot(String key, int capacity) {
+    int h = key.hashCode();
+    h ^= (h >>> 16);
+    return h & (capacity - 1);
+  }
+
+  /**
+   * Returns the row holding the weights of the given value of feature kind
+   * <code>kind</code>, or -1 if the value has no non-zero weights.
+   */
+  int row(int kind, String value) {
+    String[] kindKeys = keys[kind];
+    int capacity = kindKeys.length;
+    for (int slot = slot(value, capacity); ; slot = (slot + 1) & (capacity - 1)) {
+      String key = kindKeys[slot];
+      if (key == null) {
+        return -1;
+      }
+      if (key.equals(value)) {
+        return rows[kind][slot];
+      }
+    }
+  }
+
+  /** Adds the weights of <code>row</code> to the scores of all tags, indexed by tag number. */
+  void addTo(double[] scores, int row) {
+    for (int pos = rowStart[row], end = rowStart[row + 1]; pos < end; pos++) {
+      scores[tagIndices[pos]] += weights[pos];
+    }
+  }
+
+  /**
+   * Adds the weights of <code>row</code> to the scores of the given tags:
+   * <code>scores[j]</code> is the score of the tag numbered
+   * <code>tags[j]</code>.
+   */
+  void addTo(double[] scores, int row, int[] tags) {
+    int start = rowStart[row];
+    int end = rowStart[row + 1];
+    for (int j = 0; j < tags.length; j++) {
+      int pos = Arrays.binarySearch(tagIndices, start, end, tags[j]);
+      if (pos >= 0) {
+        scores[j] += weights[pos];
+      }
+    }
+  }
+
+}
@@ -0,0 +1,117 @@
+package edu.stanford.nlp.tagger.maxent;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded cache of the scores of the local features of a word, shared by
+ * all the sentences a {@link MaxentTagger} tags, from any number of threads.
+ * <p>
+ * Local features only look at the current word, and whether a word is rare
+ * is fixed for a given tagger, so a word's local scores are the same
+ * wherever it occurs as long as its tags are not forced.  The cache is split
+ * into stripes, each a small LRU map with its own lock, so that threads
+ * tagging at the same time seldom wait for each other.  The arrays it holds
+ * are shared and must not be modified.
+ *
+ * @see TestSentence#getHistories(String[], History)
+ */
+public class LocalScoreCache {
+
+  private static final int STRIPES = 16;
+
+  private final Map<String, double[]>[] stripes;
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+
+  /**
+   * @param maxSize Roughly how many words to keep.  Each stripe keeps its
+   *   share, so the least recently used words go first within a stripe.
+   */
+  @SuppressWarnings("unchecked")
+  LocalScoreCache(int maxSize) {
+    final int stripeSize = Math.max(1, (maxSize + STRIPES - 1) / STRIPES);
+    stripes = new Map[STRIPES];
+    for (int i = 0; i < STRIPES; i++) {
+      stripes[i] = new LinkedHashMap<String, double[]>(16, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, double[]> eldest) {
+          return size() > stripeSize;
+        }
+      };
+    }
+  }
+
+  private Map<String, double[]> stripe(String word) {
+    int h = word.hashCode();
+    h ^= (h >>> 16);
+    return stripes[h & (STRIPES - 1)];
+  }
+
+  /** Returns the cached local scores of <code>word</code>, or null. */
+  double[] get(String word) {
+    Map<String, double[]> stripe = stripe(word);
+    double[] scores;
+    synchronized (stripe) {
+      scores = stripe.get(word);
+    }
+    if (scores == null) {
+      misses.incrementAndGet();
+    } else {
+      hits.incrementAndGet();
+    }
+    return scores;
+  }
+
+  void put(String word, double[] scores) {
+    Map<String, double[]> stripe = stripe(word);
+    synchronized (stripe) {
+      stripe.put(word, scores);
+    }
+  }
+
+  public int size() {
+    int size = 0;
+    for (Map<String, double[]> stripe : stripes) {
+      synchronized (stripe) {
+        size += stripe.size();
+      }
+    }
+    return size;
+  }
+
+  public long hits() {
+    return hits.get();
+  }
+
+  public long misses() {
+    return misses.get();
+  }
+
+  /** Fraction of lookups that found the word, or 0 if there were none. */
+  public double hitRate() {
+    long h = hits.get();
+    long n = h + misses.get();
+    return n == 0 ? 0.0 : ((double) h) / n;
+  }
+
+  public void clear() {
+    for (Map<String, double[]> stripe : stripes) {
+      synchronized (stripe) {
+        stripe.clear();
+      }
+    }
+    hits.set(0);
+    misses.set(0);
+  }
+
+  @Override
+  public String toString() {
+    return String.format("LocalScoreCache: size=%d hits=%d misses=%d hitRate=%.3f",
+        size(), hits(), misses(), hitRate());
+  }
+
+}
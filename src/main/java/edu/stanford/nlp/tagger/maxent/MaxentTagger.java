@@ -49,6 +49,7 @@ import edu.stanford.nlp.util.DataFilePaths;
 import edu.stanford.nlp.util.Function;
 import edu.stanford.nlp.util.Generics;
 import edu.stanford.nlp.util.ReflectionLoading;
+import edu.stanford.nlp.util.ScoredObject;
 import edu.stanford.nlp.util.Timing;
 import edu.stanford.nlp.util.StringUtils;
 import edu.stanford.nlp.util.XMLUtils;
@@ -204,6 +205,11 @@ import java.text.DecimalFormat;
  * <tr><td>debug</td><td>boolean</td><td>boolean</td><td>All</td><td>Whether to write debugging information (words, top words, unknown words).  Useful for error analysis.</td></tr>
  * <tr><td>debugPrefix</td><td>String</td><td>N/A</td><td>All</td><td>File (path) prefix for where to write out the debugging information (relevant only if debug=true).</td></tr>
  * <tr><td>nthreads</td><td>int</td><td>1</td><td>Test,Text</td><td>Number of threads to use when processing text.</td></tr>
+ * <tr><td>localScoreCacheSize</td><td>int</td><td>10000</td><td>Test,Text</td><td>Number of words whose local feature scores are cached across sentences and threads.  0 turns the cache off.</td></tr>
+ * <tr><td>reuseScratch</td><td>boolean</td><td>false</td><td>Test,Text</td><td>Whether each thread keeps its tagging scratch space from one sentence to the next, so that tagging makes next to no garbage.</td></tr>
+ * <tr><td>inference</td><td>String</td><td>exact</td><td>Test,Text</td><td>How tags are chosen: exact (Viterbi), beam (a beam search, faster for large tag sets) or kbest (Viterbi keeping the kBest best taggings; when testing, also reports how often the correct tagging is among them).  kbest needs a model with no right context.</td></tr>
+ * <tr><td>beamSize</td><td>int</td><td>5</td><td>Test,Text</td><td>Number of hypotheses the beam search keeps at each word.</td></tr>
+ * <tr><td>kBest</td><td>int</td><td>10</td><td>Test,Text</td><td>Number of taggings kbest inference keeps.</td></tr>
  * </table>
  * <p/>
  *
@@ -417,12 +423,50 @@ public class MaxentTagger extends Tagger implements ListProcessor<List<? extends
    */
   Function<String, String> wordFunction;
 
+  /**
+   * Local scores of words, shared by every sentence this tagger tags, or
+   * null if the cache is turned off.
+   */
+  private LocalScoreCache localScoreCache;
+
+  /**
+   * With reuseScratch, the TestSentence each thread tags with, and keeps
+   * along with its scratch arrays; null when every call gets a new one.
+   */
+  private ThreadLocal<TestSentence> testSentences; // = null;
+
+  /** How TestSentence chooses tags, and the sizes of its beam and k-best list. */
+  TaggerConfig.Inference inference = TaggerConfig.Inference.EXACT;
+  int beamSize = Integer.parseInt(TaggerConfig.BEAM_SIZE);
+  int kBest = Integer.parseInt(TaggerConfig.K_BEST);
+
+  /** Built lazily by getFeatureWeights(); reset whenever the weights change. */
+  private volatile FeatureWeights featureWeights; // = null;
+
 
   /* Package access - shouldn't be part of public API. */
   LambdaSolve getLambdaSolve() {
     return prob;
   }
 
+  /**
+   * Returns the weights compiled for scoring, building them from
+   * fAssociations and the lambdas the first time they are needed.
+   */
+  FeatureWeights getFeatureWeights() {
+    FeatureWeights weights = featureWeights;
+    if (weights == null) {
+      synchronized (this) {
+        weights = featureWeights;
+        if (weights == null) {
+          weights = new FeatureWeights(fAssociations, getLambdaSolve().lambda);
+          featureWeights = weights;
+        }
+      }
+    }
+    return weights;
+  }
+
   // TODO: make these constructors instead of init methods?
   void init(TaggerConfig config) {
     if (initted) return;  // TODO: why not reinit?
@@ -485,6 +529,27 @@ public class MaxentTagger extends Tagger implements ListProcessor<List<? extends
         defaultScore = config.getDefaultScore();
     }
 
+    int localScoreCacheSize = (config == null) ? Integer.parseInt(TaggerConfig.LOCAL_SCORE_CACHE_SIZE) : config.getLocalScoreCacheSize();
+    localScoreCache = (localScoreCacheSize > 0) ? new LocalScoreCache(localScoreCacheSize) : null;
+
+    if (config != null) {
+      inference = config.getInference();
+      beamSize = config.getBeamSize();
+      kBest = config.getKBest();
+      if (beamSize < 1 || kBest < 1) {
+        throw new IllegalArgumentException("beamSize and kBest must be positive: " + beamSize + ", " + kBest);
+      }
+    }
+
+    if (config != null && config.getReuseScratch()) {
+      testSentences = new ThreadLocal<TestSentence>() {
+        @Override
+        protected TestSentence initialValue() {
+          return new TestSentence(MaxentTagger.this);
+        }
+      };
+    }
+
     // just in case, reset the defaultScores array so it will be
     // recached later when needed.  can't initialize it now in case we
     // don't know ysize yet
@@ -529,6 +594,23 @@ public class MaxentTagger extends Tagger implements ListProcessor<List<? extends
     return defaultScore > 0.0;
   }
 
+  /**
+   * Returns the cache of local scores shared across sentences and threads,
+   * whose hit rate shows how well it works, or null if it is turned off
+   * (localScoreCacheSize=0).
+   */
+  public LocalScoreCache getLocalScoreCache() {
+    return localScoreCache;
+  }
+
+  /** The calling thread's own TestSentence with reuseScratch, else a new one. */
+  private TestSentence testSentence() {
+    if (testSentences != null) {
+      return testSentences.get();
+    }
+    return new TestSentence(this);
+  }
+
   /**
    * Figures out what tokenizer factory might be described by the
    * config.  If it's described by name in the config, uses reflection
@@ -603,6 +685,13 @@ public class MaxentTagger extends Tagger implements ListProcessor<List<? extends
     setExtractorsGlobal();
   }
 
+  /** Rejects an inference option the model read can't do, before anything is tagged. */
+  private void checkInference() {
+    if (inference == TaggerConfig.Inference.KBEST && rightContext > 0) {
+      throw new IllegalArgumentException("inference=kbest needs a model that doesn't look at the tags of following words; this one looks " + rightContext + " to the right");
+    }
+  }
+
   // Sometimes there is data associated with the tagger (such as a
   // dictionary) that we don't want saved with each extractor.  This
   // call lets those extractors get that information from the tagger
@@ -641,6 +730,7 @@ public class MaxentTagger extends Tagger implements ListProcessor<List<? extends
         fAssociation.remove(rule);
       }
     }
+    featureWeights = null;
   }
 
   /**
@@ -684,6 +774,7 @@ public class MaxentTagger extends Tagger implements ListProcessor<List<? extends
     }
 
     prob = new LambdaSolveTagger(condensedLambda);
+    featureWeights = null;
   }
 
   protected void saveModel(String filename) {
@@ -811,6 +902,7 @@ public class MaxentTagger extends Tagger implements ListProcessor<List<? extends
       }
       tags.read(rf);
       readExtractors(rf);
+      checkInference();
       dict.setAmbClasses(ambClasses, veryCommonWordThresh, tags);
 
       int[] numFA = new int[extractors.size() + extractorsRare.size()];
@@ -854,6 +946,7 @@ public class MaxentTagger extends Tagger implements ListProcessor<List<? extends
         }
       }
       prob = new LambdaSolveTagger(rf);
+      featureWeights = null;
       if (VERBOSE) {
         System.err.println(" prob read ");
       }
@@ -911,7 +1004,7 @@ public class MaxentTagger extends Tagger implements ListProcessor<List<? extends
    */
   public String tagTokenizedString(String toTag) {
     List<Word> sent = Sentence.toUntaggedList(Arrays.asList(toTag.split("\\s+")));
-    TestSentence testSentence = new TestSentence(this);
+    TestSentence testSentence = testSentence();
     testSentence.tagSentence(sent, false);
     return testSentence.getTaggedNice();
   }
@@ -939,7 +1032,7 @@ public class MaxentTagger extends Tagger implements ListProcessor<List<? extends
    * @return A Sentence of TaggedWord
    */
   public List<TaggedWord> apply(List<? extends HasWord> in) {
-    TestSentence testSentence = new TestSentence(this);
+    TestSentence testSentence = testSentence();
     return testSentence.tagSentence(in, false);
   }
 
@@ -959,7 +1052,7 @@ public class MaxentTagger extends Tagger implements ListProcessor<List<? extends
   public List<List<TaggedWord>> process(List<? extends List<? extends HasWord>> sentences) {
     List<List<TaggedWord>> taggedSentences = Generics.newArrayList();
 
-    TestSentence testSentence = new TestSentence(this);
+    TestSentence testSentence = testSentence();
     for (List<? extends HasWord> sentence : sentences) {
       taggedSentences.add(testSentence.tagSentence(sentence, false));
     }
@@ -975,7 +1068,7 @@ public class MaxentTagger extends Tagger implements ListProcessor<List<? extends
    * @return tagged sentence
    */
   public List<TaggedWord> tagSentence(List<? extends HasWord> sentence) {
-    TestSentence testSentence = new TestSentence(this);
+    TestSentence testSentence = testSentence();
     return testSentence.tagSentence(sentence, false);
   }
 
@@ -991,10 +1084,33 @@ public class MaxentTagger extends Tagger implements ListProcessor<List<? extends
    */
   public List<TaggedWord> tagSentence(List<? extends HasWord> sentence,
                                            boolean reuseTags) {
-    TestSentence testSentence = new TestSentence(this);
+    TestSentence testSentence = testSentence();
     return testSentence.tagSentence(sentence, reuseTags);
   }
 
+  /**
+   * Returns the k best taggings of the given sentence, best first, each
+   * scored with its log probability, for a later stage to rescore.  This
+   * works whatever the inference option, but not with models that look at
+   * the tags of following words (such as the bidirectional ones).
+   * @param sentence sentence to tag
+   * @param k the most taggings to return; fewer come back if the sentence
+   *   has fewer
+   * @return the taggings and their scores
+   * @throws IllegalArgumentException if k is less than 1, or the model
+   *   looks at the tags of following words
+   */
+  public List<ScoredObject<List<TaggedWord>>> tagSentenceKBest(List<? extends HasWord> sentence, int k) {
+    if (k < 1) {
+      throw new IllegalArgumentException("k must be positive: " + k);
+    }
+    if (rightContext > 0) {
+      throw new IllegalArgumentException("k-best tagging needs a model that doesn't look at the tags of following words; this one looks " + rightContext + " to the right");
+    }
+    TestSentence testSentence = testSentence();
+    return testSentence.tagSentenceKBest(sentence, k, false);
+  }
+
   /**
    * Takes a sentence composed of CoreLabels and add the tags to the
    * CoreLabels, modifying the input sentence.
@@ -30,6 +30,11 @@ public class TaggerConfig extends Properties /* Inherits implementation of Seria
     TRAIN, TEST, TAG, DUMP
   }
 
+  /** How the tags of a sentence are chosen: Viterbi, beam search, or the k best. */
+  public enum Inference {
+    EXACT, BEAM, KBEST
+  }
+
   /* defaults. sentenceDelimiter might be null; the others all have non-null values. */
   public static final String
   SEARCH = "qn",
@@ -63,7 +68,12 @@ public class TaggerConfig extends Properties /* Inherits implementation of Seria
   OUTPUT_FILE = "",
   OUTPUT_FORMAT = "slashTags",
   OUTPUT_FORMAT_OPTIONS = "",
-  NTHREADS = "1";
+  NTHREADS = "1",
+  LOCAL_SCORE_CACHE_SIZE = "10000",
+  REUSE_SCRATCH = "false",
+  INFERENCE = "exact",
+  BEAM_SIZE = "5",
+  K_BEST = "10";
 
   public static final String ENCODING_PROPERTY = "encoding",
   TAG_SEPARATOR_PROPERTY = "tagSeparator";
@@ -105,6 +115,11 @@ public class TaggerConfig extends Properties /* Inherits implementation of Seria
     defaultValues.put("outputFormat", OUTPUT_FORMAT);
     defaultValues.put("outputFormatOptions", OUTPUT_FORMAT_OPTIONS);
     defaultValues.put("nthreads", NTHREADS);
+    defaultValues.put("localScoreCacheSize", LOCAL_SCORE_CACHE_SIZE);
+    defaultValues.put("reuseScratch", REUSE_SCRATCH);
+    defaultValues.put("inference", INFERENCE);
+    defaultValues.put("beamSize", BEAM_SIZE);
+    defaultValues.put("kBest", K_BEST);
   }
 
   /**
@@ -256,6 +271,15 @@ public class TaggerConfig extends Properties /* Inherits implementation of Seria
     this.setProperty("outputFormat", props.getProperty("outputFormat", this.getProperty("outputFormat")).trim()); //this isn't something we save from time to time
     this.setProperty("outputFormatOptions", props.getProperty("outputFormatOptions", this.getProperty("outputFormatOptions")).trim()); //this isn't something we save from time to time
     this.setProperty("nthreads", props.getProperty("nthreads", this.getProperty("nthreads", NTHREADS)).trim());
+    this.setProperty("localScoreCacheSize", props.getProperty("localScoreCacheSize", this.getProperty("localScoreCacheSize", LOCAL_SCORE_CACHE_SIZE)).trim());
+    this.setProperty("reuseScratch", props.getProperty("reuseScratch", this.getProperty("reuseScratch", REUSE_SCRATCH)).trim());
+    this.setProperty("inference", props.getProperty("inference", this.getProperty("inference", INFERENCE)).trim().toLowerCase());
+    String inference = this.getProperty("inference");
+    if ( ! (inference.equals("exact") || inference.equals("beam") || inference.equals("kbest"))) {
+      throw new RuntimeException("'inference' must be one of 'exact', 'beam' or 'kbest': " + inference);
+    }
+    this.setProperty("beamSize", props.getProperty("beamSize", this.getProperty("beamSize", BEAM_SIZE)).trim());
+    this.setProperty("kBest", props.getProperty("kBest", this.getProperty("kBest", K_BEST)).trim());
     String sentenceDelimiter = props.getProperty("sentenceDelimiter", this.getProperty("sentenceDelimiter"));
     if (sentenceDelimiter != null) {
       // this isn't something we save from time to time.
@@ -373,6 +397,16 @@ public class TaggerConfig extends Properties /* Inherits implementation of Seria
 
   public int getNThreads() { return Integer.parseInt(getProperty("nthreads")); }
 
+  public int getLocalScoreCacheSize() { return Integer.parseInt(getProperty("localScoreCacheSize", LOCAL_SCORE_CACHE_SIZE)); }
+
+  public boolean getReuseScratch() { return Boolean.parseBoolean(getProperty("reuseScratch", REUSE_SCRATCH)); }
+
+  public Inference getInference() { return Inference.valueOf(getProperty("inference", INFERENCE).toUpperCase()); }
+
+  public int getBeamSize() { return Integer.parseInt(getProperty("beamSize", BEAM_SIZE)); }
+
+  public int getKBest() { return Integer.parseInt(getProperty("kBest", K_BEST)); }
+
 
   /** Return a regex of XML elements to tag inside of.  This may return an
    *  empty String, but never null.
@@ -471,6 +505,11 @@ public class TaggerConfig extends Properties /* Inherits implementation of Seria
     pw.println("            outputFormat = " + getProperty("outputFormat"));
     pw.println("     outputFormatOptions = " + getProperty("outputFormatOptions"));
     pw.println("                nthreads = " + getProperty("nthreads"));
+    pw.println("     localScoreCacheSize = " + getProperty("localScoreCacheSize"));
+    pw.println("            reuseScratch = " + getProperty("reuseScratch"));
+    pw.println("               inference = " + getProperty("inference"));
+    pw.println("                beamSize = " + getProperty("beamSize"));
+    pw.println("                   kBest = " + getProperty("kBest"));
     pw.flush();
   }
 
@@ -714,6 +753,24 @@ public class TaggerConfig extends Properties /* Inherits implementation of Seria
 
     out.println("# testFile and textFile can use multiple threads to process text.");
     out.println("# nthreads = " + NTHREADS);
+    out.println();
+
+    out.println("# how many words' local feature scores to cache across sentences and");
+    out.println("# threads when tagging. 0 turns the cache off.");
+    out.println("# localScoreCacheSize = " + LOCAL_SCORE_CACHE_SIZE);
+    out.println();
+
+    out.println("# whether each thread keeps its tagging scratch space from one sentence");
+    out.println("# to the next, so that tagging makes next to no garbage.");
+    out.println("# reuseScratch = " + REUSE_SCRATCH);
+    out.println();
+
+    out.println("# how tags are chosen when tagging: exact (Viterbi), beam (a beam search");
+    out.println("# keeping beamSize hypotheses) or kbest (Viterbi, also keeping the kBest");
+    out.println("# best taggings and their scores; needs a model with no right context).");
+    out.println("# inference = " + INFERENCE);
+    out.println("# beamSize = " + BEAM_SIZE);
+    out.println("# kBest = " + K_BEST);
   }
 
   public Mode getMode() {
@@ -6,6 +6,7 @@ import java.util.List;
 import edu.stanford.nlp.io.PrintFile;
 import edu.stanford.nlp.ling.TaggedWord;
 import edu.stanford.nlp.tagger.io.TaggedFileRecord;
+import edu.stanford.nlp.util.ScoredObject;
 import edu.stanford.nlp.util.concurrent.MulticoreWrapper;
 import edu.stanford.nlp.util.concurrent.ThreadsafeProcessor;
 
@@ -27,6 +28,7 @@ public class TestClassifier {
   private int unknownWords;
   private int numWrongUnknown;
   private int numCorrectSentences;
+  private int numCorrectSentencesInKBest;
   private int numSentences;
 
   // TODO: only one boolean here instead of 3?  They all use the same
@@ -74,6 +76,14 @@ public class TestClassifier {
     if (testS.numWrong == 0) {
       numCorrectSentences++;
     }
+    if (testS.kBestTags != null) {
+      for (ScoredObject<String[]> tags : testS.kBestTags) {
+        if (isCorrect(testS.correctTags, tags.object())) {
+          numCorrectSentencesInKBest++;
+          break;
+        }
+      }
+    }
     if (verboseResults) {
       System.err.println("Sentence number: " + numSentences + "; length " + (testS.size-1) +
                          "; correct: " + testS.numRight + "; wrong: " + testS.numWrong +
@@ -83,6 +93,16 @@ public class TestClassifier {
     }
   }
 
+  /** Whether guessed, which also has a tag for the end of the sentence, agrees with correct. */
+  private static boolean isCorrect(String[] correct, String[] guessed) {
+    for (int i = 0; i < correct.length; i++) {
+      if ( ! correct[i].equals(guessed[i])) {
+        return false;
+      }
+    }
+    return true;
+  }
+
   /**
    * Test on a file containing correct tags already. when init'ing from trees
    * TODO: Add the ability to have a second transformer to transform output back; possibly combine this method
@@ -136,12 +156,27 @@ public class TestClassifier {
             maxentTagger.xSize,
             maxentTagger.ySize,
             maxentTagger.getLambdaSolve().lambda.length));
+    switch (maxentTagger.inference) {
+    case BEAM:
+      output.append(String.format("Tagged with beam search, beamSize=%d.%n", maxentTagger.beamSize));
+      break;
+    case KBEST:
+      output.append(String.format("Tagged with exact search, keeping the %d best taggings.%n", maxentTagger.kBest));
+      break;
+    default:
+      output.append(String.format("Tagged with exact search.%n"));
+    }
     output.append(String.format("Results on %d sentences and %d words, of which %d were unknown.%n",
             numSentences, numRight + numWrong, unknownWords));
     output.append(String.format("Total sentences right: %d (%f%%); wrong: %d (%f%%).%n",
                                 numCorrectSentences, numCorrectSentences * 100.0 / numSentences,
                                 numSentences - numCorrectSentences,
                                 (numSentences - numCorrectSentences) * 100.0 / (numSentences)));
+    if (maxentTagger.inference == TaggerConfig.Inference.KBEST) {
+      output.append(String.format("Sentences whose correct tagging is among the %d best: %d (%f%%).%n",
+                                  maxentTagger.kBest, numCorrectSentencesInKBest,
+                                  numCorrectSentencesInKBest * 100.0 / numSentences));
+    }
     output.append(String.format("Total tags right: %d (%f%%); wrong: %d (%f%%).%n",
                                 numRight, numRight * 100.0 / (numRight + numWrong), numWrong,
                                 numWrong * 100.0 / (numRight + numWrong)));
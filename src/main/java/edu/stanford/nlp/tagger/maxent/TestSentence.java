@@ -16,13 +16,17 @@ import edu.stanford.nlp.ling.Sentence;
 import edu.stanford.nlp.ling.TaggedWord;
 import edu.stanford.nlp.math.ArrayMath;
 import edu.stanford.nlp.math.SloppyMath;
-import edu.stanford.nlp.sequences.BestSequenceFinder;
+import edu.stanford.nlp.sequences.BeamBestSequenceFinder;
 import edu.stanford.nlp.sequences.ExactBestSequenceFinder;
+import edu.stanford.nlp.sequences.KBestSequenceFinder;
 import edu.stanford.nlp.sequences.SequenceModel;
+import edu.stanford.nlp.stats.ClassicCounter;
+import edu.stanford.nlp.stats.Counters;
 import edu.stanford.nlp.tagger.common.Tagger;
 import edu.stanford.nlp.util.ArrayUtils;
 import edu.stanford.nlp.util.Generics;
 import edu.stanford.nlp.util.Pair;
+import edu.stanford.nlp.util.ScoredObject;
 
 import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
@@ -58,6 +62,9 @@ public class TestSentence implements SequenceModel {
   // protected double[][][] probabilities;
   protected String[] correctTags;
   protected String[] finalTags;
+  // With kbest inference, the best taggings found, best first, each with
+  // its log probability; finalTags is the first of them.  Otherwise null.
+  List<ScoredObject<String[]>> kBestTags;
   ArrayList<TaggedWord> result;
   int numRight;
   int numWrong;
@@ -71,6 +78,19 @@ public class TestSentence implements SequenceModel {
 
   protected final MaxentTagger maxentTagger;
 
+  // Scratch space kept from one position and one sentence to the next, so
+  // that inference itself makes next to no garbage: the tags possible at
+  // each (padded) position and their indices, the arrays local context
+  // scores are summed into, and score arrays pooled by their length.
+  private String[][] tagsAt = new String[0][];
+  private int[][] tagIndicesAt = new int[0][];
+  private double[][] localContextBuffers = new double[0][];
+  private final double[][] historyBuffers;
+  private final double[][] scoreBuffers;
+  private final ExactBestSequenceFinder bestSequenceFinder = new ExactBestSequenceFinder(true);
+  private final BeamBestSequenceFinder beamSequenceFinder;
+  private final KBestSequenceFinder kBestSequenceFinder = new KBestSequenceFinder();
+
   public TestSentence(MaxentTagger maxentTagger) {
     assert(maxentTagger != null);
     assert(maxentTagger.getLambdaSolve() != null);
@@ -85,6 +105,9 @@ public class TestSentence implements SequenceModel {
       VERBOSE = false;
     }
     history = new History(pairs, maxentTagger.extractors);
+    historyBuffers = new double[maxentTagger.ySize + 1][];
+    scoreBuffers = new double[maxentTagger.ySize + 1][];
+    beamSequenceFinder = new BeamBestSequenceFinder(maxentTagger.beamSize);
   }
 
   public void setCorrectTags(List<? extends HasTag> sentence) {
@@ -104,6 +127,38 @@ public class TestSentence implements SequenceModel {
    */
   public ArrayList<TaggedWord> tagSentence(List<? extends HasWord> s,
                                            boolean reuseTags) {
+    setSentence(s, reuseTags);
+    result = testTagInference();
+    restoreWords(result, s);
+    return result;
+  }
+
+  /**
+   * Finds the k best taggings of the sentence s, whatever the tagger's
+   * inference option, each with its log probability.  The tagger must not
+   * look at the tags of following words.
+   *
+   * @param s Input sentence (List).  This isn't changed.
+   * @param k How many taggings to return, at most
+   * @return The taggings, best first
+   */
+  public List<ScoredObject<List<TaggedWord>>> tagSentenceKBest(List<? extends HasWord> s,
+                                                              int k, boolean reuseTags) {
+    setSentence(s, reuseTags);
+    initializeScorer();
+    kBestTags = kBestTags(k);
+    cleanUpScorer();
+    List<ScoredObject<List<TaggedWord>>> taggings = new ArrayList<ScoredObject<List<TaggedWord>>>(kBestTags.size());
+    for (ScoredObject<String[]> tags : kBestTags) {
+      ArrayList<TaggedWord> tagging = getTaggedSentence(tags.object());
+      restoreWords(tagging, s);
+      taggings.add(new ScoredObject<List<TaggedWord>>(tagging, tags.score()));
+    }
+    finalTags = kBestTags.get(0).object();
+    return taggings;
+  }
+
+  private void setSentence(List<? extends HasWord> s, boolean reuseTags) {
     this.origWords = new ArrayList<HasWord>(s);
     int sz = s.size();
     this.sent = new ArrayList<String>(sz + 1);
@@ -125,19 +180,23 @@ public class TestSentence implements SequenceModel {
         }
       }
       originalTags.add(Tagger.EOS_TAG);
+    } else {
+      this.originalTags = null;
     }
     size = sz + 1;
     if (VERBOSE) {
       System.err.println("Sentence is " + Sentence.listToString(sent, false, tagSeparator));
     }
     init();
-    result = testTagInference();
+  }
+
+  /** Puts back the words the tagger's wordFunction changed. */
+  private void restoreWords(List<TaggedWord> tagged, List<? extends HasWord> s) {
     if (maxentTagger.wordFunction != null) {
-      for (int j = 0; j < sz; ++j) {
-        result.get(j).setWord(s.get(j).word());
+      for (int j = 0, sz = s.size(); j < sz; ++j) {
+        tagged.get(j).setWord(s.get(j).word());
       }
     }
-    return result;
   }
 
 
@@ -147,7 +206,27 @@ public class TestSentence implements SequenceModel {
 
   protected void init() {
     //the eos are assumed already there
-    localContextScores = new double[size][];
+    if (localContextScores == null || localContextScores.length < size) {
+      localContextScores = new double[size][];
+      localContextBuffers = Arrays.copyOf(localContextBuffers, size);
+    } else {
+      Arrays.fill(localContextScores, 0, size, null);
+    }
+    localScores.clear();
+    int padLength = size + leftWindow() + rightWindow();
+    if (tagsAt.length < padLength) {
+      tagsAt = new String[padLength][];
+      tagIndicesAt = new int[padLength][];
+    }
+    for (int pos = 0; pos < padLength; pos++) {
+      String[] tags = stringTagsAt(pos);
+      int[] tagIndices = new int[tags.length];
+      for (int j = 0; j < tags.length; j++) {
+        tagIndices[j] = maxentTagger.tags.getIndex(tags[j]);
+      }
+      tagsAt[pos] = tags;
+      tagIndicesAt[pos] = tagIndices;
+    }
     for (int i = 0; i < size - 1; i++) {
       if (maxentTagger.dict.isUnknown(sent.get(i))) {
         numUnknown++;
@@ -171,6 +250,10 @@ public class TestSentence implements SequenceModel {
 
 
   ArrayList<TaggedWord> getTaggedSentence() {
+    return getTaggedSentence(finalTags);
+  }
+
+  private ArrayList<TaggedWord> getTaggedSentence(String[] finalTags) {
     final boolean hasOffset;
     hasOffset = origWords != null && origWords.size() > 0 && (origWords.get(0) instanceof HasOffset);
     ArrayList<TaggedWord> taggedSentence = new ArrayList<TaggedWord>();
@@ -217,8 +300,9 @@ public class TestSentence implements SequenceModel {
       endSizePairs = endSizePairs + size;
       // iterate over the sentence
       for (int current = 0; current < size; current++) {
-        History h = new History(start, end, current + start, pairs, maxentTagger.extractors);
-        String[] tags = stringTagsAt(h.current - h.start + leftWindow());
+        History h = history;
+        h.init(start, end, current + start);
+        String[] tags = tagsAt[h.current - h.start + leftWindow()];
         double[] probs = getHistories(tags, h);
         ArrayMath.logNormalize(probs);
 
@@ -291,7 +375,8 @@ public class TestSentence implements SequenceModel {
 
 
   /**
-   * Test using (exact Viterbi) TagInference.
+   * Test using the tagger's TagInference: exact Viterbi, a beam search, or
+   * the k best taggings.
    *
    * @return The tagged sentence
    */
@@ -303,17 +388,43 @@ public class TestSentence implements SequenceModel {
   private void runTagInference() {
     this.initializeScorer();
 
-    BestSequenceFinder ti = new ExactBestSequenceFinder();
-      //new BeamBestSequenceFinder(50);
-      //new KBestSequenceFinder()
-    int[] bestTags = ti.bestSequence(this);
-    finalTags = new String[bestTags.length];
-    for (int j = 0; j < size; j++) {
-      finalTags[j] = maxentTagger.tags.getTag(bestTags[j + leftWindow()]);
+    switch (maxentTagger.inference) {
+    case BEAM:
+      kBestTags = null;
+      finalTags = toTags(beamSequenceFinder.bestSequence(this));
+      break;
+    case KBEST:
+      kBestTags = kBestTags(maxentTagger.kBest);
+      finalTags = kBestTags.get(0).object();
+      break;
+    default:
+      kBestTags = null;
+      finalTags = toTags(bestSequenceFinder.bestSequence(this));
     }
     cleanUpScorer();
   }
 
+  /** The tags of a sequence found by a BestSequenceFinder, by word rather than padded position. */
+  private String[] toTags(int[] bestTags) {
+    String[] tags = new String[bestTags.length];
+    for (int j = 0; j < size; j++) {
+      tags[j] = maxentTagger.tags.getTag(bestTags[j + leftWindow()]);
+    }
+    return tags;
+  }
+
+  private List<ScoredObject<String[]>> kBestTags(int k) {
+    if (rightWindow() > 0) {
+      throw new UnsupportedOperationException("k-best tagging needs a model that doesn't look at the tags of following words; this one looks " + rightWindow() + " to the right");
+    }
+    ClassicCounter<int[]> kBest = kBestSequenceFinder.kBestSequences(this, k);
+    List<ScoredObject<String[]>> taggings = new ArrayList<ScoredObject<String[]>>(kBest.size());
+    for (int[] bestTags : Counters.toSortedList(kBest)) {
+      taggings.add(new ScoredObject<String[]>(toTags(bestTags), kBest.getCount(bestTags)));
+    }
+    return taggings;
+  }
+
 
   // This is used for Dan's tag inference methods.
   // current is the actual word number + leftW
@@ -360,15 +471,15 @@ public class TestSentence implements SequenceModel {
   }
 
   private double[] getExactScores(History h) {
-    String[] tags = stringTagsAt(h.current - h.start + leftWindow());
+    int pos = h.current - h.start + leftWindow();
+    String[] tags = tagsAt[pos];
+    int[] tagIndices = tagIndicesAt[pos];
     double[] histories = getHistories(tags, h); // log score for each tag
     ArrayMath.logNormalize(histories);
-    double[] scores = new double[tags.length];
+    double[] scores = buffer(scoreBuffers, tags.length);
     for (int j = 0; j < tags.length; j++) {
       // score the j-th tag
-      String tag = tags[j];
-      int tagindex = maxentTagger.tags.getIndex(tag);
-      scores[j] = histories[tagindex];
+      scores[j] = histories[tagIndices[j]];
     }
     return scores;
   }
@@ -377,7 +488,7 @@ public class TestSentence implements SequenceModel {
   // (e.g., apple_CC) gets a default (constant) score instead of its exact score.
   // The scores of all other tags are computed exactly.
   private double[] getApproximateScores(History h) {
-    String[] tags = stringTagsAt(h.current - h.start + leftWindow());
+    String[] tags = tagsAt[h.current - h.start + leftWindow()];
     double[] scores = getHistories(tags, h); // log score for each active tag, unnormalized
 
     // Number of tags that get assigned a default score:
@@ -391,98 +502,85 @@ public class TestSentence implements SequenceModel {
   }
 
   // This precomputes scores of local features (localScores).
+  // The array returned is scratch space, valid until the next call, and
+  // tags must be those possible at h's position (as for getPossibleValues).
   protected double[] getHistories(String[] tags, History h) {
     boolean rare = maxentTagger.isRare(ExtractorFrames.cWord.extract(h));
     Extractors ex = maxentTagger.extractors, exR = maxentTagger.extractorsRare;
     String w = pairs.getWord(h.current);
+    int[] tagIndices = tagIndicesAt[h.current - h.start + leftWindow()];
+    int length = maxentTagger.hasApproximateScoring() ? tags.length : maxentTagger.ySize;
     double[] lS, lcS;
-    lS = localScores.get(w);
-    if (lS == null) {
-      lS = getHistories(tags, h, ex.local, rare ? exR.local : null);
-      localScores.put(w,lS);
-    } else if (lS.length != tags.length) {
-      // This case can occur when a word was given a specific forced
-      // tag, and then later it shows up without the forced tag.
-      // TODO: if a word is given a forced tag, we should always get
-      // its features rather than use the cache, just in case the tag
-      // given is not the same tag as before
-      lS = getHistories(tags, h, ex.local, rare ? exR.local : null);
-      if (tags.length > 1) {
-        localScores.put(w,lS);
+    if (originalTags != null && originalTags.get(h.current - h.start) != null) {
+      // A word given a forced tag is scored for that tag only, so its
+      // scores are not those of the word and are never cached
+      lS = new double[length];
+      addHistories(lS, tagIndices, h, ex.local, rare ? exR.local : null);
+    } else if ((lS = localScores.get(w)) == null) {
+      // Local features only look at the word, so the tagger-wide cache
+      // can hold its scores across sentences.  Cached arrays are shared:
+      // they are only ever added into other arrays below.
+      LocalScoreCache cache = maxentTagger.getLocalScoreCache();
+      if (cache != null) {
+        lS = cache.get(w);
       }
+      if (lS == null) {
+        lS = new double[length];
+        addHistories(lS, tagIndices, h, ex.local, rare ? exR.local : null);
+        if (cache != null) {
+          cache.put(w, lS);
+        }
+      }
+      localScores.put(w,lS);
     }
     if((lcS = localContextScores[h.current]) == null) {
-      lcS = getHistories(tags, h, ex.localContext, rare ? exR.localContext : null);
+      lcS = localContextBuffers[h.current];
+      if (lcS == null || lcS.length != length) {
+        lcS = new double[length];
+        localContextBuffers[h.current] = lcS;
+      } else {
+        Arrays.fill(lcS, 0.0);
+      }
+      addHistories(lcS, tagIndices, h, ex.localContext, rare ? exR.localContext : null);
       localContextScores[h.current] = lcS;
       ArrayMath.pairwiseAddInPlace(lcS,lS);
     }
-    double[] totalS = getHistories(tags, h, ex.dynamic, rare ? exR.dynamic : null);
+    double[] totalS = buffer(historyBuffers, length);
+    addHistories(totalS, tagIndices, h, ex.dynamic, rare ? exR.dynamic : null);
     ArrayMath.pairwiseAddInPlace(totalS,lcS);
     return totalS;
   }
 
-  private double[] getHistories(String[] tags, History h, List<Pair<Integer,Extractor>> extractors, List<Pair<Integer,Extractor>> extractorsRare) {
-    if(maxentTagger.hasApproximateScoring())
-      return getApproximateHistories(tags, h, extractors, extractorsRare);
-    return getExactHistories(h, extractors, extractorsRare);
-  }
-
-  private double[] getExactHistories(History h, List<Pair<Integer,Extractor>> extractors, List<Pair<Integer,Extractor>> extractorsRare) {
-    double[] scores = new double[maxentTagger.ySize];
-    int szCommon = maxentTagger.extractors.size();
-
-    for (Pair<Integer,Extractor> e : extractors) {
-      int kf = e.first();
-      Extractor ex = e.second();
-      String val = ex.extract(h);
-      int[] fAssociations = maxentTagger.fAssociations.get(kf).get(val);
-      if (fAssociations != null) {
-        for (int i = 0; i < maxentTagger.ySize; i++) {
-          int fNum = fAssociations[i];
-          if (fNum > -1) {
-            scores[i] += maxentTagger.getLambdaSolve().lambda[fNum];
-          }
-        }
-      }
-    }
-    if (extractorsRare != null) {
-      for (Pair<Integer,Extractor> e : extractorsRare) {
-        int kf = e.first();
-        Extractor ex = e.second();
-        String val = ex.extract(h);
-        int[] fAssociations = maxentTagger.fAssociations.get(kf+szCommon).get(val);
-        if (fAssociations != null) {
-          for (int i = 0; i < maxentTagger.ySize; i++) {
-            int fNum = fAssociations[i];
-            if (fNum > -1) {
-              scores[i] += maxentTagger.getLambdaSolve().lambda[fNum];
-            }
-          }
-        }
-      }
+  /** Returns the pooled array of the given length, zeroed. */
+  private static double[] buffer(double[][] pool, int length) {
+    double[] buffer = pool[length];
+    if (buffer == null) {
+      buffer = new double[length];
+      pool[length] = buffer;
+    } else {
+      Arrays.fill(buffer, 0.0);
     }
-    return scores;
+    return buffer;
   }
 
-  // Returns an unnormalized score (in log space) for each tag
-  private double[] getApproximateHistories(String[] tags, History h, List<Pair<Integer,Extractor>> extractors, List<Pair<Integer,Extractor>> extractorsRare) {
-
-    double[] scores = new double[tags.length];
+  // Adds to scores the weights of the features the extractors find in h:
+  // for every tag, or, with approximate scoring, for the tags numbered
+  // tagIndices only, scores[j] then being the score of tagIndices[j]
+  private void addHistories(double[] scores, int[] tagIndices, History h, List<Pair<Integer,Extractor>> extractors, List<Pair<Integer,Extractor>> extractorsRare) {
+    boolean approximate = maxentTagger.hasApproximateScoring();
     int szCommon = maxentTagger.extractors.size();
+    FeatureWeights weights = maxentTagger.getFeatureWeights();
 
     for (Pair<Integer,Extractor> e : extractors) {
       int kf = e.first();
       Extractor ex = e.second();
       String val = ex.extract(h);
-      int[] fAssociations = maxentTagger.fAssociations.get(kf).get(val);
-      if (fAssociations != null) {
-        for (int j = 0; j < tags.length; j++) {
-          String tag = tags[j];
-          int tagIndex = maxentTagger.tags.getIndex(tag);
-          int fNum = fAssociations[tagIndex];
-          if (fNum > -1) {
-            scores[j] += maxentTagger.getLambdaSolve().lambda[fNum];
-          }
+      int row = weights.row(kf, val);
+      if (row >= 0) {
+        if (approximate) {
+          weights.addTo(scores, row, tagIndices);
+        } else {
+          weights.addTo(scores, row);
         }
       }
     }
@@ -491,20 +589,16 @@ public class TestSentence implements SequenceModel {
         int kf = e.first();
         Extractor ex = e.second();
         String val = ex.extract(h);
-        int[] fAssociations = maxentTagger.fAssociations.get(szCommon+kf).get(val);
-        if (fAssociations != null) {
-          for (int j = 0; j < tags.length; j++) {
-            String tag = tags[j];
-            int tagIndex = maxentTagger.tags.getIndex(tag);
-            int fNum = fAssociations[tagIndex];
-            if (fNum > -1) {
-              scores[j] += maxentTagger.getLambdaSolve().lambda[fNum];
-            }
+        int row = weights.row(kf+szCommon, val);
+        if (row >= 0) {
+          if (approximate) {
+            weights.addTo(scores, row, tagIndices);
+          } else {
+            weights.addTo(scores, row);
           }
         }
       }
     }
-    return scores;
   }
 
 
@@ -659,15 +753,10 @@ public class TestSentence implements SequenceModel {
   }
 
 
+  /** The array returned is shared, and must not be modified. */
   @Override
   public int[] getPossibleValues(int pos) {
-    String[] arr1 = stringTagsAt(pos);
-    int[] arr = new int[arr1.length];
-    for (int i = 0; i < arr.length; i++) {
-      arr[i] = maxentTagger.tags.getIndex(arr1[i]);
-    }
-
-    return arr;
+    return tagIndicesAt[pos];
   }
 
   @Override
@@ -688,6 +777,10 @@ public class TestSentence implements SequenceModel {
     throw new UnsupportedOperationException();
   }
 
+  /**
+   * The array returned is scratch space, overwritten by the next call;
+   * sequence finders copy the scores out straight away.
+   */
   @Override
   public double[] scoresOf(int[] tags, int pos) {
     if (DBG) {
@@ -1,6 +1,7 @@
 package edu.stanford.nlp.util;
 
 import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.util.*;
 
@@ -20,6 +21,16 @@ import edu.stanford.nlp.util.logging.Redwood.RedwoodChannels;
  * </p>
  *
  * <p>
+ * Small maps are searched by scanning the keys.  Once a map holds more keys
+ * than that is quick for, as a {@link edu.stanford.nlp.ling.CoreLabel} may by
+ * the end of a pipeline, it also keeps a small open-addressed table of where
+ * its keys are, probed by the identity hash code of the key class, so that
+ * lookups take constant time however many annotations there are.  The table
+ * is only changed by the methods that change the map, so maps which are no
+ * longer changed can be read from several threads.
+ * </p>
+ *
+ * <p>
  * Note that like the base classes in the Collections API, this implementation
  * is <em>not thread-safe</em>. For speed reasons, these methods are not
  * synchronized. A synchronized wrapper could be developed by anyone so
@@ -49,6 +60,21 @@ public class ArrayCoreMap implements CoreMap /*, Serializable */ {
   /** Total number of elements actually in keys,values */
   private int size; // = 0;
 
+  /** Maps with more keys than this index them; smaller ones are scanned */
+  private static final int MAX_SCANNED = 16;
+
+  /** The most keys an index can point at, as positions are kept in bytes */
+  private static final int MAX_INDEXED = 255;
+
+  /**
+   * Where each key is, or null if the map is scanned.  The entry a key
+   * hashes to (or, if that is taken, the next free entry after it) holds one
+   * plus the key's position in keys, and empty entries hold 0.  The table is
+   * at least twice as long as the number of keys, and is rebuilt rather than
+   * serialized.
+   */
+  private transient byte[] index; // = null;
+
   /**
    * Default constructor - initializes with default initial annotation
    * capacity of 4.
@@ -77,6 +103,9 @@ public class ArrayCoreMap implements CoreMap /*, Serializable */ {
     size = other.size;
     keys = Arrays.copyOf(other.keys, size);
     values = Arrays.copyOf(other.values, size);
+    if (other.index != null) {
+      index = other.index.clone();
+    }
   }
 
   /**
@@ -97,6 +126,63 @@ public class ArrayCoreMap implements CoreMap /*, Serializable */ {
       this.values[i] = other.get(key);
       i++;
     }
+    reindex();
+  }
+
+  /** Returns the position of key in keys, or -1 if it is not there. */
+  private int find(Class<?> key) {
+    byte[] index = this.index;
+    if (index != null && key != null) {
+      return find(index, key);
+    }
+    for (int i = 0; i < size; i++) {
+      if (keys[i] == key) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  private int find(byte[] index, Class<?> key) {
+    int mask = index.length - 1;
+    for (int h = System.identityHashCode(key) & mask; ; h = (h + 1) & mask) {
+      int pos = (index[h] & 0xFF) - 1;
+      if (pos < 0 || keys[pos] == key) {
+        return pos;
+      }
+    }
+  }
+
+  /**
+   * Puts the key at position pos in the index, which must have room for it
+   * and pos must be below MAX_INDEXED.
+   */
+  private void addToIndex(int pos) {
+    if (keys[pos] == null) {
+      return; // only ever found by scanning
+    }
+    int mask = index.length - 1;
+    int h = System.identityHashCode(keys[pos]) & mask;
+    while (index[h] != 0) {
+      h = (h + 1) & mask;
+    }
+    index[h] = (byte) (pos + 1);
+  }
+
+  /** Builds the index from scratch, or drops it if the map should be scanned. */
+  private void reindex() {
+    if (size <= MAX_SCANNED || size > MAX_INDEXED) {
+      index = null;
+      return;
+    }
+    int length = 32;
+    while (length < 2 * Math.max(size, keys.length)) {
+      length <<= 1;
+    }
+    index = new byte[length];
+    for (int i = 0; i < size; i++) {
+      addToIndex(i);
+    }
   }
 
   /**
@@ -105,12 +191,16 @@ public class ArrayCoreMap implements CoreMap /*, Serializable */ {
   @Override
   @SuppressWarnings("unchecked")
   public <VALUE> VALUE get(Class<? extends Key<VALUE>> key) {
-    for (int i = 0; i < size; i++) {
-      if (key == keys[i]) {
-        return (VALUE)values[i];
+    if (index == null) {
+      for (int i = 0; i < size; i++) {
+        if (key == keys[i]) {
+          return (VALUE)values[i];
+        }
       }
+      return null;
     }
-    return null;
+    int i = find(key);
+    return i < 0 ? null : (VALUE) values[i];
   }
 
 
@@ -120,13 +210,7 @@ public class ArrayCoreMap implements CoreMap /*, Serializable */ {
    */
   @Override
   public <VALUE> boolean has(Class<? extends Key<VALUE>> key) {
-    for (int i = 0; i < size; i++) {
-      if (keys[i] == key) {
-        return true;
-      }
-    }
-
-    return false;
+    return find(key) >= 0;
   }
 
   /**
@@ -137,12 +221,11 @@ public class ArrayCoreMap implements CoreMap /*, Serializable */ {
   public <VALUE> VALUE set(Class<? extends Key<VALUE>> key, VALUE value) {
 
     // search array for existing value to replace
-    for (int i = 0; i < size; i++) {
-      if (keys[i] == key) {
-        VALUE rv = (VALUE)values[i];
-        values[i] = value;
-        return rv;
-      }
+    int i = find(key);
+    if (i >= 0) {
+      VALUE rv = (VALUE)values[i];
+      values[i] = value;
+      return rv;
     }
     // not found in arrays, add to end ...
 
@@ -162,6 +245,12 @@ public class ArrayCoreMap implements CoreMap /*, Serializable */ {
     values[size] = value;
     size++;
 
+    if (index != null && size <= MAX_INDEXED && 2 * size <= index.length) {
+      addToIndex(size - 1);
+    } else if (size > MAX_SCANNED) {
+      reindex();
+    }
+
     return null;
   }
 
@@ -214,16 +303,16 @@ public class ArrayCoreMap implements CoreMap /*, Serializable */ {
   public <VALUE> VALUE remove(Class<? extends Key<VALUE>> key) {
 
     Object rv = null;
-    for (int i = 0; i < size; i++) {
-      if (keys[i] == key) {
-        rv = values[i];
-        if (i < size - 1) {
-          System.arraycopy(keys,   i+1, keys,   i, size-(i+1));
-          System.arraycopy(values, i+1, values, i, size-(i+1));
-        }
-        size--;
-        break;
+    int i = find(key);
+    if (i >= 0) {
+      rv = values[i];
+      if (i < size - 1) {
+        System.arraycopy(keys,   i+1, keys,   i, size-(i+1));
+        System.arraycopy(values, i+1, values, i, size-(i+1));
       }
+      size--;
+      // the keys after it have moved
+      reindex();
     }
     return (VALUE)rv;
   }
@@ -233,12 +322,7 @@ public class ArrayCoreMap implements CoreMap /*, Serializable */ {
    */
   @Override
   public <VALUE> boolean containsKey(Class<? extends Key<VALUE>> key) {
-    for (int i = 0; i < size; i++) {
-      if (keys[i] == key) {
-        return true;
-      }
-    }
-    return false;
+    return find(key) >= 0;
   }
 
 
@@ -524,19 +608,12 @@ public class ArrayCoreMap implements CoreMap /*, Serializable */ {
     for (int i = 0; i < this.size; i++) {
       // test if other contains this key,value pair
       boolean matched = false;
-      for (int j = 0; j < other.size; j++) {
-        if (this.keys[i] == other.keys[j]) {
-          if ((this.values[i] == null && other.values[j] != null) ||
-              (this.values[i] != null && other.values[j] == null)) {
-            matched = false;
-            break;
-          }
-
-          if ((this.values[i] == null && other.values[j] == null) ||
-              (this.values[i].equals(other.values[j]))) {
-            matched = true;
-            break;
-          }
+      int j = other.find(this.keys[i]);
+      if (j >= 0) {
+        if (this.values[i] == null || other.values[j] == null) {
+          matched = (this.values[i] == other.values[j]);
+        } else {
+          matched = this.values[i].equals(other.values[j]);
         }
       }
 
@@ -622,6 +699,19 @@ public class ArrayCoreMap implements CoreMap /*, Serializable */ {
     out.defaultWriteObject();
   }
 
+  /**
+   * Overridden deserialization method: rebuilds the index, which is not
+   * written out.
+   *
+   * @param in Stream to read from
+   * @throws IOException If IO error
+   * @throws ClassNotFoundException If a class of the map is unknown
+   */
+  private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+    in.defaultReadObject();
+    reindex();
+  }
+
   // TODO: make prettyLog work in the situation of loops
   // in the object graph
 
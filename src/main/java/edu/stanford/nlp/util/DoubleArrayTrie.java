@@ -0,0 +1,397 @@
+package edu.stanford.nlp.util;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.util.*;
+
+/**
+ * A read-only set of Strings stored as a double-array trie in a single
+ * {@link ByteBuffer}, which can live off the Java heap (a direct buffer, or
+ * a file mapped into memory with {@link #load(File)}).
+ * <p/>
+ * Characters are first mapped to dense codes, most frequent first, so that
+ * the arrays stay compact for large alphabets such as Chinese. The child of
+ * node s for code c is node t = base[s] + c if check[t] == s; code 0 marks
+ * the end of a word. Besides exact lookup with {@link #contains}, the trie
+ * can report with {@link #matchLengths} all words starting at a position of
+ * a text in one left-to-right walk, without building substrings. Lookups
+ * only use absolute reads of the buffer, so the trie can be shared between
+ * threads without locking.
+ * <p/>
+ * Buffer layout (big-endian): magic, version, number of words, alphabet size
+ * a, array size n, then the characters of codes 1..a as chars (padded to a
+ * multiple of 4 bytes), followed by int arrays base[n] and check[n].
+ */
+public class DoubleArrayTrie {
+
+  /** "DATR" */
+  public static final int MAGIC = 0x44415452;
+  public static final int VERSION = 1;
+
+  private static final int HEADER = 20;
+  private static final int FREE = -1;
+  private static final int ROOT = 0;
+
+  private final ByteBuffer buffer;
+  private final int size;
+  private final int[] codeOf = new int[Character.MAX_VALUE + 1];
+  private final CharBuffer alphabet;
+  private final IntBuffer base;
+  private final IntBuffer check;
+  private final int arraySize;
+
+  /**
+   * Wraps a buffer previously produced by {@link #build(Collection)}. The
+   * buffer is not copied.
+   */
+  public DoubleArrayTrie(ByteBuffer buffer) {
+    this.buffer = buffer.duplicate();
+    if (this.buffer.getInt(0) != MAGIC) {
+      throw new IllegalArgumentException("Not a DoubleArrayTrie buffer");
+    }
+    if (this.buffer.getInt(4) != VERSION) {
+      throw new IllegalArgumentException("Unsupported DoubleArrayTrie version " + this.buffer.getInt(4));
+    }
+    this.size = this.buffer.getInt(8);
+    int alphabetSize = this.buffer.getInt(12);
+    this.arraySize = this.buffer.getInt(16);
+    int bases = HEADER + ((2 * alphabetSize + 3) & ~3);
+    int checks = bases + 4 * arraySize;
+    this.alphabet = slice(HEADER, 2 * alphabetSize).asCharBuffer();
+    this.base = slice(bases, 4 * arraySize).asIntBuffer();
+    this.check = slice(checks, 4 * arraySize).asIntBuffer();
+    for (int c = 0; c < alphabetSize; c++) {
+      codeOf[alphabet.get(c)] = c + 1;
+    }
+  }
+
+  private ByteBuffer slice(int offset, int length) {
+    ByteBuffer b = buffer.duplicate();
+    b.position(offset);
+    b.limit(offset + length);
+    return b.slice();
+  }
+
+  /**
+   * Builds a trie over the given strings. The empty string is ignored. The
+   * result is held in a direct buffer.
+   */
+  public static DoubleArrayTrie build(Collection<String> strings) {
+    List<String> words = new ArrayList<String>(strings.size());
+    for (String s : strings) {
+      if (s.length() > 0) {
+        words.add(s);
+      }
+    }
+    Collections.sort(words);
+    // drop duplicates
+    int n = 0;
+    for (int i = 0; i < words.size(); i++) {
+      if (n == 0 || ! words.get(i).equals(words.get(n - 1))) {
+        words.set(n++, words.get(i));
+      }
+    }
+    words = words.subList(0, n);
+
+    // the most frequent characters get the smallest codes
+    final int[] counts = new int[Character.MAX_VALUE + 1];
+    for (String w : words) {
+      for (int i = 0; i < w.length(); i++) {
+        counts[w.charAt(i)]++;
+      }
+    }
+    List<Character> chars = new ArrayList<Character>();
+    for (int c = 0; c < counts.length; c++) {
+      if (counts[c] > 0) {
+        chars.add((char) c);
+      }
+    }
+    Collections.sort(chars, new Comparator<Character>() {
+      @Override
+      public int compare(Character a, Character b) {
+        return counts[b] != counts[a] ? (counts[b] < counts[a] ? -1 : 1) : a.compareTo(b);
+      }
+    });
+    int[] codes = new int[Character.MAX_VALUE + 1];
+    for (int i = 0; i < chars.size(); i++) {
+      codes[chars.get(i)] = i + 1;
+    }
+
+    Builder builder = new Builder(words, codes, Math.max(1024, n * 2));
+    if (n > 0) {
+      builder.insert(ROOT, 0, n, 0);
+    }
+    int arraySize = builder.used + 1;
+
+    int alphabetBytes = (2 * chars.size() + 3) & ~3;
+    ByteBuffer buffer = ByteBuffer.allocateDirect(HEADER + alphabetBytes + 8 * arraySize);
+    buffer.putInt(MAGIC).putInt(VERSION).putInt(n).putInt(chars.size()).putInt(arraySize);
+    for (char c : chars) {
+      buffer.putChar(c);
+    }
+    buffer.position(HEADER + alphabetBytes);
+    for (int i = 0; i < arraySize; i++) {
+      buffer.putInt(builder.base[i]);
+    }
+    for (int i = 0; i < arraySize; i++) {
+      buffer.putInt(builder.check[i]);
+    }
+    buffer.flip();
+    return new DoubleArrayTrie(buffer);
+  }
+
+  /** Lays out the trie over sorted, distinct words. */
+  private static class Builder {
+    private final List<String> words;
+    private final int[] codes;
+    int[] base;
+    int[] check;
+    /** Largest index taken by a node. */
+    int used = ROOT;
+    /** Where the search for free indices starts. */
+    private int nextCheckPos = 1;
+
+    Builder(List<String> words, int[] codes, int capacity) {
+      this.words = words;
+      this.codes = codes;
+      base = new int[capacity];
+      check = new int[capacity];
+      Arrays.fill(check, FREE);
+      check[ROOT] = -2; // taken, but nobody's child
+    }
+
+    private void ensure(int index) {
+      if (index >= check.length) {
+        int capacity = Math.max(index + 1, check.length * 2);
+        int old = check.length;
+        base = Arrays.copyOf(base, capacity);
+        check = Arrays.copyOf(check, capacity);
+        Arrays.fill(check, old, capacity, FREE);
+      }
+    }
+
+    /** Places the children of node, which is the prefix of length depth shared by words[lo, hi). */
+    void insert(int node, int lo, int hi, int depth) {
+      // children in character order, with the ends of their word ranges
+      int[] childCodes = new int[hi - lo];
+      int[] childEnds = new int[hi - lo];
+      int numChildren = 0;
+      int i = lo;
+      if (words.get(i).length() == depth) {
+        // the prefix itself is a word; as the shortest it sorts first
+        childCodes[numChildren] = 0;
+        childEnds[numChildren++] = ++i;
+      }
+      while (i < hi) {
+        char c = words.get(i).charAt(depth);
+        int j = i + 1;
+        while (j < hi && words.get(j).charAt(depth) == c) {
+          j++;
+        }
+        childCodes[numChildren] = codes[c];
+        childEnds[numChildren++] = j;
+        i = j;
+      }
+      int first = childCodes[0];
+      int last = childCodes[0];
+      for (int k = 1; k < numChildren; k++) {
+        first = Math.min(first, childCodes[k]);
+        last = Math.max(last, childCodes[k]);
+      }
+
+      int b = findBase(childCodes, numChildren, first, last);
+      base[node] = b;
+      for (int k = 0; k < numChildren; k++) {
+        int t = b + childCodes[k];
+        check[t] = node;
+        if (t > used) {
+          used = t;
+        }
+      }
+      int start = lo;
+      for (int k = 0; k < numChildren; k++) {
+        if (childCodes[k] != 0) {
+          insert(b + childCodes[k], start, childEnds[k], depth + 1);
+        }
+        start = childEnds[k];
+      }
+    }
+
+    /** Finds b >= 1 such that b + c is free for every child code c. */
+    private int findBase(int[] childCodes, int numChildren, int first, int last) {
+      int pos = Math.max(first + 1, nextCheckPos) - 1;
+      int taken = 0;
+      boolean sawFree = false;
+      int b;
+      while (true) {
+        pos++;
+        ensure(pos);
+        if (check[pos] != FREE) {
+          taken++;
+          continue;
+        } else if ( ! sawFree) {
+          nextCheckPos = pos;
+          sawFree = true;
+        }
+        b = pos - first;
+        ensure(b + last);
+        boolean fits = true;
+        for (int k = 0; k < numChildren; k++) {
+          if (check[b + childCodes[k]] != FREE) {
+            fits = false;
+            break;
+          }
+        }
+        if (fits) {
+          break;
+        }
+      }
+      // skip ahead once the region before pos is nearly full
+      if (taken >= 0.95 * (pos - nextCheckPos + 1)) {
+        nextCheckPos = pos;
+      }
+      return b;
+    }
+  }
+
+  /**
+   * Maps a file written by {@link #save(OutputStream)} into memory. The
+   * trie then lives in the page cache rather than on the Java heap.
+   */
+  public static DoubleArrayTrie load(File file) throws IOException {
+    RandomAccessFile raf = new RandomAccessFile(file, "r");
+    try {
+      FileChannel channel = raf.getChannel();
+      // skip the length written in front of the buffer by save()
+      return new DoubleArrayTrie(channel.map(FileChannel.MapMode.READ_ONLY, 4, channel.size() - 4));
+    } finally {
+      raf.close();
+    }
+  }
+
+  /**
+   * Reads a trie written by {@link #save(OutputStream)} from a stream into
+   * a direct buffer.
+   */
+  public static DoubleArrayTrie load(DataInputStream in) throws IOException {
+    int length = in.readInt();
+    ByteBuffer buffer = ByteBuffer.allocateDirect(length);
+    byte[] chunk = new byte[1 << 16];
+    while (buffer.hasRemaining()) {
+      int n = Math.min(chunk.length, buffer.remaining());
+      in.readFully(chunk, 0, n);
+      buffer.put(chunk, 0, n);
+    }
+    buffer.flip();
+    return new DoubleArrayTrie(buffer);
+  }
+
+  /**
+   * Writes the length of the buffer followed by the buffer itself.
+   */
+  public void save(OutputStream out) throws IOException {
+    DataOutputStream dos = new DataOutputStream(out);
+    ByteBuffer b = buffer.duplicate();
+    b.clear();
+    dos.writeInt(b.remaining());
+    byte[] chunk = new byte[1 << 16];
+    while (b.hasRemaining()) {
+      int n = Math.min(chunk.length, b.remaining());
+      b.get(chunk, 0, n);
+      dos.write(chunk, 0, n);
+    }
+    dos.flush();
+  }
+
+  /** Number of words in the trie. */
+  public int size() {
+    return size;
+  }
+
+  /** Returns the child of node for code, or -1. */
+  private int child(int node, int code) {
+    int t = base.get(node) + code;
+    if (t < arraySize && check.get(t) == node) {
+      return t;
+    }
+    return -1;
+  }
+
+  private boolean isWord(int node) {
+    return child(node, 0) >= 0;
+  }
+
+  public boolean contains(CharSequence s) {
+    if (s.length() == 0 || size == 0) {
+      return false;
+    }
+    int node = ROOT;
+    for (int i = 0, len = s.length(); i < len; i++) {
+      int code = codeOf[s.charAt(i)];
+      if (code == 0) {
+        return false;
+      }
+      node = child(node, code);
+      if (node < 0) {
+        return false;
+      }
+    }
+    return isWord(node);
+  }
+
+  /**
+   * Returns the lengths of all words that occur in <code>s</code> at
+   * <code>start</code>, of at most <code>maxLength</code> (at most 31)
+   * characters, as a bit mask: bit l is set if
+   * <code>s.subSequence(start, start + l)</code> is a word.
+   */
+  public int matchLengths(CharSequence s, int start, int maxLength) {
+    int end = Math.min(s.length(), start + Math.min(maxLength, 31));
+    int mask = 0;
+    if (size == 0) {
+      return mask;
+    }
+    int node = ROOT;
+    for (int i = start; i < end; i++) {
+      int code = codeOf[s.charAt(i)];
+      if (code == 0) {
+        break;
+      }
+      node = child(node, code);
+      if (node < 0) {
+        break;
+      }
+      if (isWord(node)) {
+        mask |= 1 << (i - start + 1);
+      }
+    }
+    return mask;
+  }
+
+  /** Returns all words in the trie. */
+  public List<String> words() {
+    List<String> result = new ArrayList<String>(size);
+    if (size > 0) {
+      collect(ROOT, new StringBuilder(), result);
+    }
+    return result;
+  }
+
+  private void collect(int node, StringBuilder prefix, List<String> result) {
+    if (isWord(node)) {
+      result.add(prefix.toString());
+    }
+    for (int c = 0, alphabetSize = alphabet.limit(); c < alphabetSize; c++) {
+      int t = child(node, c + 1);
+      if (t >= 0) {
+        prefix.append(alphabet.get(c));
+        collect(t, prefix, result);
+        prefix.setLength(prefix.length() - 1);
+      }
+    }
+  }
+
+}
@@ -0,0 +1,122 @@
+package edu.stanford.nlp.util;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import edu.stanford.nlp.io.RuntimeIOException;
+
+/**
+ * A process-wide cache of read-only models, so that pipelines and threads
+ * which ask for the same model share one copy of it instead of each
+ * deserializing their own.
+ * <p>
+ * Models are keyed by their kind (usually the class that loads them), the
+ * URL or path they are loaded from (any URL scheme, including xcf://) and a
+ * signature of the properties they are loaded with. The first {@link #get}
+ * of a key loads the model; concurrent requests for the same key wait for
+ * that load rather than starting their own.
+ * <p>
+ * Models stay cached for the life of the process, as the annotators which
+ * use them have no point at which they are done with them. {@link #clear}
+ * (called by {@link edu.stanford.nlp.pipeline.StanfordCoreNLP#clearAnnotatorPool})
+ * empties the cache; models still held by their users stay in memory until
+ * those users are gone.
+ * <p>
+ * Shared models must not be modified by their users.
+ */
+public class ModelRegistry {
+
+  /** Loads a model on the first request for its key. */
+  public interface Loader<T> {
+    public T load() throws Exception;
+  }
+
+  private static class Entry {
+    Object model; // = null;
+  }
+
+  private static final Map<String, Entry> byKey = Generics.newHashMap();
+
+  private ModelRegistry() {} // static methods
+
+  /**
+   * Returns the key of a model of the given kind loaded from <code>url</code>
+   * with the given properties, which may be null. Property order does not
+   * matter.
+   */
+  public static String key(Class<?> kind, String url, Properties props) {
+    StringBuilder sb = new StringBuilder();
+    sb.append(kind.getName()).append('\n').append(url.trim());
+    if (props != null) {
+      List<String> names = CollectionUtils.sorted(props.stringPropertyNames());
+      for (String name : names) {
+        sb.append('\n').append(name).append('=').append(props.getProperty(name));
+      }
+    }
+    return sb.toString();
+  }
+
+  /**
+   * Returns the shared model of the given kind loaded from <code>url</code>
+   * with <code>props</code>, loading it with <code>loader</code> if it is
+   * not yet cached.
+   */
+  public static <T> T get(Class<?> kind, String url, Properties props, Loader<T> loader) {
+    return get(key(kind, url, props), loader);
+  }
+
+  /** Returns the shared model cached under <code>key</code>, loading it with <code>loader</code> if needed. */
+  public static <T> T get(String key, Loader<T> loader) {
+    Entry entry;
+    synchronized (byKey) {
+      entry = byKey.get(key);
+      if (entry == null) {
+        entry = new Entry();
+        byKey.put(key, entry);
+      }
+    }
+    synchronized (entry) {
+      if (entry.model == null) {
+        try {
+          Object model = loader.load();
+          if (model == null) {
+            throw new IllegalStateException("Loader returned no model for " + key);
+          }
+          entry.model = model;
+        } catch (Exception e) {
+          // forget the failed load, so the next request tries again
+          synchronized (byKey) {
+            if (byKey.get(key) == entry) {
+              byKey.remove(key);
+            }
+          }
+          if (e instanceof RuntimeException) {
+            throw (RuntimeException) e;
+          } else if (e instanceof IOException) {
+            throw new RuntimeIOException(e);
+          } else {
+            throw new RuntimeException(e);
+          }
+        }
+      }
+      return ErasureUtils.uncheckedCast(entry.model);
+    }
+  }
+
+  /** Forgets all cached models; later requests load them again. */
+  public static void clear() {
+    synchronized (byKey) {
+      byKey.clear();
+    }
+  }
+
+  /** Number of models currently cached. */
+  public static int size() {
+    synchronized (byKey) {
+      return byKey.size();
+    }
+  }
+
+}
@@ -0,0 +1,507 @@
+package edu.stanford.nlp.util;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.*;
+
+/**
+ * A read-only {@link Index} of Strings backed by a single {@link ByteBuffer},
+ * which can live off the Java heap (a direct buffer, or a file mapped into
+ * memory with {@link #load(File)}).
+ * <p/>
+ * Lookup goes through a minimal perfect hash over the UTF-8 bytes of the
+ * string (hash and displace: each first-level bucket stores the seed that
+ * places its keys into distinct slots). Each slot carries a 32 bit
+ * fingerprint and the index of its string, and the stored UTF-8 bytes are
+ * compared before a hit is returned, so strings that are not in the index
+ * give -1 as with {@link HashIndex}. Both {@code get(int)} and
+ * {@code indexOf(String)} only use absolute reads of the buffer, so the
+ * index can be shared between threads without locking.
+ * <p/>
+ * The index is always locked: {@code add} returns false and leaves the index
+ * unchanged. Java serialization writes an equivalent {@link HashIndex}.
+ * <p/>
+ * Buffer layout (big-endian): magic, version, size n, salt (long), then
+ * int arrays displacements[n], slots[n], fingerprints[n], offsets[n+1],
+ * followed by the UTF-8 bytes of all strings in index order.
+ */
+public class PerfectHashIndex extends AbstractCollection<String> implements Index<String>, RandomAccess {
+
+  private static final long serialVersionUID = -1790394787217520312L;
+
+  /** "PHIX" */
+  public static final int MAGIC = 0x50484958;
+  public static final int VERSION = 1;
+
+  private static final int HEADER = 20;
+  private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+  private static final long FNV_PRIME = 0x100000001b3L;
+  private static final long GOLDEN = 0x9e3779b97f4a7c15L;
+  private static final int MAX_DISPLACEMENT = 1 << 16;
+
+  private final transient ByteBuffer buffer;
+  private final int size;
+  private final long salt;
+  private final int displacements;
+  private final int slots;
+  private final int fingerprints;
+  private final int offsets;
+  private final int strings;
+
+  /**
+   * Wraps a buffer previously produced by {@link #build(List)}. The buffer is
+   * not copied.
+   */
+  public PerfectHashIndex(ByteBuffer buffer) {
+    this.buffer = buffer.duplicate();
+    if (this.buffer.getInt(0) != MAGIC) {
+      throw new IllegalArgumentException("Not a PerfectHashIndex buffer");
+    }
+    if (this.buffer.getInt(4) != VERSION) {
+      throw new IllegalArgumentException("Unsupported PerfectHashIndex version " + this.buffer.getInt(4));
+    }
+    this.size = this.buffer.getInt(8);
+    this.salt = this.buffer.getLong(12);
+    this.displacements = HEADER;
+    this.slots = displacements + 4 * size;
+    this.fingerprints = slots + 4 * size;
+    this.offsets = fingerprints + 4 * size;
+    this.strings = offsets + 4 * (size + 1);
+  }
+
+  /**
+   * Builds an index over the given strings, which keep their positions in
+   * the list as their indices. The result is held in a direct buffer.
+   *
+   * @throws IllegalArgumentException If the list contains duplicates
+   */
+  public static PerfectHashIndex build(List<String> list) {
+    int n = list.size();
+    byte[][] encoded = new byte[n][];
+    int totalBytes = 0;
+    for (int i = 0; i < n; i++) {
+      encoded[i] = encode(list.get(i));
+      totalBytes += encoded[i].length;
+    }
+
+    Random random = new Random(n);
+    for (int attempt = 0; attempt < 32; attempt++) {
+      long salt = (attempt == 0) ? 0L : random.nextLong();
+      long[] hashes = new long[n];
+      for (int i = 0; i < n; i++) {
+        hashes[i] = hash(salt, list.get(i));
+      }
+      int[] displacement = new int[n];
+      int[] slotToIndex = new int[n];
+      if (place(hashes, displacement, slotToIndex)) {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(HEADER + 16 * n + 4 + totalBytes);
+        buffer.putInt(MAGIC).putInt(VERSION).putInt(n).putLong(salt);
+        for (int d : displacement) {
+          buffer.putInt(d);
+        }
+        for (int index : slotToIndex) {
+          buffer.putInt(index);
+        }
+        for (int index : slotToIndex) {
+          buffer.putInt(fingerprint(hashes[index]));
+        }
+        int offset = 0;
+        for (byte[] b : encoded) {
+          buffer.putInt(offset);
+          offset += b.length;
+        }
+        buffer.putInt(offset);
+        for (byte[] b : encoded) {
+          buffer.put(b);
+        }
+        buffer.flip();
+        return new PerfectHashIndex(buffer);
+      }
+    }
+    throw new IllegalArgumentException("Could not build a perfect hash; the list probably contains duplicates");
+  }
+
+  /**
+   * Places every key into its own slot. Buckets are handled largest first;
+   * singleton buckets go straight into the remaining free slots and store
+   * that slot as a negative displacement.
+   */
+  private static boolean place(long[] hashes, int[] displacement, int[] slotToIndex) {
+    int n = hashes.length;
+    if (n == 0) {
+      return true;
+    }
+    int[] bucketSize = new int[n];
+    for (long h : hashes) {
+      bucketSize[bucket(h, n)]++;
+    }
+    int[] bucketStart = new int[n + 1];
+    for (int b = 0; b < n; b++) {
+      bucketStart[b + 1] = bucketStart[b] + bucketSize[b];
+    }
+    int[] members = new int[n];
+    int[] fill = Arrays.copyOf(bucketStart, n);
+    for (int i = 0; i < n; i++) {
+      members[fill[bucket(hashes[i], n)]++] = i;
+    }
+
+    // bucket ids sorted by decreasing size (counting sort on size)
+    int maxSize = 0;
+    for (int s : bucketSize) {
+      maxSize = Math.max(maxSize, s);
+    }
+    int[] sizeStart = new int[maxSize + 2];
+    for (int s : bucketSize) {
+      sizeStart[maxSize - s + 1]++;
+    }
+    for (int s = 0; s <= maxSize; s++) {
+      sizeStart[s + 1] += sizeStart[s];
+    }
+    int[] order = new int[n];
+    for (int b = 0; b < n; b++) {
+      order[sizeStart[maxSize - bucketSize[b]]++] = b;
+    }
+
+    boolean[] used = new boolean[n];
+    int[] candidate = new int[maxSize];
+    int k = 0;
+    for (; k < n && bucketSize[order[k]] > 1; k++) {
+      int b = order[k];
+      int start = bucketStart[b];
+      int len = bucketSize[b];
+      boolean placed = false;
+      for (int d = 1; d < MAX_DISPLACEMENT && ! placed; d++) {
+        placed = true;
+        for (int j = 0; j < len && placed; j++) {
+          int slot = displace(hashes[members[start + j]], d, n);
+          if (used[slot]) {
+            placed = false;
+          } else {
+            for (int m = 0; m < j; m++) {
+              if (candidate[m] == slot) {
+                placed = false;
+                break;
+              }
+            }
+          }
+          candidate[j] = slot;
+        }
+        if (placed) {
+          displacement[b] = d;
+          for (int j = 0; j < len; j++) {
+            used[candidate[j]] = true;
+            slotToIndex[candidate[j]] = members[start + j];
+          }
+        }
+      }
+      if ( ! placed) {
+        return false;
+      }
+    }
+    int free = 0;
+    for (; k < n && bucketSize[order[k]] == 1; k++) {
+      int b = order[k];
+      while (used[free]) {
+        free++;
+      }
+      used[free] = true;
+      displacement[b] = -free - 1;
+      slotToIndex[free] = members[bucketStart[b]];
+    }
+    return true;
+  }
+
+  /**
+   * Maps a file written by {@link #save(OutputStream)} into memory.
+   */
+  public static PerfectHashIndex load(File file) throws IOException {
+    RandomAccessFile raf = new RandomAccessFile(file, "r");
+    try {
+      FileChannel channel = raf.getChannel();
+      // skip the length written in front of the buffer by save()
+      return new PerfectHashIndex(channel.map(FileChannel.MapMode.READ_ONLY, 4, channel.size() - 4));
+    } finally {
+      raf.close();
+    }
+  }
+
+  /**
+   * Reads an index written by {@link #save(OutputStream)} from a stream into
+   * a direct buffer.
+   */
+  public static PerfectHashIndex load(DataInputStream in) throws IOException {
+    int length = in.readInt();
+    ByteBuffer buffer = ByteBuffer.allocateDirect(length);
+    byte[] chunk = new byte[1 << 16];
+    while (buffer.hasRemaining()) {
+      int n = Math.min(chunk.length, buffer.remaining());
+      in.readFully(chunk, 0, n);
+      buffer.put(chunk, 0, n);
+    }
+    buffer.flip();
+    return new PerfectHashIndex(buffer);
+  }
+
+  /**
+   * Writes the length of the buffer followed by the buffer itself.
+   */
+  public void save(OutputStream out) throws IOException {
+    DataOutputStream dos = new DataOutputStream(out);
+    ByteBuffer b = buffer.duplicate();
+    b.clear();
+    dos.writeInt(b.remaining());
+    byte[] chunk = new byte[1 << 16];
+    while (b.hasRemaining()) {
+      int n = Math.min(chunk.length, b.remaining());
+      b.get(chunk, 0, n);
+      dos.write(chunk, 0, n);
+    }
+    dos.flush();
+  }
+
+  @Override
+  public int size() {
+    return size;
+  }
+
+  @Override
+  public String get(int i) {
+    if (i < 0 || i >= size) {
+      throw new ArrayIndexOutOfBoundsException("Index " + i + " outside the bounds [0," + size + ")");
+    }
+    int start = buffer.getInt(offsets + 4 * i);
+    int end = buffer.getInt(offsets + 4 * (i + 1));
+    byte[] bytes = new byte[end - start];
+    for (int j = 0; j < bytes.length; j++) {
+      bytes[j] = buffer.get(strings + start + j);
+    }
+    try {
+      return new String(bytes, "UTF-8");
+    } catch (UnsupportedEncodingException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  @Override
+  public int indexOf(String o) {
+    return indexOf((CharSequence) o);
+  }
+
+  /**
+   * Same as {@link #indexOf(String)}, for any sequence of characters, such
+   * as a reused StringBuilder; the sequence is not copied.
+   */
+  public int indexOf(CharSequence o) {
+    if (o == null || size == 0) {
+      return -1;
+    }
+    long h = hash(salt, o);
+    int d = buffer.getInt(displacements + 4 * bucket(h, size));
+    int slot = (d < 0) ? -d - 1 : displace(h, d, size);
+    if (buffer.getInt(fingerprints + 4 * slot) != fingerprint(h)) {
+      return -1;
+    }
+    int index = buffer.getInt(slots + 4 * slot);
+    return matches(index, o) ? index : -1;
+  }
+
+  /** The index cannot grow, so this is the same as {@code indexOf(o)}. */
+  @Override
+  public int indexOf(String o, boolean add) {
+    return indexOf(o);
+  }
+
+  @Override
+  public boolean contains(Object o) {
+    return (o instanceof String) && indexOf((String) o) >= 0;
+  }
+
+  @Override
+  public List<String> objectsList() {
+    return new AbstractList<String>() {
+      @Override
+      public String get(int index) {
+        return PerfectHashIndex.this.get(index);
+      }
+
+      @Override
+      public int size() {
+        return size;
+      }
+    };
+  }
+
+  @Override
+  public Collection<String> objects(final int[] indices) {
+    return new AbstractList<String>() {
+      @Override
+      public String get(int index) {
+        return PerfectHashIndex.this.get(indices[index]);
+      }
+
+      @Override
+      public int size() {
+        return indices.length;
+      }
+    };
+  }
+
+  @Override
+  public Iterator<String> iterator() {
+    return objectsList().iterator();
+  }
+
+  @Override
+  public boolean isLocked() {
+    return true;
+  }
+
+  @Override
+  public void lock() {
+  }
+
+  @Override
+  public void unlock() {
+    throw new UnsupportedOperationException("PerfectHashIndex is read-only");
+  }
+
+  /** The index is always locked, so nothing is added. */
+  @Override
+  public boolean add(String s) {
+    return false;
+  }
+
+  @Override
+  public boolean addAll(Collection<? extends String> c) {
+    return false;
+  }
+
+  @Override
+  public void clear() {
+    throw new UnsupportedOperationException("PerfectHashIndex is read-only");
+  }
+
+  @Override
+  public void saveToWriter(Writer bw) throws IOException {
+    for (int i = 0, sz = size(); i < sz; i++) {
+      bw.write(i + "=" + get(i) + '\n');
+    }
+  }
+
+  @Override
+  public void saveToFilename(String file) {
+    BufferedWriter bw = null;
+    try {
+      bw = new BufferedWriter(new FileWriter(file));
+      saveToWriter(bw);
+    } catch (IOException e) {
+      e.printStackTrace();
+    } finally {
+      if (bw != null) {
+        try {
+          bw.close();
+        } catch (IOException ioe) {
+          // give up
+        }
+      }
+    }
+  }
+
+  private Object writeReplace() {
+    return new HashIndex<String>(objectsList());
+  }
+
+  /** Whether the UTF-8 encoding of s equals the stored bytes of string i. */
+  private boolean matches(int i, CharSequence s) {
+    int pos = strings + buffer.getInt(offsets + 4 * i);
+    int end = strings + buffer.getInt(offsets + 4 * (i + 1));
+    for (int j = 0, len = s.length(); j < len; ) {
+      int cp = codePoint(s, j);
+      j += Character.charCount(cp);
+      int n = utf8Length(cp);
+      if (pos + n > end) {
+        return false;
+      }
+      for (int k = 0; k < n; k++) {
+        if (buffer.get(pos++) != utf8Byte(cp, n, k)) {
+          return false;
+        }
+      }
+    }
+    return pos == end;
+  }
+
+  private static int bucket(long h, int n) {
+    return (int) ((h >>> 1) % n);
+  }
+
+  private static int displace(long h, int d, int n) {
+    return (int) ((mix(h ^ (d * GOLDEN)) >>> 1) % n);
+  }
+
+  private static int fingerprint(long h) {
+    return (int) (h >>> 32);
+  }
+
+  /** FNV-1a over the UTF-8 bytes of s, without materializing them. */
+  static long hash(long salt, CharSequence s) {
+    long h = FNV_OFFSET ^ salt;
+    for (int j = 0, len = s.length(); j < len; ) {
+      int cp = codePoint(s, j);
+      j += Character.charCount(cp);
+      int n = utf8Length(cp);
+      for (int k = 0; k < n; k++) {
+        h ^= utf8Byte(cp, n, k) & 0xff;
+        h *= FNV_PRIME;
+      }
+    }
+    return mix(h);
+  }
+
+  private static long mix(long h) {
+    h ^= h >>> 33;
+    h *= 0xff51afd7ed558ccdL;
+    h ^= h >>> 33;
+    h *= 0xc4ceb9fe1a85ec53L;
+    h ^= h >>> 33;
+    return h;
+  }
+
+  /** The code point at j; unpaired surrogates become '?', as in String.getBytes("UTF-8"). */
+  private static int codePoint(CharSequence s, int j) {
+    int cp = Character.codePointAt(s, j);
+    return (cp >= Character.MIN_SURROGATE && cp <= Character.MAX_SURROGATE) ? '?' : cp;
+  }
+
+  private static int utf8Length(int cp) {
+    if (cp < 0x80) return 1;
+    if (cp < 0x800) return 2;
+    if (cp < 0x10000) return 3;
+    return 4;
+  }
+
+  private static byte utf8Byte(int cp, int n, int k) {
+    if (n == 1) {
+      return (byte) cp;
+    }
+    if (k == 0) {
+      return (byte) ((0xff00 >> n) | (cp >> (6 * (n - 1))));
+    }
+    return (byte) (0x80 | ((cp >> (6 * (n - 1 - k))) & 0x3f));
+  }
+
+  private static byte[] encode(String s) {
+    ByteArrayOutputStream out = new ByteArrayOutputStream(s.length());
+    for (int j = 0, len = s.length(); j < len; ) {
+      int cp = codePoint(s, j);
+      j += Character.charCount(cp);
+      int n = utf8Length(cp);
+      for (int k = 0; k < n; k++) {
+        out.write(utf8Byte(cp, n, k));
+      }
+    }
+    return out.toByteArray();
+  }
+
+}
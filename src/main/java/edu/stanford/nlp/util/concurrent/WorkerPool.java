@@ -0,0 +1,326 @@
+package edu.stanford.nlp.util.concurrent;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import edu.stanford.nlp.util.RuntimeInterruptedException;
+
+/**
+ * A long lived pool of worker threads to which annotators hand their
+ * per-sentence work, so that the threads are started once per pipeline
+ * rather than once per document as with {@link MulticoreWrapper}.
+ * <p>
+ * {@link #map} splits a list of items among up to <code>parallelism</code>
+ * strands, each with its own {@link ThreadsafeProcessor} instance, which pull
+ * the next unprocessed item until none remain. The calling thread works one
+ * strand itself, so a call always makes progress, even from inside a worker
+ * or when every worker is busy. Results come back in input order.
+ * <p>
+ * The queue of waiting strands is bounded: when it is full, submitting from
+ * outside the pool blocks until a worker frees up, so many concurrent callers
+ * cannot pile up unbounded work. A worker calling {@link #map} never blocks
+ * on the queue, which could leave every worker waiting on the others; it does
+ * the work itself instead. Workers are daemon threads; {@link #shutdown}
+ * stops them.
+ * <p>
+ * A pipeline makes its pool available to the annotators it runs through
+ * {@link #setCurrent}; annotators run outside a pipeline use
+ * {@link #getDefault() a process-wide pool}.
+ */
+public class WorkerPool {
+
+  private static final AtomicInteger poolCounter = new AtomicInteger();
+
+  private static final ThreadLocal<WorkerPool> current = new ThreadLocal<WorkerPool>();
+
+  /** Whether this thread is a worker of some pool. */
+  private static final ThreadLocal<Boolean> isWorker = new ThreadLocal<Boolean>();
+
+  private static WorkerPool defaultPool; // = null;
+
+  private final int nThreads;
+  private final ThreadPoolExecutor threadPool;
+
+  /**
+   * Constructor.
+   *
+   * @param nThreads If less than or equal to 0, then the number of available
+   *                 processors. Otherwise, the number of worker threads.
+   */
+  public WorkerPool(int nThreads) {
+    this(nThreads, 0);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param numThreads If less than or equal to 0, then the number of available
+   *                   processors. Otherwise, the number of worker threads.
+   * @param queueSize How many strands may wait for a worker before submitting
+   *                  blocks. If less than or equal to 0, four per thread.
+   */
+  public WorkerPool(int numThreads, int queueSize) {
+    nThreads = numThreads <= 0 ? Runtime.getRuntime().availableProcessors() : numThreads;
+    if (queueSize <= 0) {
+      queueSize = 4 * nThreads;
+    }
+    final String prefix = "WorkerPool-" + poolCounter.incrementAndGet() + "-thread-";
+    ThreadFactory threadFactory = new ThreadFactory() {
+      private final AtomicInteger threadCounter = new AtomicInteger();
+
+      @Override
+      public Thread newThread(final Runnable r) {
+        Runnable worker = new Runnable() {
+          @Override
+          public void run() {
+            isWorker.set(Boolean.TRUE);
+            r.run();
+          }
+        };
+        Thread thread = new Thread(worker, prefix + threadCounter.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+      }
+    };
+    // A full queue makes a submitter outside the pool wait for room
+    RejectedExecutionHandler blockWhenFull = new RejectedExecutionHandler() {
+      @Override
+      public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
+        if (executor.isShutdown()) {
+          throw new RejectedExecutionException("WorkerPool has been shut down");
+        }
+        if (isWorker.get() != null) {
+          throw new RejectedExecutionException("WorkerPool queue is full");
+        }
+        try {
+          executor.getQueue().put(r);
+        } catch (InterruptedException e) {
+          throw new RuntimeInterruptedException(e);
+        }
+      }
+    };
+    threadPool = new ThreadPoolExecutor(nThreads, nThreads, 0L, TimeUnit.MILLISECONDS,
+        new ArrayBlockingQueue<Runnable>(queueSize), threadFactory, blockWhenFull);
+  }
+
+  /** The number of worker threads. */
+  public int size() {
+    return nThreads;
+  }
+
+  /**
+   * Processes every item, using up to <code>parallelism</code> threads
+   * including the calling one, and returns the results in the order of the
+   * items. If processing an item throws, the remaining items are abandoned
+   * and the exception is rethrown here.
+   *
+   * @param items The items to process
+   * @param processor Processes items; further instances are made with
+   *                  {@link ThreadsafeProcessor#newInstance()} for the other strands
+   * @param parallelism If less than or equal to 0, then one more than the
+   *                    number of workers. Otherwise, the most strands to use.
+   */
+  public <I,O> List<O> map(final List<? extends I> items, ThreadsafeProcessor<I,O> processor, int parallelism) {
+    final int size = items.size();
+    if (parallelism <= 0) {
+      parallelism = nThreads + 1;
+    }
+    int strands = Math.min(Math.min(parallelism, nThreads + 1), size);
+    final Object[] results = new Object[size];
+    if (strands <= 1) {
+      for (int i = 0; i < size; i++) {
+        results[i] = processor.process(items.get(i));
+      }
+      return asList(results);
+    }
+
+    final AtomicInteger next = new AtomicInteger();
+    final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+    List<Strand<I,O>> helpers = new ArrayList<Strand<I,O>>(strands - 1);
+    List<FutureTask<Object>> tasks = new ArrayList<FutureTask<Object>>(strands - 1);
+    for (int s = 1; s < strands; s++) {
+      Strand<I,O> helper = new Strand<I,O>(items, results, next, failure, processor.newInstance());
+      FutureTask<Object> task = new FutureTask<Object>(helper, null);
+      try {
+        threadPool.execute(task);
+      } catch (RejectedExecutionException e) {
+        if (threadPool.isShutdown()) {
+          throw e;
+        }
+        break; // a worker found the queue full; the strands so far will do
+      }
+      helpers.add(helper);
+      tasks.add(task);
+    }
+    new Strand<I,O>(items, results, next, failure, processor).run();
+
+    // Strands still waiting in the queue have nothing left to do, and must
+    // not be waited for: the workers may all be busy, even with this call
+    for (int s = 0; s < tasks.size(); s++) {
+      Future<Object> task = tasks.get(s);
+      if (helpers.get(s).start()) {
+        task.cancel(false);
+      } else {
+        try {
+          task.get();
+        } catch (InterruptedException e) {
+          throw new RuntimeInterruptedException(e);
+        } catch (ExecutionException e) {
+          failure.compareAndSet(null, e.getCause());
+        }
+      }
+    }
+
+    Throwable t = failure.get();
+    if (t instanceof RuntimeException) {
+      throw (RuntimeException) t;
+    } else if (t instanceof Error) {
+      throw (Error) t;
+    } else if (t != null) {
+      throw new RuntimeException(t);
+    }
+    return asList(results);
+  }
+
+  @SuppressWarnings("unchecked")
+  private static <O> List<O> asList(Object[] results) {
+    return (List<O>) Arrays.asList(results);
+  }
+
+  /** Works through the items shared with the other strands of one {@link #map} call. */
+  private static class Strand<I,O> implements Runnable {
+    private final List<? extends I> items;
+    private final Object[] results;
+    private final AtomicInteger next;
+    private final AtomicReference<Throwable> failure;
+    private final ThreadsafeProcessor<I,O> processor;
+    private final AtomicBoolean started = new AtomicBoolean();
+
+    Strand(List<? extends I> items, Object[] results, AtomicInteger next,
+           AtomicReference<Throwable> failure, ThreadsafeProcessor<I,O> processor) {
+      this.items = items;
+      this.results = results;
+      this.next = next;
+      this.failure = failure;
+      this.processor = processor;
+    }
+
+    /** Claims this strand; false if it has already been started. */
+    boolean start() {
+      return started.compareAndSet(false, true);
+    }
+
+    @Override
+    public void run() {
+      if ( ! start()) {
+        return;
+      }
+      int size = items.size();
+      for (int i; failure.get() == null && (i = next.getAndIncrement()) < size; ) {
+        try {
+          results[i] = processor.process(items.get(i));
+        } catch (Throwable t) {
+          failure.compareAndSet(null, t);
+        }
+      }
+    }
+  }
+
+  /**
+   * Runs <code>task</code> on a worker. A worker submitting to a full queue
+   * runs the task itself before this returns.
+   */
+  public <T> Future<T> submit(Callable<T> task) {
+    FutureTask<T> future = new FutureTask<T>(task);
+    try {
+      threadPool.execute(future);
+    } catch (RejectedExecutionException e) {
+      if (threadPool.isShutdown()) {
+        throw e;
+      }
+      future.run();
+    }
+    return future;
+  }
+
+  /**
+   * Stops the workers once the strands already submitted have run. Later
+   * {@link #map} and {@link #submit} calls that need a worker fail.
+   */
+  public void shutdown() {
+    threadPool.shutdown();
+  }
+
+  public boolean isShutdown() {
+    return threadPool.isShutdown();
+  }
+
+  /** Number of strands and tasks waiting for a worker. */
+  public int queued() {
+    return threadPool.getQueue().size();
+  }
+
+  /** Number of workers currently busy. */
+  public int active() {
+    return threadPool.getActiveCount();
+  }
+
+  @Override
+  public String toString() {
+    return String.format("active: %d/%d  completed: %d  queued: %d",
+        threadPool.getActiveCount(),
+        threadPool.getPoolSize(),
+        threadPool.getCompletedTaskCount(),
+        threadPool.getQueue().size());
+  }
+
+  /**
+   * The pool of the pipeline running on this thread, or else the default pool.
+   */
+  public static WorkerPool current() {
+    WorkerPool pool = current.get();
+    return pool != null ? pool : getDefault();
+  }
+
+  /**
+   * Makes <code>pool</code> the one {@link #current()} returns on this thread,
+   * or clears it if null.
+   *
+   * @return The pool set before, which the caller should restore when done
+   */
+  public static WorkerPool setCurrent(WorkerPool pool) {
+    WorkerPool previous = current.get();
+    if (pool == null) {
+      current.remove();
+    } else {
+      current.set(pool);
+    }
+    return previous;
+  }
+
+  /**
+   * A process-wide pool with a worker per available processor, started on
+   * first use. It is never shut down; its threads are daemons.
+   */
+  public static synchronized WorkerPool getDefault() {
+    if (defaultPool == null) {
+      defaultPool = new WorkerPool(0);
+    }
+    return defaultPool;
+  }
+
+}
@@ -7,14 +7,20 @@ import java.util.regex.Pattern;
 
 import edu.stanford.nlp.io.IOUtils;
 import edu.stanford.nlp.io.EncodingPrintWriter;
+import edu.stanford.nlp.io.RuntimeIOException;
 import edu.stanford.nlp.process.ChineseDocumentToSentenceProcessor;
 import edu.stanford.nlp.trees.international.pennchinese.ChineseUtils;
+import edu.stanford.nlp.util.DoubleArrayTrie;
 import edu.stanford.nlp.util.Generics;
+import edu.stanford.nlp.util.ModelRegistry;
 import edu.stanford.nlp.util.StringUtils;
 import java.util.zip.GZIPInputStream;
 
 /** This class provides a main method that loads various dictionaries, and
  *  saves them in a serialized version, and runtime compiles them into a word list used as a feature in the segmenter, and
+ *  The word list is held in a {@link DoubleArrayTrie}; a dictionary file
+ *  ending in {@code .trie} is such a trie saved by {@link #main}, and is
+ *  mapped into memory when it is the only dictionary given.
  * @author Pi-Chuan Chang
  */
 
@@ -23,19 +29,31 @@ public class ChineseDictionary {
   private static final boolean DEBUG = false;
 
   public static final int MAX_LEXICON_LENGTH = 6;
+  public static final String TRIE_SUFFIX = ".trie";
+  /** Words by length while the dictionary is being read; null afterwards. */
   @SuppressWarnings({"unchecked"})
   Set<String>[] words_ = new HashSet[MAX_LEXICON_LENGTH+1];
+  /** Words of up to MAX_LEXICON_LENGTH - 1 characters, and the first MAX_LEXICON_LENGTH characters of longer ones. */
+  private DoubleArrayTrie trie;
 
   private ChineseDocumentToSentenceProcessor cdtos_; // = null;
 
+  @SuppressWarnings({"unchecked"})
   private void serializeDictionary(String serializePath) {
     System.err.print("Serializing dictionaries to " + serializePath + "...");
 
+    Set<String>[] words = new HashSet[MAX_LEXICON_LENGTH+1];
+    for (int i = 0; i <= MAX_LEXICON_LENGTH; i++) {
+      words[i] = Generics.newHashSet();
+    }
+    for (String word : trie.words()) {
+      words[word.length()].add(word);
+    }
     try {
       ObjectOutputStream oos = IOUtils.writeStreamFromString(serializePath);
 
       //oos.writeObject(MAX_LEXICON_LENGTH);
-      oos.writeObject(words_);
+      oos.writeObject(words);
       //oos.writeObject(cdtos_);
       oos.close();
       System.err.println("done.");
@@ -45,6 +63,43 @@ public class ChineseDictionary {
     }
   }
 
+  private void saveTrie(String path) {
+    System.err.print("Saving dictionary trie to " + path + "...");
+    try {
+      OutputStream os = new BufferedOutputStream(new FileOutputStream(path));
+      trie.save(os);
+      os.close();
+      System.err.println("done.");
+    } catch (IOException e) {
+      System.err.println("Failed");
+      throw new RuntimeIOException(e);
+    }
+  }
+
+  /** Maps a trie file into memory, or reads it from a URL or the classpath. */
+  private static DoubleArrayTrie loadTrie(String path) {
+    System.err.print("loading dictionary trie from " + path + "...");
+    try {
+      DoubleArrayTrie trie;
+      File file = new File(path);
+      if (file.exists()) {
+        trie = DoubleArrayTrie.load(file);
+      } else {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(IOUtils.getInputStreamFromURLOrClasspathOrFileSystem(path)));
+        try {
+          trie = DoubleArrayTrie.load(in);
+        } finally {
+          in.close();
+        }
+      }
+      System.err.println("done.");
+      return trie;
+    } catch (IOException e) {
+      System.err.println("Failed to load Chinese dictionary " + path);
+      throw new RuntimeIOException(e);
+    }
+  }
+
   @SuppressWarnings({"unchecked"})
   private static Set<String>[] loadDictionary(String serializePath) {
     Set<String>[] dict = new HashSet[MAX_LEXICON_LENGTH+1];
@@ -108,8 +163,19 @@ public class ChineseDictionary {
 
     this.cdtos_ = cdtos;
 
+    if (dicts.length == 1 && dicts[0].endsWith(TRIE_SUFFIX)) {
+      trie = loadTrie(dicts[0]);
+      words_ = null;
+      System.err.println("Done. Unique words in ChineseDictionary is: " + trie.size());
+      return;
+    }
+
     for(String dict : dicts) {
-      if(dict.endsWith("ser.gz")) {
+      if (dict.endsWith(TRIE_SUFFIX)) {
+        for (String word : loadTrie(dict).words()) {
+          words_[word.length()].add(word);
+        }
+      } else if(dict.endsWith("ser.gz")) {
         // TODO: the way this is written would not work if we allow
         // dictionaries to have different settings of MAX_LEXICON_LENGTH
         Set<String>[] dictwords = loadDictionary(dict);
@@ -122,11 +188,37 @@ public class ChineseDictionary {
       }
     }
 
-    int total = 0;
+    List<String> all = new ArrayList<String>();
     for(int i = 0; i <= MAX_LEXICON_LENGTH; i++) {
-      total += words_[i].size();
+      all.addAll(words_[i]);
     }
-    System.err.println("Done. Unique words in ChineseDictionary is: " + total);
+    words_ = null;
+    trie = DoubleArrayTrie.build(all);
+    System.err.println("Done. Unique words in ChineseDictionary is: " + trie.size());
+  }
+
+  /**
+   * Returns the dictionary of the given files from the {@link ModelRegistry},
+   * so that segmenters using the same dictionaries share one copy of them.
+   *
+   * @param normalizationTable The normalization table <code>cdtos</code> was
+   *     made from, which is part of the registry key
+   */
+  public static ChineseDictionary getShared(final String[] dicts, String normalizationTable,
+                                            final ChineseDocumentToSentenceProcessor cdtos,
+                                            final boolean expandMidDot) {
+    Properties props = new Properties();
+    props.setProperty("expandMidDot", String.valueOf(expandMidDot));
+    if (normalizationTable != null) {
+      props.setProperty("normalizationTable", normalizationTable);
+    }
+    return ModelRegistry.get(ChineseDictionary.class, StringUtils.join(dicts, ","), props,
+        new ModelRegistry.Loader<ChineseDictionary>() {
+          @Override
+          public ChineseDictionary load() {
+            return new ChineseDictionary(dicts, cdtos, expandMidDot);
+          }
+        });
   }
 
   private final Pattern midDot = Pattern.compile(ChineseUtils.MID_DOT_REGEX_STR);
@@ -177,13 +269,22 @@ public class ChineseDictionary {
   public boolean contains(String word) {
     int length = word.length();
     if (length <= MAX_LEXICON_LENGTH-1) {
-      return words_[length].contains(word);
+      return trie.contains(word);
     } else {
-      length = MAX_LEXICON_LENGTH;
-      return words_[length].contains(word.substring(0,6));
+      return trie.contains(word.substring(0,MAX_LEXICON_LENGTH));
     }
   }
 
+  /**
+   * Returns which of the strings of 1 to MAX_LEXICON_LENGTH characters
+   * starting at <code>start</code> in <code>text</code> the dictionary
+   * {@link #contains}, found in one walk of the trie: bit l of the result is
+   * set for <code>text.substring(start, start + l)</code>.
+   */
+  public int matchLengths(String text, int start) {
+    return trie.matchLengths(text, start, MAX_LEXICON_LENGTH);
+  }
+
   public static void main(String[] args) {
     String inputDicts = "/u/nlp/data/chinese-dictionaries/plain/ne_wikipedia-utf8.txt,/u/nlp/data/chinese-dictionaries/plain/newsexplorer_entities_utf8.txt,/u/nlp/data/chinese-dictionaries/plain/Ch-name-list-utf8.txt,/u/nlp/data/chinese-dictionaries/plain/wikilex-20070908-zh-en.txt,/u/nlp/data/chinese-dictionaries/plain/adso-1.25-050405-monolingual-clean.utf8.txt,/u/nlp/data/chinese-dictionaries/plain/lexicon_108k_normalized.txt,/u/nlp/data/chinese-dictionaries/plain/lexicon_mandarintools_normalized.txt,/u/nlp/data/chinese-dictionaries/plain/harbin-ChineseNames_utf8.txt,/u/nlp/data/chinese-dictionaries/plain/lexicon_HowNet_normalized.txt";
 
@@ -193,6 +294,7 @@ public class ChineseDictionary {
     Map<String,Integer> flagMap = Generics.newHashMap();
     flagMap.put("-inputDicts", 1);
     flagMap.put("-output", 1);
+    flagMap.put("-outputTrie", 1);
     Map<String,String[]> argsMap = StringUtils.argsToMap(args,flagMap);
     // args = argsMap.get(null);
     if(argsMap.keySet().contains("-inputDicts")) {
@@ -210,6 +312,9 @@ public class ChineseDictionary {
 
     ChineseDictionary dict = new ChineseDictionary(dicts, cdtos, expandMidDot);
     dict.serializeDictionary(output);
+    if(argsMap.keySet().contains("-outputTrie")) {
+      dict.saveTrie(argsMap.get("-outputTrie")[0]);
+    }
 
     /*
     //ChineseDictionary dict = new ChineseDictionary(args[0]);
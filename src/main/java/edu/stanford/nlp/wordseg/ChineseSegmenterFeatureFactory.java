@@ -7,11 +7,13 @@ import java.io.Serializable;
 
 import edu.stanford.nlp.ling.CoreLabel;
 import edu.stanford.nlp.ling.CoreAnnotations;
+import edu.stanford.nlp.sequences.FeatureCollector;
 import edu.stanford.nlp.sequences.FeatureFactory;
 import edu.stanford.nlp.sequences.SeqClassifierFlags;
 import edu.stanford.nlp.sequences.Clique;
 import edu.stanford.nlp.trees.international.pennchinese.RadicalMap;
 import edu.stanford.nlp.util.Generics;
+import edu.stanford.nlp.util.ModelRegistry;
 import edu.stanford.nlp.util.PaddedList;
 
 /**
@@ -82,6 +84,23 @@ public class ChineseSegmenterFeatureFactory<IN extends CoreLabel> extends Featur
     return features;
   }
 
+  /**
+   * Same features as {@link #getCliqueFeatures}, handed straight to the
+   * collector so that no intermediate Strings or Sets need to be built.
+   */
+  @Override
+  public void collectCliqueFeatures(PaddedList<IN> cInfo, int loc, Clique clique, FeatureCollector out) {
+    if (clique == cliqueC) {
+      out.setSuffix("C");
+      featuresC(cInfo, loc, out);
+    } else if (clique == cliqueCpC) {
+      out.setSuffix("CpC");
+      featuresCpC(cInfo, loc, out);
+      out.setSuffix("CnC");
+      featuresCnC(cInfo, loc-1, out);
+    }
+  }
+
 
 
   private static Pattern patE = Pattern.compile("[a-z]");
@@ -126,6 +145,11 @@ public class ChineseSegmenterFeatureFactory<IN extends CoreLabel> extends Featur
 
   public Collection<String> featuresC(PaddedList<IN> cInfo, int loc) {
     Collection<String> features = new ArrayList<String>();
+    featuresC(cInfo, loc, new FeatureCollector.StringCollector(features));
+    return features;
+  }
+
+  protected void featuresC(PaddedList<IN> cInfo, int loc, FeatureCollector features) {
     CoreLabel c = cInfo.get(loc);
     CoreLabel c1 = cInfo.get(loc + 1);
     CoreLabel c2 = cInfo.get(loc + 2);
@@ -154,28 +178,31 @@ public class ChineseSegmenterFeatureFactory<IN extends CoreLabel> extends Featur
       //   features.add(charp + charc1 +"pc1");
       // }
 
-      features.add(charc +"::c");
-      features.add(charc1+"::c1");
-      features.add(charp +"::p");
-      features.add(charp2 +"::p2");
+      features.add(charc, "::c");
+      features.add(charc1, "::c1");
+      features.add(charp, "::p");
+      features.add(charp2, "::p2");
       // trying to restore the features that Huishin described in SIGHAN 2005 paper
-      features.add(charc +charc1  +"::cn");
-      features.add(charp +charc  +"::pc");
-      features.add(charp +charc1  +"::pn");
-      features.add(charp2 +charp  +"::p2p");
-      features.add(charp2 +charc  +"::p2c");
-      features.add(charc2 +charc  +"::n2c");
+      features.add(charc, charc1, "::cn");
+      features.add(charp, charc, "::pc");
+      features.add(charp, charc1, "::pn");
+      features.add(charp2, charp, "::p2p");
+      features.add(charp2, charc, "::p2c");
+      features.add(charc2, charc, "::n2c");
 
       features.add("|word1");
     }
-
-    return features;
   }
 
   private static CorpusDictionary outDict = null;
 
   public Collection<String> featuresCpC(PaddedList<IN> cInfo, int loc) {
     Collection<String> features = new ArrayList<String>();
+    featuresCpC(cInfo, loc, new FeatureCollector.StringCollector(features));
+    return features;
+  }
+
+  protected void featuresCpC(PaddedList<IN> cInfo, int loc, FeatureCollector features) {
     CoreLabel c = cInfo.get(loc);
     CoreLabel c1 = cInfo.get(loc + 1);
     CoreLabel c2 = cInfo.get(loc + 2);
@@ -213,17 +240,17 @@ public class ChineseSegmenterFeatureFactory<IN extends CoreLabel> extends Featur
       //   features.add(charp + charc1 +"pc1");
       // }
 
-      features.add(charc +"::c");
-      features.add(charc1+"::c1");
-      features.add(charp +"::p");
-      features.add(charp2 +"::p2");
+      features.add(charc, "::c");
+      features.add(charc1, "::c1");
+      features.add(charp, "::p");
+      features.add(charp2, "::p2");
       // trying to restore the features that Huishin described in SIGHAN 2005 paper
-      features.add(charc +charc1  +"::cn");
-      features.add(charp +charc  +"::pc");
-      features.add(charp +charc1  +"::pn");
-      features.add(charp2 +charp  +"::p2p");
-      features.add(charp2 +charc  +"::p2c");
-      features.add(charc2 +charc  +"::n2c");
+      features.add(charc, charc1, "::cn");
+      features.add(charp, charc, "::pc");
+      features.add(charp, charc1, "::pn");
+      features.add(charp2, charp, "::p2p");
+      features.add(charp2, charc, "::p2c");
+      features.add(charc2, charc, "::n2c");
 
       features.add("|word2");
     }
@@ -244,35 +271,44 @@ public class ChineseSegmenterFeatureFactory<IN extends CoreLabel> extends Featur
     if (charp3.length()==0) { rcharp3='n'; } else { rcharp3=RadicalMap.getRadical(charp3.charAt(0));}
 
     if(flags.useRad2){
-      features.add(rcharc+"rc");
-      features.add(rcharc1+"rc1");
-      features.add(rcharp+"rp");
-      features.add(rcharp  +  rcharc+"rpc");
-      features.add(rcharc +rcharc1 +"rcc1");
-      features.add(rcharp +  rcharc  +rcharc1 +"rpcc1");
+      // note that adding chars gives their int sum, which is what the
+      // original String concatenations below produced
+      features.key().append(rcharc).append("rc"); features.addKey();
+      features.key().append(rcharc1).append("rc1"); features.addKey();
+      features.key().append(rcharp).append("rp"); features.addKey();
+      features.key().append(rcharp  +  rcharc).append("rpc"); features.addKey();
+      features.key().append(rcharc +rcharc1).append("rcc1"); features.addKey();
+      features.key().append(rcharp +  rcharc  +rcharc1).append("rpcc1"); features.addKey();
       features.add("|rad2");
     }
 
     /* non-word dictionary:SEEM bi-gram marked as non-word */
     if (flags.useDict2) {
       NonDict2 nd = new NonDict2(flags);
-      features.add(nd.checkDic(charp+charc, flags)+"nondict");
+      features.add(nd.checkDic(charp+charc, flags), "nondict");
       features.add("|useDict2");
     }
 
     if (flags.useOutDict2){
       if (outDict == null) {
         System.err.println("reading "+flags.outDict2+" as a seen lexicon");
-        outDict = new CorpusDictionary(flags.outDict2, true);
+        final String outDictFile = flags.outDict2;
+        outDict = ModelRegistry.get(CorpusDictionary.class, outDictFile, null,
+            new ModelRegistry.Loader<CorpusDictionary>() {
+              @Override
+              public CorpusDictionary load() {
+                return new CorpusDictionary(outDictFile, true);
+              }
+            });
       }
-      features.add(outDict.getW(charp+charc)+"outdict");       // -1 0
-      features.add(outDict.getW(charc+charc1)+"outdict");      // 0 1
-      features.add(outDict.getW(charp2+charp)+"outdict");      // -2 -1
-      features.add(outDict.getW(charp2+charp+charc)+"outdict");      // -2 -1 0
-      features.add(outDict.getW(charp3+charp2+charp)+"outdict");      // -3 -2 -1
-      features.add(outDict.getW(charp+charc+charc1)+"outdict");      // -1 0 1
-      features.add(outDict.getW(charc+charc1+charc2)+"outdict");      // 0 1 2
-      features.add(outDict.getW(charp+charc+charc1+charc2)+"outdict");      // -1 0 1 2
+      features.add(outDict.getW(charp+charc), "outdict");       // -1 0
+      features.add(outDict.getW(charc+charc1), "outdict");      // 0 1
+      features.add(outDict.getW(charp2+charp), "outdict");      // -2 -1
+      features.add(outDict.getW(charp2+charp+charc), "outdict");      // -2 -1 0
+      features.add(outDict.getW(charp3+charp2+charp), "outdict");      // -3 -2 -1
+      features.add(outDict.getW(charp+charc+charc1), "outdict");      // -1 0 1
+      features.add(outDict.getW(charc+charc1+charc2), "outdict");      // 0 1 2
+      features.add(outDict.getW(charp+charc+charc1+charc2), "outdict");      // -1 0 1 2
     }
 
     /*
@@ -305,7 +341,8 @@ public class ChineseSegmenterFeatureFactory<IN extends CoreLabel> extends Featur
         taDetector = new TagAffixDetector(flags);
       }
       for (int k=0; k<tagsets.length; k++) {
-	features.add(taDetector.checkDic(tagsets[k]+"p", charp) + taDetector.checkDic(tagsets[k]+"i", charp) + taDetector.checkDic(tagsets[k]+"s", charc)+ taDetector.checkInDic(charp)+taDetector.checkInDic(charc)+ tagsets[k]+ "prep-sufc" );
+	features.key().append(taDetector.checkDic(tagsets[k]+"p", charp)).append(taDetector.checkDic(tagsets[k]+"i", charp)).append(taDetector.checkDic(tagsets[k]+"s", charc)).append(taDetector.checkInDic(charp)).append(taDetector.checkInDic(charc)).append(tagsets[k]).append("prep-sufc");
+        features.addKey();
         // features.add("|ctbchar2");  // Added a constant feature several times!!
       }
     }
@@ -345,8 +382,6 @@ public class ChineseSegmenterFeatureFactory<IN extends CoreLabel> extends Featur
 
       String prer= String.valueOf(rcharp); // the radical of previous character
 
-      Pattern E = Pattern.compile("[a-zA-Z]");
-      Pattern N = Pattern.compile("[0-9]");
       Matcher m = E.matcher(charp);
       Matcher ce = E.matcher(charc);
       Matcher pe = E.matcher(charp2);
@@ -397,7 +432,7 @@ public class ChineseSegmenterFeatureFactory<IN extends CoreLabel> extends Featur
       if ( ! engType.equals(""))
         features.add(engType);
       if ( ! engPU.equals("") && ! engType.equals(""))
-        features.add(engPU + engType);
+        features.add(engPU, engType);
     }//end of use rule
 
 
@@ -420,13 +455,19 @@ public class ChineseSegmenterFeatureFactory<IN extends CoreLabel> extends Featur
     default: // other types
       features.add("CHARTYPE-MISC");
     }
-
-    return features;
   }
 
+  private static final Pattern E = Pattern.compile("[a-zA-Z]");
+  private static final Pattern N = Pattern.compile("[0-9]");
+
 
   public Collection<String> featuresCnC(PaddedList<IN> cInfo, int loc) {
     Collection<String> features = new ArrayList<String>();
+    featuresCnC(cInfo, loc, new FeatureCollector.StringCollector(features));
+    return features;
+  }
+
+  protected void featuresCnC(PaddedList<IN> cInfo, int loc, FeatureCollector features) {
     CoreLabel c = cInfo.get(loc);
     CoreLabel c1 = cInfo.get(loc + 1);
     CoreLabel p = cInfo.get(loc - 1);
@@ -436,18 +477,17 @@ public class ChineseSegmenterFeatureFactory<IN extends CoreLabel> extends Featur
 
 
     if (flags.useWordn) {
-      features.add(charc +"c");
-      features.add(charc1+"c1");
-      features.add(charp +"p");
-      features.add(charp +charc  +"pc");
+      features.add(charc, "c");
+      features.add(charc1, "c1");
+      features.add(charp, "p");
+      features.add(charp, charc, "pc");
 
       if(flags.useAs || flags.useMsr||flags.usePk||flags.useHk){
-        features.add(charc +charc1 +"cc1");
-        features.add(charp + charc1 +"pc1");
+        features.add(charc, charc1, "cc1");
+        features.add(charp, charc1, "pc1");
       }
       features.add("|wordn");
     }
-    return features;
   }//end of CnC
 
 
@@ -90,16 +90,16 @@ public class Sighan2005DocumentReaderAndWriter implements DocumentReaderAndWrite
 
     if (flags.dictionary != null) {
       String[] dicts = flags.dictionary.split(",");
-      cdict = new ChineseDictionary(dicts, cdtos, flags.expandMidDot);
+      cdict = ChineseDictionary.getShared(dicts, flags.normalizationTable, cdtos, flags.expandMidDot);
     }
     if (flags.serializedDictionary != null) {
-      String dict = flags.serializedDictionary;
-      cdict = new ChineseDictionary(dict, cdtos, flags.expandMidDot);
+      String[] dicts = flags.serializedDictionary.split(",");
+      cdict = ChineseDictionary.getShared(dicts, flags.normalizationTable, cdtos, flags.expandMidDot);
     }
 
     if (flags.dictionary2 != null) {
       String[] dicts2 = flags.dictionary2.split(",");
-      cdict2 = new ChineseDictionary(dicts2, cdtos, flags.expandMidDot);
+      cdict2 = ChineseDictionary.getShared(dicts2, flags.normalizationTable, cdtos, flags.expandMidDot);
     }
   }
 
@@ -228,9 +228,11 @@ public class Sighan2005DocumentReaderAndWriter implements DocumentReaderAndWrite
       lbegin[i] = lmiddle[i] = lend[i] = 0;
     }
     for (int i = 0; i < lwiSize; i++) {
+      // one trie walk finds every dictionary word starting at i
+      int matches = dict.matchLengths(nonspaceLine, i);
       for (int leng = ChineseDictionary.MAX_LEXICON_LENGTH; leng >= 1; leng--) {
         if (i+leng-1 < lwiSize) {
-          if (dict.contains(nonspaceLine.substring(i, i+leng))) {
+          if ((matches & (1 << leng)) != 0) {
             // lbegin
             if (leng > lbegin[i]) {
               lbegin[i] = leng;
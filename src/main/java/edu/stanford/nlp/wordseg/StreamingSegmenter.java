@@ -0,0 +1,200 @@
+package edu.stanford.nlp.wordseg;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import edu.stanford.nlp.ie.AbstractSequenceClassifier;
+import edu.stanford.nlp.io.RuntimeIOException;
+import edu.stanford.nlp.process.ChineseDocumentToSentenceProcessor;
+
+/**
+ * Segments unbounded Chinese text read from a {@link Reader}, returning
+ * words as they become available instead of first materializing the whole
+ * input and its segmentation.
+ * <p>
+ * Input is cut into chunks at sentence boundaries, using the same full stop
+ * and closing mark rules as {@link ChineseDocumentToSentenceProcessor}, and
+ * at line breaks.  Each chunk is segmented independently with
+ * {@link AbstractSequenceClassifier#segmentString(String)}.  A sentence
+ * longer than <code>maxChunkLength</code> characters is cut at its last
+ * whitespace or comma, or failing that at the limit itself, so memory use
+ * is bounded by the chunk size and not by the length of the input.
+ * <p>
+ * Not thread-safe; use one instance per stream.
+ */
+public class StreamingSegmenter implements Iterator<String> {
+
+  public static final int DEFAULT_MAX_CHUNK_LENGTH = 2048;
+
+  private final AbstractSequenceClassifier<?> segmenter;
+  private final Reader in;
+  private final int maxChunkLength;
+
+  private final char[] buf = new char[4096];
+  private int bufPos = 0;
+  private int bufLen = 0;
+  private boolean eof = false;
+
+  /** Characters read but not yet segmented. */
+  private final StringBuilder chunk = new StringBuilder();
+  /** Whether the last non-whitespace character in chunk was a full stop or a closing mark after one. */
+  private boolean afterStop = false;
+
+  private List<String> words = Collections.emptyList();
+  private int wordPos = 0;
+
+  public StreamingSegmenter(AbstractSequenceClassifier<?> segmenter, Reader in) {
+    this(segmenter, in, DEFAULT_MAX_CHUNK_LENGTH);
+  }
+
+  public StreamingSegmenter(AbstractSequenceClassifier<?> segmenter, Reader in, int maxChunkLength) {
+    if (maxChunkLength <= 0) {
+      throw new IllegalArgumentException("maxChunkLength must be positive: " + maxChunkLength);
+    }
+    this.segmenter = segmenter;
+    this.in = in;
+    this.maxChunkLength = maxChunkLength;
+  }
+
+  @Override
+  public boolean hasNext() {
+    while (wordPos >= words.size()) {
+      if (eof && chunk.length() == 0) {
+        return false;
+      }
+      try {
+        nextChunk();
+      } catch (IOException e) {
+        throw new RuntimeIOException(e);
+      }
+    }
+    return true;
+  }
+
+  @Override
+  public String next() {
+    if ( ! hasNext()) {
+      throw new NoSuchElementException();
+    }
+    return words.get(wordPos++);
+  }
+
+  @Override
+  public void remove() {
+    throw new UnsupportedOperationException();
+  }
+
+  /**
+   * Cuts <code>text</code> into the chunks a StreamingSegmenter would
+   * segment one by one, leaving out those which are only whitespace. The
+   * chunks can then be segmented independently, e.g., in parallel, with
+   * {@link #segmentChunk}.
+   */
+  public static List<String> chunks(String text, int maxChunkLength) {
+    StreamingSegmenter cutter = new StreamingSegmenter(null, new StringReader(text), maxChunkLength);
+    List<String> chunks = new ArrayList<String>();
+    try {
+      while ( ! (cutter.eof && cutter.chunk.length() == 0)) {
+        String chunk = cutter.readChunk();
+        if ( ! chunk.trim().isEmpty()) {
+          chunks.add(chunk);
+        }
+      }
+    } catch (IOException e) {
+      throw new RuntimeIOException(e);
+    }
+    return chunks;
+  }
+
+  /** Segments what was read up to the next boundary. */
+  private void nextChunk() throws IOException {
+    words = segmentChunk(segmenter, readChunk());
+    wordPos = 0;
+  }
+
+  /** Reads up to the next boundary and returns what was read. */
+  private String readChunk() throws IOException {
+    int cut = -1;
+    while (cut < 0) {
+      if (bufPos == bufLen) {
+        bufLen = in.read(buf, 0, buf.length);
+        bufPos = 0;
+        if (bufLen < 0) {
+          bufLen = 0;
+          eof = true;
+          cut = chunk.length();
+          break;
+        }
+      }
+      char ch = buf[bufPos++];
+      if (afterStop && ! Character.isWhitespace(ch) &&
+          ! ChineseDocumentToSentenceProcessor.isFullStop(ch) &&
+          ! ChineseDocumentToSentenceProcessor.isRightMark(ch)) {
+        // ch starts the next sentence
+        cut = chunk.length();
+        chunk.append(ch);
+        afterStop = false;
+        break;
+      }
+      chunk.append(ch);
+      if (ChineseDocumentToSentenceProcessor.isFullStop(ch)) {
+        afterStop = true;
+      } else if (ch == '\n') {
+        cut = chunk.length();
+        afterStop = false;
+      }
+      if (cut < 0 && chunk.length() >= maxChunkLength) {
+        cut = softBreak();
+        afterStop = false;
+      }
+    }
+
+    String text = chunk.substring(0, cut);
+    chunk.delete(0, cut);
+    return text;
+  }
+
+  /** Position just after the last whitespace or comma in the second half of chunk, or its length if there is none. */
+  private int softBreak() {
+    for (int i = chunk.length() - 1, stop = chunk.length() / 2; i >= stop; i--) {
+      char c = chunk.charAt(i);
+      if (Character.isWhitespace(c) || c == '\uff0c' || c == '\u3001' ||
+          c == '\uff1b' || c == ',' || c == ';') {
+        return i + 1;
+      }
+    }
+    return chunk.length();
+  }
+
+  /** Segments one chunk of text, leaving out empty words. */
+  public static List<String> segmentChunk(AbstractSequenceClassifier<?> segmenter, String text) {
+    if (text.trim().isEmpty()) {
+      return Collections.emptyList();
+    }
+    List<String> segmented = segmenter.segmentString(text);
+    // segmentString splits on single whitespace characters and so may leave empty words
+    int n = 0;
+    for (String w : segmented) {
+      if (w.length() > 0) {
+        n++;
+      }
+    }
+    if (n == segmented.size()) {
+      return segmented;
+    }
+    List<String> result = new ArrayList<String>(n);
+    for (String w : segmented) {
+      if (w.length() > 0) {
+        result.add(w);
+      }
+    }
+    return result;
+  }
+
+}
@@ -1,6 +1,7 @@
 package edu.stanford.nlp.wordseg;
 
 import edu.stanford.nlp.sequences.SeqClassifierFlags;
+import edu.stanford.nlp.util.ModelRegistry;
 
 class TagAffixDetector {
 
@@ -41,8 +42,21 @@ class TagAffixDetector {
     System.err.println("INFO: TagAffixDetector: useChPos=" + flags.useChPos +
             " | useCTBChar2=" + flags.useCTBChar2 + " | usePKChar2=" + flags.usePKChar2);
     System.err.println("INFO: TagAffixDetector: building TagAffixDetector from "+ccPath+" and "+adPath);
-    cc = new CorpusChar(ccPath);
-    aD = new affDict(adPath);
+    // shared with every other detector reading the same lists
+    final String ccFile = ccPath;
+    cc = ModelRegistry.get(CorpusChar.class, ccFile, null, new ModelRegistry.Loader<CorpusChar>() {
+      @Override
+      public CorpusChar load() {
+        return new CorpusChar(ccFile);
+      }
+    });
+    final String adFile = adPath;
+    aD = ModelRegistry.get(affDict.class, adFile, null, new ModelRegistry.Loader<affDict>() {
+      @Override
+      public affDict load() {
+        return new affDict(adFile);
+      }
+    });
   }
 
   String checkDic(String t2, String c2 ){
@@ -0,0 +1,77 @@
+package edu.stanford.nlp.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import edu.stanford.nlp.util.TypesafeMap.Key;
+
+public class ArrayCoreMapTests extends TestCase {
+
+  public static class IntKey implements Key<Integer> { }
+
+  /** Defines its own copy of a class, so each loader gives another key class */
+  private static class KeyLoader extends ClassLoader {
+    KeyLoader() {
+      super(ArrayCoreMapTests.class.getClassLoader());
+    }
+
+    Class<?> define(byte[] bytes) {
+      return defineClass(null, bytes, 0, bytes.length);
+    }
+  }
+
+  private static List<Class<? extends Key<Integer>>> makeKeys(int numKeys) throws IOException {
+    String name = IntKey.class.getName();
+    InputStream in = IntKey.class.getResourceAsStream(name.substring(name.lastIndexOf('.') + 1) + ".class");
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    byte[] buffer = new byte[4096];
+    for (int read; (read = in.read(buffer)) > 0; ) {
+      bytes.write(buffer, 0, read);
+    }
+    in.close();
+
+    List<Class<? extends Key<Integer>>> keys = Generics.newArrayList();
+    for (int i = 0; i < numKeys; i++) {
+      keys.add(ErasureUtils.<Class<? extends Key<Integer>>>uncheckedCast(new KeyLoader().define(bytes.toByteArray())));
+    }
+    return keys;
+  }
+
+  /** Maps past the size the key index can hold must still find every key */
+  public void testManyKeys() throws IOException {
+    List<Class<? extends Key<Integer>>> keys = makeKeys(300);
+    ArrayCoreMap map = new ArrayCoreMap();
+    for (int i = 0; i < keys.size(); i++) {
+      map.set(keys.get(i), i);
+      assertEquals(i + 1, map.size());
+      for (int j = 0; j <= i; j++) {
+        assertTrue(map.containsKey(keys.get(j)));
+        assertEquals(Integer.valueOf(j), map.get(keys.get(j)));
+      }
+    }
+
+    // setting a key again replaces its value
+    for (int i = 0; i < keys.size(); i++) {
+      map.set(keys.get(i), -i);
+    }
+    assertEquals(keys.size(), map.size());
+    for (int i = 0; i < keys.size(); i++) {
+      assertEquals(Integer.valueOf(-i), map.get(keys.get(i)));
+    }
+
+    // removing keys shrinks the map back below the indexed size
+    for (int i = keys.size() - 1; i >= 100; i--) {
+      map.remove(keys.get(i));
+      assertFalse(map.containsKey(keys.get(i)));
+    }
+    assertEquals(100, map.size());
+    for (int i = 0; i < 100; i++) {
+      assertEquals(Integer.valueOf(-i), map.get(keys.get(i)));
+    }
+  }
+
+}